@@ -0,0 +1,134 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
+
+/**
+ * Benchmarks the latency of decompressing bzip2 compressed rules replies of
+ * different sizes
+ * <p>
+ * <code>commonsCompress</code> is the previous implementation, concatenating
+ * all parts and decompressing them using Commons Compress, as a baseline for
+ * the pooled decoder used by {@link SteamPacketFactory}.
+ *
+ * @author Sebastian Staudt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class CompressedReplyBenchmark {
+
+    private static final int SPLIT_SIZE = 1248;
+
+    private int checksum;
+
+    private ArrayList<byte[]> parts;
+
+    @Param({ "8000", "20000", "60000" })
+    private int size;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] reply = Fixtures.loadDatagram(Fixtures.RULES);
+        byte[] data = new byte[this.size];
+        for (int offset = 0; offset < data.length; offset += reply.length) {
+            System.arraycopy(reply, 0, data, offset, Math.min(reply.length, data.length - offset));
+        }
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        this.checksum = (int) crc32.getValue();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(output);
+        bzip2.write(data);
+        bzip2.close();
+        byte[] compressedData = output.toByteArray();
+
+        this.parts = new ArrayList<byte[]>();
+        for (int offset = 0; offset < compressedData.length; offset += SPLIT_SIZE) {
+            byte[] part = new byte[Math.min(SPLIT_SIZE, compressedData.length - offset)];
+            System.arraycopy(compressedData, offset, part, 0, part.length);
+            this.parts.add(part);
+        }
+    }
+
+    @Benchmark
+    public SteamPacket reassemblePacket() throws SteamCondenserException {
+        return SteamPacketFactory.reassemblePacket(this.parts, true, this.size, this.checksum);
+    }
+
+    @Benchmark
+    public SteamPacket commonsCompress() throws IOException, SteamCondenserException {
+        int length = 0;
+        for (byte[] part : this.parts) {
+            length += part.length;
+        }
+        byte[] compressedData = new byte[length];
+        int position = 0;
+        for (byte[] part : this.parts) {
+            System.arraycopy(part, 0, compressedData, position, part.length);
+            position += part.length;
+        }
+
+        BZip2CompressorInputStream bzip2 = new BZip2CompressorInputStream(new ByteArrayInputStream(compressedData));
+        byte[] header = new byte[5];
+        byte[] data = new byte[this.size - 5];
+        this.readFully(bzip2, header);
+        this.readFully(bzip2, data);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(header);
+        crc32.update(data);
+        if ((int) crc32.getValue() != this.checksum) {
+            throw new IllegalStateException("CRC32 checksum mismatch.");
+        }
+
+        return SteamPacketFactory.getPacketFromData(header[4], data);
+    }
+
+    private void readFully(BZip2CompressorInputStream bzip2, byte[] data)
+            throws IOException {
+        int position = 0;
+        while (position < data.length) {
+            int bytesRead = bzip2.read(data, position, data.length - position);
+            if (bytesRead == -1) {
+                throw new IOException("Unexpected end of stream.");
+            }
+            position += bytesRead;
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * This class writes the binary fixtures used by the benchmarks
+ * <p>
+ * The fixtures mirror replies recorded from Source servers (a 24 slot
+ * Counter-Strike: Source server with a typical set of plugins), but are
+ * generated with a fixed random seed so they can be reproduced and do not
+ * contain any real player or server data.
+ * <p>
+ * Usage: <code>FixtureGenerator [outputDirectory]</code>
+ *
+ * @author Sebastian Staudt
+ * @see Fixtures
+ */
+public class FixtureGenerator {
+
+    private static final String[] PLAYER_NAMES = {
+        "koraktor", "[TAG] Sniper", "Ранний Пташка", "xXx_NoScope_xXx",
+        "unnamed", "Player (1)", "ゲーマー", "Łukasz", "The Medic",
+        "bot_stan", "aimbot9000", "lazy afternoon", "Dr. Gordon"
+    };
+
+    private static final String[][] RULES = {
+        { "coop", "0" }, { "deathmatch", "1" }, { "decalfrequency", "10" },
+        { "metamod_version", "1.10.0" }, { "mp_allowNPCs", "1" },
+        { "mp_autocrosshair", "1" }, { "mp_autoteambalance", "1" },
+        { "mp_c4timer", "45" }, { "mp_disable_autokick", "0" },
+        { "mp_fadetoblack", "0" }, { "mp_falldamage", "0" },
+        { "mp_flashlight", "1" }, { "mp_footsteps", "1" },
+        { "mp_forcecamera", "0" }, { "mp_forcerespawn", "1" },
+        { "mp_fraglimit", "0" }, { "mp_freezetime", "3" },
+        { "mp_friendlyfire", "0" }, { "mp_limitteams", "2" },
+        { "mp_maxrounds", "0" }, { "mp_roundtime", "2.5" },
+        { "mp_startmoney", "800" }, { "mp_teamplay", "0" },
+        { "mp_timelimit", "30" }, { "mp_tkpunish", "0" },
+        { "mp_winlimit", "0" }, { "nextlevel", "de_inferno" },
+        { "r_AirboatViewDampenDamp", "1.0" }, { "sm_nextmap", "de_inferno" },
+        { "sourcemod_version", "1.5.0-hg3761" }, { "sv_accelerate", "5" },
+        { "sv_airaccelerate", "10" }, { "sv_allowminmodels", "1" },
+        { "sv_alltalk", "0" }, { "sv_bounce", "0" }, { "sv_cheats", "0" },
+        { "sv_contact", "admin@example.com" }, { "sv_footsteps", "1" },
+        { "sv_friction", "4" }, { "sv_gravity", "800" },
+        { "sv_maxspeed", "320" }, { "sv_noclipaccelerate", "5" },
+        { "sv_noclipspeed", "5" }, { "sv_password", "0" },
+        { "sv_pausable", "0" }, { "sv_rollangle", "0" },
+        { "sv_rollspeed", "200" }, { "sv_specaccelerate", "5" },
+        { "sv_specnoclip", "1" }, { "sv_specspeed", "3" },
+        { "sv_stepsize", "18" }, { "sv_stopspeed", "75" },
+        { "sv_tags", "alltalk,increased_maxplayers,nocrits" },
+        { "sv_voiceenable", "1" }, { "sv_wateraccelerate", "10" },
+        { "sv_waterfriction", "1" }, { "tv_enable", "0" },
+        { "tv_password", "0" }, { "tv_relaypassword", "0" }
+    };
+
+    private static final int SPLIT_SIZE = 1248;
+
+    private Random random;
+
+    /**
+     * Writes all fixtures into the given directory
+     *
+     * @param args The output directory (defaults to the resources of the
+     *        benchmark module)
+     * @throws IOException if writing a fixture fails
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File((args.length > 0) ? args[0] : "src/main/resources/fixtures");
+        directory.mkdirs();
+
+        new FixtureGenerator().generate(directory);
+    }
+
+    private FixtureGenerator() {
+        this.random = new Random(42);
+    }
+
+    private void generate(File directory) throws IOException {
+        this.write(new File(directory, Fixtures.INFO), this.infoReply());
+        this.write(new File(directory, Fixtures.PLAYERS), this.playerReply(24));
+        this.write(new File(directory, Fixtures.RULES), this.rulesReply(1400));
+        this.write(new File(directory, Fixtures.RULES_SPLIT), this.split(this.rulesReply(4 * SPLIT_SIZE), 1234, false));
+        this.write(new File(directory, Fixtures.RULES_BZIP2), this.split(this.rulesReply(16 * SPLIT_SIZE), 1235, true));
+        this.write(new File(directory, Fixtures.MASTER_BATCH), this.masterBatch(231));
+        this.write(new File(directory, Fixtures.RCON_RESPONSE), this.rconResponse());
+    }
+
+    private byte[] infoReply() {
+        ByteBuffer buffer = this.packet(0x49, 200);
+        buffer.put((byte) 17);
+        this.putString(buffer, "Steam Condenser Test Server | 24/7 Dust2 | FastDL");
+        this.putString(buffer, "de_dust2");
+        this.putString(buffer, "cstrike");
+        this.putString(buffer, "Counter-Strike: Source");
+        buffer.putShort((short) 240);
+        buffer.put((byte) 18).put((byte) 24).put((byte) 0);
+        buffer.put((byte) 'd').put((byte) 'l').put((byte) 0).put((byte) 1);
+        this.putString(buffer, "1.0.0.70");
+        buffer.put((byte) 0xB1);
+        buffer.putShort((short) 27015);
+        buffer.putLong(90071996842377216L);
+        this.putString(buffer, "alltalk,increased_maxplayers,nocrits");
+        buffer.putLong(240);
+
+        return this.toArray(buffer);
+    }
+
+    private byte[] playerReply(int playerCount) {
+        ByteBuffer buffer = this.packet(0x44, 1400);
+        buffer.put((byte) playerCount);
+        for (int i = 0; i < playerCount; i ++) {
+            buffer.put((byte) i);
+            this.putString(buffer, PLAYER_NAMES[i % PLAYER_NAMES.length] + ((i < PLAYER_NAMES.length) ? "" : " " + i));
+            buffer.putInt(this.random.nextInt(60));
+            buffer.putFloat(this.random.nextFloat() * 3600);
+        }
+
+        return this.toArray(buffer);
+    }
+
+    private byte[] rulesReply(int size) {
+        List<String[]> rules = new ArrayList<String[]>();
+        int length = 7;
+        for (String[] rule : RULES) {
+            rules.add(rule);
+            length += rule[0].length() + rule[1].length() + 2;
+        }
+        for (int i = 0; ; i ++) {
+            String[] rule = { "sm_plugin_" + i + "_enabled", Integer.toString(this.random.nextInt(2)) };
+            int ruleLength = rule[0].length() + rule[1].length() + 2;
+            if (length + ruleLength > size) {
+                break;
+            }
+            rules.add(rule);
+            length += ruleLength;
+        }
+
+        ByteBuffer buffer = this.packet(0x45, size);
+        buffer.putShort((short) rules.size());
+        for (String[] rule : rules) {
+            this.putString(buffer, rule[0]);
+            this.putString(buffer, rule[1]);
+        }
+
+        return this.toArray(buffer);
+    }
+
+    private byte[] masterBatch(int serverCount) {
+        ByteBuffer buffer = this.packet(0x66, 6 + serverCount * 6 + 1);
+        buffer.put((byte) 0x0A);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < serverCount; i ++) {
+            buffer.putInt(this.random.nextInt());
+            buffer.putShort((short) (27015 + this.random.nextInt(16)));
+        }
+
+        return this.toArray(buffer);
+    }
+
+    private byte[] rconResponse() {
+        StringBuilder status = new StringBuilder();
+        status.append("hostname: Steam Condenser Test Server\n");
+        status.append("version : 1.0.0.70/17 5394 secure\n");
+        status.append("udp/ip  :  192.0.2.1:27015\n");
+        status.append("map     : de_dust2 at: 0 x, 0 y, 0 z\n");
+        status.append("players : 24 (24 max)\n\n");
+        status.append("# userid name uniqueid connected ping loss state adr\n");
+        for (int i = 0; i < 24; i ++) {
+            status.append("# ").append(100 + i).append(" \"").append(PLAYER_NAMES[i % PLAYER_NAMES.length])
+                .append("\" STEAM_0:1:").append(1000000 + this.random.nextInt(9000000))
+                .append(" 12:34 ").append(20 + this.random.nextInt(80)).append(" 0 active 198.51.100.")
+                .append(i).append(":27005\n");
+        }
+
+        byte[] body;
+        try {
+            body = status.toString().getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(10 + body.length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(1);
+        buffer.putInt(0);
+        buffer.put(body);
+        buffer.put((byte) 0).put((byte) 0);
+
+        return this.toArray(buffer);
+    }
+
+    private List<byte[]> split(byte[] payload, int requestId, boolean compressed)
+            throws IOException {
+        byte[] data = payload;
+        if (compressed) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(output);
+            bzip2.write(payload);
+            bzip2.close();
+            data = output.toByteArray();
+        }
+
+        int packetCount = (data.length + SPLIT_SIZE - 1) / SPLIT_SIZE;
+        List<byte[]> packets = new ArrayList<byte[]>(packetCount);
+        for (int i = 0; i < packetCount; i ++) {
+            int offset = i * SPLIT_SIZE;
+            int length = Math.min(SPLIT_SIZE, data.length - offset);
+            ByteBuffer buffer = ByteBuffer.allocate(length + 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(-2);
+            buffer.putInt(compressed ? (requestId | 0x80000000) : requestId);
+            buffer.put((byte) packetCount);
+            buffer.put((byte) i);
+            if (compressed) {
+                if (i == 0) {
+                    CRC32 crc32 = new CRC32();
+                    crc32.update(payload);
+                    buffer.putInt(payload.length);
+                    buffer.putInt((int) crc32.getValue());
+                }
+            } else {
+                buffer.putShort((short) SPLIT_SIZE);
+            }
+            buffer.put(data, offset, length);
+            packets.add(this.toArray(buffer));
+        }
+
+        return packets;
+    }
+
+    private ByteBuffer packet(int header, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size + 256).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(-1);
+        buffer.put((byte) header);
+
+        return buffer;
+    }
+
+    private void putString(ByteBuffer buffer, String string) {
+        try {
+            buffer.put(string.getBytes("UTF-8"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        buffer.put((byte) 0);
+    }
+
+    private byte[] toArray(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, data, 0, data.length);
+
+        return data;
+    }
+
+    private void write(File file, byte[] datagram) throws IOException {
+        List<byte[]> datagrams = new ArrayList<byte[]>(1);
+        datagrams.add(datagram);
+        this.write(file, datagrams);
+    }
+
+    private void write(File file, List<byte[]> datagrams) throws IOException {
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (byte[] datagram : datagrams) {
+                output.writeShort(datagram.length);
+                output.write(datagram);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This class loads the binary fixtures used by the benchmarks
+ * <p>
+ * Every fixture file contains one or more datagrams as they are received
+ * from a server, each prefixed with its length as an unsigned big-endian
+ * short. The fixtures are created by {@link FixtureGenerator}.
+ *
+ * @author Sebastian Staudt
+ */
+public abstract class Fixtures {
+
+    public static final String INFO = "info.dat";
+    public static final String MASTER_BATCH = "master_batch.dat";
+    public static final String PLAYERS = "players.dat";
+    public static final String RCON_RESPONSE = "rcon_response.dat";
+    public static final String RULES = "rules.dat";
+    public static final String RULES_BZIP2 = "rules_bzip2.dat";
+    public static final String RULES_SPLIT = "rules_split.dat";
+
+    /**
+     * Loads all datagrams of the given fixture
+     *
+     * @param name The name of the fixture file
+     * @return The datagrams contained in the fixture
+     * @throws IOException if the fixture cannot be read
+     */
+    public static List<byte[]> load(String name) throws IOException {
+        InputStream stream = Fixtures.class.getResourceAsStream("/fixtures/" + name);
+        if (stream == null) {
+            throw new IOException("Fixture " + name + " not found.");
+        }
+
+        List<byte[]> datagrams = new ArrayList<byte[]>();
+        DataInputStream input = new DataInputStream(stream);
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = input.readUnsignedShort();
+                } catch (EOFException e) {
+                    break;
+                }
+                byte[] datagram = new byte[length];
+                input.readFully(datagram);
+                datagrams.add(datagram);
+            }
+        } finally {
+            input.close();
+        }
+
+        return datagrams;
+    }
+
+    /**
+     * Loads the single datagram of the given fixture
+     *
+     * @param name The name of the fixture file
+     * @return The datagram contained in the fixture
+     * @throws IOException if the fixture cannot be read
+     */
+    public static byte[] loadDatagram(String name) throws IOException {
+        return load(name).get(0);
+    }
+
+    /**
+     * Loads the single datagram of the given fixture without its leading
+     * 4 byte packet header, i.e. the data passed to the packet factory
+     *
+     * @param name The name of the fixture file
+     * @return The packet data contained in the fixture
+     * @throws IOException if the fixture cannot be read
+     */
+    public static byte[] loadPacketData(String name) throws IOException {
+        byte[] datagram = loadDatagram(name);
+        byte[] data = new byte[datagram.length - 4];
+        System.arraycopy(datagram, 4, data, 0, data.length);
+
+        return data;
+    }
+
+    /**
+     * Returns a little-endian view of the given datagram, like the one used
+     * by the sockets to parse split packet headers
+     *
+     * @param datagram The datagram to wrap
+     * @return A byte buffer wrapping the datagram
+     */
+    public static ByteBuffer wrap(byte[] datagram) {
+        return ByteBuffer.wrap(datagram).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+}
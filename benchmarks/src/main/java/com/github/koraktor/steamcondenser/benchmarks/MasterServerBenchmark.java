@@ -0,0 +1,106 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.koraktor.steamcondenser.servers.MasterServer;
+import com.github.koraktor.steamcondenser.servers.ServerBatchListener;
+import com.github.koraktor.steamcondenser.servers.stub.NetworkConditions;
+import com.github.koraktor.steamcondenser.servers.stub.StubMasterServer;
+
+/**
+ * Benchmarks getting a complete server list of 20 batches from a local stub
+ * master server with a latency of 2 ms, with and without pipelining of the
+ * batch requests
+ * <p>
+ * <code>batchWork</code> is the time in milliseconds spent by the listener
+ * for every batch, e.g. to start querying the servers.
+ *
+ * @author Sebastian Staudt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class MasterServerBenchmark {
+
+    private static final int BATCHES = 20;
+
+    private static final int SERVERS_PER_BATCH = 231;
+
+    @Param({ "0", "2" })
+    public int batchWork;
+
+    @Param({ "false", "true" })
+    public boolean pipelining;
+
+    private MasterServer masterServer;
+
+    private StubMasterServer server;
+
+    @Setup
+    public void setup() throws Exception {
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>(BATCHES * SERVERS_PER_BATCH);
+        for (int batch = 0; batch < BATCHES; batch ++) {
+            for (int i = 0; i < SERVERS_PER_BATCH; i ++) {
+                addresses.add(new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, (byte) batch, 0, (byte) i }), 27015));
+            }
+        }
+        this.server = new StubMasterServer(addresses, SERVERS_PER_BATCH);
+        this.server.setNetworkConditions(new NetworkConditions(2, 0, 0, 0));
+
+        MasterServer.setPipelining(this.pipelining);
+        this.masterServer = new MasterServer(this.server.getAddress().getAddress(), this.server.getAddress().getPort());
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.server.close();
+        MasterServer.setPipelining(true);
+    }
+
+    @Benchmark
+    public int getServers() throws Exception {
+        final int[] servers = new int[1];
+        this.masterServer.getServers(MasterServer.REGION_ALL, "", false, new ServerBatchListener() {
+            public void serversReceived(List<InetSocketAddress> batch) {
+                servers[0] += batch.size();
+                if (batchWork > 0) {
+                    try {
+                        Thread.sleep(batchWork);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        });
+
+        return servers[0];
+    }
+
+}
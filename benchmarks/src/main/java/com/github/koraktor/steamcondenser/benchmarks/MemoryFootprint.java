@@ -0,0 +1,88 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import com.github.koraktor.steamcondenser.servers.PlayerList;
+import com.github.koraktor.steamcondenser.servers.ServerInfo;
+import com.github.koraktor.steamcondenser.servers.packets.S2A_INFO_BasePacket;
+import com.github.koraktor.steamcondenser.servers.packets.S2A_PLAYER_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
+
+/**
+ * Compares the retained heap of server information and player lists kept as
+ * maps and in their compact representations, i.e. {@link ServerInfo} and
+ * {@link PlayerList}
+ * <p>
+ * The info and players fixtures are parsed the given number of times
+ * (100,000 by default) and kept in each representation one after another.
+ * The used heap is measured after a full garbage collection, so the JVM
+ * should be started with a fixed heap size, e.g.:
+ * <pre>
+ * java -Xms2g -Xmx2g -cp target/benchmarks.jar \
+ *     com.github.koraktor.steamcondenser.benchmarks.MemoryFootprint
+ * </pre>
+ *
+ * @author Sebastian Staudt
+ */
+public class MemoryFootprint {
+
+    private static Object[] retained;
+
+    public static void main(String[] args) throws Exception {
+        int count = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        byte[] info = Fixtures.loadPacketData(Fixtures.INFO);
+        byte[] players = Fixtures.loadPacketData(Fixtures.PLAYERS);
+
+        long infoMapBytes = measure(info, count, false);
+        report("Info (HashMap)", infoMapBytes, count);
+        long serverInfoBytes = measure(info, count, true);
+        report("Info (ServerInfo)", serverInfoBytes, count);
+        System.out.printf("%-24s %.1fx%n%n", "Reduction", (double) infoMapBytes / serverInfoBytes);
+
+        long playerMapBytes = measure(players, count, false);
+        report("Players (HashMap)", playerMapBytes, count);
+        long playerListBytes = measure(players, count, true);
+        report("Players (PlayerList)", playerListBytes, count);
+        System.out.printf("%-24s %.1fx%n", "Reduction", (double) playerMapBytes / playerListBytes);
+    }
+
+    private static long measure(byte[] data, int count, boolean compact)
+            throws Exception {
+        retained = null;
+        long baseline = usedMemory();
+
+        retained = new Object[count];
+        for (int i = 0; i < count; i ++) {
+            Object packet = SteamPacketFactory.getPacketFromData(data);
+            if (packet instanceof S2A_PLAYER_Packet) {
+                S2A_PLAYER_Packet playerPacket = (S2A_PLAYER_Packet) packet;
+                retained[i] = compact ? playerPacket.getPlayerList() : playerPacket.getPlayerHash();
+            } else {
+                S2A_INFO_BasePacket infoPacket = (S2A_INFO_BasePacket) packet;
+                retained[i] = compact ? infoPacket.getServerInfo() : infoPacket.getInfo();
+            }
+        }
+
+        return usedMemory() - baseline;
+    }
+
+    private static void report(String name, long bytes, int count) {
+        System.out.printf("%-24s %,12d bytes  %,8d bytes per server%n", name, bytes, bytes / count);
+    }
+
+    private static long usedMemory() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 4; i ++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+}
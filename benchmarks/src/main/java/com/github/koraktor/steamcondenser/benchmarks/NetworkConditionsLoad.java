@@ -0,0 +1,148 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.koraktor.steamcondenser.servers.RetryPolicy;
+import com.github.koraktor.steamcondenser.servers.SourceServer;
+import com.github.koraktor.steamcondenser.servers.stub.NetworkConditions;
+import com.github.koraktor.steamcondenser.servers.stub.StubGameServer;
+
+/**
+ * Queries the information, players and rules of many servers under
+ * different simulated network conditions
+ * <p>
+ * The servers are simulated by a number of stub servers replying with 24
+ * players and 300 rules, so rules replies are split into several datagrams.
+ * Half of the stub servers compress their split replies. For each network
+ * profile, every server is refreshed once per round by one of the threads.
+ * <p>
+ * Usage:
+ * <pre>
+ * java -cp target/benchmarks.jar \
+ *     com.github.koraktor.steamcondenser.benchmarks.NetworkConditionsLoad \
+ *     [servers (2000)] [rounds (3)] [stub servers (16)] [threads (200)]
+ * </pre>
+ *
+ * @author Sebastian Staudt
+ */
+public class NetworkConditionsLoad {
+
+    private static final String[] PROFILE_NAMES = {
+        "local", "20 ms", "20 ms, 1% loss", "50 ms, 5% loss"
+    };
+
+    private static final NetworkConditions[] PROFILES = {
+        NetworkConditions.NONE,
+        new NetworkConditions(20, 5, 0, 0),
+        new NetworkConditions(20, 5, 0.01, 0.01),
+        new NetworkConditions(50, 20, 0.05, 0.05)
+    };
+
+    public static void main(String[] args) throws Exception {
+        int serverCount = (args.length > 0) ? Integer.parseInt(args[0]) : 2000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int stubServerCount = (args.length > 2) ? Integer.parseInt(args[2]) : 16;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : 200;
+
+        StubGameServer[] stubServers = new StubGameServer[stubServerCount];
+        for (int i = 0; i < stubServerCount; i ++) {
+            stubServers[i] = new StubGameServer();
+            stubServers[i].setCompressed(i % 2 == 1);
+            for (int j = 0; j < 24; j ++) {
+                stubServers[i].addPlayer("Player " + j, j * 3, j * 60.5f);
+            }
+            for (int j = 0; j < 300; j ++) {
+                stubServers[i].setRule("sv_rule_" + j, Integer.toString(j));
+            }
+        }
+
+        SourceServer[] servers = new SourceServer[serverCount];
+        for (int i = 0; i < serverCount; i ++) {
+            InetSocketAddress address = stubServers[i % stubServerCount].getAddress();
+            servers[i] = new SourceServer(address.getAddress(), address.getPort());
+            servers[i].setRetryPolicy(new RetryPolicy(3));
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (int i = 0; i < PROFILES.length; i ++) {
+                long lostDatagrams = 0;
+                for (StubGameServer stubServer : stubServers) {
+                    stubServer.setNetworkConditions(PROFILES[i]);
+                    lostDatagrams -= stubServer.getLostDatagrams();
+                }
+
+                for (int round = 1; round <= rounds; round ++) {
+                    refresh(PROFILE_NAMES[i], round, servers, executor);
+                }
+
+                for (StubGameServer stubServer : stubServers) {
+                    lostDatagrams += stubServer.getLostDatagrams();
+                }
+                System.out.printf("%-16s %,d datagrams lost%n", PROFILE_NAMES[i], lostDatagrams);
+            }
+        } finally {
+            executor.shutdownNow();
+            for (SourceServer server : servers) {
+                server.disconnect();
+            }
+            for (StubGameServer stubServer : stubServers) {
+                stubServer.close();
+            }
+        }
+    }
+
+    private static void refresh(String profile, int round,
+                                final SourceServer[] servers,
+                                ExecutorService executor)
+            throws InterruptedException {
+        final long[] latencies = new long[servers.length];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(servers.length);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < servers.length; i ++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                public void run() {
+                    long refreshTime = System.nanoTime();
+                    try {
+                        servers[index].updateServerInfo();
+                        servers[index].updatePlayers();
+                        servers[index].updateRules();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - refreshTime;
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await(10, TimeUnit.MINUTES);
+        long time = System.nanoTime() - startTime;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-16s round %d: %,6d servers in %,6d ms (%,6.0f refreshes/s), " +
+                "p50 %,6.1f ms, p99 %,7.1f ms, %d failed%n",
+            profile, round, servers.length, time / 1000000,
+            servers.length * 1e9 / time,
+            latencies[latencies.length / 2] / 1e6,
+            latencies[(int) (latencies.length * 0.99)] / 1e6,
+            failures.get());
+    }
+
+}
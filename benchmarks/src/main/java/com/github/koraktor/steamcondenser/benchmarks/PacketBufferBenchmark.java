@@ -0,0 +1,86 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.github.koraktor.steamcondenser.PacketBuffer;
+
+/**
+ * Benchmarks reading all strings of a ~1400 byte rules reply from a
+ * {@link PacketBuffer}, with and without the string cache and backed by a
+ * heap or a direct buffer
+ *
+ * @author Sebastian Staudt
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class PacketBufferBenchmark {
+
+    private ByteBuffer directRules;
+
+    private byte[] rules;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] packet = Fixtures.loadDatagram(Fixtures.RULES);
+        this.rules = new byte[packet.length - 5];
+        System.arraycopy(packet, 5, this.rules, 0, this.rules.length);
+
+        this.directRules = ByteBuffer.allocateDirect(this.rules.length);
+        this.directRules.put(this.rules);
+        this.directRules.flip();
+    }
+
+    @Benchmark
+    public void getString(Blackhole blackhole) {
+        this.readRules(new PacketBuffer(this.rules), false, blackhole);
+    }
+
+    @Benchmark
+    public void getCachedString(Blackhole blackhole) {
+        this.readRules(new PacketBuffer(this.rules), true, blackhole);
+    }
+
+    @Benchmark
+    public void getStringDirect(Blackhole blackhole) {
+        this.readRules(new PacketBuffer(this.directRules.duplicate()), false, blackhole);
+    }
+
+    private void readRules(PacketBuffer buffer, boolean cached, Blackhole blackhole) {
+        int ruleCount = Short.reverseBytes(buffer.getShort());
+        for (int i = 0; i < ruleCount; i ++) {
+            if (cached) {
+                blackhole.consume(buffer.getCachedString());
+                blackhole.consume(buffer.getCachedString());
+            } else {
+                blackhole.consume(buffer.getString());
+                blackhole.consume(buffer.getString());
+            }
+        }
+    }
+
+}
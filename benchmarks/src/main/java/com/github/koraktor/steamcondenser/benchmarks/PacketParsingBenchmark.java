@@ -0,0 +1,103 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+import com.github.koraktor.steamcondenser.servers.packets.M2A_SERVER_BATCH_Paket;
+import com.github.koraktor.steamcondenser.servers.packets.S2A_INFO_BasePacket;
+import com.github.koraktor.steamcondenser.servers.packets.S2A_PLAYER_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONPacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONPacketFactory;
+
+/**
+ * Benchmarks parsing single (not split) replies into packet objects
+ *
+ * @author Sebastian Staudt
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class PacketParsingBenchmark {
+
+    private byte[] info;
+
+    private byte[] masterBatch;
+
+    private byte[] players;
+
+    private byte[] rconResponse;
+
+    private byte[] rules;
+
+    @Setup
+    public void setup() throws IOException {
+        this.info = Fixtures.loadPacketData(Fixtures.INFO);
+        this.masterBatch = Fixtures.loadPacketData(Fixtures.MASTER_BATCH);
+        this.players = Fixtures.loadPacketData(Fixtures.PLAYERS);
+        this.rconResponse = Fixtures.loadDatagram(Fixtures.RCON_RESPONSE);
+        this.rules = Fixtures.loadPacketData(Fixtures.RULES);
+    }
+
+    @Benchmark
+    public SteamPacket info() throws PacketFormatException {
+        return SteamPacketFactory.getPacketFromData(this.info);
+    }
+
+    @Benchmark
+    public Object infoMap() throws PacketFormatException {
+        S2A_INFO_BasePacket packet = (S2A_INFO_BasePacket) SteamPacketFactory.getPacketFromData(this.info);
+        return packet.getInfo();
+    }
+
+    @Benchmark
+    public Object masterBatch() throws PacketFormatException {
+        M2A_SERVER_BATCH_Paket packet = (M2A_SERVER_BATCH_Paket) SteamPacketFactory.getPacketFromData(this.masterBatch);
+        return packet.getServerAddresses();
+    }
+
+    @Benchmark
+    public SteamPacket players() throws PacketFormatException {
+        return SteamPacketFactory.getPacketFromData(this.players);
+    }
+
+    @Benchmark
+    public Object playersMap() throws PacketFormatException {
+        S2A_PLAYER_Packet packet = (S2A_PLAYER_Packet) SteamPacketFactory.getPacketFromData(this.players);
+        return packet.getPlayerHash();
+    }
+
+    @Benchmark
+    public RCONPacket rconResponse() throws PacketFormatException {
+        return RCONPacketFactory.getPacketFromData(this.rconResponse);
+    }
+
+    @Benchmark
+    public SteamPacket rules() throws PacketFormatException {
+        return SteamPacketFactory.getPacketFromData(this.rules);
+    }
+
+}
@@ -0,0 +1,147 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.github.koraktor.steamcondenser.servers.RetryPolicy;
+import com.github.koraktor.steamcondenser.servers.SourceServer;
+import com.github.koraktor.steamcondenser.servers.sockets.SteamSocket;
+import com.github.koraktor.steamcondenser.servers.stub.StubGameServer;
+
+/**
+ * Polls the information of many servers concurrently, once with the default
+ * non-blocking I/O and once with blocking I/O
+ * <p>
+ * Each server object uses its own socket and is polled from its own thread.
+ * On Java 21 and newer virtual threads are used, otherwise a pool of platform
+ * threads. The servers are simulated by a number of stub servers.
+ * Queries are retried up to two times, so failures are only reported if a
+ * stub server is overloaded for a longer time.
+ * <p>
+ * Usage (each server needs a file descriptor, so the limit has to be raised
+ * for large numbers of servers):
+ * <pre>
+ * ulimit -n 65536
+ * java -cp target/benchmarks.jar \
+ *     com.github.koraktor.steamcondenser.benchmarks.PollingLoadTest \
+ *     [servers (20000)] [rounds (3)] [stub servers (64)] [platform threads (2000)]
+ * </pre>
+ *
+ * @author Sebastian Staudt
+ */
+public class PollingLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int serverCount = (args.length > 0) ? Integer.parseInt(args[0]) : 20000;
+        int rounds = (args.length > 1) ? Integer.parseInt(args[1]) : 3;
+        int stubServerCount = (args.length > 2) ? Integer.parseInt(args[2]) : 64;
+        int threads = (args.length > 3) ? Integer.parseInt(args[3]) : 2000;
+
+        StubGameServer[] stubServers = new StubGameServer[stubServerCount];
+        for (int i = 0; i < stubServerCount; i ++) {
+            stubServers[i] = new StubGameServer();
+        }
+
+        ExecutorService executor = newVirtualThreadExecutor();
+        if (executor == null) {
+            System.out.println("Virtual threads are not available, using " + threads + " platform threads");
+            executor = Executors.newFixedThreadPool(threads);
+        } else {
+            System.out.println("Using virtual threads");
+        }
+
+        try {
+            run(false, serverCount, rounds, stubServers, executor);
+            run(true, serverCount, rounds, stubServers, executor);
+        } finally {
+            executor.shutdownNow();
+            for (StubGameServer stubServer : stubServers) {
+                stubServer.close();
+            }
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static void run(boolean blocking, int serverCount, int rounds,
+                            StubGameServer[] stubServers,
+                            ExecutorService executor)
+            throws Exception {
+        SteamSocket.setBlockingIO(blocking);
+        SourceServer[] servers = new SourceServer[serverCount];
+        for (int i = 0; i < serverCount; i ++) {
+            InetSocketAddress address = stubServers[i % stubServers.length].getAddress();
+            servers[i] = new SourceServer(address.getAddress(), address.getPort());
+            servers[i].setRetryPolicy(new RetryPolicy(3));
+        }
+
+        String mode = blocking ? "blocking" : "non-blocking";
+        try {
+            for (int round = 1; round <= rounds; round ++) {
+                poll(mode, round, servers, executor);
+            }
+        } finally {
+            for (SourceServer server : servers) {
+                server.disconnect();
+            }
+            SteamSocket.setBlockingIO(false);
+        }
+    }
+
+    private static void poll(String mode, int round,
+                             final SourceServer[] servers,
+                             ExecutorService executor)
+            throws InterruptedException {
+        final long[] latencies = new long[servers.length];
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(servers.length);
+
+        long startTime = System.nanoTime();
+        for (int i = 0; i < servers.length; i ++) {
+            final int index = i;
+            executor.execute(new Runnable() {
+                public void run() {
+                    long queryTime = System.nanoTime();
+                    try {
+                        servers[index].updateServerInfo();
+                    } catch (Exception e) {
+                        failures.incrementAndGet();
+                    } finally {
+                        latencies[index] = System.nanoTime() - queryTime;
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        done.await(10, TimeUnit.MINUTES);
+        long time = System.nanoTime() - startTime;
+
+        Arrays.sort(latencies);
+        System.out.printf("%-12s round %d: %,6d servers in %,6d ms (%,7.0f queries/s), " +
+                "p50 %,5.1f ms, p99 %,7.1f ms, %d failed%n",
+            mode, round, servers.length, time / 1000000,
+            servers.length * 1e9 / time,
+            latencies[latencies.length / 2] / 1e6,
+            latencies[(int) (latencies.length * 0.99)] / 1e6,
+            failures.get());
+    }
+
+}
@@ -0,0 +1,89 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.koraktor.steamcondenser.servers.SourceServer;
+import com.github.koraktor.steamcondenser.servers.stub.StubGameServer;
+
+/**
+ * Benchmarks complete A2S_INFO round trips against a local stub server
+ * <p>
+ * This measures the overhead of the socket layer, i.e. the shared event loop
+ * waiting for replies. Run it with different thread counts (e.g.
+ * <code>-t 1</code> and <code>-t 16</code>) to see how it scales with many
+ * concurrent queries.
+ *
+ * @author Sebastian Staudt
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+public class QueryBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class LocalServer {
+
+        StubGameServer server;
+
+        @Setup
+        public void setup() throws IOException {
+            this.server = new StubGameServer();
+        }
+
+        @TearDown
+        public void tearDown() {
+            this.server.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        SourceServer server;
+
+        @Setup
+        public void setup(LocalServer localServer) throws Exception {
+            this.server = new SourceServer(localServer.server.getAddress().getAddress(),
+                localServer.server.getAddress().getPort());
+        }
+
+        @TearDown
+        public void tearDown() {
+            this.server.disconnect();
+        }
+    }
+
+    @Benchmark
+    public Object updateServerInfo(Client client) throws Exception {
+        client.server.updateServerInfo();
+        return client.server.getServerInfo();
+    }
+
+    @Benchmark
+    public Object queryInfoAsync(Client client) throws Exception {
+        return client.server.queryInfoAsync().get();
+    }
+
+}
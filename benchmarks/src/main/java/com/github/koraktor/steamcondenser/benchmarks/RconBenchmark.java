@@ -0,0 +1,121 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.koraktor.steamcondenser.servers.SourceServer;
+import com.github.koraktor.steamcondenser.servers.stub.NetworkConditions;
+import com.github.koraktor.steamcondenser.servers.stub.StubRconServer;
+
+/**
+ * Benchmarks executing a batch of RCON commands against a local stub RCON
+ * server
+ * <p>
+ * <code>rconExec</code> sends one command at a time over the classic
+ * {@link com.github.koraktor.steamcondenser.servers.sockets.RCONSocket},
+ * <code>rconExecAsync</code> sends all commands of the batch at once over
+ * the persistent connections opened by {@link SourceServer#rconConnect} and
+ * <code>rconExecBatch</code> pipelines them over a single connection.
+ *
+ * @author Sebastian Staudt
+ */
+@BenchmarkMode(Mode.AverageTime)
+@Fork(1)
+@Measurement(iterations = 5, time = 2)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+public class RconBenchmark {
+
+    private static final int BATCH_SIZE = 20;
+
+    private static final String PASSWORD = "benchmark";
+
+    private List<String> commands;
+
+    @Param({ "0", "5" })
+    private int latency;
+
+    private SourceServer pooledServer;
+
+    private SourceServer server;
+
+    private StubRconServer rconServer;
+
+    @Setup
+    public void setup() throws Exception {
+        this.rconServer = new StubRconServer(PASSWORD);
+        this.rconServer.setNetworkConditions(new NetworkConditions(this.latency, 0, 0, 0));
+
+        this.commands = new ArrayList<String>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i ++) {
+            this.commands.add("echo " + i);
+        }
+
+        this.server = new SourceServer(this.rconServer.getAddress().getAddress(), this.rconServer.getAddress().getPort());
+        this.server.rconAuth(PASSWORD);
+
+        this.pooledServer = new SourceServer(this.rconServer.getAddress().getAddress(), this.rconServer.getAddress().getPort());
+        this.pooledServer.rconConnect(PASSWORD);
+    }
+
+    @TearDown
+    public void tearDown() {
+        this.server.disconnect();
+        this.pooledServer.disconnect();
+        this.rconServer.close();
+    }
+
+    @Benchmark
+    public List<String> rconExec() throws Exception {
+        List<String> responses = new ArrayList<String>(BATCH_SIZE);
+        for (String command : this.commands) {
+            responses.add(this.server.rconExec(command));
+        }
+
+        return responses;
+    }
+
+    @Benchmark
+    public List<String> rconExecAsync() throws Exception {
+        List<Future<String>> futures = new ArrayList<Future<String>>(BATCH_SIZE);
+        for (String command : this.commands) {
+            futures.add(this.pooledServer.rconExecAsync(command));
+        }
+
+        List<String> responses = new ArrayList<String>(BATCH_SIZE);
+        for (Future<String> future : futures) {
+            responses.add(future.get());
+        }
+
+        return responses;
+    }
+
+    @Benchmark
+    public List<String> rconExecBatch() throws Exception {
+        return this.pooledServer.rconExecBatch(this.commands);
+    }
+
+}
@@ -0,0 +1,102 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.benchmarks;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
+
+/**
+ * Benchmarks reassembling split replies of Source servers, including
+ * decompression of bzip2 compressed replies
+ * <p>
+ * Parsing the split headers is part of the measurement, as it is done for
+ * every received datagram.
+ *
+ * @author Sebastian Staudt
+ */
+@BenchmarkMode(Mode.Throughput)
+@Fork(1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+public class SplitPacketBenchmark {
+
+    private List<byte[]> compressedPackets;
+
+    private List<byte[]> splitPackets;
+
+    @Setup
+    public void setup() throws IOException {
+        this.compressedPackets = Fixtures.load(Fixtures.RULES_BZIP2);
+        this.splitPackets = Fixtures.load(Fixtures.RULES_SPLIT);
+    }
+
+    @Benchmark
+    public SteamPacket split() throws SteamCondenserException {
+        return this.reassemble(this.splitPackets);
+    }
+
+    @Benchmark
+    public SteamPacket bzip2() throws SteamCondenserException {
+        return this.reassemble(this.compressedPackets);
+    }
+
+    private SteamPacket reassemble(List<byte[]> datagrams)
+            throws SteamCondenserException {
+        ArrayList<byte[]> splitData = new ArrayList<byte[]>(datagrams.size());
+        boolean compressed = false;
+        int checksum = 0;
+        int size = 0;
+
+        for (byte[] datagram : datagrams) {
+            ByteBuffer buffer = Fixtures.wrap(datagram);
+            buffer.getInt();
+            compressed = (buffer.getInt() & 0x80000000) != 0;
+            buffer.get();
+            int packetNumber = buffer.get();
+            if (compressed) {
+                if (packetNumber == 0) {
+                    size = buffer.getInt();
+                    checksum = buffer.getInt();
+                }
+            } else {
+                buffer.getShort();
+            }
+
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            splitData.add(data);
+        }
+
+        if (compressed) {
+            return SteamPacketFactory.reassemblePacket(splitData, true, size, checksum);
+        }
+
+        return SteamPacketFactory.reassemblePacket(splitData);
+    }
+
+}
@@ -9,15 +9,27 @@ package com.github.koraktor.steamcondenser;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.Charset;
 
 /**
  * A convenience class wrapping around {@link ByteBuffer} used for easy
  * retrieval of string values
+ * <p>
+ * Strings are read in place, i.e. the buffer is scanned for the terminating
+ * zero-byte and only the bytes of the string itself are decoded as UTF-8.
  *
  * @author Sebastian Staudt
  */
 public class PacketBuffer {
 
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final int STRING_CACHE_SIZE = 1024;
+
+    private static final int STRING_CACHE_MAX_LENGTH = 64;
+
+    private static final CachedString[] stringCache = new CachedString[STRING_CACHE_SIZE];
+
     private ByteBuffer byteBuffer;
 
     /**
@@ -29,13 +41,39 @@ public class PacketBuffer {
         this.byteBuffer = ByteBuffer.wrap(data);
     }
 
+    /**
+     * Creates a new packet buffer reading the remaining data of the given
+     * byte buffer
+     * <p>
+     * The byte buffer may also be a direct buffer, e.g. one taken from a pool
+     * of receive buffers. Its content is not copied, so it must not be
+     * reused while this packet buffer is in use.
+     *
+     * @param buffer The buffer containing the data
+     */
+    public PacketBuffer(ByteBuffer buffer) {
+        this.byteBuffer = buffer.slice();
+    }
+
     /**
      * Returns the backing byte array of the underlying byte buffer
+     * <p>
+     * If the underlying buffer is not backed by an array, a copy of its
+     * content is returned.
      *
      * @return The backing byte array
      */
     public byte[] array() {
-        return this.byteBuffer.array();
+        if(this.byteBuffer.hasArray() && this.byteBuffer.arrayOffset() == 0) {
+            return this.byteBuffer.array();
+        }
+
+        byte[] data = new byte[this.byteBuffer.capacity()];
+        ByteBuffer duplicate = this.byteBuffer.duplicate();
+        duplicate.clear();
+        duplicate.get(data);
+
+        return data;
     }
 
     /**
@@ -89,22 +127,140 @@ public class PacketBuffer {
      * This reads the bytes up to the first zero-byte of the underlying byte
      * buffer into a String
      *
-     * @return A string value
+     * @return A string value or <code>null</code> if there is no terminating
+     *         zero-byte
      */
     public String getString() {
-        byte[] remainingBytes = new byte[this.byteBuffer.remaining()];
-        this.byteBuffer.slice().get(remainingBytes);
-        String dataString = new String(remainingBytes);
-        int stringEnd = dataString.indexOf(0);
+        return this.readString(false);
+    }
+
+    /**
+     * Returns the raw bytes of a string value from the buffer's current
+     * position
+     * <p>
+     * The bytes are not decoded, so strings that are stored, but rarely read
+     * can be decoded later when they are actually needed.
+     *
+     * @return The UTF-8 encoded bytes of the string without the terminating
+     *         zero-byte or <code>null</code> if there is no terminating
+     *         zero-byte
+     * @see #decodeString
+     */
+    public byte[] getStringBytes() {
+        ByteBuffer buffer = this.byteBuffer;
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int end = start;
+        while(end < limit && buffer.get(end) != 0) {
+            end ++;
+        }
 
-        if(stringEnd == -1) {
+        if(end == limit) {
             return null;
+        }
+
+        byte[] bytes = new byte[end - start];
+        buffer.get(bytes);
+        buffer.get();
+
+        return bytes;
+    }
+
+    /**
+     * Decodes the given UTF-8 encoded string bytes
+     *
+     * @param bytes The bytes of the string as returned by {@link
+     *        #getStringBytes}
+     * @return The decoded string or <code>null</code> if no bytes are given
+     */
+    public static String decodeString(byte[] bytes) {
+        if(bytes == null) {
+            return null;
+        }
+
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Returns a string value from the buffer's current position, reusing a
+     * previously decoded string with the same content if possible
+     * <p>
+     * This should be used for values that are likely to be repeated in many
+     * packets, e.g. rule names or map names. Short strings are kept in a
+     * small global cache, so reading them again does not create new objects.
+     *
+     * @return A string value or <code>null</code> if there is no terminating
+     *         zero-byte
+     * @see #getString
+     */
+    public String getCachedString() {
+        return this.readString(true);
+    }
+
+    /**
+     * Reads a zero-terminated string from the buffer's current position
+     *
+     * @param cache Whether to use the global string cache
+     * @return A string value or <code>null</code> if there is no terminating
+     *         zero-byte
+     */
+    private String readString(boolean cache) {
+        ByteBuffer buffer = this.byteBuffer;
+        int start = buffer.position();
+        int limit = buffer.limit();
+        int end = start;
+        int hash = 0;
+
+        byte[] array = null;
+        int offset = 0;
+        if(buffer.hasArray()) {
+            array = buffer.array();
+            offset = buffer.arrayOffset();
+            while(end < limit && array[offset + end] != 0) {
+                hash = 31 * hash + array[offset + end];
+                end ++;
+            }
         } else {
-            dataString = dataString.substring(0, stringEnd);
-            this.byteBuffer.position(this.byteBuffer.position() + dataString.getBytes().length + 1);
+            byte b;
+            while(end < limit && (b = buffer.get(end)) != 0) {
+                hash = 31 * hash + b;
+                end ++;
+            }
+        }
+
+        if(end == limit) {
+            return null;
+        }
+
+        int length = end - start;
+        buffer.position(end + 1);
+
+        if(length == 0) {
+            return "";
+        }
 
-            return dataString;
+        if(array == null) {
+            array = new byte[length];
+            ByteBuffer slice = buffer.duplicate();
+            slice.position(start);
+            slice.get(array);
+            offset = -start;
         }
+
+        if(!cache || length > STRING_CACHE_MAX_LENGTH) {
+            return new String(array, offset + start, length, UTF_8);
+        }
+
+        int index = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+        CachedString cached = stringCache[index];
+        if(cached != null && cached.matches(array, offset + start, length)) {
+            return cached.value;
+        }
+
+        cached = new CachedString(array, offset + start, length);
+        stringCache[index] = cached;
+
+        return cached.value;
     }
 
     /**
@@ -136,4 +292,34 @@ public class PacketBuffer {
     public boolean hasRemaining() {
         return this.byteBuffer.hasRemaining();
     }
+
+    /**
+     * A string stored in the global string cache together with its encoded
+     * bytes
+     */
+    private static class CachedString {
+
+        final byte[] bytes;
+
+        final String value;
+
+        CachedString(byte[] data, int offset, int length) {
+            this.bytes = new byte[length];
+            System.arraycopy(data, offset, this.bytes, 0, length);
+            this.value = new String(this.bytes, UTF_8);
+        }
+
+        boolean matches(byte[] data, int offset, int length) {
+            if(this.bytes.length != length) {
+                return false;
+            }
+            for(int i = 0; i < length; i ++) {
+                if(this.bytes[i] != data[offset + i]) {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+    }
 }
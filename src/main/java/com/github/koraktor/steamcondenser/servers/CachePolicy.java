@@ -0,0 +1,167 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class defines how long the information queried from game servers is
+ * cached
+ * <p>
+ * Without a cache policy, the information of a server is queried once and
+ * kept until one of the <code>update</code> methods is called. With a cache
+ * policy, the information is considered fresh for the maximum age of its
+ * query type. Afterwards, it may still be served while it is refreshed in
+ * the background until it is older than the maximum age plus the maximum
+ * staleness (stale-while-revalidate). Older information is queried again
+ * before it is returned.
+ * <p>
+ * Concurrent requests for the same information of a server share a single
+ * query. A policy may be shared by any number of servers. Its statistics are
+ * collected for all servers using it.
+ *
+ * @author Sebastian Staudt
+ * @see GameServer#setCachePolicy
+ */
+public class CachePolicy {
+
+    static final int FRESH = 0;
+
+    static final int STALE = 1;
+
+    static final int EXPIRED = 2;
+
+    private AtomicLong hits;
+
+    private long[] maxAges;
+
+    private long maxStale;
+
+    private AtomicLong misses;
+
+    private AtomicLong staleHits;
+
+    /**
+     * Creates a new cache policy using the same maximum age for all query
+     * types
+     *
+     * @param maxAge The time in milliseconds the information is fresh
+     * @param maxStale The time in milliseconds stale information may be
+     *        returned while it is refreshed in the background
+     */
+    public CachePolicy(long maxAge, long maxStale) {
+        if (maxAge < 0 || maxStale < 0) {
+            throw new IllegalArgumentException("Cache times must not be negative.");
+        }
+
+        this.hits = new AtomicLong();
+        this.maxAges = new long[] { 0, maxAge, maxAge, maxAge };
+        this.maxStale = maxStale;
+        this.misses = new AtomicLong();
+        this.staleHits = new AtomicLong();
+    }
+
+    /**
+     * Returns the number of times fresh information has been returned from
+     * the cache
+     *
+     * @return The number of cache hits
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the time information of the given query type is fresh
+     *
+     * @param queryType The type of the query, e.g. {@link
+     *        ServerScanner#QUERY_INFO}
+     * @return The maximum age in milliseconds
+     */
+    public long getMaxAge(int queryType) {
+        return this.maxAges[queryType];
+    }
+
+    /**
+     * Returns the time stale information may be returned while it is
+     * refreshed in the background
+     *
+     * @return The maximum staleness in milliseconds
+     */
+    public long getMaxStale() {
+        return this.maxStale;
+    }
+
+    /**
+     * Returns the number of times information had to be queried before it
+     * could be returned
+     *
+     * @return The number of cache misses
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Returns the number of times stale information has been returned while
+     * it has been refreshed in the background
+     *
+     * @return The number of stale cache hits
+     */
+    public long getStaleHits() {
+        return this.staleHits.get();
+    }
+
+    /**
+     * Sets the time information of the given query type is fresh
+     *
+     * @param queryType The type of the query, i.e. {@link
+     *        ServerScanner#QUERY_INFO}, {@link ServerScanner#QUERY_PLAYERS} or
+     *        {@link ServerScanner#QUERY_RULES}
+     * @param maxAge The maximum age in milliseconds
+     */
+    public void setMaxAge(int queryType, long maxAge) {
+        if (queryType < ServerScanner.QUERY_INFO || queryType > ServerScanner.QUERY_RULES) {
+            throw new IllegalArgumentException("Invalid query type " + queryType + ".");
+        }
+        if (maxAge < 0) {
+            throw new IllegalArgumentException("Cache times must not be negative.");
+        }
+
+        this.maxAges[queryType] = maxAge;
+    }
+
+    /**
+     * Checks the state of cached information and records it in the
+     * statistics
+     *
+     * @param queryType The type of the query
+     * @param updateTime The time the information has been received or
+     *        <code>0</code> if it is not available
+     * @return The state of the cached information, i.e. {@link #FRESH},
+     *         {@link #STALE} or {@link #EXPIRED}
+     */
+    int check(int queryType, long updateTime) {
+        if (updateTime != 0) {
+            long age = System.currentTimeMillis() - updateTime;
+            long maxAge = this.maxAges[queryType];
+            if (age <= maxAge) {
+                this.hits.incrementAndGet();
+                return FRESH;
+            }
+            if (age <= maxAge + this.maxStale) {
+                this.staleHits.incrementAndGet();
+                return STALE;
+            }
+        }
+
+        this.misses.incrementAndGet();
+        return EXPIRED;
+    }
+
+}
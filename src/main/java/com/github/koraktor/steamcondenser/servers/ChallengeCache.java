@@ -0,0 +1,220 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class stores the challenge numbers assigned by game servers
+ * <p>
+ * Game servers require a challenge number for player and rules queries. The
+ * challenge numbers are shared by all server objects and scanners of the
+ * process, so a server queried by several of them only has to be asked for
+ * its challenge number once. Challenge numbers expire after the maximum age
+ * and are replaced whenever a server replies with a new one.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Sebastian Staudt
+ */
+public class ChallengeCache {
+
+    /**
+     * The default time in milliseconds after which challenge numbers expire
+     */
+    public static final long DEFAULT_MAX_AGE = 60000;
+
+    /**
+     * The default maximum number of stored challenge numbers
+     */
+    public static final int DEFAULT_MAX_SIZE = 65536;
+
+    /**
+     * The challenge number used if the challenge of a server is unknown
+     */
+    public static final int NO_CHALLENGE = 0xFFFFFFFF;
+
+    private static final ChallengeCache instance = new ChallengeCache();
+
+    private ConcurrentHashMap<InetSocketAddress, Entry> challenges;
+
+    private AtomicLong hits;
+
+    private volatile long maxAge;
+
+    private int maxSize;
+
+    private AtomicLong misses;
+
+    /**
+     * Returns the challenge cache shared by all servers
+     *
+     * @return The challenge cache of this process
+     */
+    public static ChallengeCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Creates a new challenge cache using the default maximum age and size
+     */
+    public ChallengeCache() {
+        this(DEFAULT_MAX_AGE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Creates a new challenge cache
+     *
+     * @param maxAge The time in milliseconds after which challenge numbers
+     *        expire
+     * @param maxSize The maximum number of stored challenge numbers
+     */
+    public ChallengeCache(long maxAge, int maxSize) {
+        this.challenges = new ConcurrentHashMap<InetSocketAddress, Entry>();
+        this.hits = new AtomicLong();
+        this.maxAge = maxAge;
+        this.maxSize = maxSize;
+        this.misses = new AtomicLong();
+    }
+
+    /**
+     * Removes all challenge numbers from this cache
+     */
+    public void clear() {
+        this.challenges.clear();
+    }
+
+    /**
+     * Returns the challenge number of the server with the given address
+     *
+     * @param address The address of the server
+     * @return The challenge number of the server or {@link #NO_CHALLENGE} if
+     *         it is unknown or has expired
+     */
+    public int get(InetSocketAddress address) {
+        Entry entry = this.challenges.get(address);
+        if (entry != null) {
+            if (System.currentTimeMillis() - entry.time <= this.maxAge) {
+                this.hits.incrementAndGet();
+                return entry.challenge;
+            }
+            this.challenges.remove(address, entry);
+        }
+
+        this.misses.incrementAndGet();
+        return NO_CHALLENGE;
+    }
+
+    /**
+     * Returns the number of times a challenge number has been found in this
+     * cache
+     *
+     * @return The number of cache hits
+     */
+    public long getHits() {
+        return this.hits.get();
+    }
+
+    /**
+     * Returns the time after which challenge numbers expire
+     *
+     * @return The maximum age in milliseconds
+     */
+    public long getMaxAge() {
+        return this.maxAge;
+    }
+
+    /**
+     * Returns the number of times no valid challenge number has been found in
+     * this cache
+     *
+     * @return The number of cache misses
+     */
+    public long getMisses() {
+        return this.misses.get();
+    }
+
+    /**
+     * Stores the challenge number of the server with the given address
+     * <p>
+     * If the cache is full, expired challenge numbers are removed first.
+     *
+     * @param address The address of the server
+     * @param challenge The challenge number assigned by the server
+     */
+    public void put(InetSocketAddress address, int challenge) {
+        if (this.challenges.size() >= this.maxSize && !this.challenges.containsKey(address)) {
+            this.removeExpired();
+            if (this.challenges.size() >= this.maxSize) {
+                return;
+            }
+        }
+
+        this.challenges.put(address, new Entry(challenge, System.currentTimeMillis()));
+    }
+
+    /**
+     * Removes the challenge number of the server with the given address
+     *
+     * @param address The address of the server
+     */
+    public void remove(InetSocketAddress address) {
+        this.challenges.remove(address);
+    }
+
+    /**
+     * Sets the time after which challenge numbers expire
+     *
+     * @param maxAge The maximum age in milliseconds
+     */
+    public void setMaxAge(long maxAge) {
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Returns the number of stored challenge numbers
+     *
+     * @return The number of stored challenge numbers
+     */
+    public int size() {
+        return this.challenges.size();
+    }
+
+    /**
+     * Removes all expired challenge numbers
+     */
+    private void removeExpired() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<InetSocketAddress, Entry>> iterator = this.challenges.entrySet().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().getValue().time > this.maxAge) {
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * This class represents a stored challenge number
+     */
+    private static class Entry {
+
+        final int challenge;
+
+        final long time;
+
+        Entry(int challenge, long time) {
+            this.challenge = challenge;
+            this.time = time;
+        }
+    }
+
+}
@@ -0,0 +1,30 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.util.List;
+
+/**
+ * This interface is implemented by classes receiving the changes detected by
+ * a {@link SnapshotDiffer}
+ *
+ * @author Sebastian Staudt
+ */
+public interface DeltaListener {
+
+    /**
+     * Called when a new snapshot of a server differs from the previous one
+     * <p>
+     * This is not called for snapshots without any changes.
+     *
+     * @param snapshot The new snapshot of the server
+     * @param deltas The changes since the previous snapshot
+     */
+    public void serverChanged(ServerSnapshot snapshot, List<ServerDelta> deltas);
+
+}
@@ -0,0 +1,48 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+
+/**
+ * This interface is implemented by classes receiving the results of the
+ * refreshes done by a {@link ServerFleet}
+ * <p>
+ * The methods are called from the thread of the shared event loop, so
+ * implementations should return quickly and hand off expensive work to other
+ * threads.
+ *
+ * @author Sebastian Staudt
+ * @see ServerFleet#addListener
+ */
+public interface FleetListener {
+
+    /**
+     * Called when a refresh of a server has failed
+     * <p>
+     * Servers that did not reply in time are reported with a
+     * {@link java.util.concurrent.TimeoutException}. The snapshot of the
+     * server is not changed.
+     *
+     * @param address The address of the server
+     * @param queryType The type of the failed query, e.g. {@link
+     *        ServerFleet#QUERY_INFO}
+     * @param error The reason of the failure
+     */
+    public void refreshFailed(InetSocketAddress address, int queryType, Exception error);
+
+    /**
+     * Called when a server has replied to a query of the fleet
+     *
+     * @param snapshot The new snapshot of the server
+     * @param queryType The type of the query that has been answered, e.g.
+     *        {@link ServerFleet#QUERY_PLAYERS}
+     */
+    public void snapshotUpdated(ServerSnapshot snapshot, int queryType);
+
+}
@@ -7,12 +7,15 @@
 
 package com.github.koraktor.steamcondenser.servers;
 
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -26,7 +29,12 @@ import com.github.koraktor.steamcondenser.servers.packets.S2A_PLAYER_Packet;
 import com.github.koraktor.steamcondenser.servers.packets.S2A_RULES_Packet;
 import com.github.koraktor.steamcondenser.servers.packets.S2C_CHALLENGE_Packet;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.sockets.PacketHandler;
 import com.github.koraktor.steamcondenser.servers.sockets.QuerySocket;
+import com.github.koraktor.steamcondenser.servers.sockets.RTTEstimator;
+import com.github.koraktor.steamcondenser.servers.sockets.ReplyFuture;
+import com.github.koraktor.steamcondenser.servers.sockets.SocketEventLoop;
+import com.github.koraktor.steamcondenser.servers.sockets.SteamSocket;
 
 /**
  * This class is subclassed by classes representing different game server
@@ -41,14 +49,22 @@ public abstract class GameServer extends Server {
     protected static final int REQUEST_INFO = 1;
     protected static final int REQUEST_PLAYER = 2;
     protected static final int REQUEST_RULES = 3;
+    protected CachePolicy cachePolicy;
+    protected ChallengeCache challengeCache;
     protected int challengeNumber = 0xFFFFFFFF;
+    protected HashMap<Integer, PendingQuery> pendingQueries;
     protected int ping;
     protected HashMap<String, SteamPlayer> playerHash;
+    protected PlayerList playerList;
     protected boolean rconAuthenticated;
     protected int rconRequestId;
+    protected boolean repliesPending;
+    protected RetryPolicy retryPolicy;
     protected HashMap<String, String> rulesHash;
     protected HashMap<String, Object> serverInfo;
+    protected ServerInfo serverInfoRecord;
     protected QuerySocket socket;
+    protected long[] updateTimes;
 
     protected static final Logger LOG = LoggerFactory.getLogger(GameServer.class);
 
@@ -65,7 +81,11 @@ public abstract class GameServer extends Server {
             throws SteamCondenserException {
         super(address, port);
 
+        this.challengeCache = ChallengeCache.getInstance();
+        this.pendingQueries = new HashMap<Integer, PendingQuery>();
         this.rconAuthenticated = false;
+        this.retryPolicy = new RetryPolicy();
+        this.updateTimes = new long[4];
     }
 
     public void disconnect() {
@@ -140,6 +160,73 @@ public abstract class GameServer extends Server {
         return playerData;
     }
 
+    /**
+     * Returns the given data of this server according to the cache policy
+     * <p/>
+     * Fresh data is returned immediately. Stale data is returned immediately,
+     * too, but refreshed in the background. Otherwise the data is queried and
+     * returned once the reply has been received. Concurrent calls share the
+     * same query.
+     *
+     * @param requestType The type of request to get the data for
+     * @return The data of this server
+     * @see CachePolicy
+     * @throws SteamCondenserException if the request fails
+     * @throws TimeoutException if the request times out
+     */
+    protected <V> V getCachedData(int requestType)
+            throws SteamCondenserException, TimeoutException {
+        V data;
+        long updateTime;
+        synchronized(this) {
+            data = this.getData(requestType);
+            updateTime = (data == null) ? 0 : this.updateTimes[requestType];
+        }
+
+        switch(this.cachePolicy.check(requestType, updateTime)) {
+            case CachePolicy.FRESH:
+                return data;
+            case CachePolicy.STALE:
+                try {
+                    this.queryAsync(requestType);
+                } catch(SteamCondenserException e) {
+                    LOG.warn("Could not refresh stale data: " + e.getMessage());
+                }
+                return data;
+            default:
+                return awaitQuery(this.<V>queryAsync(requestType));
+        }
+    }
+
+    /**
+     * Returns the data of this server received for the given request type
+     * <p>
+     * The data is updated by the thread receiving the replies, so it is only
+     * accessed while holding the lock of this server. The map of players is
+     * only generated from the list of players when it is requested for the
+     * first time.
+     *
+     * @param requestType The type of request to get the data for
+     * @return The data of this server or <code>null</code> if it hasn't been
+     *         received yet
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized <V> V getData(int requestType) {
+        switch(requestType) {
+            case GameServer.REQUEST_INFO:
+                return (V) this.serverInfo;
+            case GameServer.REQUEST_PLAYER:
+                if(this.playerHash == null && this.playerList != null) {
+                    this.playerHash = this.playerList.toMap();
+                }
+                return (V) this.playerHash;
+            case GameServer.REQUEST_RULES:
+                return (V) this.rulesHash;
+            default:
+                return null;
+        }
+    }
+
     /**
      * Returns the last measured response time of this server
      * <p/>
@@ -193,6 +280,9 @@ public abstract class GameServer extends Server {
      * As the players and their scores change quite often be sure to update
      * this list regularly by calling {@link #updatePlayers} if you rely on
      * this information.
+     * <p/>
+     * If a cache policy is set and no RCON password is given, the players are
+     * queried again once they have expired.
      *
      * @param rconPassword The RCON password of this server may be provided to
      *        gather more detailed information on the players, like STEAM_IDs.
@@ -203,11 +293,17 @@ public abstract class GameServer extends Server {
      */
     public HashMap<String, SteamPlayer> getPlayers(String rconPassword)
             throws SteamCondenserException, TimeoutException {
-        if(this.playerHash == null) {
+        if(this.cachePolicy != null && rconPassword == null) {
+            return this.getCachedData(GameServer.REQUEST_PLAYER);
+        }
+
+        HashMap<String, SteamPlayer> players = this.getData(GameServer.REQUEST_PLAYER);
+        if(players == null) {
             this.updatePlayers(rconPassword);
+            players = this.getData(GameServer.REQUEST_PLAYER);
         }
 
-        return this.playerHash;
+        return players;
     }
 
     /**
@@ -220,19 +316,29 @@ public abstract class GameServer extends Server {
      * As the rules usually don't change often, there's almost no need to
      * update this hash. But if you need to, you can achieve this by calling
      * {@link #updateRules}.
+     * <p/>
+     * If a cache policy is set, the rules are queried again once they have
+     * expired.
      *
      * @return The currently active server rules
+     * @see #setCachePolicy
      * @see #updateRules
      * @throws SteamCondenserException if the request fails
      * @throws TimeoutException if the request times out
      */
     public HashMap<String, String> getRules()
             throws SteamCondenserException, TimeoutException {
-        if(this.rulesHash == null) {
+        if(this.cachePolicy != null) {
+            return this.getCachedData(GameServer.REQUEST_RULES);
+        }
+
+        HashMap<String, String> rules = this.getData(GameServer.REQUEST_RULES);
+        if(rules == null) {
             this.updateRules();
+            rules = this.getData(GameServer.REQUEST_RULES);
         }
 
-        return this.rulesHash;
+        return rules;
     }
 
     /**
@@ -245,19 +351,29 @@ public abstract class GameServer extends Server {
      * players join or leave. As the latter changes can be monitored by calling
      * {@link #updatePlayers}, there's no need to call
      * {@link #updateServerInfo} very often.
+     * <p/>
+     * If a cache policy is set, the information is queried again once it has
+     * expired.
      *
      * @return Server attributes with their values
+     * @see #setCachePolicy
      * @see #updateServerInfo
      * @throws SteamCondenserException if the request fails
      * @throws TimeoutException if the request times out
      */
     public HashMap<String, Object> getServerInfo()
             throws SteamCondenserException, TimeoutException {
-        if(this.serverInfo == null) {
+        if(this.cachePolicy != null) {
+            return this.getCachedData(GameServer.REQUEST_INFO);
+        }
+
+        HashMap<String, Object> serverInfo = this.getData(GameServer.REQUEST_INFO);
+        if(serverInfo == null) {
             this.updateServerInfo();
+            serverInfo = this.getData(GameServer.REQUEST_INFO);
         }
 
-        return this.serverInfo;
+        return serverInfo;
     }
 
     /**
@@ -272,6 +388,79 @@ public abstract class GameServer extends Server {
         return this.socket.getReply();
     }
 
+    /**
+     * Sends the given request to the server and receives the reply
+     * <p/>
+     * The request is repeated and hedged as defined by the retry policy of
+     * this server.
+     *
+     * @param requestPacket The request packet to send to the server
+     * @return The response packet replied by the server
+     * @see #setRetryPolicy
+     * @throws SteamCondenserException if the request fails
+     * @throws TimeoutException if all attempts time out
+     */
+    protected SteamPacket getReplyForRequest(SteamPacket requestPacket)
+            throws SteamCondenserException, TimeoutException {
+        RetryPolicy retryPolicy = this.retryPolicy;
+        retryPolicy.querySent();
+
+        if(this.repliesPending) {
+            this.repliesPending = false;
+            int discarded = this.socket.discardPackets();
+            if(discarded > 0) {
+                LOG.debug("Discarded " + discarded + " duplicate replies.");
+            }
+        }
+
+        int attempt = 1;
+        while(true) {
+            this.sendRequest(requestPacket);
+
+            boolean hedged = false;
+            int hedgeDelay = retryPolicy.getHedgeDelay(this.socket.getRTTEstimator());
+            if(hedgeDelay > 0 && !this.socket.awaitReply(hedgeDelay)) {
+                this.sendRequest(requestPacket);
+                this.repliesPending = true;
+                retryPolicy.hedgeSent();
+                hedged = true;
+            }
+
+            try {
+                SteamPacket reply = this.getReply();
+                if(hedged) {
+                    retryPolicy.hedgeWon();
+                }
+                return reply;
+            } catch(TimeoutException e) {
+                if(attempt >= retryPolicy.getMaxAttempts()) {
+                    retryPolicy.timedOut();
+                    throw e;
+                }
+            }
+
+            this.repliesPending = true;
+            retryPolicy.retried();
+            LOG.debug("Request timed out, retrying (attempt " + (attempt + 1) + ").");
+            try {
+                Thread.sleep(retryPolicy.getBackoffDelay(attempt));
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SteamCondenserException("Interrupted while waiting to retry.", e);
+            }
+            attempt ++;
+        }
+    }
+
+    /**
+     * Returns the retry policy used for queries to this server
+     *
+     * @return The retry policy of this server
+     */
+    public RetryPolicy getRetryPolicy() {
+        return this.retryPolicy;
+    }
+
     /**
      * Sends the specified request to the server and handles the returned
      * response
@@ -305,54 +494,115 @@ public abstract class GameServer extends Server {
      */
     protected void handleResponseForRequest(int requestType, boolean repeatOnFailure)
             throws SteamCondenserException, TimeoutException {
-        Class<? extends SteamPacket> expectedResponse = SteamPacket.class;
-        SteamPacket requestPacket = null;
+        Class<? extends SteamPacket> expectedResponse = getExpectedResponse(requestType);
+
+        SteamPacket responsePacket = this.getReplyForRequest(this.createRequestPacket(requestType));
+
+        if(this.handleResponse(responsePacket) == -1) {
+            throw new SteamCondenserException("Response of type " + responsePacket.getClass() + " cannot be handled by this method.");
+        }
 
+        if(!expectedResponse.isInstance(responsePacket)) {
+            LOG.warn("Expected " + expectedResponse + ", got " + responsePacket.getClass() + ".");
+            if(repeatOnFailure) {
+                this.handleResponseForRequest(requestType, false);
+            }
+        }
+    }
+
+    /**
+     * Returns the packet class expected as a reply to the given request type
+     *
+     * @param requestType The type of request sent to the server
+     * @return The class of the expected response packet
+     */
+    protected static Class<? extends SteamPacket> getExpectedResponse(int requestType) {
         switch(requestType) {
             case GameServer.REQUEST_CHALLENGE:
-                expectedResponse = S2C_CHALLENGE_Packet.class;
-                requestPacket = new A2S_PLAYER_Packet();
-                break;
+                return S2C_CHALLENGE_Packet.class;
             case GameServer.REQUEST_INFO:
-                expectedResponse = S2A_INFO_BasePacket.class;
-                requestPacket = new A2S_INFO_Packet();
-                break;
+                return S2A_INFO_BasePacket.class;
             case GameServer.REQUEST_PLAYER:
-                expectedResponse = S2A_PLAYER_Packet.class;
-                requestPacket = new A2S_PLAYER_Packet(this.challengeNumber);
-                break;
+                return S2A_PLAYER_Packet.class;
             case GameServer.REQUEST_RULES:
-                expectedResponse = S2A_RULES_Packet.class;
-                requestPacket = new A2S_RULES_Packet(this.challengeNumber);
-                break;
+                return S2A_RULES_Packet.class;
+            default:
+                return SteamPacket.class;
         }
+    }
 
-        this.sendRequest(requestPacket);
-
-        SteamPacket responsePacket = this.getReply();
+    /**
+     * Creates the request packet for the given request type
+     * <p>
+     * Player and rules requests will include the current challenge number.
+     *
+     * @param requestType The type of request to send to the server
+     * @return The request packet
+     */
+    protected SteamPacket createRequestPacket(int requestType) {
+        switch(requestType) {
+            case GameServer.REQUEST_CHALLENGE:
+                return new A2S_PLAYER_Packet();
+            case GameServer.REQUEST_INFO:
+                return new A2S_INFO_Packet();
+            case GameServer.REQUEST_PLAYER:
+                this.restoreChallengeNumber();
+                return new A2S_PLAYER_Packet(this.challengeNumber);
+            case GameServer.REQUEST_RULES:
+                this.restoreChallengeNumber();
+                return new A2S_RULES_Packet(this.challengeNumber);
+            default:
+                return null;
+        }
+    }
 
+    /**
+     * Updates the data attributes of this server object with the data of the
+     * given response packet
+     * <p>
+     * The data is updated while holding the lock of this server, so it can be
+     * read safely by other threads. Only the compact list of players is
+     * kept, the map of players is generated from it when requested. This
+     * way the player objects of a cached packet are never modified when
+     * adding the information gathered using RCON.
+     *
+     * @param responsePacket The response packet replied by the server
+     * @return The type of request the given packet is a response to or
+     *         <code>-1</code> if the packet cannot be handled
+     */
+    protected synchronized int handleResponse(SteamPacket responsePacket) {
+        int requestType;
         if(S2A_INFO_BasePacket.class.isInstance(responsePacket)) {
             this.serverInfo = ((S2A_INFO_BasePacket) responsePacket).getInfo();
+            this.serverInfoRecord = ((S2A_INFO_BasePacket) responsePacket).getServerInfo();
+            requestType = GameServer.REQUEST_INFO;
         } else if(responsePacket instanceof S2A_PLAYER_Packet) {
-            this.playerHash = ((S2A_PLAYER_Packet) responsePacket).getPlayerHash();
+            this.playerHash = null;
+            this.playerList = ((S2A_PLAYER_Packet) responsePacket).getPlayerList();
+            requestType = GameServer.REQUEST_PLAYER;
         } else if(responsePacket instanceof S2A_RULES_Packet) {
             this.rulesHash = ((S2A_RULES_Packet) responsePacket).getRulesHash();
+            requestType = GameServer.REQUEST_RULES;
         } else if(responsePacket instanceof S2C_CHALLENGE_Packet) {
             this.challengeNumber = ((S2C_CHALLENGE_Packet) responsePacket).getChallengeNumber();
+            if(this.challengeCache != null) {
+                this.challengeCache.put(new InetSocketAddress(this.ipAddress, this.port), this.challengeNumber);
+            }
+            requestType = GameServer.REQUEST_CHALLENGE;
         } else {
-            throw new SteamCondenserException("Response of type " + responsePacket.getClass() + " cannot be handled by this method.");
+            return -1;
         }
 
-        if(!expectedResponse.isInstance(responsePacket)) {
-            LOG.warn("Expected " + expectedResponse + ", got " + responsePacket.getClass() + ".");
-            if(repeatOnFailure) {
-                this.handleResponseForRequest(requestType, false);
-            }
-        }
+        this.updateTimes[requestType] = System.currentTimeMillis();
+
+        return requestType;
     }
 
     /**
      * Initializes this server object with basic information
+     * <p/>
+     * The challenge number is only requested from the server if it is not
+     * available from the challenge cache.
      *
      * @see #updateChallengeNumber
      * @see #updatePing
@@ -364,7 +614,9 @@ public abstract class GameServer extends Server {
             throws SteamCondenserException, TimeoutException {
         this.updatePing();
         this.updateServerInfo();
-        this.updateChallengeNumber();
+        if(!this.restoreChallengeNumber()) {
+            this.updateChallengeNumber();
+        }
     }
 
     /**
@@ -402,6 +654,23 @@ public abstract class GameServer extends Server {
     abstract public String rconExec(String command)
             throws SteamCondenserException, TimeoutException;
 
+    /**
+     * Restores the challenge number of this server from the challenge cache
+     * <p/>
+     * The cached challenge number is only used if this server object has
+     * not received a challenge number yet.
+     *
+     * @return <code>true</code> if this server object has a challenge number
+     * @see ChallengeCache
+     */
+    protected boolean restoreChallengeNumber() {
+        if(this.challengeNumber == ChallengeCache.NO_CHALLENGE && this.challengeCache != null) {
+            this.challengeNumber = this.challengeCache.get(new InetSocketAddress(this.ipAddress, this.port));
+        }
+
+        return this.challengeNumber != ChallengeCache.NO_CHALLENGE;
+    }
+
     /**
      * Sends a request packet to the server
      *
@@ -417,6 +686,47 @@ public abstract class GameServer extends Server {
         this.socket.send(requestData);
     }
 
+    /**
+     * Sets the cache policy for the information queried from this server
+     * <p/>
+     * By default, the information is queried once and kept until it is
+     * updated explicitly. With a cache policy, {@link #getServerInfo},
+     * {@link #getPlayers} and {@link #getRules} query the information again
+     * once it has expired. These queries are sent asynchronously, so the
+     * blocking <code>update</code> methods must not be used at the same time.
+     *
+     * @param cachePolicy The cache policy to use or <code>null</code> to keep
+     *        the information until it is updated explicitly
+     */
+    public void setCachePolicy(CachePolicy cachePolicy) {
+        this.cachePolicy = cachePolicy;
+    }
+
+    /**
+     * Sets the cache for the challenge numbers of servers
+     * <p/>
+     * By default, the challenge cache shared by the whole process is used.
+     *
+     * @param challengeCache The challenge cache to use or <code>null</code>
+     *        to disable caching of challenge numbers
+     * @see ChallengeCache#getInstance
+     */
+    public void setChallengeCache(ChallengeCache challengeCache) {
+        this.challengeCache = challengeCache;
+    }
+
+    /**
+     * Sets the retry policy used for queries to this server
+     * <p/>
+     * By default, queries are not repeated if they time out. The same policy
+     * may be used for several servers to collect their statistics.
+     *
+     * @param retryPolicy The retry policy to use
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
     /**
      * Returns a human-readable text representation of the server
      *
@@ -430,23 +740,26 @@ public abstract class GameServer extends Server {
         returnString += "Ping: " + this.ping + "\n";
         returnString += "Challenge number: " + this.challengeNumber + "\n";
 
-        if(this.serverInfo != null) {
+        HashMap<String, Object> serverInfo = this.getData(GameServer.REQUEST_INFO);
+        if(serverInfo != null) {
             returnString += "Info:" + "\n";
-            for(Entry<String, Object> info : this.serverInfo.entrySet()) {
+            for(Entry<String, Object> info : serverInfo.entrySet()) {
                 returnString += "  " + info.getKey() + ": " + info.getValue() + "\n";
             }
         }
 
-        if(this.playerHash != null) {
+        HashMap<String, SteamPlayer> players = this.getData(GameServer.REQUEST_PLAYER);
+        if(players != null) {
             returnString += "Players:" + "\n";
-            for(SteamPlayer player : this.playerHash.values()) {
+            for(SteamPlayer player : players.values()) {
                 returnString += "  " + player + "\n";
             }
         }
 
-        if(this.rulesHash != null) {
+        HashMap<String, String> rules = this.getData(GameServer.REQUEST_RULES);
+        if(rules != null) {
             returnString += "Rules:" + "\n";
-            for(Entry<String, String> rule : this.rulesHash.entrySet()) {
+            for(Entry<String, String> rule : rules.entrySet()) {
                 returnString += "  " + rule.getKey() + ": " + rule.getValue() + "\n";
             }
         }
@@ -545,11 +858,12 @@ public abstract class GameServer extends Server {
         }
         List<String> attributes = getPlayerStatusAttributes(players.remove(0));
 
+        HashMap<String, SteamPlayer> playerHash = this.getData(GameServer.REQUEST_PLAYER);
         for(String player : players) {
             Map<String, String> playerData = splitPlayerStatus(attributes, player);
             String playerName = playerData.get("name");
-            if(this.playerHash.containsKey(playerName)) {
-                this.playerHash.get(playerName).addInformation(playerData);
+            if(playerHash.containsKey(playerName)) {
+                playerHash.get(playerName).addInformation(playerData);
             }
         }
     }
@@ -590,4 +904,354 @@ public abstract class GameServer extends Server {
             throws SteamCondenserException, TimeoutException {
         this.handleResponseForRequest(GameServer.REQUEST_INFO);
     }
+
+    /**
+     * Sends a A2S_INFO request to the server without waiting for the reply
+     * <p>
+     * The returned future is completed by the socket layer once the reply
+     * has been received. This also updates this server's basic information.
+     * <p>
+     * While asynchronous requests are pending, the blocking methods of this
+     * server object must not be used.
+     *
+     * @return A future providing the server attributes with their values
+     * @see #updateServerInfo
+     * @throws SteamCondenserException if the request cannot be sent
+     */
+    public Future<HashMap<String, Object>> queryInfoAsync()
+            throws SteamCondenserException {
+        return this.queryAsync(GameServer.REQUEST_INFO);
+    }
+
+    /**
+     * Sends a A2S_PLAYER request to the server without waiting for the reply
+     * <p>
+     * The returned future is completed by the socket layer once the reply
+     * has been received. If the server replies with a new challenge number,
+     * the request is automatically repeated. This also updates the players'
+     * data for this server.
+     * <p>
+     * While asynchronous requests are pending, the blocking methods of this
+     * server object must not be used.
+     *
+     * @return A future providing the players on this server
+     * @see #updatePlayers
+     * @throws SteamCondenserException if the request cannot be sent
+     */
+    public Future<HashMap<String, SteamPlayer>> queryPlayersAsync()
+            throws SteamCondenserException {
+        return this.queryAsync(GameServer.REQUEST_PLAYER);
+    }
+
+    /**
+     * Sends a A2S_RULES request to the server without waiting for the reply
+     * <p>
+     * The returned future is completed by the socket layer once the reply
+     * has been received. If the server replies with a new challenge number,
+     * the request is automatically repeated. This also updates the rules of
+     * this server.
+     * <p>
+     * While asynchronous requests are pending, the blocking methods of this
+     * server object must not be used.
+     *
+     * @return A future providing the currently active server rules
+     * @see #updateRules
+     * @throws SteamCondenserException if the request cannot be sent
+     */
+    public Future<HashMap<String, String>> queryRulesAsync()
+            throws SteamCondenserException {
+        return this.queryAsync(GameServer.REQUEST_RULES);
+    }
+
+    /**
+     * Sends the specified request to the server without waiting for the
+     * reply
+     * <p>
+     * If a request of the same type is already pending, its future is
+     * returned instead of sending another request. A pending request whose
+     * future has been cancelled is replaced by a new request.
+     *
+     * @param requestType The type of request to send to the server
+     * @return A future completed with the data replied by the server
+     * @throws SteamCondenserException if the request cannot be sent
+     */
+    @SuppressWarnings("unchecked")
+    protected synchronized <V> ReplyFuture<V> queryAsync(int requestType)
+            throws SteamCondenserException {
+        PendingQuery query = this.pendingQueries.get(requestType);
+        if(query != null) {
+            if(!query.future.isDone()) {
+                return (ReplyFuture<V>) query.future;
+            }
+            query.attempts = -1;
+            this.pendingQueries.remove(requestType);
+        }
+
+        if(this.socket == null) {
+            this.initSocket();
+        }
+        if(this.pendingQueries.isEmpty()) {
+            this.socket.setPacketHandler(new AsyncResponseHandler());
+        }
+
+        query = new PendingQuery(requestType);
+        this.pendingQueries.put(requestType, query);
+        this.retryPolicy.querySent();
+        this.sendAsyncRequest(query);
+
+        return (ReplyFuture<V>) query.future;
+    }
+
+    /**
+     * Waits for the reply of an asynchronous query
+     *
+     * @param future The future of the query
+     * @return The data replied by the server
+     * @throws SteamCondenserException if the query failed
+     * @throws TimeoutException if the query timed out
+     */
+    private static <V> V awaitQuery(Future<V> future)
+            throws SteamCondenserException, TimeoutException {
+        try {
+            return future.get();
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if(cause instanceof SteamCondenserException) {
+                throw (SteamCondenserException) cause;
+            }
+            if(cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            throw new SteamCondenserException(cause.getMessage(), cause);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SteamCondenserException("Interrupted while waiting for the reply.", e);
+        }
+    }
+
+    /**
+     * Sends the request of the given pending query and schedules its timeout
+     * <p>
+     * The timeout is derived from the round-trip times measured by the
+     * socket. If the query times out, it is repeated as defined by the retry
+     * policy of this server. A hedged request is scheduled if the retry
+     * policy uses hedging.
+     *
+     * @param query The pending query to send the request for
+     * @throws SteamCondenserException if the request cannot be sent
+     */
+    private void sendAsyncRequest(final PendingQuery query)
+            throws SteamCondenserException {
+        final int attempt = ++ query.attempts;
+        final RTTEstimator rttEstimator = this.socket.getRTTEstimator();
+        final RetryPolicy retryPolicy = this.retryPolicy;
+        SocketEventLoop eventLoop = SocketEventLoop.getInstance();
+
+        eventLoop.schedule(new Runnable() {
+            public void run() {
+                synchronized(GameServer.this) {
+                    if(query.attempts != attempt) {
+                        return;
+                    }
+
+                    if(rttEstimator != null) {
+                        rttEstimator.backoff();
+                    }
+                    if(query.retries + 1 < retryPolicy.getMaxAttempts()) {
+                        query.retries ++;
+                        retryPolicy.retried();
+                        retryAsyncRequest(query, attempt, retryPolicy.getBackoffDelay(query.retries));
+                    } else {
+                        retryPolicy.timedOut();
+                        finishAsyncQuery(query.requestType, null, new TimeoutException());
+                    }
+                }
+            }
+        }, (rttEstimator == null) ? SteamSocket.getTimeout() : rttEstimator.getTimeout());
+
+        int hedgeDelay = retryPolicy.getHedgeDelay(rttEstimator);
+        if(hedgeDelay > 0) {
+            eventLoop.schedule(new Runnable() {
+                public void run() {
+                    synchronized(GameServer.this) {
+                        if(query.attempts != attempt) {
+                            return;
+                        }
+
+                        try {
+                            socket.send(createRequestPacket(query.requestType));
+                            query.hedged = true;
+                            retryPolicy.hedgeSent();
+                        } catch(SteamCondenserException e) {
+                            LOG.warn("Could not send hedged request: " + e.getMessage());
+                        }
+                    }
+                }
+            }, hedgeDelay);
+        }
+
+        this.socket.send(this.createRequestPacket(query.requestType));
+    }
+
+    /**
+     * Repeats the request of the given pending query after the given delay
+     * <p>
+     * The request is not repeated if the query has been completed or
+     * repeated in the meantime.
+     *
+     * @param query The pending query to repeat the request for
+     * @param attempt The attempt that has timed out
+     * @param delay The delay in milliseconds
+     */
+    private void retryAsyncRequest(final PendingQuery query, final int attempt, long delay) {
+        try {
+            SocketEventLoop.getInstance().schedule(new Runnable() {
+                public void run() {
+                    synchronized(GameServer.this) {
+                        if(query.attempts != attempt) {
+                            return;
+                        }
+
+                        try {
+                            sendAsyncRequest(query);
+                        } catch(SteamCondenserException e) {
+                            finishAsyncQuery(query.requestType, null, e);
+                        }
+                    }
+                }
+            }, delay);
+        } catch(SteamCondenserException e) {
+            this.finishAsyncQuery(query.requestType, null, e);
+        }
+    }
+
+    /**
+     * Completes the pending query of the given type
+     * <p>
+     * The packet handler of the socket is removed once no more queries are
+     * pending.
+     *
+     * @param requestType The type of the query to complete
+     * @param result The data replied by the server
+     * @param error The error, if the query failed
+     */
+    private synchronized void finishAsyncQuery(int requestType, Object result, Throwable error) {
+        PendingQuery query = this.pendingQueries.remove(requestType);
+        if(query == null) {
+            return;
+        }
+        query.attempts = -1;
+
+        if(error == null && query.hedged) {
+            this.retryPolicy.hedgeWon();
+        }
+
+        if(this.pendingQueries.isEmpty() && this.socket != null) {
+            try {
+                this.socket.setPacketHandler(null);
+            } catch(SteamCondenserException e) {
+                LOG.warn("Could not remove packet handler: " + e.getMessage());
+            }
+        }
+
+        if(error == null) {
+            query.future.complete(result);
+        } else {
+            query.future.fail(error);
+        }
+    }
+
+    /**
+     * Handles a new challenge number replied by the server while queries are
+     * pending
+     * <p>
+     * Pending player and rules queries are repeated once with the new
+     * challenge number.
+     */
+    private synchronized void repeatAsyncQueries() {
+        for(PendingQuery query : new ArrayList<PendingQuery>(this.pendingQueries.values())) {
+            if(query.requestType != GameServer.REQUEST_PLAYER &&
+               query.requestType != GameServer.REQUEST_RULES) {
+                continue;
+            }
+
+            if(query.challenged) {
+                this.finishAsyncQuery(query.requestType, null,
+                    new SteamCondenserException("Server replied with a challenge number again."));
+                continue;
+            }
+
+            query.challenged = true;
+            try {
+                this.sendAsyncRequest(query);
+            } catch(SteamCondenserException e) {
+                this.finishAsyncQuery(query.requestType, null, e);
+            }
+        }
+    }
+
+    /**
+     * This class handles the packets received asynchronously for pending
+     * queries
+     */
+    private class AsyncResponseHandler implements PacketHandler {
+
+        public void packetReceived(SteamPacket packet) {
+            int requestType;
+            Object result;
+            synchronized(GameServer.this) {
+                requestType = handleResponse(packet);
+                result = getData(requestType);
+            }
+
+            switch(requestType) {
+                case GameServer.REQUEST_CHALLENGE:
+                    repeatAsyncQueries();
+                    break;
+                case GameServer.REQUEST_INFO:
+                case GameServer.REQUEST_PLAYER:
+                case GameServer.REQUEST_RULES:
+                    finishAsyncQuery(requestType, result, null);
+                    break;
+                default:
+                    LOG.warn("Unexpected reply of type " + packet.getClass() + " ignored.");
+            }
+        }
+
+        public void receiveFailed(SteamCondenserException e) {
+            synchronized(GameServer.this) {
+                for(Integer requestType : new ArrayList<Integer>(pendingQueries.keySet())) {
+                    finishAsyncQuery(requestType, null, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * This class represents a query sent asynchronously that is waiting for
+     * its reply
+     */
+    protected static class PendingQuery {
+
+        int attempts;
+
+        boolean challenged;
+
+        final ReplyFuture<Object> future;
+
+        boolean hedged;
+
+        final int requestType;
+
+        int retries;
+
+        PendingQuery(int requestType) {
+            this.attempts = 0;
+            this.challenged = false;
+            this.future = new ReplyFuture<Object>();
+            this.hedged = false;
+            this.requestType = requestType;
+            this.retries = 0;
+        }
+    }
 }
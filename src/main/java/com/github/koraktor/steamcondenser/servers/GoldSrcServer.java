@@ -8,10 +8,16 @@
 package com.github.koraktor.steamcondenser.servers;
 
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
+import com.github.koraktor.steamcondenser.exceptions.RCONNoAuthException;
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.sockets.GoldSrcRCONClient;
 import com.github.koraktor.steamcondenser.servers.sockets.GoldSrcSocket;
+import com.github.koraktor.steamcondenser.servers.sockets.RCONConnectionPool;
 
 /**
  * This class represents a GoldSrc game server and can be used to query
@@ -28,6 +34,8 @@ public class GoldSrcServer extends GameServer {
 
     private boolean isHLTV;
 
+    protected GoldSrcRCONClient rconClient;
+
     protected String rconPassword;
 
     /**
@@ -129,6 +137,20 @@ public class GoldSrcServer extends GameServer {
         this.isHLTV = isHLTV;
     }
 
+    /**
+     * Closes the sockets used to communicate with the server
+     *
+     * @see GoldSrcRCONClient#close
+     */
+    public void disconnect() {
+        super.disconnect();
+
+        if (this.rconClient != null) {
+            this.rconClient.close();
+            this.rconClient = null;
+        }
+    }
+
     /**
      * Initializes the socket to communicate with the GoldSrc server
      *
@@ -153,6 +175,39 @@ public class GoldSrcServer extends GameServer {
         return true;
     }
 
+    /**
+     * Saves the password for authenticating the RCON communication with the
+     * server and switches to pipelined RCON commands
+     * <p>
+     * The RCON challenge is reused for {@link
+     * GoldSrcRCONClient#DEFAULT_CHALLENGE_TTL} milliseconds and the end of a
+     * command's output is detected without waiting for a timeout. Multiple
+     * commands may be executed at the same time using {@link #rconExecAsync}
+     * or {@link #rconExecBatch}.
+     * <p>
+     * HLTV servers do not support this, so only the password is saved for
+     * them.
+     *
+     * @param password The RCON password of the server
+     * @return GoldSrc's RCON does not preauthenticate connections so
+     *         this method always returns <code>true</code>
+     * @throws SteamCondenserException if the RCON socket cannot be opened
+     */
+    public boolean rconConnect(String password)
+            throws SteamCondenserException {
+        this.rconAuth(password);
+
+        if (this.rconClient != null) {
+            this.rconClient.close();
+            this.rconClient = null;
+        }
+        if (!this.isHLTV) {
+            this.rconClient = new GoldSrcRCONClient(this.ipAddress, this.port, password);
+        }
+
+        return true;
+    }
+
     /**
      * Remotely executes a command on the server via RCON
      *
@@ -164,7 +219,59 @@ public class GoldSrcServer extends GameServer {
      */
     public String rconExec(String command)
             throws TimeoutException, SteamCondenserException {
+        if (this.rconClient != null) {
+            return RCONConnectionPool.await(this.rconClient.execute(command)).trim();
+        }
+
         return ((GoldSrcSocket) this.socket).rconExec(this.rconPassword, command).trim();
     }
 
+    /**
+     * Remotely executes a command on the server via RCON without waiting for
+     * its output
+     *
+     * @param command The command to execute on the server via RCON
+     * @return The future output of the executed command
+     * @see #rconConnect
+     * @throws RCONNoAuthException if pipelined RCON commands have not been
+     *         enabled using {@link #rconConnect}
+     */
+    public Future<String> rconExecAsync(String command)
+            throws RCONNoAuthException {
+        if (this.rconClient == null) {
+            throw new RCONNoAuthException();
+        }
+
+        return this.rconClient.execute(command);
+    }
+
+    /**
+     * Remotely executes multiple commands on the server via RCON
+     * <p>
+     * If pipelined RCON commands have been enabled using {@link
+     * #rconConnect}, all commands are sent at once. Otherwise the commands
+     * are executed one after another.
+     *
+     * @param commands The commands to execute on the server via RCON
+     * @return The output of the executed commands in the same order
+     * @throws SteamCondenserException if a request fails
+     * @throws TimeoutException if a request times out
+     */
+    public List<String> rconExecBatch(List<String> commands)
+            throws TimeoutException, SteamCondenserException {
+        List<String> responses = new ArrayList<String>(commands.size());
+
+        if (this.rconClient == null) {
+            for (String command : commands) {
+                responses.add(this.rconExec(command));
+            }
+        } else {
+            for (Future<String> future : this.rconClient.executeBatch(commands)) {
+                responses.add(RCONConnectionPool.await(future).trim());
+            }
+        }
+
+        return responses;
+    }
+
 }
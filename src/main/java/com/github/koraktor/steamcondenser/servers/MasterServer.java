@@ -9,6 +9,7 @@ package com.github.koraktor.steamcondenser.servers;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.util.List;
 import java.util.Vector;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
@@ -88,10 +89,26 @@ public class MasterServer extends Server {
      */
     public static final byte REGION_ALL = (byte)0xFF;
 
+    public static boolean pipelining = true;
+
     public static int retries = 3;
 
     protected MasterServerSocket socket;
 
+    /**
+     * Sets whether the next batch of servers should be requested as soon as
+     * the previous batch has been received, before it is passed to the
+     * listener (default: <code>true</code>)
+     * <p>
+     * This overlaps processing a batch with the network round trip of the
+     * next request.
+     *
+     * @param newPipelining Whether to enable pipelining of batch requests
+     */
+    public static void setPipelining(boolean newPipelining) {
+        pipelining = newPipelining;
+    }
+
     /**
      * Sets the number of consecutive requests that may fail, before getting
      * the server list is cancelled (default: 3)
@@ -236,33 +253,83 @@ public class MasterServer extends Server {
      */
     public Vector<InetSocketAddress> getServers(byte regionCode, String filter, boolean force)
             throws SteamCondenserException, TimeoutException {
-        int failCount    = 0;
-        boolean finished = false;
-        int portNumber   = 0;
-        String hostName  = "0.0.0.0";
-        Vector<String> serverStringArray;
-        Vector<InetSocketAddress> serverArray = new Vector<InetSocketAddress>();
+        final Vector<InetSocketAddress> serverArray = new Vector<InetSocketAddress>();
+
+        this.getServers(regionCode, filter, force, new ServerBatchListener() {
+            public void serversReceived(List<InetSocketAddress> servers) {
+                serverArray.addAll(servers);
+            }
+        });
+
+        return serverArray;
+    }
+
+    /**
+     * Requests a list of game servers matching the given region and filters
+     * and passes each batch of servers to the given listener as soon as it
+     * has been received
+     * <p/>
+     * This method returns once the last batch has been received. See {@link
+     * MasterServer#getServers(byte, String, boolean)} for the available
+     * filters.
+     *
+     * @param regionCode The region code to specify a location of the game
+     *        servers
+     * @param filter The filters that game servers should match
+     * @param force Return (instead of throwing an exception) after too many
+     *        timeouts occurred
+     * @param listener The listener receiving the batches of servers
+     * @see A2M_GET_SERVERS_BATCH2_Paket
+     * @throws SteamCondenserException if the request fails
+     * @throws TimeoutException if too many timeouts occur while querying the
+     *         master server
+     */
+    public void getServers(byte regionCode, String filter, boolean force, ServerBatchListener listener)
+            throws SteamCondenserException, TimeoutException {
+        int batchCount     = 0;
+        int failCount      = 0;
+        boolean finished   = false;
+        boolean pending    = false;
+        int serverCount    = 0;
+        long startTime     = System.currentTimeMillis();
+        InetSocketAddress lastAddress = null;
+        String seed        = "0.0.0.0:0";
+        M2A_SERVER_BATCH_Paket batch;
 
         while(true) {
             try {
                 failCount = 0;
                 do {
-                    this.socket.send(new A2M_GET_SERVERS_BATCH2_Paket(regionCode, hostName + ":" + portNumber, filter));
+                    if(!pending) {
+                        this.socket.send(new A2M_GET_SERVERS_BATCH2_Paket(regionCode, seed, filter));
+                        pending = true;
+                    }
                     try {
-                        serverStringArray = ((M2A_SERVER_BATCH_Paket) this.socket.getReply()).getServers();
+                        batch = (M2A_SERVER_BATCH_Paket) this.socket.getReply();
+                        pending = false;
 
-                        for(String serverString : serverStringArray) {
-                            hostName = serverString.substring(0, serverString.lastIndexOf(":"));
-                            portNumber = Integer.valueOf(serverString.substring(serverString.lastIndexOf(":") + 1));
+                        if(lastAddress != null && lastAddress.equals(batch.getLastAddress())) {
+                            LOG.info("Ignoring duplicate batch from master server " + this.ipAddress);
+                            pending = true;
+                            continue;
+                        }
+                        lastAddress = batch.getLastAddress();
+                        seed = lastAddress.getAddress().getHostAddress() + ":" + lastAddress.getPort();
+                        finished = batch.isLastBatch();
 
-                            if(!hostName.equals("0.0.0.0") && portNumber != 0) {
-                                serverArray.add(new InetSocketAddress(hostName, portNumber));
-                            } else {
-                                finished = true;
-                            }
+                        if(pipelining && !finished) {
+                            this.socket.send(new A2M_GET_SERVERS_BATCH2_Paket(regionCode, seed, filter));
+                            pending = true;
+                        }
+
+                        batchCount ++;
+                        serverCount += batch.getServerAddresses().size();
+                        if(!batch.getServerAddresses().isEmpty()) {
+                            listener.serversReceived(batch.getServerAddresses());
                         }
                         failCount = 0;
                     } catch(TimeoutException e) {
+                        pending = false;
                         failCount ++;
                         if(failCount == retries) {
                             throw e;
@@ -281,7 +348,10 @@ public class MasterServer extends Server {
             }
         }
 
-        return serverArray;
+        long duration = Math.max(1, System.currentTimeMillis() - startTime);
+        LOG.info("Received " + serverCount + " servers in " + batchCount +
+            " batches from master server in " + duration + " ms (" +
+            (batchCount * 1000 / duration) + " batches/s)");
     }
 
     /**
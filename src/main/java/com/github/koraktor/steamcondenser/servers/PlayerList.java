@@ -0,0 +1,314 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.github.koraktor.steamcondenser.PacketBuffer;
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+
+/**
+ * This class represents the list of players on a game server as replied to
+ * an A2S_PLAYER request
+ * <p>
+ * In contrast to the map returned by {@link GameServer#getPlayers}, the
+ * players are stored in columns, i.e. parallel arrays of their IDs, scores
+ * and connection times. The names of all players are stored in a single
+ * table of UTF-8 encoded bytes and only decoded when they are read. This
+ * needs only a few objects per list, regardless of the number of players,
+ * and keeps players with the same name apart.
+ * <p>
+ * A player list cannot be changed after it has been read.
+ *
+ * @author Sebastian Staudt
+ * @see com.github.koraktor.steamcondenser.servers.packets.S2A_PLAYER_Packet#getPlayerList
+ */
+public class PlayerList implements Iterable<SteamPlayer> {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private float[] connectTimes;
+
+    private byte[] ids;
+
+    private int[] nameOffsets;
+
+    private byte[] names;
+
+    private int[] scores;
+
+    private int size;
+
+    /**
+     * Reads the list of players from the content of a S2A_PLAYER packet
+     *
+     * @param data The content of the packet
+     * @return The list of players
+     * @throws PacketFormatException if the packet data is not well formatted
+     */
+    public static PlayerList fromPlayers(PacketBuffer data)
+            throws PacketFormatException {
+        int capacity = Math.max(data.getByte() & 0xFF, 1);
+        PlayerList list = new PlayerList(capacity, capacity * 16);
+
+        while(data.hasRemaining()) {
+            byte id = data.getByte();
+            byte[] name = data.getStringBytes();
+            if(name == null || data.remaining() < 8) {
+                throw new PacketFormatException("Wrong formatted S2A_PLAYER response packet.");
+            }
+            int score = Integer.reverseBytes(data.getInt());
+            float connectTime = Float.intBitsToFloat(Integer.reverseBytes(data.getInt()));
+
+            list.add(id, name, score, connectTime);
+        }
+        list.trim();
+
+        return list;
+    }
+
+    /**
+     * Creates a new empty list of players
+     *
+     * @param capacity The expected number of players
+     * @param nameCapacity The expected total length of the player names
+     */
+    private PlayerList(int capacity, int nameCapacity) {
+        this.connectTimes = new float[capacity];
+        this.ids = new byte[capacity];
+        this.nameOffsets = new int[capacity + 1];
+        this.names = new byte[nameCapacity];
+        this.scores = new int[capacity];
+        this.size = 0;
+    }
+
+    /**
+     * Returns the time the player at the given index is connected to the
+     * server
+     *
+     * @param index The index of the player
+     * @return The connection time of the player in seconds
+     */
+    public float getConnectTime(int index) {
+        this.checkIndex(index);
+        return this.connectTimes[index];
+    }
+
+    /**
+     * Returns the ID of the player at the given index
+     *
+     * @param index The index of the player
+     * @return The ID of the player on the server
+     */
+    public int getId(int index) {
+        this.checkIndex(index);
+        return this.ids[index];
+    }
+
+    /**
+     * Returns the name of the player at the given index
+     *
+     * @param index The index of the player
+     * @return The name of the player
+     */
+    public String getName(int index) {
+        this.checkIndex(index);
+        int offset = this.nameOffsets[index];
+        return new String(this.names, offset, this.nameOffsets[index + 1] - offset, UTF_8);
+    }
+
+    /**
+     * Returns the score of the player at the given index
+     *
+     * @param index The index of the player
+     * @return The score of the player
+     */
+    public int getScore(int index) {
+        this.checkIndex(index);
+        return this.scores[index];
+    }
+
+    /**
+     * Returns the index of the first player with the given name
+     *
+     * @param name The name of the player
+     * @return The index of the player or <code>-1</code> if there is no
+     *         player with this name
+     */
+    public int indexOf(String name) {
+        byte[] bytes = name.getBytes(UTF_8);
+        for(int i = 0; i < this.size; i ++) {
+            int offset = this.nameOffsets[i];
+            if(this.nameOffsets[i + 1] - offset != bytes.length) {
+                continue;
+            }
+
+            int j = 0;
+            while(j < bytes.length && this.names[offset + j] == bytes[j]) {
+                j ++;
+            }
+            if(j == bytes.length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Returns an iterator over the players in this list
+     * <p>
+     * A new player object is created for each player when it is returned by
+     * the iterator. Use the index based methods to access the players
+     * without creating any objects.
+     *
+     * @return An iterator over the players in this list
+     */
+    public Iterator<SteamPlayer> iterator() {
+        return new Iterator<SteamPlayer>() {
+            private int index = 0;
+
+            public boolean hasNext() {
+                return this.index < size;
+            }
+
+            public SteamPlayer next() {
+                if(this.index >= size) {
+                    throw new NoSuchElementException();
+                }
+
+                return toPlayer(this.index ++);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns the number of players in this list
+     *
+     * @return The number of players
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the players in this list as a map like the one returned by
+     * {@link GameServer#getPlayers}
+     * <p>
+     * Like in previous versions, players are mapped by their name, so only
+     * the last one of several players with the same name is contained in the
+     * map.
+     *
+     * @return A new map of the players in this list
+     */
+    public HashMap<String, SteamPlayer> toMap() {
+        HashMap<String, SteamPlayer> players = new HashMap<String, SteamPlayer>(Math.max(this.size * 4 / 3 + 1, 16));
+        for(int i = 0; i < this.size; i ++) {
+            SteamPlayer player = this.toPlayer(i);
+            players.put(player.getName(), player);
+        }
+
+        return players;
+    }
+
+    /**
+     * Appends a player to this list
+     *
+     * @param id The ID of the player
+     * @param name The encoded name of the player
+     * @param score The score of the player
+     * @param connectTime The connection time of the player
+     */
+    private void add(byte id, byte[] name, int score, float connectTime) {
+        if(this.size == this.ids.length) {
+            this.resize(this.size * 2);
+        }
+
+        int offset = this.nameOffsets[this.size];
+        if(offset + name.length > this.names.length) {
+            byte[] names = new byte[Math.max(this.names.length * 2, offset + name.length)];
+            System.arraycopy(this.names, 0, names, 0, offset);
+            this.names = names;
+        }
+        System.arraycopy(name, 0, this.names, offset, name.length);
+
+        this.connectTimes[this.size] = connectTime;
+        this.ids[this.size] = id;
+        this.scores[this.size] = score;
+        this.size ++;
+        this.nameOffsets[this.size] = offset + name.length;
+    }
+
+    /**
+     * Checks whether the given index is valid for this list
+     *
+     * @param index The index to check
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    private void checkIndex(int index) {
+        if(index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+        }
+    }
+
+    /**
+     * Changes the capacity of the player columns of this list
+     *
+     * @param capacity The new number of players the list can hold
+     */
+    private void resize(int capacity) {
+        float[] connectTimes = new float[capacity];
+        byte[] ids = new byte[capacity];
+        int[] nameOffsets = new int[capacity + 1];
+        int[] scores = new int[capacity];
+        System.arraycopy(this.connectTimes, 0, connectTimes, 0, this.size);
+        System.arraycopy(this.ids, 0, ids, 0, this.size);
+        System.arraycopy(this.nameOffsets, 0, nameOffsets, 0, this.size + 1);
+        System.arraycopy(this.scores, 0, scores, 0, this.size);
+        this.connectTimes = connectTimes;
+        this.ids = ids;
+        this.nameOffsets = nameOffsets;
+        this.scores = scores;
+    }
+
+    /**
+     * Creates a player object for the player at the given index
+     *
+     * @param index The index of the player
+     * @return A new player object
+     */
+    private SteamPlayer toPlayer(int index) {
+        return new SteamPlayer(this.ids[index], this.getName(index),
+            this.scores[index], this.connectTimes[index]);
+    }
+
+    /**
+     * Shrinks the arrays of this list to the actual number of players and
+     * length of their names
+     */
+    private void trim() {
+        int nameLength = this.nameOffsets[this.size];
+        if(this.names.length > nameLength) {
+            byte[] names = new byte[nameLength];
+            System.arraycopy(this.names, 0, names, 0, nameLength);
+            this.names = names;
+        }
+
+        if(this.ids.length > this.size) {
+            this.resize(this.size);
+        }
+    }
+
+}
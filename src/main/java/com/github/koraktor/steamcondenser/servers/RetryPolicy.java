@@ -0,0 +1,283 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.github.koraktor.steamcondenser.servers.sockets.RTTEstimator;
+
+/**
+ * This class defines how queries to game servers are repeated if no reply is
+ * received
+ * <p>
+ * A query times out if no reply has been received within the timeout of the
+ * socket. It is then repeated until the maximum number of attempts has been
+ * reached. Between the attempts, the policy waits for an exponentially
+ * growing delay that is randomized by the given jitter to avoid repeating a
+ * lot of queries at the same time.
+ * <p>
+ * Additionally, queries can be hedged: If no reply has been received after
+ * the given percentile of the recently measured round-trip times, the
+ * request is sent a second time without waiting for the timeout. As UDP
+ * replies cannot be matched to their requests, whichever reply arrives first
+ * is used.
+ * <p>
+ * A policy may be shared by any number of servers. Its statistics are
+ * collected for all servers using it.
+ *
+ * @author Sebastian Staudt
+ * @see GameServer#setRetryPolicy
+ */
+public class RetryPolicy {
+
+    /**
+     * The default delay before the first retry in milliseconds
+     */
+    public static final int DEFAULT_BACKOFF_DELAY = 50;
+
+    /**
+     * The default factor the delay is multiplied with for every retry
+     */
+    public static final double DEFAULT_BACKOFF_MULTIPLIER = 2.0;
+
+    /**
+     * The default relative amount the delay is randomized by
+     */
+    public static final double DEFAULT_JITTER = 0.2;
+
+    private static final int MIN_HEDGE_DELAY = 10;
+
+    private static final Random RANDOM = new Random();
+
+    private int backoffDelay;
+
+    private double backoffMultiplier;
+
+    private int hedgePercentile;
+
+    private AtomicLong hedgesSent;
+
+    private AtomicLong hedgesWon;
+
+    private double jitter;
+
+    private int maxAttempts;
+
+    private AtomicLong queries;
+
+    private AtomicLong retries;
+
+    private AtomicLong timeouts;
+
+    /**
+     * Creates a new policy that does not repeat queries
+     */
+    public RetryPolicy() {
+        this(1);
+    }
+
+    /**
+     * Creates a new policy that tries queries up to the given number of times
+     * using the default backoff
+     *
+     * @param maxAttempts The maximum number of times a query is sent
+     */
+    public RetryPolicy(int maxAttempts) {
+        this(maxAttempts, DEFAULT_BACKOFF_DELAY, DEFAULT_BACKOFF_MULTIPLIER, DEFAULT_JITTER);
+    }
+
+    /**
+     * Creates a new policy with the given backoff
+     *
+     * @param maxAttempts The maximum number of times a query is sent
+     * @param backoffDelay The delay before the first retry in milliseconds
+     * @param backoffMultiplier The factor the delay is multiplied with for
+     *        every further retry
+     * @param jitter The relative amount the delay is randomized by, e.g.
+     *        <code>0.2</code> for up to 20% shorter or longer delays
+     */
+    public RetryPolicy(int maxAttempts, int backoffDelay, double backoffMultiplier, double jitter) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Queries have to be sent at least once.");
+        }
+        if (backoffDelay < 0 || backoffMultiplier < 1 || jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Invalid backoff.");
+        }
+
+        this.backoffDelay = backoffDelay;
+        this.backoffMultiplier = backoffMultiplier;
+        this.hedgesSent = new AtomicLong();
+        this.hedgesWon = new AtomicLong();
+        this.jitter = jitter;
+        this.maxAttempts = maxAttempts;
+        this.queries = new AtomicLong();
+        this.retries = new AtomicLong();
+        this.timeouts = new AtomicLong();
+    }
+
+    /**
+     * Returns the delay to wait before the given retry
+     *
+     * @param retry The number of the retry, starting with <code>1</code>
+     * @return The delay in milliseconds
+     */
+    public long getBackoffDelay(int retry) {
+        double delay = this.backoffDelay * Math.pow(this.backoffMultiplier, retry - 1);
+        if (this.jitter > 0) {
+            delay *= 1 + this.jitter * (RANDOM.nextDouble() * 2 - 1);
+        }
+
+        return Math.round(delay);
+    }
+
+    /**
+     * Returns the time to wait for a reply before a hedged request is sent
+     *
+     * @param rttEstimator The round-trip time estimator of the server
+     * @return The delay in milliseconds or <code>0</code> if no hedged
+     *         request should be sent
+     */
+    public int getHedgeDelay(RTTEstimator rttEstimator) {
+        if (this.hedgePercentile == 0 || rttEstimator == null) {
+            return 0;
+        }
+
+        int delay = rttEstimator.getPercentile(this.hedgePercentile);
+        if (delay == 0) {
+            return 0;
+        }
+
+        return Math.max(MIN_HEDGE_DELAY, delay);
+    }
+
+    /**
+     * Returns the percentile of round-trip times after which hedged requests
+     * are sent
+     *
+     * @return The percentile or <code>0</code> if hedging is disabled
+     */
+    public int getHedgePercentile() {
+        return this.hedgePercentile;
+    }
+
+    /**
+     * Returns the number of hedged requests that have been sent
+     *
+     * @return The number of hedged requests
+     */
+    public long getHedgesSent() {
+        return this.hedgesSent.get();
+    }
+
+    /**
+     * Returns the number of queries that have been answered after a hedged
+     * request has been sent
+     * <p>
+     * Without hedging, these queries would have had to wait longer for the
+     * reply or would have timed out.
+     *
+     * @return The number of queries answered after hedging
+     */
+    public long getHedgesWon() {
+        return this.hedgesWon.get();
+    }
+
+    /**
+     * Returns the maximum number of times a query is sent
+     *
+     * @return The maximum number of attempts
+     */
+    public int getMaxAttempts() {
+        return this.maxAttempts;
+    }
+
+    /**
+     * Returns the number of queries sent using this policy
+     *
+     * @return The number of queries
+     */
+    public long getQueries() {
+        return this.queries.get();
+    }
+
+    /**
+     * Returns the number of times a query has been repeated after a timeout
+     *
+     * @return The number of retries
+     */
+    public long getRetries() {
+        return this.retries.get();
+    }
+
+    /**
+     * Returns the number of queries that failed because all attempts timed
+     * out
+     *
+     * @return The number of failed queries
+     */
+    public long getTimeouts() {
+        return this.timeouts.get();
+    }
+
+    /**
+     * Sets the percentile of round-trip times after which hedged requests are
+     * sent
+     * <p>
+     * Lower percentiles reduce the latency of slow replies at the cost of
+     * more duplicate requests. Hedging is only used for servers whose
+     * round-trip times have already been measured.
+     *
+     * @param hedgePercentile The percentile, e.g. <code>95</code>, or
+     *        <code>0</code> to disable hedging
+     */
+    public void setHedgePercentile(int hedgePercentile) {
+        if (hedgePercentile < 0 || hedgePercentile > 100) {
+            throw new IllegalArgumentException("Invalid percentile " + hedgePercentile + ".");
+        }
+
+        this.hedgePercentile = hedgePercentile;
+    }
+
+    /**
+     * Records that a hedged request has been sent
+     */
+    void hedgeSent() {
+        this.hedgesSent.incrementAndGet();
+    }
+
+    /**
+     * Records that a query has been answered after a hedged request has been
+     * sent
+     */
+    void hedgeWon() {
+        this.hedgesWon.incrementAndGet();
+    }
+
+    /**
+     * Records that a new query has been sent
+     */
+    void querySent() {
+        this.queries.incrementAndGet();
+    }
+
+    /**
+     * Records that a query has been repeated
+     */
+    void retried() {
+        this.retries.incrementAndGet();
+    }
+
+    /**
+     * Records that a query has timed out finally
+     */
+    void timedOut() {
+        this.timeouts.incrementAndGet();
+    }
+
+}
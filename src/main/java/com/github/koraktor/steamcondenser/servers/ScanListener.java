@@ -0,0 +1,47 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+
+/**
+ * This interface is implemented by classes receiving the results of a scan
+ * done by a {@link ServerScanner}
+ * <p>
+ * The methods are called from the thread of the shared event loop, so
+ * implementations should return quickly and hand off expensive work to other
+ * threads.
+ *
+ * @author Sebastian Staudt
+ * @see ServerScanner#scan
+ */
+public interface ScanListener {
+
+    /**
+     * Called when a server has replied to the query sent by the scanner
+     *
+     * @param address The address of the server
+     * @param reply The reply packet, e.g. a {@link
+     *        com.github.koraktor.steamcondenser.servers.packets.S2A_INFO_BasePacket}
+     */
+    public void serverReplied(InetSocketAddress address, SteamPacket reply);
+
+    /**
+     * Called when querying a server failed
+     * <p>
+     * Servers that did not reply in time are reported with a
+     * {@link java.util.concurrent.TimeoutException}.
+     *
+     * @param address The address of the server
+     * @param error The reason of the failure
+     */
+    public void serverFailed(InetSocketAddress address, Exception error);
+
+}
@@ -0,0 +1,32 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * This interface is implemented by classes receiving the servers listed by a
+ * master server batch by batch
+ * <p>
+ * This allows to start querying the game servers while the rest of the list
+ * is still being received from the master server.
+ *
+ * @author Sebastian Staudt
+ * @see MasterServer#getServers(byte, String, boolean, ServerBatchListener)
+ */
+public interface ServerBatchListener {
+
+    /**
+     * Called for every batch of servers received from the master server
+     *
+     * @param servers The addresses of the game servers in this batch
+     */
+    public void serversReceived(List<InetSocketAddress> servers);
+
+}
@@ -0,0 +1,124 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+/**
+ * This class represents a single change between two successive replies of a
+ * game server, e.g. a player joining the server or a rule being changed
+ * <p>
+ * Values are represented as strings, so deltas can be forwarded to clients
+ * without further conversion. Scores are given as decimal numbers.
+ * <code>null</code> values mark a player or rule that did not exist before
+ * or does not exist anymore.
+ *
+ * @author Sebastian Staudt
+ * @see SnapshotDiffer
+ */
+public class ServerDelta {
+
+    public enum Type { MAP_CHANGED, PLAYER_JOINED, PLAYER_LEFT, PLAYER_SCORE_CHANGED, RULE_CHANGED }
+
+    private String name;
+
+    private String previousValue;
+
+    private Type type;
+
+    private String value;
+
+    /**
+     * Creates a new delta
+     *
+     * @param type The type of the change
+     * @param name The name of the player or rule that has changed
+     * @param previousValue The value before the change
+     * @param value The value after the change
+     */
+    public ServerDelta(Type type, String name, String previousValue, String value) {
+        this.name = name;
+        this.previousValue = previousValue;
+        this.type = type;
+        this.value = value;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ServerDelta)) {
+            return false;
+        }
+
+        ServerDelta delta = (ServerDelta) obj;
+        return this.type == delta.type && equals(this.name, delta.name) &&
+               equals(this.previousValue, delta.previousValue) &&
+               equals(this.value, delta.value);
+    }
+
+    /**
+     * Returns the name of the player or rule that has changed
+     *
+     * @return The name of the player or rule or <code>null</code> for
+     *         changes of the map
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Returns the value before the change, i.e. the previous map, score or
+     * rule value
+     *
+     * @return The previous value or <code>null</code>
+     */
+    public String getPreviousValue() {
+        return this.previousValue;
+    }
+
+    /**
+     * Returns the type of the change
+     *
+     * @return The type of the change
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the value after the change, i.e. the new map, score or rule
+     * value
+     *
+     * @return The new value or <code>null</code>
+     */
+    public String getValue() {
+        return this.value;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = this.type.hashCode();
+        hash = 31 * hash + ((this.name == null) ? 0 : this.name.hashCode());
+        return 31 * hash + ((this.value == null) ? 0 : this.value.hashCode());
+    }
+
+    @Override
+    public String toString() {
+        return this.type + "[" + ((this.name == null) ? "" : this.name + ": ") +
+               this.previousValue + " -> " + this.value + "]";
+    }
+
+    /**
+     * Compares two values that may be <code>null</code>
+     *
+     * @param value1 The first value
+     * @param value2 The second value
+     * @return <code>true</code> if both values are equal
+     */
+    private static boolean equals(String value1, String value2) {
+        return (value1 == null) ? value2 == null : value1.equals(value2);
+    }
+
+}
@@ -0,0 +1,796 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.sockets.ReplyFuture;
+import com.github.koraktor.steamcondenser.servers.sockets.SocketEventLoop;
+
+/**
+ * This class is used to refresh the information, players and rules of a
+ * large number of game servers periodically
+ * <p>
+ * Each query type is refreshed in its own interval. A server object is kept
+ * for every server of the fleet, so sockets, round-trip time estimates and
+ * challenge numbers are reused from one refresh to the next. The queries are
+ * sent asynchronously from the thread of the shared {@link SocketEventLoop},
+ * so refreshing thousands of servers does not need any additional threads.
+ * <p>
+ * The number of queries waiting for a reply is limited for the whole fleet
+ * and for every single server. Refreshes that are due while a limit is
+ * reached are delayed until a reply has been received. The first refreshes
+ * are spread randomly over the refresh interval and every interval is
+ * varied by a random jitter, so the queries of many servers do not
+ * synchronize over time.
+ * <p>
+ * Whenever a server has replied, a new {@link ServerSnapshot} is published
+ * to the listeners of the fleet. Asynchronous queries are not available in
+ * blocking I/O mode, so fleets cannot be used while it is enabled.
+ *
+ * @author Sebastian Staudt
+ * @see FleetListener
+ */
+public class ServerFleet {
+
+    public static final int QUERY_INFO = GameServer.REQUEST_INFO;
+    public static final int QUERY_PLAYERS = GameServer.REQUEST_PLAYER;
+    public static final int QUERY_RULES = GameServer.REQUEST_RULES;
+
+    /**
+     * The default jitter applied to the refresh intervals
+     */
+    public static final double DEFAULT_JITTER = 0.1;
+
+    /**
+     * The default maximum number of queries waiting for a reply
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 256;
+
+    /**
+     * The default maximum number of queries waiting for a reply from a
+     * single server
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_PER_SERVER = 1;
+
+    protected static final Logger LOG = LoggerFactory.getLogger(ServerFleet.class);
+
+    private SocketEventLoop eventLoop;
+
+    private int generation;
+
+    private int inFlight;
+
+    private volatile double jitter;
+
+    private List<FleetListener> listeners;
+
+    private volatile int maxInFlight;
+
+    private volatile int maxInFlightPerServer;
+
+    private HashMap<InetSocketAddress, Member> members;
+
+    private Random random;
+
+    private LinkedList<Member> readyQueue;
+
+    private long[] refreshIntervals;
+
+    private boolean running;
+
+    /**
+     * Creates a new empty fleet
+     * <p>
+     * By default, the server information and players are refreshed every 5
+     * seconds and the rules every 30 seconds.
+     *
+     * @throws SteamCondenserException if the event loop cannot be started
+     */
+    public ServerFleet() throws SteamCondenserException {
+        this.eventLoop = SocketEventLoop.getInstance();
+        this.jitter = DEFAULT_JITTER;
+        this.listeners = new CopyOnWriteArrayList<FleetListener>();
+        this.maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+        this.maxInFlightPerServer = DEFAULT_MAX_IN_FLIGHT_PER_SERVER;
+        this.members = new HashMap<InetSocketAddress, Member>();
+        this.random = new Random();
+        this.readyQueue = new LinkedList<Member>();
+        this.refreshIntervals = new long[4];
+        this.refreshIntervals[QUERY_INFO] = 5000;
+        this.refreshIntervals[QUERY_PLAYERS] = 5000;
+        this.refreshIntervals[QUERY_RULES] = 30000;
+    }
+
+    /**
+     * Adds a Source server with the given address to this fleet
+     *
+     * @param address The address of the server
+     * @throws SteamCondenserException if the server object cannot be
+     *         created
+     */
+    public void add(InetSocketAddress address) throws SteamCondenserException {
+        this.add(new SourceServer(address.getAddress(), address.getPort()));
+    }
+
+    /**
+     * Adds the given server to this fleet
+     * <p>
+     * This can be used to add GoldSrc servers or servers with a specific
+     * retry policy. The server object must not be used for other queries
+     * while it is part of the fleet. A server already in the fleet is
+     * replaced.
+     *
+     * @param server The server to add
+     */
+    public void add(final GameServer server) {
+        final InetSocketAddress address = new InetSocketAddress(server.ipAddress, server.port);
+
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                Member member = members.remove(address);
+                if (member != null) {
+                    removeMember(member);
+                }
+
+                member = new Member(address, server);
+                members.put(address, member);
+                if (running) {
+                    scheduleFirstRefreshes(member);
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds Source servers with the given addresses to this fleet, e.g. the
+     * addresses returned by {@link MasterServer#getServers}
+     *
+     * @param addresses The addresses of the servers
+     * @throws SteamCondenserException if a server object cannot be created
+     */
+    public void addAll(Collection<InetSocketAddress> addresses)
+            throws SteamCondenserException {
+        for (InetSocketAddress address : addresses) {
+            this.add(address);
+        }
+    }
+
+    /**
+     * Adds a listener receiving the snapshots of the servers in this fleet
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(FleetListener listener) {
+        this.listeners.add(listener);
+    }
+
+    /**
+     * Stops refreshing the servers of this fleet and closes their sockets
+     * <p>
+     * The fleet may be started again afterwards, the sockets are opened
+     * again when needed.
+     */
+    public void close() {
+        this.stop();
+
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                for (Member member : members.values()) {
+                    member.server.disconnect();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of queries currently waiting for a reply
+     *
+     * @return The number of queries in flight
+     */
+    public int getInFlight() {
+        final int[] inFlight = new int[1];
+        this.runAndWait(new Runnable() {
+            public void run() {
+                inFlight[0] = ServerFleet.this.inFlight;
+            }
+        });
+
+        return inFlight[0];
+    }
+
+    /**
+     * Returns the jitter applied to the refresh intervals
+     *
+     * @return The jitter as a fraction of the refresh interval
+     */
+    public double getJitter() {
+        return this.jitter;
+    }
+
+    /**
+     * Returns the maximum number of queries waiting for a reply
+     *
+     * @return The maximum number of queries in flight
+     */
+    public int getMaxInFlight() {
+        return this.maxInFlight;
+    }
+
+    /**
+     * Returns the maximum number of queries waiting for a reply from a single
+     * server
+     *
+     * @return The maximum number of queries in flight per server
+     */
+    public int getMaxInFlightPerServer() {
+        return this.maxInFlightPerServer;
+    }
+
+    /**
+     * Returns the refresh interval of the given query type
+     *
+     * @param queryType The type of the query, e.g. {@link #QUERY_RULES}
+     * @return The refresh interval in milliseconds or <code>0</code> if the
+     *         query type is not refreshed
+     */
+    public long getRefreshInterval(int queryType) {
+        checkQueryType(queryType);
+
+        synchronized (this.refreshIntervals) {
+            return this.refreshIntervals[queryType];
+        }
+    }
+
+    /**
+     * Returns the latest snapshot of the server with the given address
+     *
+     * @param address The address of the server
+     * @return The latest snapshot of the server or <code>null</code> if the
+     *         server is not part of this fleet
+     */
+    public ServerSnapshot getSnapshot(final InetSocketAddress address) {
+        final ServerSnapshot[] snapshot = new ServerSnapshot[1];
+        this.runAndWait(new Runnable() {
+            public void run() {
+                Member member = members.get(address);
+                if (member != null) {
+                    snapshot[0] = member.snapshot;
+                }
+            }
+        });
+
+        return snapshot[0];
+    }
+
+    /**
+     * Returns the latest snapshots of all servers in this fleet
+     *
+     * @return The snapshots of the servers
+     */
+    public List<ServerSnapshot> getSnapshots() {
+        final List<ServerSnapshot> snapshots = new ArrayList<ServerSnapshot>();
+        this.runAndWait(new Runnable() {
+            public void run() {
+                for (Member member : members.values()) {
+                    snapshots.add(member.snapshot);
+                }
+            }
+        });
+
+        return snapshots;
+    }
+
+    /**
+     * Returns whether the servers of this fleet are being refreshed
+     *
+     * @return <code>true</code> if this fleet has been started
+     */
+    public boolean isRunning() {
+        final boolean[] running = new boolean[1];
+        this.runAndWait(new Runnable() {
+            public void run() {
+                running[0] = ServerFleet.this.running;
+            }
+        });
+
+        return running[0];
+    }
+
+    /**
+     * Removes the server with the given address from this fleet and closes
+     * its socket
+     *
+     * @param address The address of the server
+     */
+    public void remove(final InetSocketAddress address) {
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                Member member = members.remove(address);
+                if (member != null) {
+                    removeMember(member);
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes a listener from this fleet
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(FleetListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * Sets the jitter applied to the refresh intervals
+     * <p>
+     * Each interval is varied randomly by up to the given fraction in both
+     * directions, e.g. a jitter of <code>0.1</code> results in intervals
+     * between 4.5 and 5.5 seconds for a refresh interval of 5 seconds.
+     *
+     * @param jitter The jitter as a fraction of the refresh interval
+     */
+    public void setJitter(double jitter) {
+        if (jitter < 0 || jitter >= 1) {
+            throw new IllegalArgumentException("The jitter has to be between 0 and 1.");
+        }
+
+        this.jitter = jitter;
+    }
+
+    /**
+     * Sets the maximum number of queries waiting for a reply
+     *
+     * @param maxInFlight The maximum number of queries in flight
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        if (maxInFlight < 1) {
+            throw new IllegalArgumentException("At least one query has to be allowed.");
+        }
+
+        this.maxInFlight = maxInFlight;
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * Sets the maximum number of queries waiting for a reply from a single
+     * server
+     * <p>
+     * Queries of different types may be sent to a server at the same time,
+     * so values larger than three have no effect.
+     *
+     * @param maxInFlightPerServer The maximum number of queries in flight
+     *        per server
+     */
+    public void setMaxInFlightPerServer(int maxInFlightPerServer) {
+        if (maxInFlightPerServer < 1) {
+            throw new IllegalArgumentException("At least one query has to be allowed.");
+        }
+
+        this.maxInFlightPerServer = maxInFlightPerServer;
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                for (Member member : members.values()) {
+                    enqueue(member);
+                }
+                dispatch();
+            }
+        });
+    }
+
+    /**
+     * Sets the refresh interval of the given query type
+     * <p>
+     * Changes are applied when the fleet is started the next time.
+     *
+     * @param queryType The type of the query, e.g. {@link #QUERY_RULES}
+     * @param interval The refresh interval in milliseconds or
+     *        <code>0</code> to disable refreshes of this query type
+     */
+    public void setRefreshInterval(int queryType, long interval) {
+        checkQueryType(queryType);
+        if (interval < 0) {
+            throw new IllegalArgumentException("The refresh interval must not be negative.");
+        }
+
+        synchronized (this.refreshIntervals) {
+            this.refreshIntervals[queryType] = interval;
+        }
+    }
+
+    /**
+     * Returns the number of servers in this fleet
+     *
+     * @return The number of servers
+     */
+    public int size() {
+        final int[] size = new int[1];
+        this.runAndWait(new Runnable() {
+            public void run() {
+                size[0] = members.size();
+            }
+        });
+
+        return size[0];
+    }
+
+    /**
+     * Starts refreshing the servers of this fleet
+     */
+    public void start() {
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                if (running) {
+                    return;
+                }
+
+                running = true;
+                generation ++;
+                for (Member member : members.values()) {
+                    scheduleFirstRefreshes(member);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops refreshing the servers of this fleet
+     * <p>
+     * Queries already sent are completed and still published to the
+     * listeners.
+     */
+    public void stop() {
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                running = false;
+                generation ++;
+                readyQueue.clear();
+                for (Member member : members.values()) {
+                    member.queued = false;
+                    for (int i = 0; i < member.due.length; i ++) {
+                        member.due[i] = false;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Checks whether the given query type is valid
+     *
+     * @param queryType The query type to check
+     * @throws IllegalArgumentException if the query type is invalid
+     */
+    private static void checkQueryType(int queryType) {
+        if (queryType != QUERY_INFO && queryType != QUERY_PLAYERS &&
+            queryType != QUERY_RULES) {
+            throw new IllegalArgumentException("Invalid query type " + queryType + ".");
+        }
+    }
+
+    /**
+     * Handles the completion of a query sent to a server of this fleet
+     * <p>
+     * This is run on the thread of the event loop.
+     *
+     * @param member The server the query has been sent to
+     * @param queryType The type of the query
+     * @param future The future of the query
+     */
+    private void completed(Member member, int queryType, Future<?> future) {
+        this.inFlight --;
+        member.inFlight --;
+        member.pending[queryType] = false;
+
+        Exception error = null;
+        try {
+            future.get();
+        } catch (ExecutionException e) {
+            error = (e.getCause() instanceof Exception) ? (Exception) e.getCause() : e;
+        } catch (Exception e) {
+            error = e;
+        }
+
+        if (this.members.get(member.address) == member) {
+            if (error == null) {
+                this.updateSnapshot(member, queryType);
+            } else {
+                if (error instanceof TimeoutException) {
+                    LOG.info("Refreshing server " + member.address + " timed out.");
+                } else {
+                    LOG.warn("Refreshing server " + member.address + " failed: " + error.getMessage());
+                }
+                for (FleetListener listener : this.listeners) {
+                    listener.refreshFailed(member.address, queryType, error);
+                }
+            }
+
+            this.enqueue(member);
+        }
+
+        this.dispatch();
+    }
+
+    /**
+     * Sends the queries that are due as long as the limits of this fleet
+     * allow it
+     * <p>
+     * This is run on the thread of the event loop.
+     */
+    private void dispatch() {
+        while (this.inFlight < this.maxInFlight) {
+            Member member = this.readyQueue.peek();
+            if (member == null) {
+                break;
+            }
+
+            int queryType = member.nextDueQuery();
+            if (queryType == -1 || member.inFlight >= this.maxInFlightPerServer) {
+                this.readyQueue.poll();
+                member.queued = false;
+                continue;
+            }
+
+            member.due[queryType] = false;
+            this.send(member, queryType);
+        }
+    }
+
+    /**
+     * Appends the given server to the queue of servers with due refreshes
+     * <p>
+     * This is run on the thread of the event loop.
+     *
+     * @param member The server to enqueue
+     */
+    private void enqueue(Member member) {
+        if (!member.queued && member.nextDueQuery() != -1) {
+            member.queued = true;
+            this.readyQueue.add(member);
+        }
+    }
+
+    /**
+     * Returns the given interval varied by the jitter of this fleet
+     *
+     * @param interval The interval to vary
+     * @return The varied interval
+     */
+    private long jitter(long interval) {
+        return Math.max(1, Math.round(interval * (1 + this.jitter * (2 * this.random.nextDouble() - 1))));
+    }
+
+    /**
+     * Marks the given query type as due for the given server and schedules
+     * the next refresh
+     * <p>
+     * This is run on the thread of the event loop.
+     *
+     * @param member The server to refresh
+     * @param queryType The type of the query to refresh
+     * @param generation The generation of the fleet the refresh has been
+     *        scheduled in
+     */
+    private void refresh(Member member, int queryType, int generation) {
+        if (!this.running || generation != this.generation ||
+            this.members.get(member.address) != member) {
+            return;
+        }
+
+        member.due[queryType] = true;
+        this.enqueue(member);
+        this.dispatch();
+
+        this.scheduleRefresh(member, queryType, this.jitter(this.getRefreshInterval(queryType)));
+    }
+
+    /**
+     * Removes the given server from this fleet
+     * <p>
+     * This is run on the thread of the event loop.
+     *
+     * @param member The server to remove
+     */
+    private void removeMember(Member member) {
+        if (member.queued) {
+            this.readyQueue.remove(member);
+            member.queued = false;
+        }
+        member.server.disconnect();
+    }
+
+    /**
+     * Runs the given task on the thread of the event loop and waits for it
+     *
+     * @param task The task to run
+     */
+    private void runAndWait(final Runnable task) {
+        final ReplyFuture<Void> future = new ReplyFuture<Void>();
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    future.complete(null);
+                }
+            }
+        });
+
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Schedules the first refreshes of the given server at random times
+     * within the refresh intervals
+     *
+     * @param member The server to schedule
+     */
+    private void scheduleFirstRefreshes(Member member) {
+        for (int queryType = QUERY_INFO; queryType <= QUERY_RULES; queryType ++) {
+            long interval = this.getRefreshInterval(queryType);
+            if (interval > 0) {
+                this.scheduleRefresh(member, queryType, (long) (this.random.nextDouble() * interval));
+            }
+        }
+    }
+
+    /**
+     * Schedules a refresh of the given query type for the given server
+     *
+     * @param member The server to refresh
+     * @param queryType The type of the query to refresh
+     * @param delay The delay in milliseconds
+     */
+    private void scheduleRefresh(final Member member, final int queryType, long delay) {
+        final int generation = this.generation;
+        this.eventLoop.schedule(new Runnable() {
+            public void run() {
+                refresh(member, queryType, generation);
+            }
+        }, delay);
+    }
+
+    /**
+     * Sends a query of the given type to the given server
+     * <p>
+     * The completion of the query is handled by a separate task of the event
+     * loop, so no locks of the server object are held while handling it.
+     *
+     * @param member The server to query
+     * @param queryType The type of the query
+     */
+    private void send(final Member member, final int queryType) {
+        this.inFlight ++;
+        member.inFlight ++;
+        member.pending[queryType] = true;
+
+        ReplyFuture<?> future;
+        try {
+            future = member.server.queryAsync(queryType);
+        } catch (SteamCondenserException e) {
+            ReplyFuture<Object> failedFuture = new ReplyFuture<Object>();
+            failedFuture.fail(e);
+            future = failedFuture;
+        }
+
+        final Future<?> query = future;
+        future.addListener(new Runnable() {
+            public void run() {
+                eventLoop.schedule(new Runnable() {
+                    public void run() {
+                        completed(member, queryType, query);
+                    }
+                }, 0);
+            }
+        });
+    }
+
+    /**
+     * Creates a new snapshot of the given server with the data replied to a
+     * query of the given type and publishes it to the listeners
+     *
+     * @param member The server that has replied
+     * @param queryType The type of the query
+     */
+    private void updateSnapshot(Member member, int queryType) {
+        GameServer server = member.server;
+        ServerSnapshot snapshot;
+        synchronized (server) {
+            long time = server.updateTimes[queryType];
+            switch (queryType) {
+                case QUERY_INFO:
+                    snapshot = member.snapshot.withServerInfo(server.serverInfoRecord, time);
+                    break;
+                case QUERY_PLAYERS:
+                    snapshot = member.snapshot.withPlayers(server.playerList, time);
+                    break;
+                default:
+                    snapshot = member.snapshot.withRules(server.rulesHash, time);
+            }
+        }
+        member.snapshot = snapshot;
+
+        for (FleetListener listener : this.listeners) {
+            try {
+                listener.snapshotUpdated(snapshot, queryType);
+            } catch (RuntimeException e) {
+                LOG.warn("Fleet listener failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * A server of this fleet and the state of its refreshes
+     */
+    private static class Member {
+
+        final InetSocketAddress address;
+
+        final boolean[] due;
+
+        int inFlight;
+
+        final boolean[] pending;
+
+        boolean queued;
+
+        final GameServer server;
+
+        ServerSnapshot snapshot;
+
+        Member(InetSocketAddress address, GameServer server) {
+            this.address = address;
+            this.due = new boolean[4];
+            this.pending = new boolean[4];
+            this.server = server;
+            this.snapshot = new ServerSnapshot(address);
+        }
+
+        /**
+         * Returns the next query type that is due for this server and not
+         * already waiting for a reply
+         *
+         * @return The next due query type or <code>-1</code>
+         */
+        int nextDueQuery() {
+            for (int queryType = QUERY_INFO; queryType <= QUERY_RULES; queryType ++) {
+                if (this.due[queryType] && !this.pending[queryType]) {
+                    return queryType;
+                }
+            }
+
+            return -1;
+        }
+    }
+
+}
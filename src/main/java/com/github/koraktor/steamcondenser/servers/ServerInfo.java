@@ -0,0 +1,476 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.util.HashMap;
+
+import com.github.koraktor.steamcondenser.PacketBuffer;
+
+/**
+ * This class represents the basic information of a game server as replied to
+ * an A2S_INFO request
+ * <p>
+ * In contrast to the map returned by {@link GameServer#getServerInfo}, this
+ * stores the information in primitive fields. Strings that are usually
+ * shared by many servers, like map names, are taken from the string cache of
+ * {@link PacketBuffer}. Strings unique to a server, like its name, are kept
+ * as UTF-8 encoded bytes and only decoded when they are read. This makes
+ * instances small enough to keep a lot of them, e.g. as history of many
+ * servers.
+ * <p>
+ * Instances of this class are immutable. Numeric values are returned
+ * unsigned.
+ *
+ * @author Sebastian Staudt
+ * @see com.github.koraktor.steamcondenser.servers.packets.S2A_INFO_BasePacket#getServerInfo
+ */
+public class ServerInfo {
+
+    private static final byte EDF_GAME_ID     = (byte) 0x01;
+    private static final byte EDF_GAME_PORT   = (byte) 0x80;
+    private static final byte EDF_SERVER_ID   = (byte) 0x10;
+    private static final byte EDF_SERVER_TAGS = (byte) 0x20;
+    private static final byte EDF_SOURCE_TV   = (byte) 0x40;
+
+    private short appId;
+
+    private boolean botsKnown;
+
+    private byte dedicated;
+
+    private boolean detailed;
+
+    private byte extraDataFlags;
+
+    private String gameDescription;
+
+    private String gameDir;
+
+    private long gameId;
+
+    private String gameVersion;
+
+    private String mapName;
+
+    private byte maxPlayers;
+
+    private HashMap<String, Object> modInfo;
+
+    private byte networkVersion;
+
+    private byte numberOfBots;
+
+    private byte numberOfPlayers;
+
+    private byte operatingSystem;
+
+    private boolean passwordProtected;
+
+    private boolean secure;
+
+    private long serverId;
+
+    private byte[] serverIp;
+
+    private byte[] serverName;
+
+    private short serverPort;
+
+    private byte[] serverTags;
+
+    private byte[] tvName;
+
+    private short tvPort;
+
+    /**
+     * Reads the server information from the content of a S2A_INFO2 packet
+     *
+     * @param data The content of the packet
+     * @return The server information
+     */
+    public static ServerInfo fromInfo2(PacketBuffer data) {
+        ServerInfo info = new ServerInfo();
+
+        info.networkVersion = data.getByte();
+        info.serverName = data.getStringBytes();
+        info.mapName = data.getCachedString();
+        info.gameDir = data.getCachedString();
+        info.gameDescription = data.getCachedString();
+        info.appId = Short.reverseBytes(data.getShort());
+        info.numberOfPlayers = data.getByte();
+        info.maxPlayers = data.getByte();
+        info.numberOfBots = data.getByte();
+        info.botsKnown = true;
+        info.dedicated = data.getByte();
+        info.operatingSystem = data.getByte();
+        info.passwordProtected = data.getByte() == 1;
+        info.secure = data.getByte() == 1;
+        info.gameVersion = data.getCachedString();
+
+        if(data.remaining() > 0) {
+            info.extraDataFlags = data.getByte();
+
+            if((info.extraDataFlags & EDF_GAME_PORT) != 0) {
+                info.serverPort = Short.reverseBytes(data.getShort());
+            }
+
+            if((info.extraDataFlags & EDF_SERVER_ID) != 0) {
+                info.serverId = Long.reverseBytes((data.getInt() << 32) | data.getInt());
+            }
+
+            if((info.extraDataFlags & EDF_SOURCE_TV) != 0) {
+                info.tvPort = Short.reverseBytes(data.getShort());
+                info.tvName = data.getStringBytes();
+            }
+
+            if((info.extraDataFlags & EDF_SERVER_TAGS) != 0) {
+                info.serverTags = data.getStringBytes();
+            }
+
+            if((info.extraDataFlags & EDF_GAME_ID) != 0) {
+                info.gameId = Long.reverseBytes((data.getInt() << 32) | data.getInt());
+            }
+        }
+
+        return info;
+    }
+
+    /**
+     * Reads the server information from the content of an outdated
+     * S2A_INFO_DETAILED packet
+     *
+     * @param data The content of the packet
+     * @return The server information
+     */
+    public static ServerInfo fromInfoDetailed(PacketBuffer data) {
+        ServerInfo info = new ServerInfo();
+        info.detailed = true;
+
+        info.serverIp = data.getStringBytes();
+        info.serverName = data.getStringBytes();
+        info.mapName = data.getCachedString();
+        info.gameDir = data.getCachedString();
+        info.gameDescription = data.getCachedString();
+        info.numberOfPlayers = data.getByte();
+        info.maxPlayers = data.getByte();
+        info.networkVersion = data.getByte();
+        info.dedicated = data.getByte();
+        info.operatingSystem = data.getByte();
+        info.passwordProtected = data.getByte() == 1;
+        boolean isMod = data.getByte() == 1;
+
+        if(isMod) {
+            info.modInfo = new HashMap<String, Object>(6);
+            info.modInfo.put("urlInfo", data.getString());
+            info.modInfo.put("urlDl", data.getString());
+            data.getByte();
+            if(data.remaining() == 12) {
+                info.modInfo.put("modVersion", Integer.reverseBytes(data.getInt()));
+                info.modInfo.put("modSize", Integer.reverseBytes(data.getInt()));
+                info.modInfo.put("svOnly", data.getByte() == 1);
+                info.modInfo.put("clDll", data.getByte() == 1);
+                info.secure = data.getByte() == 1;
+                info.numberOfBots = data.getByte();
+                info.botsKnown = true;
+            }
+        } else {
+            info.secure = data.getByte() == 1;
+            info.numberOfBots = data.getByte();
+            info.botsKnown = true;
+        }
+
+        return info;
+    }
+
+    /**
+     * Creates a new empty server information object
+     */
+    private ServerInfo() {}
+
+    /**
+     * Returns the Steam application ID of the game
+     *
+     * @return The application ID or <code>0</code> if it is unknown
+     */
+    public int getAppId() {
+        return this.appId & 0xFFFF;
+    }
+
+    /**
+     * Returns the type of the server
+     *
+     * @return <code>'d'</code> for a dedicated server, <code>'l'</code> for a
+     *         listen server or <code>'p'</code> for a SourceTV relay
+     */
+    public char getDedicated() {
+        return (char) (this.dedicated & 0xFF);
+    }
+
+    /**
+     * Returns the description of the game, e.g. its full name
+     *
+     * @return The description of the game
+     */
+    public String getGameDescription() {
+        return this.gameDescription;
+    }
+
+    /**
+     * Returns the name of the game directory, e.g. <code>cstrike</code>
+     *
+     * @return The game directory
+     */
+    public String getGameDir() {
+        return this.gameDir;
+    }
+
+    /**
+     * Returns the full game ID of the server
+     *
+     * @return The game ID or <code>0</code> if it is unknown
+     */
+    public long getGameId() {
+        return this.gameId;
+    }
+
+    /**
+     * Returns the version of the game running on the server
+     *
+     * @return The game version or <code>null</code> if it is unknown
+     */
+    public String getGameVersion() {
+        return this.gameVersion;
+    }
+
+    /**
+     * Returns the name of the current map
+     *
+     * @return The map name
+     */
+    public String getMapName() {
+        return this.mapName;
+    }
+
+    /**
+     * Returns the maximum number of players on the server
+     *
+     * @return The maximum number of players
+     */
+    public int getMaxPlayers() {
+        return this.maxPlayers & 0xFF;
+    }
+
+    /**
+     * Returns information about the mod running on an outdated GoldSrc
+     * server
+     *
+     * @return The mod information or <code>null</code> if the server does not
+     *         run a mod or is not an outdated GoldSrc server
+     */
+    public HashMap<String, Object> getModInfo() {
+        return (this.modInfo == null) ? null : new HashMap<String, Object>(this.modInfo);
+    }
+
+    /**
+     * Returns the version of the network protocol used by the server
+     *
+     * @return The protocol version
+     */
+    public int getNetworkVersion() {
+        return this.networkVersion & 0xFF;
+    }
+
+    /**
+     * Returns the number of bots on the server
+     *
+     * @return The number of bots
+     */
+    public int getNumberOfBots() {
+        return this.numberOfBots & 0xFF;
+    }
+
+    /**
+     * Returns the number of players on the server, including bots
+     *
+     * @return The number of players
+     */
+    public int getNumberOfPlayers() {
+        return this.numberOfPlayers & 0xFF;
+    }
+
+    /**
+     * Returns the operating system of the server
+     *
+     * @return <code>'l'</code> for Linux, <code>'w'</code> for Windows or
+     *         <code>'m'</code> or <code>'o'</code> for Mac OS X
+     */
+    public char getOperatingSystem() {
+        return (char) (this.operatingSystem & 0xFF);
+    }
+
+    /**
+     * Returns the Steam ID of the server
+     *
+     * @return The server ID or <code>0</code> if it is unknown
+     */
+    public long getServerId() {
+        return this.serverId;
+    }
+
+    /**
+     * Returns the address of an outdated GoldSrc server as reported by the
+     * server itself
+     *
+     * @return The address or <code>null</code> if it is unknown
+     */
+    public String getServerIp() {
+        return PacketBuffer.decodeString(this.serverIp);
+    }
+
+    /**
+     * Returns the name of the server
+     *
+     * @return The server name
+     */
+    public String getServerName() {
+        return PacketBuffer.decodeString(this.serverName);
+    }
+
+    /**
+     * Returns the game port of the server
+     *
+     * @return The game port or <code>0</code> if it is unknown
+     */
+    public int getServerPort() {
+        return this.serverPort & 0xFFFF;
+    }
+
+    /**
+     * Returns the tags of the server
+     *
+     * @return The comma-separated tags or <code>null</code> if the server
+     *         has no tags
+     */
+    public String getServerTags() {
+        return PacketBuffer.decodeString(this.serverTags);
+    }
+
+    /**
+     * Returns the name of the SourceTV relay of the server
+     *
+     * @return The name of the relay or <code>null</code> if the server has no
+     *         SourceTV relay
+     */
+    public String getTvName() {
+        return PacketBuffer.decodeString(this.tvName);
+    }
+
+    /**
+     * Returns the port of the SourceTV relay of the server
+     *
+     * @return The port of the relay or <code>0</code> if the server has no
+     *         SourceTV relay
+     */
+    public int getTvPort() {
+        return this.tvPort & 0xFFFF;
+    }
+
+    /**
+     * Returns whether the server runs a mod
+     * <p>
+     * This is only reported by outdated GoldSrc servers.
+     *
+     * @return <code>true</code> if the server runs a mod
+     */
+    public boolean isMod() {
+        return this.modInfo != null;
+    }
+
+    /**
+     * Returns whether the server is protected by a password
+     *
+     * @return <code>true</code> if a password is required to join the server
+     */
+    public boolean isPasswordProtected() {
+        return this.passwordProtected;
+    }
+
+    /**
+     * Returns whether the server uses Valve Anti-Cheat
+     *
+     * @return <code>true</code> if the server is VAC secured
+     */
+    public boolean isSecure() {
+        return this.secure;
+    }
+
+    /**
+     * Returns the server information as a map like the one returned by
+     * {@link GameServer#getServerInfo}
+     * <p>
+     * The map uses the same keys and value types as previous versions.
+     *
+     * @return A new map with the server attributes and their values
+     */
+    public HashMap<String, Object> toMap() {
+        HashMap<String, Object> info = new HashMap<String, Object>(32);
+
+        info.put("serverName", this.getServerName());
+        info.put("mapName", this.mapName);
+        info.put("gameDir", this.gameDir);
+        info.put("gameDescription", this.gameDescription);
+        info.put("numberOfPlayers", this.numberOfPlayers);
+        info.put("maxPlayers", this.maxPlayers);
+        info.put("networkVersion", this.networkVersion);
+        info.put("dedicated", this.dedicated);
+        info.put("operatingSystem", this.operatingSystem);
+        info.put("passwordProtected", this.passwordProtected);
+        if(this.botsKnown) {
+            info.put("numberOfBots", this.numberOfBots);
+            info.put("secure", this.secure);
+        }
+
+        if(this.detailed) {
+            info.put("serverIp", this.getServerIp());
+            info.put("isMod", this.modInfo != null);
+            if(this.modInfo != null) {
+                info.put("modInfo", this.getModInfo());
+            }
+            return info;
+        }
+
+        info.put("appId", this.appId);
+        info.put("gameVersion", this.gameVersion);
+
+        if((this.extraDataFlags & EDF_GAME_PORT) != 0) {
+            info.put("serverPort", this.serverPort);
+        }
+        if((this.extraDataFlags & EDF_SERVER_ID) != 0) {
+            info.put("serverId", this.serverId);
+        }
+        if((this.extraDataFlags & EDF_SOURCE_TV) != 0) {
+            info.put("tvPort", this.tvPort);
+            info.put("tvName", this.getTvName());
+        }
+        if((this.extraDataFlags & EDF_SERVER_TAGS) != 0) {
+            info.put("serverTags", this.getServerTags());
+        }
+        if((this.extraDataFlags & EDF_GAME_ID) != 0) {
+            info.put("gameId", this.gameId);
+        }
+
+        return info;
+    }
+
+    @Override
+    public String toString() {
+        return this.getServerName() + " (" + this.mapName + ", " +
+            this.getNumberOfPlayers() + "/" + this.getMaxPlayers() + ")";
+    }
+
+}
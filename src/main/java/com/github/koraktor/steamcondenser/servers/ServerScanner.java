@@ -0,0 +1,702 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.A2S_INFO_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.A2S_PLAYER_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.A2S_RULES_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.S2C_CHALLENGE_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
+import com.github.koraktor.steamcondenser.servers.sockets.ChannelRegistration;
+import com.github.koraktor.steamcondenser.servers.sockets.ReplyFuture;
+import com.github.koraktor.steamcondenser.servers.sockets.SocketEventLoop;
+import com.github.koraktor.steamcondenser.servers.sockets.SplitPacketAssembler;
+import com.github.koraktor.steamcondenser.servers.sockets.SteamSocket;
+
+/**
+ * This class is used to query a large number of game servers at once
+ * <p>
+ * Instead of creating a {@link GameServer} instance and a socket for every
+ * server, the scanner sends its queries from one (or a few) unconnected UDP
+ * channels and matches the replies to the queried servers using their source
+ * address. Reading is done by the shared {@link SocketEventLoop}, so scanning
+ * thousands of servers does not need any additional threads.
+ * <p>
+ * Queries are sent at a limited rate to avoid dropped replies due to full
+ * socket buffers. Challenges requested by the servers are answered
+ * automatically. Split replies are expected to use the format of Source
+ * servers, their parts are collected by a {@link SplitPacketAssembler}.
+ *
+ * @author Sebastian Staudt
+ * @see ScanListener
+ */
+public class ServerScanner {
+
+    public static final int QUERY_INFO = GameServer.REQUEST_INFO;
+    public static final int QUERY_PLAYERS = GameServer.REQUEST_PLAYER;
+    public static final int QUERY_RULES = GameServer.REQUEST_RULES;
+
+    protected static final Logger LOG = LoggerFactory.getLogger(ServerScanner.class);
+
+    private static final int MAX_READS = 256;
+
+    private static final int RECEIVE_BUFFER_SIZE = 1 << 20;
+
+    private static final int SEND_INTERVAL = 10;
+
+    private static final int SPLIT_PACKETS_MAX_BYTES = 16 * 1024 * 1024;
+
+    private static final int SPLIT_PACKETS_MAX_COUNT = 4096;
+
+    private static final int SWEEP_INTERVAL = 50;
+
+    private AtomicLong bytesReceived;
+
+    private volatile ChallengeCache challengeCache;
+
+    private DatagramChannel[] channels;
+
+    private volatile boolean closed;
+
+    private SocketEventLoop eventLoop;
+
+    private AtomicLong failures;
+
+    private long lastSendTime;
+
+    private HashMap<InetSocketAddress, Target> pendingTargets;
+
+    private volatile int rate;
+
+    private ByteBuffer receiveBuffer;
+
+    private ChannelRegistration[] registrations;
+
+    private AtomicLong repliesReceived;
+
+    private AtomicLong requestsSent;
+
+    private double sendCredit;
+
+    private LinkedList<Target> sendQueue;
+
+    private boolean sending;
+
+    private volatile long startTime;
+
+    private SplitPacketAssembler splitPacketAssembler;
+
+    private boolean sweeping;
+
+    private volatile int timeout;
+
+    private AtomicLong timeouts;
+
+    /**
+     * Creates a new scanner using a single UDP channel
+     *
+     * @throws SteamCondenserException if the channel cannot be opened
+     */
+    public ServerScanner() throws SteamCondenserException {
+        this(1);
+    }
+
+    /**
+     * Creates a new scanner using the given number of UDP channels
+     * <p>
+     * The servers are distributed over the channels by their address. Using
+     * more than one channel may help if the receive buffer of a single socket
+     * is too small for the replies of very fast scans.
+     *
+     * @param channelCount The number of channels to use
+     * @throws SteamCondenserException if the channels cannot be opened
+     */
+    public ServerScanner(int channelCount) throws SteamCondenserException {
+        if (channelCount < 1) {
+            throw new IllegalArgumentException("The scanner needs at least one channel.");
+        }
+
+        this.bytesReceived = new AtomicLong();
+        this.challengeCache = ChallengeCache.getInstance();
+        this.eventLoop = SocketEventLoop.getInstance();
+        this.failures = new AtomicLong();
+        this.pendingTargets = new HashMap<InetSocketAddress, Target>();
+        this.rate = 1000;
+        this.receiveBuffer = ByteBuffer.allocate(1500);
+        this.repliesReceived = new AtomicLong();
+        this.requestsSent = new AtomicLong();
+        this.sendQueue = new LinkedList<Target>();
+        this.splitPacketAssembler = new SplitPacketAssembler(SteamSocket.getTimeout(), SPLIT_PACKETS_MAX_COUNT, SPLIT_PACKETS_MAX_BYTES);
+        this.timeout = SteamSocket.getTimeout();
+        this.timeouts = new AtomicLong();
+
+        this.channels = new DatagramChannel[channelCount];
+        this.registrations = new ChannelRegistration[channelCount];
+        try {
+            for (int i = 0; i < channelCount; i ++) {
+                final DatagramChannel channel = DatagramChannel.open();
+                this.channels[i] = channel;
+                channel.configureBlocking(false);
+                channel.socket().setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+                channel.socket().bind(null);
+
+                this.registrations[i] = this.eventLoop.register(channel);
+                this.registrations[i].setReadHandler(new Runnable() {
+                    public void run() {
+                        receive(channel);
+                    }
+                });
+            }
+        } catch (IOException e) {
+            this.close();
+            throw new SteamCondenserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes the channels of this scanner
+     * <p>
+     * Servers that have not been scanned yet are reported as failed.
+     */
+    public void close() {
+        this.closed = true;
+
+        for (int i = 0; i < this.channels.length; i ++) {
+            if (this.registrations[i] != null) {
+                this.registrations[i].setReadHandler(null);
+                this.registrations[i].cancel();
+            }
+            if (this.channels[i] != null) {
+                try {
+                    this.channels[i].close();
+                } catch (IOException e) {
+                    LOG.warn("Closing scanner channel failed: " + e.getMessage());
+                }
+            }
+        }
+
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                SteamCondenserException error = new SteamCondenserException("Scanner has been closed.");
+                List<Target> targets = new ArrayList<Target>(sendQueue);
+                targets.addAll(pendingTargets.values());
+                sendQueue.clear();
+                pendingTargets.clear();
+                for (Target target : targets) {
+                    finish(target, null, error);
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the number of bytes received by this scanner
+     *
+     * @return The number of bytes received
+     */
+    public long getBytesReceived() {
+        return this.bytesReceived.get();
+    }
+
+    /**
+     * Returns the number of servers that could not be queried for other
+     * reasons than a timeout, e.g. malformed replies
+     *
+     * @return The number of failed servers
+     */
+    public long getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Returns the number of replies received by this scanner
+     *
+     * @return The number of replies
+     */
+    public long getRepliesReceived() {
+        return this.repliesReceived.get();
+    }
+
+    /**
+     * Returns the average number of replies received per second since the
+     * first query has been sent
+     *
+     * @return The number of replies per second
+     */
+    public double getRepliesPerSecond() {
+        long duration = System.currentTimeMillis() - this.startTime;
+        if (this.startTime == 0 || duration <= 0) {
+            return 0;
+        }
+
+        return this.repliesReceived.get() * 1000.0 / duration;
+    }
+
+    /**
+     * Returns the number of requests sent by this scanner, including
+     * requests repeated with a challenge number
+     *
+     * @return The number of requests
+     */
+    public long getRequestsSent() {
+        return this.requestsSent.get();
+    }
+
+    /**
+     * Returns the number of servers that did not reply in time
+     *
+     * @return The number of timeouts
+     */
+    public long getTimeouts() {
+        return this.timeouts.get();
+    }
+
+    /**
+     * Sets the maximum number of requests sent per second
+     *
+     * @param rate The number of requests per second or <code>0</code> to send
+     *        as fast as possible
+     */
+    public void setRate(int rate) {
+        this.rate = rate;
+    }
+
+    /**
+     * Sets the cache for the challenge numbers of servers
+     * <p>
+     * Player and rules queries use the cached challenge number of a server,
+     * so the server does not have to be asked for it first. By default, the
+     * challenge cache shared by the whole process is used.
+     *
+     * @param challengeCache The challenge cache to use or <code>null</code>
+     *        to disable caching of challenge numbers
+     * @see ChallengeCache#getInstance
+     */
+    public void setChallengeCache(ChallengeCache challengeCache) {
+        this.challengeCache = challengeCache;
+    }
+
+    /**
+     * Sets the amount of milliseconds to wait for the reply of a single server
+     * <p>
+     * Defaults to the timeout of the sockets.
+     *
+     * @param timeout The timeout in milliseconds
+     * @see SteamSocket#setTimeout
+     */
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    /**
+     * Queries all the given servers
+     * <p>
+     * The results are reported to the given listener as soon as they are
+     * available. Every server is reported exactly once, either as replied or
+     * as failed.
+     *
+     * @param addresses The addresses of the servers to query
+     * @param queryType The query to send, one of {@link #QUERY_INFO},
+     *        {@link #QUERY_PLAYERS} or {@link #QUERY_RULES}
+     * @param listener The listener to report the results to
+     * @return A future that is done once all servers have been reported
+     * @throws SteamCondenserException if this scanner has been closed
+     */
+    public Future<Void> scan(Collection<InetSocketAddress> addresses, int queryType, ScanListener listener)
+            throws SteamCondenserException {
+        if (queryType != QUERY_INFO && queryType != QUERY_PLAYERS &&
+            queryType != QUERY_RULES) {
+            throw new IllegalArgumentException("Unknown query type " + queryType + ".");
+        }
+        if (this.closed) {
+            throw new SteamCondenserException("Scanner has been closed.");
+        }
+
+        final Scan scan = new Scan(listener, addresses.size());
+        if (addresses.isEmpty()) {
+            scan.future.complete(null);
+            return scan.future;
+        }
+
+        final List<Target> targets = new ArrayList<Target>(addresses.size());
+        for (InetSocketAddress address : addresses) {
+            targets.add(new Target(address, queryType, scan));
+        }
+
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                sendQueue.addAll(targets);
+                startSending();
+            }
+        });
+
+        return scan.future;
+    }
+
+    /**
+     * Reports the result for the given target to the listener of its scan
+     *
+     * @param target The target that has been scanned
+     * @param reply The reply of the server or <code>null</code> if the query
+     *        failed
+     * @param error The reason of the failure
+     */
+    private void finish(Target target, SteamPacket reply, Exception error) {
+        if (this.pendingTargets.get(target.address) == target) {
+            this.pendingTargets.remove(target.address);
+            this.splitPacketAssembler.remove(target.address);
+        }
+
+        Scan scan = target.scan;
+        try {
+            if (reply != null) {
+                this.repliesReceived.incrementAndGet();
+                scan.listener.serverReplied(target.address, reply);
+            } else {
+                if (error instanceof TimeoutException) {
+                    this.timeouts.incrementAndGet();
+                } else {
+                    this.failures.incrementAndGet();
+                }
+                scan.listener.serverFailed(target.address, error);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Unexpected error in scan listener", e);
+        }
+
+        if (-- scan.remaining == 0) {
+            LOG.info("Scanned " + scan.size + " servers in " + (System.currentTimeMillis() - scan.startTime) + " ms");
+            scan.future.complete(null);
+        }
+    }
+
+    /**
+     * Handles a reply packet received from the given target
+     *
+     * @param target The target that sent the packet
+     * @param packet The packet received
+     * @throws SteamCondenserException if the packet is not a valid reply to
+     *         the query
+     */
+    private void handleReply(Target target, SteamPacket packet)
+            throws SteamCondenserException {
+        if (packet instanceof S2C_CHALLENGE_Packet) {
+            if (target.queryType == QUERY_INFO || target.challenged) {
+                throw new PacketFormatException("Server replied with a challenge number again.");
+            }
+
+            target.challenge = ((S2C_CHALLENGE_Packet) packet).getChallengeNumber();
+            target.challenged = true;
+            ChallengeCache challengeCache = this.challengeCache;
+            if (challengeCache != null) {
+                challengeCache.put(target.address, target.challenge);
+            }
+            this.pendingTargets.remove(target.address);
+            if (!this.send(target)) {
+                this.sendQueue.addFirst(target);
+                this.startSending();
+            }
+            return;
+        }
+
+        if (!GameServer.getExpectedResponse(target.queryType).isInstance(packet)) {
+            throw new PacketFormatException("Unexpected reply of type \"" + packet.getClass().getSimpleName() + "\" received.");
+        }
+
+        this.finish(target, packet, null);
+    }
+
+    /**
+     * Reads a single datagram received from the given target
+     *
+     * @param target The target that sent the datagram
+     * @param buffer The buffer containing the datagram
+     * @return The reply packet or <code>null</code> if more parts of a split
+     *         reply are needed
+     * @throws SteamCondenserException if the datagram cannot be parsed
+     */
+    private SteamPacket readPacket(Target target, ByteBuffer buffer)
+            throws SteamCondenserException {
+        if (buffer.remaining() < 5) {
+            throw new PacketFormatException("Reply is too short.");
+        }
+
+        int header = Integer.reverseBytes(buffer.getInt());
+        if (header == -1) {
+            byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return SteamPacketFactory.getPacketFromData(data);
+        } else if (header == -2) {
+            return this.splitPacketAssembler.addSourcePacket(target.address, buffer);
+        }
+
+        throw new PacketFormatException("Reply has wrong packet header.");
+    }
+
+    /**
+     * Reads all datagrams available on the given channel and dispatches them
+     * to the queried targets
+     * <p>
+     * This is run by the event loop whenever the channel is readable.
+     *
+     * @param channel The channel to read from
+     */
+    private void receive(DatagramChannel channel) {
+        for (int i = 0; i < MAX_READS; i ++) {
+            SocketAddress sender;
+            this.receiveBuffer.clear();
+            try {
+                sender = channel.receive(this.receiveBuffer);
+            } catch (IOException e) {
+                LOG.warn("Receiving scan reply failed: " + e.getMessage());
+                return;
+            }
+            if (sender == null) {
+                return;
+            }
+
+            this.receiveBuffer.flip();
+            this.bytesReceived.addAndGet(this.receiveBuffer.remaining());
+
+            Target target = this.pendingTargets.get(sender);
+            if (target == null) {
+                LOG.debug("Ignoring unexpected reply from " + sender);
+                continue;
+            }
+
+            try {
+                SteamPacket packet = this.readPacket(target, this.receiveBuffer);
+                if (packet != null) {
+                    this.handleReply(target, packet);
+                }
+            } catch (SteamCondenserException e) {
+                this.finish(target, null, e);
+            }
+        }
+    }
+
+    /**
+     * Sends the query to the given target
+     *
+     * @param target The target to query
+     * @return <code>false</code> if the request could not be sent because the
+     *         socket's buffer is full
+     */
+    private boolean send(Target target) {
+        SteamPacket packet;
+        if (target.queryType != QUERY_INFO && target.challenge == ChallengeCache.NO_CHALLENGE) {
+            ChallengeCache challengeCache = this.challengeCache;
+            if (challengeCache != null) {
+                target.challenge = challengeCache.get(target.address);
+            }
+        }
+
+        if (target.queryType == QUERY_INFO) {
+            packet = new A2S_INFO_Packet();
+        } else if (target.queryType == QUERY_PLAYERS) {
+            packet = new A2S_PLAYER_Packet(target.challenge);
+        } else {
+            packet = new A2S_RULES_Packet(target.challenge);
+        }
+
+        if (target.address.isUnresolved()) {
+            this.finish(target, null, new SteamCondenserException("Unresolved server address " + target.address));
+            return true;
+        }
+
+        DatagramChannel channel = this.channels[(target.address.hashCode() & 0x7FFFFFFF) % this.channels.length];
+        try {
+            if (channel.send(ByteBuffer.wrap(packet.getBytes()), target.address) == 0) {
+                return false;
+            }
+        } catch (IOException e) {
+            this.finish(target, null, new SteamCondenserException(e.getMessage(), e));
+            return true;
+        }
+
+        long now = System.currentTimeMillis();
+        if (this.startTime == 0) {
+            this.startTime = now;
+        }
+        target.deadline = now + this.timeout;
+        this.pendingTargets.put(target.address, target);
+        this.requestsSent.incrementAndGet();
+
+        if (!this.sweeping) {
+            this.sweeping = true;
+            this.eventLoop.schedule(new Runnable() {
+                public void run() {
+                    sweepTimeouts();
+                }
+            }, SWEEP_INTERVAL);
+        }
+
+        return true;
+    }
+
+    /**
+     * Sends as many queued requests as allowed by the rate limit
+     * <p>
+     * This is rescheduled on the event loop until the queue is empty.
+     */
+    private void sendQueuedRequests() {
+        long now = System.currentTimeMillis();
+        int rate = this.rate;
+        if (rate > 0) {
+            double maxCredit = Math.max(1, rate * SEND_INTERVAL / 500.0);
+            this.sendCredit = Math.min(maxCredit, this.sendCredit + (now - this.lastSendTime) * rate / 1000.0);
+        }
+        this.lastSendTime = now;
+
+        List<Target> deferred = null;
+        while (!this.sendQueue.isEmpty() && (rate <= 0 || this.sendCredit >= 1)) {
+            Target target = this.sendQueue.poll();
+            if (this.pendingTargets.containsKey(target.address)) {
+                if (deferred == null) {
+                    deferred = new ArrayList<Target>();
+                }
+                deferred.add(target);
+                continue;
+            }
+
+            if (!this.send(target)) {
+                this.sendQueue.addFirst(target);
+                break;
+            }
+            this.sendCredit --;
+        }
+        if (deferred != null) {
+            this.sendQueue.addAll(deferred);
+        }
+
+        if (this.sendQueue.isEmpty() || this.closed) {
+            this.sending = false;
+        } else {
+            this.eventLoop.schedule(new Runnable() {
+                public void run() {
+                    sendQueuedRequests();
+                }
+            }, SEND_INTERVAL);
+        }
+    }
+
+    /**
+     * Starts sending the queued requests if this is not already in progress
+     */
+    private void startSending() {
+        if (!this.sending) {
+            this.sending = true;
+            this.lastSendTime = System.currentTimeMillis();
+            this.sendCredit = 1;
+            this.sendQueuedRequests();
+        }
+    }
+
+    /**
+     * Reports all targets that did not reply in time as timed out
+     * <p>
+     * This is rescheduled on the event loop while there are pending targets.
+     */
+    private void sweepTimeouts() {
+        long now = System.currentTimeMillis();
+        List<Target> expired = new ArrayList<Target>();
+        Iterator<Target> targets = this.pendingTargets.values().iterator();
+        while (targets.hasNext()) {
+            Target target = targets.next();
+            if (target.deadline <= now) {
+                targets.remove();
+                expired.add(target);
+            }
+        }
+
+        for (Target target : expired) {
+            this.splitPacketAssembler.remove(target.address);
+            this.finish(target, null, new TimeoutException());
+        }
+        this.splitPacketAssembler.expire();
+
+        if (this.pendingTargets.isEmpty()) {
+            this.sweeping = false;
+        } else {
+            this.eventLoop.schedule(new Runnable() {
+                public void run() {
+                    sweepTimeouts();
+                }
+            }, SWEEP_INTERVAL);
+        }
+    }
+
+    /**
+     * The state of a single call to {@link #scan}
+     */
+    private static class Scan {
+
+        final ReplyFuture<Void> future;
+
+        final ScanListener listener;
+
+        int remaining;
+
+        final int size;
+
+        final long startTime;
+
+        Scan(ScanListener listener, int size) {
+            this.future = new ReplyFuture<Void>();
+            this.listener = listener;
+            this.remaining = size;
+            this.size = size;
+            this.startTime = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * The state of the query to a single server
+     */
+    private static class Target {
+
+        final InetSocketAddress address;
+
+        int challenge;
+
+        boolean challenged;
+
+        long deadline;
+
+        final int queryType;
+
+        final Scan scan;
+
+        Target(InetSocketAddress address, int queryType, Scan scan) {
+            this.address = address;
+            this.challenge = -1;
+            this.queryType = queryType;
+            this.scan = scan;
+        }
+    }
+}
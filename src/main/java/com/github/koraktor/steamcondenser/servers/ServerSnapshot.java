@@ -0,0 +1,181 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * This class represents the state of a game server as known to a {@link
+ * ServerFleet} at a specific time
+ * <p>
+ * Snapshots cannot be changed. Each refresh of a server creates a new
+ * snapshot sharing the data that has not been refreshed with the previous
+ * one. Data that has not been received yet is <code>null</code>.
+ *
+ * @author Sebastian Staudt
+ * @see FleetListener#snapshotUpdated
+ */
+public class ServerSnapshot {
+
+    private InetSocketAddress address;
+
+    private PlayerList players;
+
+    private long playersTime;
+
+    private Map<String, String> rules;
+
+    private long rulesTime;
+
+    private ServerInfo serverInfo;
+
+    private long serverInfoTime;
+
+    /**
+     * Creates a new empty snapshot for the server with the given address
+     *
+     * @param address The address of the server
+     */
+    ServerSnapshot(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Creates a copy of the given snapshot
+     *
+     * @param snapshot The snapshot to copy
+     */
+    private ServerSnapshot(ServerSnapshot snapshot) {
+        this.address = snapshot.address;
+        this.players = snapshot.players;
+        this.playersTime = snapshot.playersTime;
+        this.rules = snapshot.rules;
+        this.rulesTime = snapshot.rulesTime;
+        this.serverInfo = snapshot.serverInfo;
+        this.serverInfoTime = snapshot.serverInfoTime;
+    }
+
+    /**
+     * Returns the address of the server
+     *
+     * @return The address of the server
+     */
+    public InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * Returns the players on the server
+     *
+     * @return The players on the server or <code>null</code> if they have
+     *         not been received yet
+     */
+    public PlayerList getPlayers() {
+        return this.players;
+    }
+
+    /**
+     * Returns the time the players have been received
+     *
+     * @return The time in milliseconds since the epoch or <code>0</code>
+     */
+    public long getPlayersTime() {
+        return this.playersTime;
+    }
+
+    /**
+     * Returns the rules (CVARs) of the server
+     *
+     * @return The rules of the server or <code>null</code> if they have not
+     *         been received yet
+     */
+    public Map<String, String> getRules() {
+        return this.rules;
+    }
+
+    /**
+     * Returns the time the rules have been received
+     *
+     * @return The time in milliseconds since the epoch or <code>0</code>
+     */
+    public long getRulesTime() {
+        return this.rulesTime;
+    }
+
+    /**
+     * Returns the information on the server
+     *
+     * @return The server information or <code>null</code> if it has not
+     *         been received yet
+     */
+    public ServerInfo getServerInfo() {
+        return this.serverInfo;
+    }
+
+    /**
+     * Returns the time the server information has been received
+     *
+     * @return The time in milliseconds since the epoch or <code>0</code>
+     */
+    public long getServerInfoTime() {
+        return this.serverInfoTime;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerSnapshot[" + this.address + "]";
+    }
+
+    /**
+     * Returns a copy of this snapshot with the given players
+     *
+     * @param players The players on the server
+     * @param time The time the players have been received
+     * @return The new snapshot
+     */
+    ServerSnapshot withPlayers(PlayerList players, long time) {
+        ServerSnapshot snapshot = new ServerSnapshot(this);
+        snapshot.players = players;
+        snapshot.playersTime = time;
+
+        return snapshot;
+    }
+
+    /**
+     * Returns a copy of this snapshot with the given rules
+     *
+     * @param rules The rules of the server
+     * @param time The time the rules have been received
+     * @return The new snapshot
+     */
+    ServerSnapshot withRules(Map<String, String> rules, long time) {
+        ServerSnapshot snapshot = new ServerSnapshot(this);
+        snapshot.rules = (rules == null) ? null : Collections.unmodifiableMap(rules);
+        snapshot.rulesTime = time;
+
+        return snapshot;
+    }
+
+    /**
+     * Returns a copy of this snapshot with the given server information
+     *
+     * @param serverInfo The information on the server
+     * @param time The time the information has been received
+     * @return The new snapshot
+     */
+    ServerSnapshot withServerInfo(ServerInfo serverInfo, long time) {
+        ServerSnapshot snapshot = new ServerSnapshot(this);
+        snapshot.serverInfo = serverInfo;
+        snapshot.serverInfoTime = time;
+
+        return snapshot;
+    }
+
+}
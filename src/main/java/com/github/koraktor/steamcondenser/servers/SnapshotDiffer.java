@@ -0,0 +1,248 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is used to detect the changes between successive replies of game
+ * servers
+ * <p>
+ * The static methods compare two results of the same query, e.g. the player
+ * lists of two subsequent player queries. Added to a {@link ServerFleet}, a
+ * differ remembers the latest snapshot of every server and reports the
+ * changes of each new snapshot to its {@link DeltaListener}, so clients only
+ * have to receive the full state of a server once.
+ * <p>
+ * Players are identified by their names, as the IDs in player replies are
+ * not stable. Players with the same name are matched in the order they are
+ * listed by the server. No changes are reported for the first result of a
+ * query.
+ *
+ * @author Sebastian Staudt
+ */
+public class SnapshotDiffer implements FleetListener {
+
+    private DeltaListener listener;
+
+    private Map<InetSocketAddress, ServerSnapshot> snapshots;
+
+    /**
+     * Creates a new differ reporting changes to the given listener
+     *
+     * @param listener The listener to report changes to
+     */
+    public SnapshotDiffer(DeltaListener listener) {
+        this.listener = listener;
+        this.snapshots = new ConcurrentHashMap<InetSocketAddress, ServerSnapshot>();
+    }
+
+    /**
+     * Returns the changes between two snapshots of the same server
+     * <p>
+     * Only data that has been refreshed in the newer snapshot is compared.
+     *
+     * @param previous The older snapshot of the server
+     * @param current The newer snapshot of the server
+     * @return The changes between both snapshots
+     */
+    public static List<ServerDelta> diff(ServerSnapshot previous, ServerSnapshot current) {
+        List<ServerDelta> deltas = new ArrayList<ServerDelta>();
+        if (previous.getServerInfo() != current.getServerInfo()) {
+            diffServerInfo(previous.getServerInfo(), current.getServerInfo(), deltas);
+        }
+        if (previous.getPlayers() != current.getPlayers()) {
+            diffPlayers(previous.getPlayers(), current.getPlayers(), deltas);
+        }
+        if (previous.getRules() != current.getRules()) {
+            diffRules(previous.getRules(), current.getRules(), deltas);
+        }
+
+        return deltas;
+    }
+
+    /**
+     * Returns the players that have joined or left and the players whose
+     * score has changed
+     *
+     * @param previous The players of the older reply
+     * @param current The players of the newer reply
+     * @return The changes between both player lists
+     */
+    public static List<ServerDelta> diffPlayers(PlayerList previous, PlayerList current) {
+        List<ServerDelta> deltas = new ArrayList<ServerDelta>();
+        diffPlayers(previous, current, deltas);
+
+        return deltas;
+    }
+
+    /**
+     * Returns the rules that have been added, removed or changed
+     *
+     * @param previous The rules of the older reply
+     * @param current The rules of the newer reply
+     * @return The changes between both rule sets
+     */
+    public static List<ServerDelta> diffRules(Map<String, String> previous, Map<String, String> current) {
+        List<ServerDelta> deltas = new ArrayList<ServerDelta>();
+        diffRules(previous, current, deltas);
+
+        return deltas;
+    }
+
+    /**
+     * Returns the changes between two replies to an information query
+     *
+     * @param previous The information of the older reply
+     * @param current The information of the newer reply
+     * @return The changes between both replies
+     */
+    public static List<ServerDelta> diffServerInfo(ServerInfo previous, ServerInfo current) {
+        List<ServerDelta> deltas = new ArrayList<ServerDelta>();
+        diffServerInfo(previous, current, deltas);
+
+        return deltas;
+    }
+
+    /**
+     * Forgets the latest snapshot of the server with the given address
+     * <p>
+     * This should be called when a server is removed from the fleet.
+     *
+     * @param address The address of the server
+     */
+    public void remove(InetSocketAddress address) {
+        this.snapshots.remove(address);
+    }
+
+    /**
+     * Failed refreshes do not change the snapshot of a server, so they are
+     * ignored
+     */
+    public void refreshFailed(InetSocketAddress address, int queryType, Exception error) {}
+
+    /**
+     * Compares the given snapshot with the previous snapshot of the same
+     * server and reports the changes to the listener
+     *
+     * @param snapshot The new snapshot of the server
+     * @param queryType The type of the query that has been answered
+     */
+    public void snapshotUpdated(ServerSnapshot snapshot, int queryType) {
+        ServerSnapshot previous = this.snapshots.put(snapshot.getAddress(), snapshot);
+        if (previous == null) {
+            return;
+        }
+
+        List<ServerDelta> deltas = diff(previous, snapshot);
+        if (!deltas.isEmpty()) {
+            this.listener.serverChanged(snapshot, deltas);
+        }
+    }
+
+    /**
+     * Appends the changes between two player lists to the given deltas
+     *
+     * @param previous The players of the older reply
+     * @param current The players of the newer reply
+     * @param deltas The list to append the changes to
+     */
+    private static void diffPlayers(PlayerList previous, PlayerList current, List<ServerDelta> deltas) {
+        if (previous == null || current == null) {
+            return;
+        }
+
+        boolean[] matched = new boolean[previous.size()];
+        HashMap<String, LinkedList<Integer>> previousIndices = new HashMap<String, LinkedList<Integer>>();
+        for (int i = 0; i < previous.size(); i ++) {
+            String name = previous.getName(i);
+            LinkedList<Integer> indices = previousIndices.get(name);
+            if (indices == null) {
+                indices = new LinkedList<Integer>();
+                previousIndices.put(name, indices);
+            }
+            indices.add(i);
+        }
+
+        for (int i = 0; i < current.size(); i ++) {
+            String name = current.getName(i);
+            int score = current.getScore(i);
+            LinkedList<Integer> indices = previousIndices.get(name);
+            if (indices == null || indices.isEmpty()) {
+                deltas.add(new ServerDelta(ServerDelta.Type.PLAYER_JOINED, name, null, Integer.toString(score)));
+                continue;
+            }
+
+            int index = indices.removeFirst();
+            matched[index] = true;
+            int previousScore = previous.getScore(index);
+            if (previousScore != score) {
+                deltas.add(new ServerDelta(ServerDelta.Type.PLAYER_SCORE_CHANGED, name, Integer.toString(previousScore), Integer.toString(score)));
+            }
+        }
+
+        for (int i = 0; i < previous.size(); i ++) {
+            if (!matched[i]) {
+                deltas.add(new ServerDelta(ServerDelta.Type.PLAYER_LEFT, previous.getName(i), Integer.toString(previous.getScore(i)), null));
+            }
+        }
+    }
+
+    /**
+     * Appends the changes between two rule sets to the given deltas
+     *
+     * @param previous The rules of the older reply
+     * @param current The rules of the newer reply
+     * @param deltas The list to append the changes to
+     */
+    private static void diffRules(Map<String, String> previous, Map<String, String> current, List<ServerDelta> deltas) {
+        if (previous == null || current == null) {
+            return;
+        }
+
+        for (Map.Entry<String, String> rule : current.entrySet()) {
+            String previousValue = previous.get(rule.getKey());
+            if (!rule.getValue().equals(previousValue)) {
+                deltas.add(new ServerDelta(ServerDelta.Type.RULE_CHANGED, rule.getKey(), previousValue, rule.getValue()));
+            }
+        }
+
+        for (Map.Entry<String, String> rule : previous.entrySet()) {
+            if (!current.containsKey(rule.getKey())) {
+                deltas.add(new ServerDelta(ServerDelta.Type.RULE_CHANGED, rule.getKey(), rule.getValue(), null));
+            }
+        }
+    }
+
+    /**
+     * Appends the changes between two replies to an information query to
+     * the given deltas
+     *
+     * @param previous The information of the older reply
+     * @param current The information of the newer reply
+     * @param deltas The list to append the changes to
+     */
+    private static void diffServerInfo(ServerInfo previous, ServerInfo current, List<ServerDelta> deltas) {
+        if (previous == null || current == null) {
+            return;
+        }
+
+        String previousMap = previous.getMapName();
+        String map = current.getMapName();
+        if ((previousMap == null) ? map != null : !previousMap.equals(map)) {
+            deltas.add(new ServerDelta(ServerDelta.Type.MAP_CHANGED, null, previousMap, map));
+        }
+    }
+
+}
@@ -8,8 +8,11 @@
 package com.github.koraktor.steamcondenser.servers;
 
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 
 import org.apache.commons.lang3.StringUtils;
@@ -24,6 +27,8 @@ import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONExecRequestPa
 import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONExecResponsePacket;
 import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONPacket;
 import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONTerminator;
+import com.github.koraktor.steamcondenser.servers.sockets.RCONConnectionPool;
+import com.github.koraktor.steamcondenser.servers.sockets.RCONResponseListener;
 import com.github.koraktor.steamcondenser.servers.sockets.RCONSocket;
 import com.github.koraktor.steamcondenser.servers.sockets.SourceSocket;
 
@@ -40,6 +45,8 @@ import com.github.koraktor.steamcondenser.servers.sockets.SourceSocket;
  */
 public class SourceServer extends GameServer {
 
+    protected RCONConnectionPool rconPool;
+
     protected RCONSocket rconSocket;
 
     /**
@@ -110,13 +117,18 @@ public class SourceServer extends GameServer {
     }
 
     /**
-     * Disconnects the TCP-based channel used for RCON commands
+     * Disconnects the TCP-based channels used for RCON commands
      *
+     * @see RCONConnectionPool#close
      * @see RCONSocket#close
      */
     public void disconnect() {
         super.disconnect();
 
+        if (this.rconPool != null) {
+            this.rconPool.close();
+            this.rconPool = null;
+        }
         this.rconSocket.close();
     }
 
@@ -157,8 +169,61 @@ public class SourceServer extends GameServer {
         return this.rconAuthenticated;
     }
 
+    /**
+     * Opens persistent RCON connections to the server using at most
+     * {@link RCONConnectionPool#DEFAULT_MAX_CONNECTIONS} connections
+     *
+     * @param password The RCON password of the server
+     * @return whether authentication was successful
+     * @see #rconConnect(String, int)
+     * @throws RCONBanException if banned by the server
+     * @throws SteamCondenserException if the connection fails
+     * @throws TimeoutException if the request times out
+     */
+    public boolean rconConnect(String password)
+            throws TimeoutException, SteamCondenserException {
+        return this.rconConnect(password, RCONConnectionPool.DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Opens persistent RCON connections to the server
+     * <p>
+     * Once connected, all RCON commands are sent using these connections.
+     * They are authenticated again automatically if the server drops the
+     * authentication and multiple commands may be executed at the same time
+     * using {@link #rconExecAsync}.
+     *
+     * @param password The RCON password of the server
+     * @param maxConnections The maximum number of connections to open
+     * @return whether authentication was successful
+     * @throws RCONBanException if banned by the server
+     * @throws SteamCondenserException if the connection fails
+     * @throws TimeoutException if the request times out
+     */
+    public boolean rconConnect(String password, int maxConnections)
+            throws TimeoutException, SteamCondenserException {
+        if (this.rconPool != null) {
+            this.rconPool.close();
+        }
+
+        RCONConnectionPool rconPool = new RCONConnectionPool(new InetSocketAddress(this.ipAddress, this.port), password, maxConnections);
+        this.rconAuthenticated = rconPool.authenticate();
+        if (this.rconAuthenticated) {
+            this.rconPool = rconPool;
+        } else {
+            rconPool.close();
+            this.rconPool = null;
+        }
+
+        return this.rconAuthenticated;
+    }
+
     /**
      * Remotely executes a command on the server via RCON
+     * <p>
+     * If persistent connections have been opened using {@link #rconConnect},
+     * these are used for executing the command. The timeout applies to each
+     * packet of the reply, so long output may take longer in total.
      *
      * @param command The command to execute on the server via RCON
      * @return The output of the executed command
@@ -175,6 +240,10 @@ public class SourceServer extends GameServer {
             throw new RCONNoAuthException();
         }
 
+        if (this.rconPool != null) {
+            return RCONConnectionPool.await(this.rconExecAsync(command));
+        }
+
         this.rconSocket.send(new RCONExecRequestPacket(this.rconRequestId, command));
 
         boolean isMulti = false;
@@ -203,4 +272,88 @@ public class SourceServer extends GameServer {
         return StringUtils.join(response.toArray()).trim();
     }
 
+    /**
+     * Remotely executes a command on the server via RCON and passes its
+     * output to the given listener while it is received
+     * <p>
+     * If persistent connections have been opened using {@link #rconConnect},
+     * the output is passed to the listener packet by packet as soon as it
+     * arrives and is never buffered completely. Otherwise the command is
+     * executed using {@link #rconExec(String)} and the complete output is
+     * passed to the listener at once.
+     *
+     * @param command The command to execute on the server via RCON
+     * @param listener The listener receiving the output of the command
+     * @throws RCONBanException if banned by the server
+     * @throws RCONNoAuthException if not authenticated with the server
+     * @throws SteamCondenserException if a problem occurs while parsing the
+     *         reply
+     * @throws TimeoutException if the request times out
+     */
+    public void rconExec(String command, RCONResponseListener listener)
+            throws TimeoutException, SteamCondenserException {
+        if (this.rconPool == null) {
+            listener.responseReceived(this.rconExec(command));
+            return;
+        }
+
+        RCONConnectionPool.await(this.rconPool.execute(command, listener));
+    }
+
+    /**
+     * Remotely executes multiple commands on the server via RCON
+     * <p>
+     * If persistent connections have been opened using {@link #rconConnect},
+     * all commands are sent at once over a single connection, so the
+     * execution takes about one round trip instead of one round trip per
+     * command. Otherwise the commands are executed one after another.
+     *
+     * @param commands The commands to execute on the server via RCON
+     * @return The output of the executed commands in the same order
+     * @throws RCONBanException if banned by the server
+     * @throws RCONNoAuthException if not authenticated with the server
+     * @throws SteamCondenserException if a problem occurs while parsing the
+     *         reply
+     * @throws TimeoutException if the request times out
+     */
+    public List<String> rconExecBatch(List<String> commands)
+            throws TimeoutException, SteamCondenserException {
+        List<String> responses = new ArrayList<String>(commands.size());
+
+        if (this.rconPool == null) {
+            for (String command : commands) {
+                responses.add(this.rconExec(command));
+            }
+        } else {
+            for (Future<String> future : this.rconPool.executeBatch(commands)) {
+                responses.add(RCONConnectionPool.await(future));
+            }
+        }
+
+        return responses;
+    }
+
+    /**
+     * Remotely executes a command on the server using the persistent RCON
+     * connections without waiting for its output
+     * <p>
+     * Multiple commands may be executed at the same time, their output is
+     * matched to the commands using their request IDs.
+     *
+     * @param command The command to execute on the server via RCON
+     * @return The future output of the executed command
+     * @see #rconConnect
+     * @throws RCONNoAuthException if not connected to the server
+     * @throws SteamCondenserException if a new connection cannot be
+     *         established
+     */
+    public Future<String> rconExecAsync(String command)
+            throws SteamCondenserException {
+        if (this.rconPool == null) {
+            throw new RCONNoAuthException();
+        }
+
+        return this.rconPool.execute(command);
+    }
+
 }
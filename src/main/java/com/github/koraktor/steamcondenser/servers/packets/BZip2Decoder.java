@@ -0,0 +1,593 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.packets;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+
+/**
+ * This class decompresses bzip2 compressed packet data
+ * <p>
+ * The compressed data is read directly from the parts of a split packet, so
+ * they do not have to be concatenated first, and the decompressed data is
+ * written directly into the arrays used by the packet. The CRC32 checksum of
+ * the data is calculated block by block while decompressing, and the
+ * checksums stored in the bzip2 stream for each block and for the whole
+ * stream are verified.
+ * <p>
+ * Decoders keep their working buffers between uses. They are obtained
+ * using {@link #acquire} and have to be given back using {@link #release}
+ * so they can be reused by later packets.
+ *
+ * @author Sebastian Staudt
+ */
+final class BZip2Decoder {
+
+    private static final int BLOCK_MAGIC_1 = 0x314159;
+
+    private static final int BLOCK_MAGIC_2 = 0x265359;
+
+    private static final int[] CRC_TABLE = createCrcTable();
+
+    private static final int END_MAGIC_1 = 0x177245;
+
+    private static final int END_MAGIC_2 = 0x385090;
+
+    private static final int GROUP_SIZE = 50;
+
+    private static final int INITIAL_BLOCK_SIZE = 64 * 1024;
+
+    private static final int MAX_ALPHA_SIZE = 258;
+
+    private static final int MAX_CODE_LENGTH = 20;
+
+    private static final int MAX_GROUPS = 6;
+
+    private static final int MAX_POOLED_BLOCK_SIZE = 256 * 1024;
+
+    private static final int MAX_SELECTORS = 18002;
+
+    private static final int POOL_SIZE = 8;
+
+    private static final BlockingQueue<BZip2Decoder> pool = new ArrayBlockingQueue<BZip2Decoder>(POOL_SIZE);
+
+    private int[][] base;
+
+    private int bitBuffer;
+
+    private int bitCount;
+
+    private byte[] block;
+
+    private int[] cftab;
+
+    private CRC32 crc32;
+
+    private byte[] data;
+
+    private byte[] header;
+
+    private byte[][] lengths;
+
+    private int[][] limit;
+
+    private int[] minLengths;
+
+    private byte[] mtf;
+
+    private byte[] part;
+
+    private int partIndex;
+
+    private int partOffset;
+
+    private List<byte[]> parts;
+
+    private int[][] perm;
+
+    private int position;
+
+    private byte[] selectorMtf;
+
+    private byte[] selectors;
+
+    private byte[] seqToUnseq;
+
+    private int[] tt;
+
+    private int[] unzftab;
+
+    /**
+     * Returns a decoder from the pool or a new decoder if the pool is empty
+     *
+     * @return A decoder ready to use
+     */
+    static BZip2Decoder acquire() {
+        BZip2Decoder decoder = pool.poll();
+        if (decoder == null) {
+            decoder = new BZip2Decoder();
+        }
+
+        return decoder;
+    }
+
+    /**
+     * Creates a new decoder
+     */
+    private BZip2Decoder() {
+        this.base = new int[MAX_GROUPS][MAX_CODE_LENGTH + 2];
+        this.block = new byte[INITIAL_BLOCK_SIZE];
+        this.cftab = new int[257];
+        this.crc32 = new CRC32();
+        this.lengths = new byte[MAX_GROUPS][MAX_ALPHA_SIZE];
+        this.limit = new int[MAX_GROUPS][MAX_CODE_LENGTH + 2];
+        this.minLengths = new int[MAX_GROUPS];
+        this.mtf = new byte[256];
+        this.perm = new int[MAX_GROUPS][MAX_ALPHA_SIZE];
+        this.selectorMtf = new byte[MAX_GROUPS];
+        this.selectors = new byte[MAX_SELECTORS];
+        this.seqToUnseq = new byte[256];
+        this.tt = new int[INITIAL_BLOCK_SIZE];
+        this.unzftab = new int[256];
+    }
+
+    /**
+     * Decompresses the bzip2 stream contained in the given parts of a split
+     * packet
+     * <p>
+     * The first five bytes of the decompressed data – the packet header –
+     * are written into <code>header</code>, the rest into <code>data</code>.
+     *
+     * @param parts The parts of the split packet
+     * @param header The array to store the packet header in
+     * @param data The array to store the packet data in
+     * @return The CRC32 checksum of the decompressed data
+     * @throws PacketFormatException if the compressed data is invalid, its
+     *         checksums do not match or it does not match the expected size
+     */
+    int decompress(List<byte[]> parts, byte[] header, byte[] data)
+            throws PacketFormatException {
+        this.bitBuffer = 0;
+        this.bitCount = 0;
+        this.crc32.reset();
+        this.data = data;
+        this.header = header;
+        this.part = (parts.isEmpty()) ? new byte[0] : parts.get(0);
+        this.partIndex = 0;
+        this.partOffset = 0;
+        this.parts = parts;
+        this.position = 0;
+
+        if (this.getBits(8) != 'B' || this.getBits(8) != 'Z' || this.getBits(8) != 'h') {
+            throw new PacketFormatException("Compressed packet data is not in bzip2 format.");
+        }
+        int blockSize = this.getBits(8) - '0';
+        if (blockSize < 1 || blockSize > 9) {
+            throw new PacketFormatException("Invalid bzip2 block size.");
+        }
+
+        int streamCrc = 0;
+        while (true) {
+            int magic1 = this.getBits(24);
+            int magic2 = this.getBits(24);
+            int storedCrc = (this.getBits(16) << 16) | this.getBits(16);
+
+            if (magic1 == BLOCK_MAGIC_1 && magic2 == BLOCK_MAGIC_2) {
+                int blockStart = this.position;
+                int blockCrc = this.decodeBlock(blockSize * 100000);
+                if (blockCrc != storedCrc) {
+                    throw new PacketFormatException("bzip2 block checksum mismatch.");
+                }
+                streamCrc = ((streamCrc << 1) | (streamCrc >>> 31)) ^ blockCrc;
+                this.updateChecksum(blockStart);
+            } else if (magic1 == END_MAGIC_1 && magic2 == END_MAGIC_2) {
+                if (streamCrc != storedCrc) {
+                    throw new PacketFormatException("bzip2 stream checksum mismatch.");
+                }
+                break;
+            } else {
+                throw new PacketFormatException("Invalid bzip2 block header.");
+            }
+        }
+
+        if (this.position < header.length + data.length) {
+            throw new PacketFormatException("Compressed packet data is shorter than expected.");
+        }
+
+        return (int) this.crc32.getValue();
+    }
+
+    /**
+     * Returns this decoder to the pool
+     * <p>
+     * Decoders that had to grow their buffers for unusually large packets
+     * are not kept.
+     */
+    void release() {
+        this.data = null;
+        this.header = null;
+        this.part = null;
+        this.parts = null;
+
+        if (this.block.length <= MAX_POOLED_BLOCK_SIZE) {
+            pool.offer(this);
+        }
+    }
+
+    /**
+     * Creates the lookup table for the big-endian CRC32 checksums used by
+     * bzip2
+     *
+     * @return The checksum of each possible byte value
+     */
+    private static int[] createCrcTable() {
+        int[] table = new int[256];
+        for (int i = 0; i < 256; i ++) {
+            int crc = i << 24;
+            for (int j = 0; j < 8; j ++) {
+                crc = ((crc & 0x80000000) != 0) ? (crc << 1) ^ 0x04C11DB7 : crc << 1;
+            }
+            table[i] = crc;
+        }
+
+        return table;
+    }
+
+    /**
+     * Builds the lookup tables used to decode the Huffman codes of the given
+     * group
+     *
+     * @param group The index of the Huffman table
+     * @param alphaSize The number of symbols of the table
+     * @param minLength The length of the shortest code
+     * @param maxLength The length of the longest code
+     */
+    private void createDecodeTables(int group, int alphaSize, int minLength, int maxLength) {
+        byte[] lengths = this.lengths[group];
+        int[] base = this.base[group];
+        int[] limit = this.limit[group];
+        int[] perm = this.perm[group];
+
+        int pp = 0;
+        for (int i = minLength; i <= maxLength; i ++) {
+            for (int j = 0; j < alphaSize; j ++) {
+                if (lengths[j] == i) {
+                    perm[pp ++] = j;
+                }
+            }
+        }
+
+        for (int i = 0; i < base.length; i ++) {
+            base[i] = 0;
+            limit[i] = 0;
+        }
+        for (int i = 0; i < alphaSize; i ++) {
+            base[lengths[i] + 1] ++;
+        }
+        for (int i = 1; i < base.length; i ++) {
+            base[i] += base[i - 1];
+        }
+
+        int vec = 0;
+        for (int i = minLength; i <= maxLength; i ++) {
+            vec += base[i + 1] - base[i];
+            limit[i] = vec - 1;
+            vec <<= 1;
+        }
+        for (int i = minLength + 1; i <= maxLength; i ++) {
+            base[i] = ((limit[i - 1] + 1) << 1) - base[i];
+        }
+
+        this.minLengths[group] = minLength;
+    }
+
+    /**
+     * Decodes a single block and writes its decompressed data to the output
+     *
+     * @param maxBlockSize The maximum size of a block in this stream
+     * @return The bzip2 checksum of the decompressed block
+     * @throws PacketFormatException if the block is invalid
+     */
+    private int decodeBlock(int maxBlockSize) throws PacketFormatException {
+        if (this.getBits(1) != 0) {
+            throw new PacketFormatException("Randomised bzip2 blocks are not supported.");
+        }
+        int origPtr = this.getBits(24);
+
+        int inUse16 = this.getBits(16);
+        int inUseCount = 0;
+        for (int i = 0; i < 16; i ++) {
+            if ((inUse16 & (0x8000 >>> i)) != 0) {
+                int inUse = this.getBits(16);
+                for (int j = 0; j < 16; j ++) {
+                    if ((inUse & (0x8000 >>> j)) != 0) {
+                        this.seqToUnseq[inUseCount ++] = (byte) (i * 16 + j);
+                    }
+                }
+            }
+        }
+        if (inUseCount == 0) {
+            throw new PacketFormatException("Invalid bzip2 symbol map.");
+        }
+        int alphaSize = inUseCount + 2;
+
+        int groupCount = this.getBits(3);
+        int selectorCount = this.getBits(15);
+        if (groupCount < 2 || groupCount > MAX_GROUPS || selectorCount < 1) {
+            throw new PacketFormatException("Invalid bzip2 Huffman table count.");
+        }
+
+        for (int i = 0; i < groupCount; i ++) {
+            this.selectorMtf[i] = (byte) i;
+        }
+        for (int i = 0; i < selectorCount; i ++) {
+            int j = 0;
+            while (this.getBits(1) == 1) {
+                if (++ j >= groupCount) {
+                    throw new PacketFormatException("Invalid bzip2 selector.");
+                }
+            }
+            byte selector = this.selectorMtf[j];
+            for (; j > 0; j --) {
+                this.selectorMtf[j] = this.selectorMtf[j - 1];
+            }
+            this.selectorMtf[0] = selector;
+            if (i < MAX_SELECTORS) {
+                this.selectors[i] = selector;
+            }
+        }
+        selectorCount = Math.min(selectorCount, MAX_SELECTORS);
+
+        for (int group = 0; group < groupCount; group ++) {
+            byte[] lengths = this.lengths[group];
+            int length = this.getBits(5);
+            int minLength = MAX_CODE_LENGTH;
+            int maxLength = 0;
+            for (int i = 0; i < alphaSize; i ++) {
+                while (true) {
+                    if (length < 1 || length > MAX_CODE_LENGTH) {
+                        throw new PacketFormatException("Invalid bzip2 code length.");
+                    }
+                    if (this.getBits(1) == 0) {
+                        break;
+                    }
+                    length += (this.getBits(1) == 0) ? 1 : -1;
+                }
+                lengths[i] = (byte) length;
+                minLength = Math.min(minLength, length);
+                maxLength = Math.max(maxLength, length);
+            }
+            this.createDecodeTables(group, alphaSize, minLength, maxLength);
+        }
+
+        for (int i = 0; i < 256; i ++) {
+            this.mtf[i] = (byte) i;
+            this.unzftab[i] = 0;
+        }
+
+        byte[] block = this.block;
+        int blockLength = 0;
+        int endOfBlock = inUseCount + 1;
+        int groupIndex = -1;
+        int groupPosition = 0;
+        int runLength = -1;
+        int runWeight = 0;
+        int[] base = null;
+        int[] limit = null;
+        int minLength = 0;
+        int[] perm = null;
+
+        while (true) {
+            if (groupPosition == 0) {
+                if (++ groupIndex >= selectorCount) {
+                    throw new PacketFormatException("Invalid bzip2 selector.");
+                }
+                int group = this.selectors[groupIndex];
+                base = this.base[group];
+                limit = this.limit[group];
+                minLength = this.minLengths[group];
+                perm = this.perm[group];
+                groupPosition = GROUP_SIZE;
+            }
+            groupPosition --;
+
+            int codeLength = minLength;
+            int code = this.getBits(codeLength);
+            while (code > limit[codeLength]) {
+                if (++ codeLength > MAX_CODE_LENGTH) {
+                    throw new PacketFormatException("Invalid bzip2 Huffman code.");
+                }
+                code = (code << 1) | this.getBits(1);
+            }
+            int index = code - base[codeLength];
+            if (index < 0 || index >= alphaSize) {
+                throw new PacketFormatException("Invalid bzip2 Huffman code.");
+            }
+            int symbol = perm[index];
+
+            if (symbol <= 1) {
+                if (runLength < 0) {
+                    runLength = 0;
+                    runWeight = 1;
+                }
+                runLength += (symbol + 1) * runWeight;
+                runWeight <<= 1;
+                if (runLength > maxBlockSize) {
+                    throw new PacketFormatException("bzip2 block is too large.");
+                }
+                continue;
+            }
+
+            if (runLength >= 0) {
+                if (blockLength + runLength > maxBlockSize) {
+                    throw new PacketFormatException("bzip2 block is too large.");
+                }
+                block = this.ensureBlockSize(blockLength + runLength);
+                byte value = this.seqToUnseq[this.mtf[0] & 0xFF];
+                for (int i = 0; i < runLength; i ++) {
+                    block[blockLength ++] = value;
+                }
+                this.unzftab[value & 0xFF] += runLength;
+                runLength = -1;
+            }
+
+            if (symbol == endOfBlock) {
+                break;
+            }
+
+            if (blockLength >= maxBlockSize) {
+                throw new PacketFormatException("bzip2 block is too large.");
+            }
+            int mtfIndex = symbol - 1;
+            byte seq = this.mtf[mtfIndex];
+            System.arraycopy(this.mtf, 0, this.mtf, 1, mtfIndex);
+            this.mtf[0] = seq;
+            byte value = this.seqToUnseq[seq & 0xFF];
+            block = this.ensureBlockSize(blockLength + 1);
+            block[blockLength ++] = value;
+            this.unzftab[value & 0xFF] ++;
+        }
+
+        if (origPtr >= blockLength) {
+            throw new PacketFormatException("Invalid bzip2 block origin.");
+        }
+
+        return this.inverseTransform(block, blockLength, origPtr);
+    }
+
+    /**
+     * Makes sure the block buffer can hold the given number of bytes
+     *
+     * @param size The required size of the buffer
+     * @return The block buffer
+     */
+    private byte[] ensureBlockSize(int size) {
+        if (this.block.length < size) {
+            byte[] block = new byte[Math.max(size, this.block.length * 2)];
+            System.arraycopy(this.block, 0, block, 0, this.block.length);
+            this.block = block;
+        }
+
+        return this.block;
+    }
+
+    /**
+     * Reads the given number of bits from the compressed data
+     *
+     * @param count The number of bits to read, at most 24
+     * @return The bits read
+     * @throws PacketFormatException if the compressed data ends prematurely
+     */
+    private int getBits(int count) throws PacketFormatException {
+        while (this.bitCount < count) {
+            while (this.partOffset >= this.part.length) {
+                if (++ this.partIndex >= this.parts.size()) {
+                    throw new PacketFormatException("Compressed packet data is shorter than expected.");
+                }
+                this.part = this.parts.get(this.partIndex);
+                this.partOffset = 0;
+            }
+            this.bitBuffer = (this.bitBuffer << 8) | (this.part[this.partOffset ++] & 0xFF);
+            this.bitCount += 8;
+        }
+
+        this.bitCount -= count;
+
+        return (this.bitBuffer >>> this.bitCount) & ((1 << count) - 1);
+    }
+
+    /**
+     * Reverses the Burrows–Wheeler transform and the initial run-length
+     * encoding of the given block and writes the result to the output
+     *
+     * @param block The data of the block
+     * @param blockLength The length of the block
+     * @param origPtr The position of the original data in the block
+     * @return The bzip2 checksum of the decompressed block
+     * @throws PacketFormatException if the decompressed data is larger than
+     *         expected
+     */
+    private int inverseTransform(byte[] block, int blockLength, int origPtr)
+            throws PacketFormatException {
+        int[] cftab = this.cftab;
+        cftab[0] = 0;
+        for (int i = 0; i < 256; i ++) {
+            cftab[i + 1] = cftab[i] + this.unzftab[i];
+        }
+
+        if (this.tt.length < blockLength) {
+            this.tt = new int[Math.max(blockLength, this.tt.length * 2)];
+        }
+        int[] tt = this.tt;
+        for (int i = 0; i < blockLength; i ++) {
+            tt[cftab[block[i] & 0xFF] ++] = i;
+        }
+
+        int[] crcTable = CRC_TABLE;
+        int crc = 0xFFFFFFFF;
+        byte[] data = this.data;
+        int dataOffset = this.position - this.header.length;
+        int lastValue = -1;
+        int repeat = 0;
+        int tPos = tt[origPtr];
+
+        for (int i = 0; i < blockLength; i ++) {
+            int value = block[tPos] & 0xFF;
+            tPos = tt[tPos];
+
+            int count = 1;
+            if (repeat == 4) {
+                count = value;
+                value = lastValue;
+                repeat = 0;
+            } else if (value == lastValue) {
+                repeat ++;
+            } else {
+                lastValue = value;
+                repeat = 1;
+            }
+
+            for (int j = 0; j < count; j ++) {
+                crc = (crc << 8) ^ crcTable[(crc >>> 24) ^ value];
+                if (dataOffset < 0) {
+                    this.header[dataOffset + this.header.length] = (byte) value;
+                } else if (dataOffset < data.length) {
+                    data[dataOffset] = (byte) value;
+                } else {
+                    throw new PacketFormatException("Compressed packet data is longer than expected.");
+                }
+                dataOffset ++;
+            }
+        }
+
+        this.position = dataOffset + this.header.length;
+
+        return ~crc;
+    }
+
+    /**
+     * Updates the checksum with the data written since the given position
+     *
+     * @param start The position of the output before the current block
+     */
+    private void updateChecksum(int start) {
+        int headerLength = this.header.length;
+        if (start < headerLength) {
+            int end = Math.min(this.position, headerLength);
+            this.crc32.update(this.header, start, end - start);
+            start = end;
+        }
+        if (this.position > start) {
+            this.crc32.update(this.data, start - headerLength, this.position - start);
+        }
+    }
+}
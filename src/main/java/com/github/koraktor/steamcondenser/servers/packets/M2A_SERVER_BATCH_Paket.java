@@ -7,6 +7,11 @@
 
 package com.github.koraktor.steamcondenser.servers.packets;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Vector;
 
 import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
@@ -16,17 +21,26 @@ import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
  * server
  * <p>
  * It contains a list of IP addresses and ports of game servers matching the
- * requested criteria.
+ * requested criteria. The addresses are decoded directly from their 6 byte
+ * binary representation, so no DNS lookups are involved.
  *
  * @author Sebastian Staudt
  * @see com.github.koraktor.steamcondenser.servers.MasterServer#getServers
  */
 public class M2A_SERVER_BATCH_Paket extends SteamPacket {
 
-    private Vector<String> serverArray;
+    private boolean lastBatch;
+
+    private InetSocketAddress lastAddress;
+
+    private ArrayList<InetSocketAddress> serverAddresses;
 
     /**
      * Creates a new M2A_SERVER_BATCH response object based on the given data
+     * <p>
+     * Only the last address of the batch is decoded immediately, so the next
+     * batch can be requested right away. The other addresses are decoded when
+     * they are accessed for the first time.
      *
      * @param data The raw packet data replied from the server
      * @throws PacketFormatException if the packet data is not well formatted
@@ -38,27 +52,103 @@ public class M2A_SERVER_BATCH_Paket extends SteamPacket {
         if(this.contentData.getByte() != 0x0A) {
             throw new PacketFormatException("Master query response is missing additional 0x0A byte.");
         }
+        if(this.contentData.remaining() < 6) {
+            throw new PacketFormatException("Master query response does not contain any servers.");
+        }
 
-        int firstOctet, secondOctet, thirdOctet, fourthOctet, portNumber;
-        this.serverArray = new Vector<String>();
+        int offset = 1 + (this.contentData.remaining() / 6 - 1) * 6;
+        this.lastAddress = this.decodeAddress(offset);
+        this.lastBatch = this.lastAddress.getPort() == 0 &&
+            this.lastAddress.getAddress().isAnyLocalAddress();
+    }
 
-        do {
-            firstOctet = this.contentData.getByte() & 0xFF;
-            secondOctet = this.contentData.getByte() & 0xFF;
-            thirdOctet = this.contentData.getByte() & 0xFF;
-            fourthOctet = this.contentData.getByte() & 0xFF;
-            portNumber = this.contentData.getShort() & 0xFFFF;
+    /**
+     * Decodes the server address stored at the given offset of the packet
+     * data
+     *
+     * @param offset The offset of the 6 byte address record
+     * @return The decoded address
+     */
+    private InetSocketAddress decodeAddress(int offset) {
+        byte[] data = this.contentData.array();
+        byte[] ipAddress = new byte[4];
+        System.arraycopy(data, offset, ipAddress, 0, 4);
+        int portNumber = ((data[offset + 4] & 0xFF) << 8) | (data[offset + 5] & 0xFF);
 
-            this.serverArray.add(firstOctet + "." + secondOctet + "." + thirdOctet + "." + fourthOctet + ":" + portNumber);
-        } while(this.contentData.remaining() > 0);
+        try {
+            return new InetSocketAddress(InetAddress.getByAddress(ipAddress), portNumber);
+        } catch(UnknownHostException e) {
+            // This can only happen for addresses with an invalid length
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the last address contained in this packet
+     * <p>
+     * This is used as the seed to request the next batch of servers.
+     *
+     * @return The last address of this batch, <code>0.0.0.0:0</code> for the
+     *         last batch
+     */
+    public InetSocketAddress getLastAddress() {
+        return this.lastAddress;
+    }
+
+    /**
+     * Returns the addresses of the servers contained in this packet
+     * <p>
+     * The terminating <code>0.0.0.0:0</code> address of the last batch is not
+     * included.
+     *
+     * @return The addresses of the game servers
+     */
+    public List<InetSocketAddress> getServerAddresses() {
+        if(this.serverAddresses == null) {
+            int count = (this.contentData.getLength() - 1) / 6;
+            if(this.lastBatch) {
+                count --;
+            }
+
+            ArrayList<InetSocketAddress> serverAddresses = new ArrayList<InetSocketAddress>(count);
+            for(int i = 0; i < count; i ++) {
+                serverAddresses.add(this.decodeAddress(1 + i * 6));
+            }
+            this.serverAddresses = serverAddresses;
+        }
+
+        return this.serverAddresses;
     }
 
     /**
      * Returns the list of servers returned from the server in this packet
      *
      * @return An array of server addresses (i.e. IP addresses + port numbers)
+     * @deprecated Use {@link #getServerAddresses} instead, which does not
+     *             need to convert the addresses into strings
      */
+    @Deprecated
     public Vector<String> getServers() {
-        return this.serverArray;
+        List<InetSocketAddress> serverAddresses = this.getServerAddresses();
+        Vector<String> serverArray = new Vector<String>(serverAddresses.size() + 1);
+        for(InetSocketAddress address : serverAddresses) {
+            serverArray.add(address.getAddress().getHostAddress() + ":" + address.getPort());
+        }
+        if(this.lastBatch) {
+            serverArray.add("0.0.0.0:0");
+        }
+
+        return serverArray;
+    }
+
+    /**
+     * Returns whether this is the last batch of servers sent by the master
+     * server
+     *
+     * @return <code>true</code> if this packet is terminated by the address
+     *         <code>0.0.0.0:0</code>
+     */
+    public boolean isLastBatch() {
+        return this.lastBatch;
     }
 }
@@ -0,0 +1,124 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.packets;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class collects statistics about the reassembly of split packets
+ * <p>
+ * The statistics are collected for all packets reassembled by
+ * {@link SteamPacketFactory} and may be used to monitor the amount of data
+ * that has to be copied while reassembling packets.
+ *
+ * @author Sebastian Staudt
+ * @see SteamPacketFactory#getReassemblyStatistics
+ */
+public class ReassemblyStatistics {
+
+    private AtomicLong bytes;
+
+    private AtomicLong bytesCopied;
+
+    private AtomicLong copies;
+
+    private AtomicLong fragments;
+
+    private AtomicLong packets;
+
+    /**
+     * Creates a new, empty set of statistics
+     */
+    ReassemblyStatistics() {
+        this.bytes = new AtomicLong();
+        this.bytesCopied = new AtomicLong();
+        this.copies = new AtomicLong();
+        this.fragments = new AtomicLong();
+        this.packets = new AtomicLong();
+    }
+
+    /**
+     * Returns the number of bytes of all reassembled fragments
+     *
+     * @return The number of bytes reassembled
+     */
+    public long getBytes() {
+        return this.bytes.get();
+    }
+
+    /**
+     * Returns the number of bytes copied while reassembling packets
+     *
+     * @return The number of bytes copied
+     */
+    public long getBytesCopied() {
+        return this.bytesCopied.get();
+    }
+
+    /**
+     * Returns the number of copy operations done while reassembling packets
+     *
+     * @return The number of copy operations
+     */
+    public long getCopies() {
+        return this.copies.get();
+    }
+
+    /**
+     * Returns the number of fragments that have been reassembled
+     *
+     * @return The number of fragments
+     */
+    public long getFragments() {
+        return this.fragments.get();
+    }
+
+    /**
+     * Returns the number of packets that have been reassembled
+     *
+     * @return The number of packets
+     */
+    public long getPackets() {
+        return this.packets.get();
+    }
+
+    /**
+     * Resets all statistics to zero
+     */
+    public void reset() {
+        this.bytes.set(0);
+        this.bytesCopied.set(0);
+        this.copies.set(0);
+        this.fragments.set(0);
+        this.packets.set(0);
+    }
+
+    /**
+     * Records the reassembly of a packet
+     *
+     * @param fragments The number of fragments of the packet
+     * @param bytes The size of all fragments of the packet
+     * @param copies The number of copy operations
+     * @param bytesCopied The number of bytes copied
+     */
+    void record(int fragments, int bytes, int copies, int bytesCopied) {
+        this.packets.incrementAndGet();
+        this.fragments.addAndGet(fragments);
+        this.bytes.addAndGet(bytes);
+        this.copies.addAndGet(copies);
+        this.bytesCopied.addAndGet(bytesCopied);
+    }
+
+    @Override
+    public String toString() {
+        return "packets=" + this.getPackets() + ", fragments=" + this.getFragments() +
+            ", bytes=" + this.getBytes() + ", copies=" + this.getCopies() +
+            ", bytesCopied=" + this.getBytesCopied();
+    }
+
+}
@@ -0,0 +1,187 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.packets;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+
+/**
+ * This class remembers the latest information, player and rules replies of a
+ * single server, so unchanged replies do not have to be parsed again
+ * <p>
+ * The payload of a reply is compared byte by byte with the payload of the
+ * previous reply of the same type. If they are identical, the previously
+ * created packet object is returned instead of parsing the payload again.
+ * The payloads are retained by the packet objects anyway, so the cache does
+ * not need additional memory.
+ * <p>
+ * Returned packets – and the maps and player objects they contain – may be
+ * shared between several replies, so they must not be modified. A cache is
+ * not thread-safe, it is meant to be used by a single socket.
+ *
+ * @author Sebastian Staudt
+ * @see com.github.koraktor.steamcondenser.servers.sockets.SteamSocket#setReplyCaching
+ */
+public class ReplyCache {
+
+    private long hits;
+
+    private long misses;
+
+    private SteamPacket[] packets;
+
+    private byte[][] payloads;
+
+    /**
+     * Creates a new empty cache
+     */
+    public ReplyCache() {
+        this.packets = new SteamPacket[4];
+        this.payloads = new byte[4][];
+    }
+
+    /**
+     * Removes all replies from this cache
+     */
+    public void clear() {
+        for(int i = 0; i < this.packets.length; i ++) {
+            this.packets[i] = null;
+            this.payloads[i] = null;
+        }
+    }
+
+    /**
+     * Returns the number of replies that have been identical to the previous
+     * reply of the same type
+     *
+     * @return The number of replies that did not have to be parsed
+     */
+    public long getHits() {
+        return this.hits;
+    }
+
+    /**
+     * Returns the number of cacheable replies that had to be parsed
+     *
+     * @return The number of replies that have been parsed
+     */
+    public long getMisses() {
+        return this.misses;
+    }
+
+    /**
+     * Returns a packet object for the given raw data of a single packet
+     * <p>
+     * The raw data is only copied if it has to be parsed.
+     *
+     * @param rawData The raw data of the packet including the header byte
+     * @return The cached or newly created packet object
+     * @throws PacketFormatException if the packet header is not recognized
+     * @see SteamPacketFactory#getPacketFromData(byte[])
+     */
+    public SteamPacket getPacketFromData(byte[] rawData)
+            throws PacketFormatException {
+        int slot = getSlot(rawData[0]);
+        if(slot != -1 && this.matches(slot, rawData, 1)) {
+            this.hits ++;
+            return this.packets[slot];
+        }
+
+        byte[] data = new byte[rawData.length - 1];
+        System.arraycopy(rawData, 1, data, 0, data.length);
+
+        return this.parse(slot, rawData[0], data);
+    }
+
+    /**
+     * Returns a packet object of the type specified by the given header byte
+     *
+     * @param header The header byte of the packet
+     * @param data The data of the packet following the header byte
+     * @return The cached or newly created packet object
+     * @throws PacketFormatException if the packet header is not recognized
+     * @see SteamPacketFactory#getPacketFromData(byte, byte[])
+     */
+    public SteamPacket getPacketFromData(byte header, byte[] data)
+            throws PacketFormatException {
+        int slot = getSlot(header);
+        if(slot != -1 && this.matches(slot, data, 0)) {
+            this.hits ++;
+            return this.packets[slot];
+        }
+
+        return this.parse(slot, header, data);
+    }
+
+    /**
+     * Returns the slot used for replies with the given header
+     *
+     * @param header The header byte of the reply
+     * @return The slot of the reply or <code>-1</code> if replies of this
+     *         type are not cached
+     */
+    private static int getSlot(byte header) {
+        switch(header) {
+            case SteamPacket.S2A_INFO2_HEADER:
+                return 0;
+            case SteamPacket.S2A_INFO_DETAILED_HEADER:
+                return 1;
+            case SteamPacket.S2A_PLAYER_HEADER:
+                return 2;
+            case SteamPacket.S2A_RULES_HEADER:
+                return 3;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns whether the given data is identical to the payload of the
+     * cached reply in the given slot
+     *
+     * @param slot The slot of the cached reply
+     * @param data The data to compare
+     * @param offset The offset of the payload in the data
+     * @return <code>true</code> if the payloads are identical
+     */
+    private boolean matches(int slot, byte[] data, int offset) {
+        byte[] payload = this.payloads[slot];
+        if(payload == null || payload.length != data.length - offset) {
+            return false;
+        }
+
+        for(int i = 0; i < payload.length; i ++) {
+            if(payload[i] != data[offset + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Parses the given packet data and stores the packet in the given slot
+     *
+     * @param slot The slot of the reply or <code>-1</code>
+     * @param header The header byte of the packet
+     * @param data The data of the packet following the header byte
+     * @return The newly created packet object
+     * @throws PacketFormatException if the packet header is not recognized
+     */
+    private SteamPacket parse(int slot, byte header, byte[] data)
+            throws PacketFormatException {
+        SteamPacket packet = SteamPacketFactory.getPacketFromData(header, data);
+        if(slot != -1) {
+            this.misses ++;
+            this.packets[slot] = packet;
+            this.payloads[slot] = data;
+        }
+
+        return packet;
+    }
+
+}
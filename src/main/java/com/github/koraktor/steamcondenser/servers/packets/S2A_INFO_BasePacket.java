@@ -9,6 +9,8 @@ package com.github.koraktor.steamcondenser.servers.packets;
 
 import java.util.HashMap;
 
+import com.github.koraktor.steamcondenser.servers.ServerInfo;
+
 /**
  * This module implements methods to generate and access server information
  * from S2A_INFO_DETAILED and S2A_INFO2 response packets
@@ -21,20 +23,39 @@ public abstract class S2A_INFO_BasePacket extends SteamPacket {
 
     protected HashMap<String, Object> info;
 
+    protected ServerInfo serverInfo;
+
     S2A_INFO_BasePacket(byte headerByte, byte[] dataBytes) {
         super(headerByte, dataBytes);
-
-        this.info = new HashMap<String, Object>();
     }
 
     /**
      * Returns a generated array of server properties from the instance
      * variables of the packet object
+     * <p>
+     * The map is only generated when it is requested for the first time.
      *
      * @return The information provided by the server
+     * @see #getServerInfo
      */
     public HashMap<String, Object> getInfo() {
+        if(this.info == null) {
+            this.info = this.serverInfo.toMap();
+        }
+
         return this.info;
     }
 
+    /**
+     * Returns the typed server information parsed from this packet
+     * <p>
+     * This is more compact than the map returned by {@link #getInfo} and
+     * should be preferred if the information is kept for a longer time.
+     *
+     * @return The information provided by the server
+     */
+    public ServerInfo getServerInfo() {
+        return this.serverInfo;
+    }
+
 }
@@ -9,6 +9,7 @@ package com.github.koraktor.steamcondenser.servers.packets;
 
 import java.util.HashMap;
 import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+import com.github.koraktor.steamcondenser.servers.PlayerList;
 import com.github.koraktor.steamcondenser.servers.SteamPlayer;
 
 /**
@@ -23,6 +24,8 @@ public class S2A_PLAYER_Packet extends SteamPacket {
 
     private HashMap<String, SteamPlayer> playerHash;
 
+    private PlayerList playerList;
+
     /**
      * Creates a new S2A_PLAYER response object based on the given data
      *
@@ -36,26 +39,34 @@ public class S2A_PLAYER_Packet extends SteamPacket {
             throw new PacketFormatException("Wrong formatted S2A_PLAYER response packet.");
         }
 
-        this.playerHash = new HashMap<String, SteamPlayer>(this.contentData.getByte());
-
-        while(this.contentData.hasRemaining()) {
-            byte playerId = this.contentData.getByte();
-            String playerName = this.contentData.getString();
-            this.playerHash.put(playerName, new SteamPlayer(
-                playerId,
-                playerName,
-                Integer.reverseBytes(this.contentData.getInt()),
-                Float.intBitsToFloat(Integer.reverseBytes(this.contentData.getInt()))
-            ));
-        }
+        this.playerList = PlayerList.fromPlayers(this.contentData);
     }
 
     /**
      * Returns the list of active players provided by the server
+     * <p>
+     * The map is only generated when it is requested for the first time.
      *
      * @return All active players on the server
+     * @see #getPlayerList
      */
     public HashMap<String, SteamPlayer> getPlayerHash() {
+        if(this.playerHash == null) {
+            this.playerHash = this.playerList.toMap();
+        }
+
         return this.playerHash;
     }
+
+    /**
+     * Returns the compact list of active players provided by the server
+     * <p>
+     * This is more compact than the map returned by {@link #getPlayerHash}
+     * and should be preferred if the players are kept for a longer time.
+     *
+     * @return All active players on the server
+     */
+    public PlayerList getPlayerList() {
+        return this.playerList;
+    }
 }
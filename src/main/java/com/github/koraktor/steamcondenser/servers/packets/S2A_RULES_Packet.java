@@ -43,8 +43,8 @@ public class S2A_RULES_Packet extends SteamPacket {
         String rule;
         String value;
         for (int i = 0; i < rulesCount; i++) {
-            rule = this.contentData.getString();
-            value = this.contentData.getString();
+            rule = this.contentData.getCachedString();
+            value = this.contentData.getCachedString();
 
             if(rule.equals("")) {
                 break;
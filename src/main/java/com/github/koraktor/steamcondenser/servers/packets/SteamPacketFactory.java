@@ -7,12 +7,8 @@
 
 package com.github.koraktor.steamcondenser.servers.packets;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
 import java.util.ArrayList;
-import java.util.zip.CRC32;
-
-import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import java.util.List;
 
 import com.github.koraktor.steamcondenser.Helper;
 import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
@@ -29,6 +25,17 @@ import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONGoldSrcRespon
  */
 public abstract class SteamPacketFactory {
 
+    private static final ReassemblyStatistics reassemblyStatistics = new ReassemblyStatistics();
+
+    /**
+     * Returns the statistics about all packets reassembled so far
+     *
+     * @return The reassembly statistics
+     */
+    public static ReassemblyStatistics getReassemblyStatistics() {
+        return reassemblyStatistics;
+    }
+
     /**
      * Creates a new packet object based on the header byte of the given raw
      * data
@@ -39,10 +46,23 @@ public abstract class SteamPacketFactory {
      */
     public static SteamPacket getPacketFromData(byte[] rawData)
             throws PacketFormatException {
-        byte header = rawData[0];
         byte[] data = new byte[rawData.length - 1];
         System.arraycopy(rawData, 1, data, 0, rawData.length - 1);
 
+        return SteamPacketFactory.getPacketFromData(rawData[0], data);
+    }
+
+    /**
+     * Creates a new packet object of the type specified by the given header
+     * byte
+     *
+     * @param header The header byte of the packet
+     * @param data The data of the packet following the header byte
+     * @throws PacketFormatException if the packet header is not recognized
+     * @return The packet object generated from the packet data
+     */
+    public static SteamPacket getPacketFromData(byte header, byte[] data)
+            throws PacketFormatException {
         switch(header) {
             case SteamPacket.A2S_INFO_HEADER:
                 return new A2S_INFO_Packet();
@@ -103,6 +123,10 @@ public abstract class SteamPacketFactory {
     /**
      * Reassembles the data of a split and/or compressed packet into a single
      * packet object
+     * <p>
+     * The data of the split packets is copied only once into an array sized
+     * from the lengths of all parts. Compressed data is decompressed directly
+     * from the parts without copying them.
      *
      * @param splitPackets An array of packet data
      * @param isCompressed whether the data of this packet is compressed
@@ -118,44 +142,134 @@ public abstract class SteamPacketFactory {
     public static SteamPacket reassemblePacket(ArrayList<byte[]> splitPackets,
             boolean isCompressed, int uncompressedSize, int packetChecksum)
             throws SteamCondenserException {
-        byte[] packetData, tmpData;
-        packetData = new byte[0];
+        return SteamPacketFactory.reassemblePacket(splitPackets, isCompressed, uncompressedSize, packetChecksum, null);
+    }
 
+    /**
+     * Reassembles the data of a split and/or compressed packet into a single
+     * packet object, reusing the previous reply of the same server if the
+     * data is unchanged
+     *
+     * @param splitPackets An array of packet data
+     * @param isCompressed whether the data of this packet is compressed
+     * @param uncompressedSize The size of the decompressed packet data
+     * @param packetChecksum The CRC32 checksum of the decompressed
+     *        packet data
+     * @param replyCache The cache of the server's previous replies or
+     *        <code>null</code>
+     * @throws SteamCondenserException if decompressing the packet data fails
+     * @throws PacketFormatException if the calculated CRC32 checksum does not
+     *         match the expected value
+     * @return SteamPacket The reassembled packet
+     * @see ReplyCache
+     */
+    public static SteamPacket reassemblePacket(ArrayList<byte[]> splitPackets,
+            boolean isCompressed, int uncompressedSize, int packetChecksum,
+            ReplyCache replyCache)
+            throws SteamCondenserException {
+        int length = 0;
         for(byte[] splitPacket : splitPackets) {
-            tmpData = packetData;
-            packetData = new byte[tmpData.length + splitPacket.length];
-            System.arraycopy(tmpData, 0, packetData, 0, tmpData.length);
-            System.arraycopy(splitPacket, 0, packetData, tmpData.length,
-                    splitPacket.length);
+            length += splitPacket.length;
         }
 
+        int copies = 0;
         if(isCompressed) {
-            try {
-                ByteArrayInputStream stream = new ByteArrayInputStream(packetData);
-                stream.read();
-                stream.read();
-                BZip2CompressorInputStream bzip2 = new BZip2CompressorInputStream(stream);
-                byte[] uncompressedPacketData = new byte[uncompressedSize];
-                bzip2.read(uncompressedPacketData, 0, uncompressedSize);
-
-                CRC32 crc32 = new CRC32();
-                crc32.update(uncompressedPacketData);
-                int crc32checksum = (int) crc32.getValue();
-
-                if (crc32checksum != packetChecksum) {
-                    throw new PacketFormatException(
-                            "CRC32 checksum mismatch of uncompressed packet data.");
-                }
-                packetData = uncompressedPacketData;
-            } catch(IOException e) {
-                throw new SteamCondenserException(e.getMessage(), e);
+            reassemblyStatistics.record(splitPackets.size(), length, 0, 0);
+
+            return SteamPacketFactory.decompressPacket(splitPackets, uncompressedSize, packetChecksum, replyCache);
+        }
+
+        if(length < 5) {
+            throw new PacketFormatException("Reassembled packet is too short.");
+        }
+
+        byte header = 0;
+        byte[] packetData = new byte[length - 5];
+        int position = 0;
+        int skip = 5;
+        for(byte[] splitPacket : splitPackets) {
+            int offset = Math.min(skip, splitPacket.length);
+            if(skip > 0 && offset == skip) {
+                header = splitPacket[offset - 1];
             }
+            skip -= offset;
+
+            int count = splitPacket.length - offset;
+            if(count > 0) {
+                System.arraycopy(splitPacket, offset, packetData, position, count);
+                position += count;
+                copies ++;
+            }
+        }
+        reassemblyStatistics.record(splitPackets.size(), length, copies, packetData.length);
+
+        return SteamPacketFactory.createPacket(header, packetData, replyCache);
+    }
+
+    /**
+     * Decompresses the given bzip2 compressed packet data
+     * <p>
+     * The compressed data is a complete bzip2 stream including its
+     * <code>BZh</code> signature, so no bytes may be skipped before
+     * decompressing it. The packet header is decompressed separately from
+     * the packet data, so the decompressed data does not have to be copied
+     * again.
+     *
+     * @param splitPackets The parts of the compressed packet data
+     * @param uncompressedSize The size of the decompressed packet data
+     * @param packetChecksum The CRC32 checksum of the decompressed
+     *        packet data
+     * @param replyCache The cache of the server's previous replies or
+     *        <code>null</code>
+     * @throws SteamCondenserException if decompressing the packet data fails
+     * @throws PacketFormatException if the calculated CRC32 checksum does not
+     *         match the expected value
+     * @return SteamPacket The decompressed packet
+     * @see BZip2Decoder
+     */
+    private static SteamPacket decompressPacket(List<byte[]> splitPackets,
+            int uncompressedSize, int packetChecksum, ReplyCache replyCache)
+            throws SteamCondenserException {
+        if(uncompressedSize < 5) {
+            throw new PacketFormatException("Compressed packet is too short.");
+        }
+
+        byte[] packetHeader = new byte[5];
+        byte[] packetData = new byte[uncompressedSize - 5];
+        BZip2Decoder decoder = BZip2Decoder.acquire();
+        int checksum;
+        try {
+            checksum = decoder.decompress(splitPackets, packetHeader, packetData);
+        } finally {
+            decoder.release();
+        }
+
+        if(checksum != packetChecksum) {
+            throw new PacketFormatException(
+                    "CRC32 checksum mismatch of uncompressed packet data.");
         }
 
-        tmpData = packetData;
-        packetData = new byte[tmpData.length - 4];
-        System.arraycopy(tmpData, 4, packetData, 0, tmpData.length - 4);
+        return SteamPacketFactory.createPacket(packetHeader[4], packetData, replyCache);
+    }
+
+    /**
+     * Creates a new packet object or returns a cached one if the given cache
+     * contains an identical reply
+     *
+     * @param header The header byte of the packet
+     * @param data The data of the packet following the header byte
+     * @param replyCache The cache of the server's previous replies or
+     *        <code>null</code>
+     * @throws PacketFormatException if the packet header is not recognized
+     * @return The packet object for the packet data
+     */
+    private static SteamPacket createPacket(byte header, byte[] data,
+            ReplyCache replyCache)
+            throws PacketFormatException {
+        if(replyCache == null) {
+            return SteamPacketFactory.getPacketFromData(header, data);
+        }
 
-        return SteamPacketFactory.getPacketFromData(packetData);
+        return replyCache.getPacketFromData(header, data);
     }
 }
@@ -7,6 +7,8 @@
 
 package com.github.koraktor.steamcondenser.servers.packets.rcon;
 
+import java.nio.ByteBuffer;
+
 import com.github.koraktor.steamcondenser.PacketBuffer;
 import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
 
@@ -31,6 +33,22 @@ public abstract class RCONPacketFactory {
      */
     public static RCONPacket getPacketFromData(byte[] rawData)
             throws PacketFormatException {
+        return getPacketFromData(ByteBuffer.wrap(rawData));
+    }
+
+    /**
+     * Creates a new packet object based on the header of the raw data
+     * remaining in the given buffer
+     * <p>
+     * The data is read in place, so a frame can be decoded directly from a
+     * socket's receive buffer.
+     *
+     * @param rawData The buffer containing the raw data of the packet
+     * @return RCONPacket The packet object generated from the packet data
+     * @throws PacketFormatException if the packet header is not recognized
+     */
+    public static RCONPacket getPacketFromData(ByteBuffer rawData)
+            throws PacketFormatException {
         PacketBuffer packetBuffer = new PacketBuffer(rawData);
 
         int requestId = Integer.reverseBytes(packetBuffer.getInt());
@@ -0,0 +1,160 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+
+/**
+ * This class represents a channel registered with the shared event loop
+ * <p>
+ * Sockets use it to wait until data is available on their channel instead of
+ * opening a selector on their own. Alternatively, a read handler may be set
+ * that is run by the event loop whenever data is available.
+ *
+ * @author Sebastian Staudt
+ * @see SocketEventLoop#register
+ */
+public class ChannelRegistration {
+
+    private SelectableChannel channel;
+
+    private SocketEventLoop eventLoop;
+
+    private SelectionKey key;
+
+    private volatile Runnable readHandler;
+
+    private boolean ready;
+
+    /**
+     * Creates a new registration of the given channel with the given event
+     * loop
+     *
+     * @param eventLoop The event loop the channel is registered with
+     * @param channel The registered channel
+     */
+    ChannelRegistration(SocketEventLoop eventLoop, SelectableChannel channel) {
+        this.channel = channel;
+        this.eventLoop = eventLoop;
+        this.ready = false;
+    }
+
+    /**
+     * Waits until data can be read from the registered channel
+     *
+     * @param timeout The maximum amount of milliseconds to wait
+     * @return <code>true</code> if data is available, <code>false</code> if
+     *         the timeout has been reached
+     * @throws InterruptedException if the current thread is interrupted while
+     *         waiting
+     */
+    public boolean awaitReadable(long timeout) throws InterruptedException {
+        synchronized (this) {
+            this.ready = false;
+        }
+
+        this.eventLoop.setInterest(this, SelectionKey.OP_READ);
+
+        long deadline = System.currentTimeMillis() + timeout;
+        boolean readable;
+        synchronized (this) {
+            long remaining = timeout;
+            while (!this.ready && remaining > 0) {
+                this.wait(remaining);
+                remaining = deadline - System.currentTimeMillis();
+            }
+            readable = this.ready;
+        }
+
+        if (!readable) {
+            this.eventLoop.setInterest(this, 0);
+        }
+
+        return readable;
+    }
+
+    /**
+     * Cancels this registration
+     * <p>
+     * The channel itself is not closed.
+     */
+    public void cancel() {
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                if (key != null) {
+                    key.cancel();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the registered channel
+     *
+     * @return The registered channel
+     */
+    public SelectableChannel getChannel() {
+        return this.channel;
+    }
+
+    /**
+     * Returns the selection key of the registered channel
+     *
+     * @return The selection key or <code>null</code> if the channel has not
+     *         been registered yet
+     */
+    SelectionKey getKey() {
+        return this.key;
+    }
+
+    /**
+     * Sets the selection key of the registered channel
+     *
+     * @param key The selection key of the channel
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Sets a handler that is run on the event loop's thread whenever data can
+     * be read from the registered channel
+     * <p>
+     * While a read handler is set, {@link #awaitReadable} must not be used.
+     *
+     * @param readHandler The handler to run or <code>null</code> to stop
+     *        handling reads asynchronously
+     */
+    public void setReadHandler(Runnable readHandler) {
+        this.readHandler = readHandler;
+
+        this.eventLoop.setInterest(this, (readHandler == null) ? 0 : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Called by the event loop when the registered channel is ready
+     * <p>
+     * Either runs the read handler or wakes up the thread waiting for data.
+     */
+    void channelReady() {
+        Runnable handler = this.readHandler;
+        if (handler != null) {
+            handler.run();
+            if (this.readHandler != null && this.key != null && this.key.isValid()) {
+                this.key.interestOps(SelectionKey.OP_READ);
+            }
+            return;
+        }
+
+        synchronized (this) {
+            this.ready = true;
+            this.notifyAll();
+        }
+    }
+}
@@ -0,0 +1,481 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.koraktor.steamcondenser.exceptions.RCONBanException;
+import com.github.koraktor.steamcondenser.exceptions.RCONNoAuthException;
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONGoldSrcRequestPacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONGoldSrcResponsePacket;
+
+/**
+ * This class executes RCON commands on a GoldSrc server without waiting for
+ * timeouts
+ * <p>
+ * The RCON challenge is requested once and reused for all commands until it
+ * expires or is rejected by the server. Every command is followed by an empty
+ * command. The server replies to each of them and handles them in order, so
+ * the empty reply to the empty command marks the end of the command's output.
+ * This allows to send further commands before the output of the previous ones
+ * has been received.
+ * <p>
+ * As GoldSrc's RCON protocol has no request IDs, replies are assigned to the
+ * commands in the order they have been sent. If a reply is lost, all
+ * commands waiting for their output fail and a new challenge is requested
+ * before sending further commands, so late replies are never assigned to the
+ * wrong command.
+ * <p>
+ * HLTV does not reply to commands without output, so this cannot be used
+ * with HLTV servers.
+ *
+ * @author Sebastian Staudt
+ * @see GoldSrcSocket#rconExec
+ */
+public class GoldSrcRCONClient implements PacketHandler {
+
+    /**
+     * The default amount of milliseconds a challenge is reused
+     */
+    public static final long DEFAULT_CHALLENGE_TTL = 60000;
+
+    protected static final Logger LOG = LoggerFactory.getLogger(GoldSrcRCONClient.class);
+
+    private static final String BAN_RESPONSE = "You have been banned from this server";
+
+    private static final String BAD_CHALLENGE_RESPONSE = "Bad challenge.";
+
+    private static final String BAD_PASSWORD_RESPONSE = "Bad rcon_password.";
+
+    /**
+     * The prefix of challenge replies without the leading "c" used as the
+     * packet header
+     */
+    private static final String CHALLENGE_RESPONSE = "hallenge rcon ";
+
+    private static final int SWEEP_INTERVAL = 100;
+
+    private long challenge;
+
+    private long challengeDeadline;
+
+    private long challengeExpiry;
+
+    private boolean challengePending;
+
+    private volatile int challengeRequests;
+
+    private boolean challengeUnused;
+
+    private long challengeTtl;
+
+    private volatile boolean closed;
+
+    private SocketEventLoop eventLoop;
+
+    private LinkedList<Request> inFlightRequests;
+
+    private String password;
+
+    private LinkedList<Request> queuedRequests;
+
+    private GoldSrcSocket socket;
+
+    private boolean sweeping;
+
+    /**
+     * Creates a new RCON client for the GoldSrc server at the given address
+     * reusing challenges for {@link #DEFAULT_CHALLENGE_TTL} milliseconds
+     *
+     * @param ipAddress The IP address of the server
+     * @param portNumber The port the server is listening on
+     * @param password The RCON password of the server
+     * @throws SteamCondenserException if the socket cannot be opened
+     */
+    public GoldSrcRCONClient(InetAddress ipAddress, int portNumber, String password)
+            throws SteamCondenserException {
+        this(ipAddress, portNumber, password, DEFAULT_CHALLENGE_TTL);
+    }
+
+    /**
+     * Creates a new RCON client for the GoldSrc server at the given address
+     *
+     * @param ipAddress The IP address of the server
+     * @param portNumber The port the server is listening on
+     * @param password The RCON password of the server
+     * @param challengeTtl The amount of milliseconds a challenge is reused
+     * @throws SteamCondenserException if the socket cannot be opened
+     */
+    public GoldSrcRCONClient(InetAddress ipAddress, int portNumber, String password, long challengeTtl)
+            throws SteamCondenserException {
+        this.challengeTtl = challengeTtl;
+        this.eventLoop = SocketEventLoop.getInstance();
+        this.inFlightRequests = new LinkedList<Request>();
+        this.password = password;
+        this.queuedRequests = new LinkedList<Request>();
+        this.socket = new GoldSrcSocket(ipAddress, portNumber);
+        this.socket.setPacketHandler(this);
+    }
+
+    /**
+     * Closes the socket of this client
+     * <p>
+     * All commands that have not been completed yet will fail.
+     */
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                failAll(new SteamCondenserException("RCON client has been closed."));
+                try {
+                    socket.setPacketHandler(null);
+                } catch (SteamCondenserException ignored) {}
+                socket.close();
+            }
+        });
+    }
+
+    /**
+     * Executes the given command on the server
+     *
+     * @param command The command to execute
+     * @return The future output of the command
+     */
+    public Future<String> execute(String command) {
+        List<Future<String>> futures = this.executeBatch(Collections.singletonList(command));
+
+        return futures.get(0);
+    }
+
+    /**
+     * Executes the given commands on the server
+     * <p>
+     * All commands are sent at once in the given order without waiting for
+     * the output of the previous commands.
+     *
+     * @param commands The commands to execute
+     * @return The future output of the commands in the same order
+     */
+    public List<Future<String>> executeBatch(List<String> commands) {
+        final List<Request> requests = new ArrayList<Request>(commands.size());
+        List<Future<String>> futures = new ArrayList<Future<String>>(commands.size());
+        for (String command : commands) {
+            Request request = new Request(command);
+            requests.add(request);
+            futures.add(request.future);
+        }
+
+        if (this.closed) {
+            for (Request request : requests) {
+                request.future.fail(new SteamCondenserException("RCON client has been closed."));
+            }
+            return futures;
+        }
+
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                if (closed) {
+                    for (Request request : requests) {
+                        request.future.fail(new SteamCondenserException("RCON client has been closed."));
+                    }
+                    return;
+                }
+                queuedRequests.addAll(requests);
+                sendQueuedRequests();
+            }
+        });
+
+        return futures;
+    }
+
+    /**
+     * Returns the number of challenges requested from the server
+     *
+     * @return The number of challenge requests
+     */
+    public int getChallengeRequests() {
+        return this.challengeRequests;
+    }
+
+    /**
+     * Handles a packet received from the server
+     * <p>
+     * This is called by the event loop.
+     *
+     * @param packet The packet received
+     */
+    public void packetReceived(SteamPacket packet) {
+        if (!(packet instanceof RCONGoldSrcResponsePacket)) {
+            LOG.debug("Ignoring packet of type \"" + packet.getClass().getSimpleName() + "\"");
+            return;
+        }
+
+        String response = ((RCONGoldSrcResponsePacket) packet).getResponse();
+        String trimmedResponse = response.trim();
+
+        if (this.challengePending) {
+            if (trimmedResponse.startsWith(CHALLENGE_RESPONSE)) {
+                this.challenge = Long.valueOf(trimmedResponse.substring(CHALLENGE_RESPONSE.length()));
+                this.challengeExpiry = System.currentTimeMillis() + this.challengeTtl;
+                this.challengePending = false;
+                this.challengeUnused = true;
+                this.sendQueuedRequests();
+            } else if (trimmedResponse.startsWith(BAN_RESPONSE)) {
+                this.failAll(new RCONBanException());
+            }
+            return;
+        }
+
+        if (trimmedResponse.startsWith(BAN_RESPONSE)) {
+            this.failAll(new RCONBanException());
+            return;
+        }
+
+        if (trimmedResponse.equals(BAD_CHALLENGE_RESPONSE)) {
+            LOG.debug("RCON challenge has been rejected, requesting a new one.");
+            List<Request> requests = new ArrayList<Request>();
+            for (Request request : this.inFlightRequests) {
+                if (!request.failed) {
+                    request.reset();
+                    requests.add(request);
+                }
+            }
+            this.queuedRequests.addAll(0, requests);
+            this.inFlightRequests.clear();
+            this.requestChallenge();
+            return;
+        }
+
+        Request request = this.inFlightRequests.peek();
+        if (request == null) {
+            LOG.debug("Ignoring unexpected RCON reply.");
+            return;
+        }
+
+        if (request.failed) {
+            this.inFlightRequests.poll();
+        } else if (request.parts == 0 && trimmedResponse.equals(BAD_PASSWORD_RESPONSE)) {
+            request.failed = true;
+            request.future.fail(new RCONNoAuthException());
+        } else if (request.parts > 0 && response.length() == 0) {
+            this.inFlightRequests.poll();
+            request.future.complete(request.response.toString());
+        } else {
+            request.parts ++;
+            request.response.append(response);
+        }
+    }
+
+    /**
+     * Handles errors while receiving packets
+     * <p>
+     * As replies cannot be assigned to the commands reliably anymore, all
+     * commands waiting for their output fail.
+     *
+     * @param e The error that occurred
+     */
+    public void receiveFailed(SteamCondenserException e) {
+        LOG.warn("Receiving RCON reply failed: " + e.getMessage());
+
+        this.resynchronize(e);
+    }
+
+    /**
+     * Discards the current challenge
+     * <p>
+     * A new challenge will be requested before the next command is sent.
+     */
+    public void invalidateChallenge() {
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                challengeExpiry = 0;
+                challengeUnused = false;
+            }
+        });
+    }
+
+    /**
+     * Fails all commands that have not been completed yet
+     *
+     * @param error The reason for failing the commands
+     */
+    private void failAll(Exception error) {
+        this.challengePending = false;
+
+        for (Request request : this.inFlightRequests) {
+            request.future.fail(error);
+        }
+        for (Request request : this.queuedRequests) {
+            request.future.fail(error);
+        }
+        this.inFlightRequests.clear();
+        this.queuedRequests.clear();
+    }
+
+    /**
+     * Requests a new challenge from the server
+     * <p>
+     * Until the challenge is received all other replies are ignored, so
+     * outdated replies are discarded.
+     */
+    private void requestChallenge() {
+        if (this.challengePending) {
+            return;
+        }
+
+        this.challengeDeadline = System.currentTimeMillis() + SteamSocket.getTimeout();
+        this.challengePending = true;
+        this.challengeRequests ++;
+        this.send("challenge rcon");
+        this.scheduleSweep();
+    }
+
+    /**
+     * Fails all commands waiting for their output and requests a new
+     * challenge before sending further commands
+     *
+     * @param error The reason for failing the commands
+     */
+    private void resynchronize(Exception error) {
+        for (Request request : this.inFlightRequests) {
+            request.future.fail(error);
+        }
+        this.inFlightRequests.clear();
+
+        if (!this.queuedRequests.isEmpty()) {
+            this.requestChallenge();
+        } else {
+            this.challengeExpiry = 0;
+            this.challengeUnused = false;
+        }
+    }
+
+    /**
+     * Sends the given request string to the server
+     *
+     * @param request The request string to send
+     */
+    private void send(String request) {
+        try {
+            this.socket.send(new RCONGoldSrcRequestPacket(request));
+        } catch (SteamCondenserException e) {
+            this.failAll(e);
+        }
+    }
+
+    /**
+     * Sends all queued commands or requests a new challenge if the current
+     * challenge has expired
+     */
+    private void sendQueuedRequests() {
+        if (this.queuedRequests.isEmpty() || this.challengePending) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (!this.challengeUnused && now >= this.challengeExpiry) {
+            this.requestChallenge();
+            return;
+        }
+        this.challengeUnused = false;
+
+        String prefix = "rcon " + this.challenge + " " + this.password;
+        Request request;
+        while ((request = this.queuedRequests.poll()) != null) {
+            request.deadline = now + SteamSocket.getTimeout();
+            this.inFlightRequests.add(request);
+            this.send(prefix + " " + request.command);
+            this.send(prefix);
+        }
+        this.scheduleSweep();
+    }
+
+    /**
+     * Starts checking for timeouts if this is not done yet
+     */
+    private void scheduleSweep() {
+        if (this.sweeping) {
+            return;
+        }
+
+        this.sweeping = true;
+        this.eventLoop.schedule(new Runnable() {
+            public void run() {
+                sweepTimeouts();
+            }
+        }, SWEEP_INTERVAL);
+    }
+
+    /**
+     * Fails all commands if the server did not reply in time
+     * <p>
+     * This is rescheduled on the event loop while there are pending
+     * requests.
+     */
+    private void sweepTimeouts() {
+        this.sweeping = false;
+        long now = System.currentTimeMillis();
+
+        if (this.challengePending && this.challengeDeadline <= now) {
+            this.failAll(new TimeoutException());
+        }
+
+        Request request = this.inFlightRequests.peek();
+        if (request != null && request.deadline <= now) {
+            this.resynchronize(new TimeoutException());
+        }
+
+        if (!this.closed && (this.challengePending || !this.inFlightRequests.isEmpty())) {
+            this.scheduleSweep();
+        }
+    }
+
+    /**
+     * A command sent to the server
+     */
+    private static class Request {
+
+        final String command;
+
+        long deadline;
+
+        boolean failed;
+
+        final ReplyFuture<String> future;
+
+        int parts;
+
+        StringBuilder response;
+
+        Request(String command) {
+            this.command = command;
+            this.future = new ReplyFuture<String>();
+            this.response = new StringBuilder();
+        }
+
+        void reset() {
+            this.parts = 0;
+            this.response = new StringBuilder();
+        }
+    }
+
+}
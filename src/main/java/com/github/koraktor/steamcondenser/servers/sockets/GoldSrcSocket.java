@@ -8,7 +8,6 @@
 package com.github.koraktor.steamcondenser.servers.sockets;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,7 +16,6 @@ import com.github.koraktor.steamcondenser.exceptions.RCONBanException;
 import com.github.koraktor.steamcondenser.exceptions.RCONNoAuthException;
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
-import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
 import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONGoldSrcRequestPacket;
 import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONGoldSrcResponsePacket;
 
@@ -46,6 +44,8 @@ public class GoldSrcSocket extends QuerySocket {
             throws SteamCondenserException {
         super(ipAddress, portNumber);
         this.isHLTV = false;
+        this.splitPacketAssembler = new SplitPacketAssembler();
+        this.splitPacketAssembler.setReplyCache(this.replyCache);
     }
 
     /**
@@ -63,6 +63,8 @@ public class GoldSrcSocket extends QuerySocket {
             throws SteamCondenserException {
         super(ipAddress, portNumber);
         this.isHLTV = isHLTV;
+        this.splitPacketAssembler = new SplitPacketAssembler();
+        this.splitPacketAssembler.setReplyCache(this.replyCache);
     }
 
     /**
@@ -82,42 +84,21 @@ public class GoldSrcSocket extends QuerySocket {
         int bytesRead;
         SteamPacket packet;
 
-        bytesRead = this.receivePacket(1400);
-
-        if(this.packetIsSplit()) {
-            byte[] splitData;
-            int packetCount, packetNumber;
-            int requestId;
-            byte packetNumberAndCount;
-            ArrayList<byte[]> splitPackets = new ArrayList<byte[]>();
-
-            do {
-                requestId = Integer.reverseBytes(this.buffer.getInt());
-                packetNumberAndCount = this.buffer.get();
-                packetCount = packetNumberAndCount & 0xF;
-                packetNumber = (packetNumberAndCount >> 4) + 1;
-
-                splitData = new byte[this.buffer.remaining()];
-                this.buffer.get(splitData);
-                splitPackets.ensureCapacity(packetCount);
-                splitPackets.add(packetNumber - 1, splitData);
-
-                LOG.info("Received packet #" + packetNumber + " of " + packetCount + " for request ID " + requestId + ".");
-
-                if(splitPackets.size() < packetCount) {
-                    try {
-                        bytesRead = this.receivePacket();
-                    } catch(TimeoutException e) {
-                        bytesRead = 0;
-                    }
-                } else {
-                    bytesRead = 0;
-                }
-            } while(bytesRead > 0 && this.packetIsSplit());
-
-            packet = SteamPacketFactory.reassemblePacket(splitPackets);
-        } else {
-            packet = this.getPacketFromData();
+        this.receivePacket(1400);
+        packet = this.readPacket();
+
+        while(packet == null) {
+            try {
+                bytesRead = this.receivePacket();
+            } catch(TimeoutException e) {
+                bytesRead = 0;
+            }
+
+            if(bytesRead > 0 && this.packetIsSplit()) {
+                packet = this.readSplitPacket();
+            } else {
+                packet = this.reassembleSplitPacket();
+            }
         }
 
         LOG.info("Received packet of type \"" + packet.getClass().getSimpleName() + "\"");
@@ -125,6 +106,22 @@ public class GoldSrcSocket extends QuerySocket {
         return packet;
     }
 
+    /**
+     * Reads a part of a split packet from the buffer
+     * <p>
+     * Once all parts of the packet have been received, they are reassembled
+     * into a single packet object. Parts may be received in any order.
+     *
+     * @return The reassembled packet or <code>null</code> if more parts are
+     *         needed
+     * @throws SteamCondenserException if the packet cannot be reassembled
+     * @see SplitPacketAssembler#addGoldSrcPacket
+     */
+    @Override
+    protected SteamPacket readSplitPacket() throws SteamCondenserException {
+        return this.splitPacketAssembler.addGoldSrcPacket(this.remoteSocket, this.buffer);
+    }
+
     /**
      * Executes the given command on the server via RCON
      *
@@ -51,15 +51,28 @@ public class MasterServerSocket extends QuerySocket {
             throws SteamCondenserException, TimeoutException {
         this.receivePacket(1500);
 
-        if(this.buffer.getInt() != -1) {
-            throw new PacketFormatException("Master query response has wrong packet header.");
-        }
-
-        SteamPacket packet = this.getPacketFromData();
+        SteamPacket packet = this.readPacket();
 
         LOG.info("Received reply of type \"" + packet.getClass().getSimpleName() + "\"");
 
         return packet;
     }
 
+    /**
+     * Reads a single packet from the datagram in the buffer
+     * <p>
+     * Master servers never split their replies.
+     *
+     * @return The packet read from the buffer
+     * @throws PacketFormatException if the packet has the wrong format
+     */
+    @Override
+    protected SteamPacket readPacket() throws PacketFormatException {
+        if(this.buffer.getInt() != -1) {
+            throw new PacketFormatException("Master query response has wrong packet header.");
+        }
+
+        return this.getPacketFromData();
+    }
+
 }
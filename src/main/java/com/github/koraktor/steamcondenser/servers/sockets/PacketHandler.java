@@ -0,0 +1,39 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+
+/**
+ * This interface is implemented by classes handling packets received
+ * asynchronously by a socket
+ * <p>
+ * The methods are called from the thread of the shared {@link
+ * SocketEventLoop}, so implementations should return quickly.
+ *
+ * @author Sebastian Staudt
+ * @see QuerySocket#setPacketHandler
+ */
+public interface PacketHandler {
+
+    /**
+     * Called when a complete packet has been received
+     *
+     * @param packet The packet received from the server
+     */
+    void packetReceived(SteamPacket packet);
+
+    /**
+     * Called when receiving or parsing a packet failed
+     *
+     * @param e The error that occurred
+     */
+    void receiveFailed(SteamCondenserException e);
+
+}
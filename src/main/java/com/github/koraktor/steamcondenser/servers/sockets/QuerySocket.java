@@ -8,13 +8,17 @@
 package com.github.koraktor.steamcondenser.servers.sockets;
 
 import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
 
@@ -27,6 +31,10 @@ public abstract class QuerySocket extends SteamSocket {
 
     protected static final Logger LOG = LoggerFactory.getLogger(QuerySocket.class);
 
+    protected ByteBuffer pendingPacket;
+
+    protected SplitPacketAssembler splitPacketAssembler;
+
     /**
      * Creates a new socket to communicate with the server on the given IP
      * address and port
@@ -41,13 +49,80 @@ public abstract class QuerySocket extends SteamSocket {
 
         try {
             this.channel = DatagramChannel.open();
-            this.channel.configureBlocking(false);
+            this.channel.configureBlocking(this.blocking);
             ((DatagramChannel) this.channel).connect(this.remoteSocket);
         } catch(IOException e) {
             throw new SteamCondenserException(e.getMessage(), e);
         }
     }
 
+    /**
+     * Waits until a reply of the server is available without reading it
+     * <p>
+     * In blocking mode, the reply has to be received to know that it is
+     * available. It is kept until it is read by {@link #getReply}.
+     *
+     * @param timeout The maximum amount of milliseconds to wait
+     * @return <code>true</code> if a reply is available, <code>false</code>
+     *         if the timeout has been reached
+     * @throws SteamCondenserException if an error occurs while waiting
+     */
+    public boolean awaitReply(int timeout) throws SteamCondenserException {
+        if(!this.blocking) {
+            return this.waitForData(timeout);
+        }
+
+        if(this.pendingPacket == null) {
+            this.prepareBuffer(1500);
+            if(this.readBlocking(timeout) == 0) {
+                return false;
+            }
+            this.pendingPacket = this.buffer;
+            this.replyReceived();
+        }
+
+        return true;
+    }
+
+    /**
+     * Discards all packets that have been received, but not read yet
+     * <p>
+     * This is used to drop duplicate replies to repeated requests before a
+     * new request is sent.
+     *
+     * @return The number of discarded packets
+     * @throws SteamCondenserException if an error occurs while reading from
+     *         the socket
+     */
+    public int discardPackets() throws SteamCondenserException {
+        int discarded = 0;
+        if(this.pendingPacket != null) {
+            this.pendingPacket = null;
+            discarded ++;
+        }
+
+        try {
+            if(this.blocking) {
+                this.channel.configureBlocking(false);
+            }
+            try {
+                this.prepareBuffer(1500);
+                while(this.readIntoBuffer() > 0) {
+                    discarded ++;
+                    this.prepareBuffer(0);
+                }
+            } finally {
+                if(this.blocking) {
+                    this.channel.configureBlocking(true);
+                }
+            }
+        } catch(IOException e) {
+            throw new SteamCondenserException(e.getMessage(), e);
+        }
+
+        return discarded;
+    }
+
     /**
      * Returns whether a packet in the buffer is split
      *
@@ -57,6 +132,130 @@ public abstract class QuerySocket extends SteamSocket {
         return (Integer.reverseBytes(this.buffer.getInt()) == 0xFFFFFFFE);
     }
 
+    /**
+     * Receives a single UDP packet into the buffer, blocking until it is
+     * available or the timeout is reached
+     * <p>
+     * A packet already received by {@link #awaitReply} is returned first.
+     *
+     * @param timeout The maximum amount of milliseconds to wait
+     * @return The number of bytes received or <code>0</code> if the timeout
+     *         has been reached
+     * @throws SteamCondenserException if an error occurs while reading from
+     *         the socket
+     */
+    @Override
+    protected int readBlocking(int timeout) throws SteamCondenserException {
+        if(this.pendingPacket != null) {
+            this.buffer = this.pendingPacket;
+            this.pendingPacket = null;
+            return this.buffer.limit();
+        }
+
+        try {
+            DatagramSocket socket = ((DatagramChannel) this.channel).socket();
+            socket.setSoTimeout(Math.max(timeout, 1));
+            DatagramPacket packet = new DatagramPacket(this.buffer.array(),
+                this.buffer.arrayOffset(), this.buffer.capacity());
+            socket.receive(packet);
+
+            this.buffer.rewind();
+            this.buffer.limit(packet.getLength());
+
+            return packet.getLength();
+        } catch(SocketTimeoutException e) {
+            return 0;
+        } catch(IOException e) {
+            throw new SteamCondenserException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Reads a single packet from the datagram in the buffer
+     * <p>
+     * If the datagram is part of a split packet, its data is stored until all
+     * parts have been received.
+     *
+     * @return The packet read from the buffer or <code>null</code> if more
+     *         parts of a split packet are needed
+     * @throws SteamCondenserException if the packet cannot be read
+     */
+    protected SteamPacket readPacket() throws SteamCondenserException {
+        if(this.packetIsSplit()) {
+            return this.readSplitPacket();
+        }
+
+        return this.getPacketFromData();
+    }
+
+    /**
+     * Reads a part of a split packet from the buffer
+     * <p>
+     * Subclasses supporting split packets have to implement this method for
+     * their individual split packet format.
+     *
+     * @return The reassembled packet or <code>null</code> if more parts are
+     *         needed
+     * @throws SteamCondenserException if the packet cannot be read
+     */
+    protected SteamPacket readSplitPacket() throws SteamCondenserException {
+        throw new PacketFormatException("Split packets are not supported by this socket.");
+    }
+
+    /**
+     * Reassembles the parts of a split packet received so far
+     * <p>
+     * This is called once no more parts have been received in time. An
+     * incomplete packet is discarded.
+     *
+     * @return The reassembled packet
+     * @throws SteamCondenserException if the packet cannot be reassembled
+     * @throws TimeoutException if no split packet has been received
+     *         completely
+     * @see SplitPacketAssembler#flush
+     */
+    protected SteamPacket reassembleSplitPacket()
+            throws SteamCondenserException, TimeoutException {
+        SteamPacket packet = null;
+        if(this.splitPacketAssembler != null) {
+            packet = this.splitPacketAssembler.flush(this.remoteSocket);
+        }
+        if(packet == null) {
+            throw new TimeoutException();
+        }
+
+        return packet;
+    }
+
+    /**
+     * Reads all UDP packets currently available without waiting and passes
+     * them to the given handler
+     * <p>
+     * This is run on the thread of the shared event loop whenever data is
+     * available while a packet handler is set.
+     *
+     * @param packetHandler The handler to pass the received packets to
+     * @see #setPacketHandler
+     */
+    protected void receivePackets(PacketHandler packetHandler) {
+        try {
+            while(true) {
+                this.prepareBuffer(1500);
+                if(this.readIntoBuffer() <= 0) {
+                    break;
+                }
+                this.replyReceived();
+
+                SteamPacket packet = this.readPacket();
+                if(packet != null) {
+                    packetHandler.packetReceived(packet);
+                }
+            }
+        } catch(SteamCondenserException e) {
+            packetHandler.receiveFailed(e);
+        }
+    }
+
     /**
      * Reads an UDP packet into the buffer
      *
@@ -70,6 +269,39 @@ public abstract class QuerySocket extends SteamSocket {
         return this.receivePacket(0);
     }
 
+    /**
+     * Sets a handler for packets received asynchronously
+     * <p>
+     * While a handler is set, all packets replied by the server are read by
+     * the shared event loop and passed to the handler, so {@link #getReply}
+     * must not be used.
+     * <p>
+     * Packet handlers cannot be used with sockets in blocking mode.
+     *
+     * @param packetHandler The handler for received packets or
+     *        <code>null</code> to stop receiving packets asynchronously
+     * @throws SteamCondenserException if the event loop cannot be started
+     */
+    public void setPacketHandler(final PacketHandler packetHandler)
+            throws SteamCondenserException {
+        if(this.blocking) {
+            if(packetHandler == null) {
+                return;
+            }
+            throw new SteamCondenserException("Packet handlers cannot be used in blocking I/O mode.");
+        }
+
+        if(packetHandler == null) {
+            this.getRegistration().setReadHandler(null);
+        } else {
+            this.getRegistration().setReadHandler(new Runnable() {
+                public void run() {
+                    receivePackets(packetHandler);
+                }
+            });
+        }
+    }
+
     /**
      * Sends the given packet to the server
      *
@@ -85,6 +317,7 @@ public abstract class QuerySocket extends SteamSocket {
             this.buffer = ByteBuffer.wrap(dataPacket.getBytes());
             ((DatagramChannel) this.channel).send(this.buffer, this.remoteSocket);
             this.buffer.flip();
+            this.requestSent();
         } catch(IOException e) {
             throw new SteamCondenserException(e.getMessage(), e);
         }
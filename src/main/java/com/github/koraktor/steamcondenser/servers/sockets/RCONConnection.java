@@ -0,0 +1,726 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.koraktor.steamcondenser.exceptions.ConnectionResetException;
+import com.github.koraktor.steamcondenser.exceptions.RCONBanException;
+import com.github.koraktor.steamcondenser.exceptions.RCONNoAuthException;
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONAuthRequestPacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONAuthResponse;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONExecRequestPacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONExecResponsePacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONPacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONTerminator;
+
+/**
+ * This class represents a persistent RCON connection to a Source server
+ * <p>
+ * The connection authenticates itself once it has been opened and again
+ * whenever the server reports that it is not authenticated anymore. Commands
+ * are sent as soon as the connection is authenticated, without waiting for
+ * the replies to earlier commands. Every command uses its own request ID and
+ * is followed by an empty packet with the next request ID. As the server
+ * handles packets in order, the reply to this empty packet marks the end of
+ * the command's output, so replies can be matched to their commands and
+ * multi-packet output is detected without waiting for a timeout.
+ * <p>
+ * Reading is done by the shared {@link SocketEventLoop} and the received data
+ * is split into packets by a {@link RCONFrameDecoder}. All state of the
+ * connection is only modified on the event loop's thread, so a single thread
+ * serves the connections to any number of servers.
+ *
+ * @author Sebastian Staudt
+ * @see RCONConnectionPool
+ */
+public class RCONConnection {
+
+    protected static final Logger LOG = LoggerFactory.getLogger(RCONConnection.class);
+
+    private static final int SWEEP_INTERVAL = 100;
+
+    private static final int WRITE_RETRY_INTERVAL = 1;
+
+    private InetSocketAddress address;
+
+    private Request authRequest;
+
+    private boolean authenticated;
+
+    private SocketChannel channel;
+
+    private volatile boolean closed;
+
+    private RCONFrameDecoder decoder;
+
+    private SocketEventLoop eventLoop;
+
+    private volatile long lastActivity;
+
+    private int nextRequestId;
+
+    private String password;
+
+    private AtomicInteger pendingCount;
+
+    private LinkedHashMap<Integer, Request> pendingRequests;
+
+    private LinkedList<Request> queuedRequests;
+
+    private ChannelRegistration registration;
+
+    private boolean sweeping;
+
+    private int timeout;
+
+    private LinkedList<ByteBuffer> writeQueue;
+
+    private boolean writeScheduled;
+
+    /**
+     * Creates a new RCON connection to the server at the given address
+     * <p>
+     * The connection is not opened before {@link #open} is called.
+     *
+     * @param address The address of the server
+     * @param password The RCON password of the server
+     * @throws SteamCondenserException if the event loop cannot be started
+     */
+    public RCONConnection(InetSocketAddress address, String password)
+            throws SteamCondenserException {
+        this.address = address;
+        this.eventLoop = SocketEventLoop.getInstance();
+        this.lastActivity = System.currentTimeMillis();
+        this.nextRequestId = new Random().nextInt() & 0x3FFFFFFE;
+        this.password = password;
+        this.decoder = new RCONFrameDecoder();
+        this.pendingCount = new AtomicInteger();
+        this.pendingRequests = new LinkedHashMap<Integer, Request>();
+        this.queuedRequests = new LinkedList<Request>();
+        this.timeout = SteamSocket.getTimeout();
+        this.writeQueue = new LinkedList<ByteBuffer>();
+    }
+
+    /**
+     * Closes this connection
+     * <p>
+     * All commands that have not been completed yet will fail.
+     */
+    public void close() {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                closeChannel(new SteamCondenserException("RCON connection has been closed."));
+            }
+        });
+    }
+
+    /**
+     * Executes the given command on the server
+     * <p>
+     * The command is sent as soon as the connection has been opened and
+     * authenticated.
+     *
+     * @param command The command to execute
+     * @return The future output of the command
+     */
+    public Future<String> execute(String command) {
+        return this.execute(command, null);
+    }
+
+    /**
+     * Executes the given command on the server and passes its output to the
+     * given listener as soon as it is received
+     * <p>
+     * The output is not buffered, so the returned future completes with
+     * <code>null</code> once the output is complete.
+     *
+     * @param command The command to execute
+     * @param listener The listener receiving the output of the command
+     * @return The future completion of the command
+     */
+    public Future<String> execute(String command, RCONResponseListener listener) {
+        final Request request = new Request(command, listener);
+
+        if (this.closed) {
+            request.future.fail(new SteamCondenserException("RCON connection has been closed."));
+            return request.future;
+        }
+
+        this.pendingCount.incrementAndGet();
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                enqueue(request);
+            }
+        });
+
+        return request.future;
+    }
+
+    /**
+     * Executes the given commands on the server
+     * <p>
+     * All commands are sent at once in the given order without waiting for
+     * the output of the previous commands.
+     *
+     * @param commands The commands to execute
+     * @return The future output of the commands in the same order
+     */
+    public List<Future<String>> executeBatch(List<String> commands) {
+        final List<Request> requests = new ArrayList<Request>(commands.size());
+        List<Future<String>> futures = new ArrayList<Future<String>>(commands.size());
+        for (String command : commands) {
+            Request request = new Request(command, null);
+            requests.add(request);
+            futures.add(request.future);
+        }
+
+        if (this.closed) {
+            for (Request request : requests) {
+                request.future.fail(new SteamCondenserException("RCON connection has been closed."));
+            }
+            return futures;
+        }
+
+        this.pendingCount.addAndGet(requests.size());
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                for (Request request : requests) {
+                    enqueue(request);
+                }
+            }
+        });
+
+        return futures;
+    }
+
+    /**
+     * Returns the address of the server
+     *
+     * @return The address of the server
+     */
+    public InetSocketAddress getAddress() {
+        return this.address;
+    }
+
+    /**
+     * Returns the time of the last packet sent or received on this
+     * connection
+     *
+     * @return The time of the last activity in milliseconds
+     */
+    public long getLastActivity() {
+        return this.lastActivity;
+    }
+
+    /**
+     * Returns the number of commands that have not been completed yet
+     *
+     * @return The number of pending commands
+     */
+    public int getPendingCount() {
+        return this.pendingCount.get();
+    }
+
+    /**
+     * Returns whether this connection has been closed
+     *
+     * @return <code>true</code> if this connection has been closed
+     */
+    public boolean isClosed() {
+        return this.closed;
+    }
+
+    /**
+     * Opens the connection to the server and starts the authentication
+     * <p>
+     * Connecting is done on the calling thread, so this must not be called
+     * from the event loop.
+     *
+     * @return The future result of the authentication, <code>true</code> if
+     *         the password has been accepted
+     * @throws SteamCondenserException if the connection cannot be
+     *         established
+     */
+    public Future<Boolean> open() throws SteamCondenserException {
+        if (this.channel != null) {
+            throw new IllegalStateException("RCON connection has already been opened.");
+        }
+
+        try {
+            this.channel = SocketChannel.open();
+            this.channel.socket().setKeepAlive(true);
+            this.channel.socket().setTcpNoDelay(true);
+            this.channel.socket().connect(this.address, this.timeout);
+            this.channel.configureBlocking(false);
+        } catch (IOException e) {
+            final SteamCondenserException error = new SteamCondenserException(e.getMessage(), e);
+            this.eventLoop.execute(new Runnable() {
+                public void run() {
+                    closeChannel(error);
+                }
+            });
+            throw error;
+        }
+
+        this.registration = this.eventLoop.register(this.channel);
+        this.registration.setReadHandler(new Runnable() {
+            public void run() {
+                receive();
+            }
+        });
+
+        final Request request = new Request(null, null);
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                authenticate(request);
+            }
+        });
+
+        return request.authFuture;
+    }
+
+    /**
+     * Sends a keep-alive packet if there has been no activity on this
+     * connection for the given amount of time
+     * <p>
+     * The server replies to the empty packet, so a dead connection is
+     * detected once the reply times out.
+     *
+     * @param idleTime The minimum amount of milliseconds without activity
+     */
+    public void keepAlive(long idleTime) {
+        if (this.closed || this.channel == null || this.pendingCount.get() > 0 ||
+            System.currentTimeMillis() - this.lastActivity < idleTime) {
+            return;
+        }
+
+        final Request request = new Request(null, null);
+        this.eventLoop.execute(new Runnable() {
+            public void run() {
+                if (!closed && authenticated && pendingRequests.isEmpty()) {
+                    LOG.debug("Sending RCON keep-alive to " + address);
+                    sendRequest(request, new RCONTerminator(allocateRequestIds()));
+                    flush();
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the request ID for a new command
+     * <p>
+     * Every command uses two consecutive request IDs, the second one for the
+     * empty packet marking the end of the command's output.
+     *
+     * @return The request ID of the command
+     */
+    private int allocateRequestIds() {
+        int requestId = this.nextRequestId;
+        this.nextRequestId = (this.nextRequestId + 2) & 0x3FFFFFFE;
+
+        return requestId;
+    }
+
+    /**
+     * Sends an authentication request for this connection
+     *
+     * @param request The request used to track the authentication
+     */
+    private void authenticate(Request request) {
+        if (this.closed) {
+            request.fail(new SteamCondenserException("RCON connection has been closed."));
+            return;
+        }
+
+        this.authenticated = false;
+        this.authRequest = request;
+        this.sendRequest(request, new RCONAuthRequestPacket(this.allocateRequestIds(), this.password));
+        this.flush();
+    }
+
+    /**
+     * Closes the channel of this connection and fails all commands that have
+     * not been completed yet
+     *
+     * @param error The reason for failing the commands
+     */
+    private void closeChannel(SteamCondenserException error) {
+        this.closed = true;
+
+        if (this.registration != null) {
+            this.registration.setReadHandler(null);
+            this.registration.cancel();
+        }
+        try {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } catch (IOException ignored) {}
+
+        List<Request> requests = new ArrayList<Request>(this.pendingRequests.values());
+        requests.addAll(this.queuedRequests);
+        this.pendingRequests.clear();
+        this.queuedRequests.clear();
+        this.writeQueue.clear();
+
+        if (this.authRequest != null && !requests.contains(this.authRequest)) {
+            requests.add(this.authRequest);
+        }
+        this.authRequest = null;
+
+        for (Request request : requests) {
+            this.finish(request, null, error);
+        }
+    }
+
+    /**
+     * Handles a packet received from the server
+     *
+     * @param packet The packet received
+     */
+    private void dispatch(RCONPacket packet) {
+        int requestId = packet.getRequestId();
+
+        if (packet instanceof RCONAuthResponse) {
+            Request request = this.authRequest;
+            if (request == null) {
+                LOG.warn("Server " + this.address + " dropped the RCON authentication.");
+                this.failPending(new RCONNoAuthException());
+                this.authenticate(new Request(null, null));
+                return;
+            }
+
+            this.pendingRequests.remove(request.requestId);
+            this.authRequest = null;
+            if (requestId == request.requestId) {
+                this.authenticated = true;
+                request.authFuture.complete(true);
+                this.sendQueuedRequests();
+            } else {
+                LOG.warn("RCON authentication with " + this.address + " failed.");
+                request.authFuture.complete(false);
+                this.closeChannel(new RCONNoAuthException());
+            }
+            return;
+        }
+
+        Request request = this.pendingRequests.get(requestId);
+        if (request != null) {
+            this.extendDeadlines();
+            if (request.command == null) {
+                if (request != this.authRequest) {
+                    this.pendingRequests.remove(requestId);
+                    this.finish(request, "", null);
+                }
+            } else if (request.listener == null) {
+                request.response.append(((RCONExecResponsePacket) packet).getResponse());
+            } else {
+                String response = ((RCONExecResponsePacket) packet).getResponse();
+                if (response.length() > 0) {
+                    try {
+                        request.listener.responseReceived(response);
+                    } catch (RuntimeException e) {
+                        this.pendingRequests.remove(requestId);
+                        this.finish(request, null, e);
+                    }
+                }
+            }
+            return;
+        }
+
+        request = this.pendingRequests.get(requestId - 1);
+        if (request != null && request.command != null) {
+            this.extendDeadlines();
+            this.pendingRequests.remove(requestId - 1);
+            this.finish(request, (request.response == null) ? null : request.response.toString().trim(), null);
+            return;
+        }
+
+        LOG.debug("Ignoring RCON packet with unknown request ID " + requestId);
+    }
+
+    /**
+     * Queues the given command and sends it if the connection is already
+     * authenticated
+     *
+     * @param request The command to send
+     */
+    private void enqueue(Request request) {
+        if (this.closed) {
+            this.finish(request, null, new SteamCondenserException("RCON connection has been closed."));
+            return;
+        }
+
+        this.queuedRequests.add(request);
+        if (this.authenticated) {
+            this.sendQueuedRequests();
+        }
+    }
+
+    /**
+     * Extends the deadlines of all pending requests
+     * <p>
+     * This is called whenever the server replies to a pending request. The
+     * server handles the requests in order, so the requests sent later are
+     * waiting for this reply, too. This way a request only times out if the
+     * server stays silent for too long, not if a long output takes a while.
+     */
+    private void extendDeadlines() {
+        long deadline = System.currentTimeMillis() + this.timeout;
+        for (Request request : this.pendingRequests.values()) {
+            request.deadline = deadline;
+        }
+    }
+
+    /**
+     * Fails all commands that have been sent, but not completed
+     *
+     * @param error The reason for failing the commands
+     */
+    private void failPending(SteamCondenserException error) {
+        List<Request> requests = new ArrayList<Request>(this.pendingRequests.values());
+        this.pendingRequests.clear();
+
+        for (Request request : requests) {
+            this.finish(request, null, error);
+        }
+    }
+
+    /**
+     * Completes the given command
+     *
+     * @param request The command to complete
+     * @param response The output of the command or <code>null</code> if the
+     *        command failed
+     * @param error The reason of the failure
+     */
+    private void finish(Request request, String response, Exception error) {
+        if (request.command != null) {
+            this.pendingCount.decrementAndGet();
+        }
+
+        if (error == null) {
+            request.future.complete(response);
+        } else {
+            request.fail(error);
+        }
+    }
+
+    /**
+     * Reads all data available on the channel and handles the packets
+     * received
+     * <p>
+     * This is run by the event loop whenever the channel is readable.
+     */
+    private void receive() {
+        try {
+            while (true) {
+                int bytesRead = this.decoder.read(this.channel);
+                if (bytesRead == -1) {
+                    if (this.authRequest != null) {
+                        this.closeChannel(new RCONBanException());
+                    } else {
+                        this.closeChannel(new ConnectionResetException());
+                    }
+                    return;
+                }
+                if (bytesRead == 0) {
+                    break;
+                }
+                this.lastActivity = System.currentTimeMillis();
+
+                RCONPacket packet;
+                while ((packet = this.decoder.decode()) != null) {
+                    this.dispatch(packet);
+                    if (this.closed) {
+                        return;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            this.closeChannel(new SteamCondenserException(e.getMessage(), e));
+        } catch (SteamCondenserException e) {
+            this.closeChannel(e);
+        }
+    }
+
+    /**
+     * Writes the given packet and starts waiting for the reply to the given
+     * request
+     *
+     * @param request The request the packet belongs to
+     * @param packet The packet to send
+     */
+    private void sendRequest(Request request, RCONPacket packet) {
+        request.deadline = System.currentTimeMillis() + this.timeout;
+        request.requestId = packet.getRequestId();
+        this.pendingRequests.put(request.requestId, request);
+        this.write(packet);
+
+        if (!this.sweeping) {
+            this.sweeping = true;
+            this.eventLoop.schedule(new Runnable() {
+                public void run() {
+                    sweepTimeouts();
+                }
+            }, SWEEP_INTERVAL);
+        }
+    }
+
+    /**
+     * Sends all queued commands
+     */
+    private void sendQueuedRequests() {
+        Request request;
+        while ((request = this.queuedRequests.poll()) != null) {
+            int requestId = this.allocateRequestIds();
+            this.sendRequest(request, new RCONExecRequestPacket(requestId, request.command));
+            this.write(new RCONTerminator(requestId + 1));
+        }
+        this.flush();
+    }
+
+    /**
+     * Fails all commands the server did not reply to in time
+     * <p>
+     * This is rescheduled on the event loop while there are pending
+     * requests.
+     */
+    private void sweepTimeouts() {
+        long now = System.currentTimeMillis();
+        List<Request> expired = new ArrayList<Request>();
+        Iterator<Request> requests = this.pendingRequests.values().iterator();
+        while (requests.hasNext()) {
+            Request request = requests.next();
+            if (request.deadline <= now) {
+                requests.remove();
+                expired.add(request);
+            }
+        }
+
+        boolean connectionTimedOut = false;
+        for (Request request : expired) {
+            if (request == this.authRequest || request.command == null) {
+                connectionTimedOut = true;
+            }
+            this.finish(request, null, new TimeoutException());
+        }
+        if (connectionTimedOut) {
+            this.closeChannel(new SteamCondenserException("RCON connection to " + this.address + " timed out."));
+        }
+
+        if (this.pendingRequests.isEmpty() || this.closed) {
+            this.sweeping = false;
+        } else {
+            this.eventLoop.schedule(new Runnable() {
+                public void run() {
+                    sweepTimeouts();
+                }
+            }, SWEEP_INTERVAL);
+        }
+    }
+
+    /**
+     * Queues the given packet for writing to the channel
+     * <p>
+     * The packet is written on the next call to {@link #flush}.
+     *
+     * @param packet The packet to write
+     */
+    private void write(RCONPacket packet) {
+        this.writeQueue.add(ByteBuffer.wrap(packet.getBytes()));
+    }
+
+    /**
+     * Writes as much of the queued data as possible
+     * <p>
+     * All queued packets are written using a single gathering write. If the
+     * socket's buffer is full, writing is retried shortly after.
+     */
+    private void flush() {
+        this.writeScheduled = false;
+        try {
+            while (!this.writeQueue.isEmpty()) {
+                long bytesWritten = this.channel.write(this.writeQueue.toArray(new ByteBuffer[this.writeQueue.size()]));
+                while (!this.writeQueue.isEmpty() && !this.writeQueue.peek().hasRemaining()) {
+                    this.writeQueue.poll();
+                }
+                if (bytesWritten == 0) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            this.closeChannel(new SteamCondenserException(e.getMessage(), e));
+            return;
+        }
+        this.lastActivity = System.currentTimeMillis();
+
+        if (!this.writeQueue.isEmpty() && !this.writeScheduled) {
+            this.writeScheduled = true;
+            this.eventLoop.schedule(new Runnable() {
+                public void run() {
+                    flush();
+                }
+            }, WRITE_RETRY_INTERVAL);
+        }
+    }
+
+    /**
+     * A command or another request sent to the server
+     */
+    private static class Request {
+
+        final ReplyFuture<Boolean> authFuture;
+
+        final String command;
+
+        long deadline;
+
+        final ReplyFuture<String> future;
+
+        final RCONResponseListener listener;
+
+        int requestId;
+
+        final StringBuilder response;
+
+        Request(String command, RCONResponseListener listener) {
+            this.authFuture = new ReplyFuture<Boolean>();
+            this.command = command;
+            this.future = new ReplyFuture<String>();
+            this.listener = listener;
+            this.response = (command == null || listener != null) ? null : new StringBuilder();
+        }
+
+        void fail(Exception error) {
+            this.authFuture.fail(error);
+            this.future.fail(error);
+        }
+    }
+}
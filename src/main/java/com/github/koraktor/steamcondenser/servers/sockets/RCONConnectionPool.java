@@ -0,0 +1,371 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+
+/**
+ * This class manages persistent RCON connections to a single Source server
+ * <p>
+ * Commands are distributed to the connection with the fewest pending
+ * commands. New connections are opened while all connections are busy and the
+ * maximum number of connections has not been reached. Idle connections are
+ * kept alive by sending empty packets, connections that have been closed are
+ * replaced when the next command is executed.
+ *
+ * @author Sebastian Staudt
+ * @see RCONConnection
+ */
+public class RCONConnectionPool {
+
+    /**
+     * The default number of connections per server
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS = 2;
+
+    /**
+     * The default amount of milliseconds after which idle connections are
+     * kept alive
+     */
+    public static final long DEFAULT_KEEP_ALIVE_INTERVAL = 30000;
+
+    private InetSocketAddress address;
+
+    private volatile boolean closed;
+
+    private List<RCONConnection> connections;
+
+    private SocketEventLoop eventLoop;
+
+    private volatile long keepAliveInterval;
+
+    private boolean keepAliveScheduled;
+
+    private int maxConnections;
+
+    private String password;
+
+    /**
+     * Creates a new pool of RCON connections to the server at the given
+     * address using at most {@link #DEFAULT_MAX_CONNECTIONS} connections
+     *
+     * @param address The address of the server
+     * @param password The RCON password of the server
+     * @throws SteamCondenserException if the event loop cannot be started
+     */
+    public RCONConnectionPool(InetSocketAddress address, String password)
+            throws SteamCondenserException {
+        this(address, password, DEFAULT_MAX_CONNECTIONS);
+    }
+
+    /**
+     * Creates a new pool of RCON connections to the server at the given
+     * address
+     *
+     * @param address The address of the server
+     * @param password The RCON password of the server
+     * @param maxConnections The maximum number of connections to open
+     * @throws SteamCondenserException if the event loop cannot be started
+     */
+    public RCONConnectionPool(InetSocketAddress address, String password, int maxConnections)
+            throws SteamCondenserException {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("At least one connection is required.");
+        }
+
+        this.address = address;
+        this.connections = new ArrayList<RCONConnection>();
+        this.eventLoop = SocketEventLoop.getInstance();
+        this.keepAliveInterval = DEFAULT_KEEP_ALIVE_INTERVAL;
+        this.maxConnections = maxConnections;
+        this.password = password;
+    }
+
+    /**
+     * Opens the first connection of this pool and waits for its
+     * authentication
+     *
+     * @return <code>true</code> if the password has been accepted by the
+     *         server
+     * @throws SteamCondenserException if the connection cannot be
+     *         established
+     * @throws TimeoutException if the server does not reply in time
+     */
+    public boolean authenticate()
+            throws SteamCondenserException, TimeoutException {
+        RCONConnection connection;
+        synchronized (this) {
+            this.checkClosed();
+            this.removeClosedConnections();
+            if (!this.connections.isEmpty()) {
+                return true;
+            }
+            connection = new RCONConnection(this.address, this.password);
+            this.connections.add(connection);
+        }
+
+        try {
+            boolean authenticated = await(connection.open());
+            if (authenticated) {
+                this.scheduleKeepAlive();
+            }
+            return authenticated;
+        } catch (SteamCondenserException e) {
+            this.removeConnection(connection);
+            throw e;
+        } catch (TimeoutException e) {
+            this.removeConnection(connection);
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all connections of this pool
+     * <p>
+     * Commands that have not been completed yet will fail.
+     */
+    public synchronized void close() {
+        this.closed = true;
+
+        for (RCONConnection connection : this.connections) {
+            connection.close();
+        }
+        this.connections.clear();
+    }
+
+    /**
+     * Executes the given command on one of the connections of this pool
+     *
+     * @param command The command to execute
+     * @return The future output of the command
+     * @throws SteamCondenserException if a new connection is required, but
+     *         cannot be established
+     */
+    public Future<String> execute(String command)
+            throws SteamCondenserException {
+        return this.execute(command, null);
+    }
+
+    /**
+     * Executes the given command on one of the connections of this pool and
+     * passes its output to the given listener as soon as it is received
+     *
+     * @param command The command to execute
+     * @param listener The listener receiving the output of the command or
+     *        <code>null</code> to buffer the output
+     * @return The future completion of the command
+     * @throws SteamCondenserException if a new connection is required, but
+     *         cannot be established
+     * @see RCONConnection#execute(String, RCONResponseListener)
+     */
+    public Future<String> execute(String command, RCONResponseListener listener)
+            throws SteamCondenserException {
+        return this.getConnection().execute(command, listener);
+    }
+
+    /**
+     * Executes the given commands on a single connection of this pool
+     * <p>
+     * The commands are sent at once and executed by the server in the given
+     * order.
+     *
+     * @param commands The commands to execute
+     * @return The future output of the commands in the same order
+     * @throws SteamCondenserException if a new connection is required, but
+     *         cannot be established
+     * @see RCONConnection#executeBatch
+     */
+    public List<Future<String>> executeBatch(List<String> commands)
+            throws SteamCondenserException {
+        return this.getConnection().executeBatch(commands);
+    }
+
+    /**
+     * Returns the number of open connections of this pool
+     *
+     * @return The number of open connections
+     */
+    public synchronized int getConnectionCount() {
+        this.removeClosedConnections();
+
+        return this.connections.size();
+    }
+
+    /**
+     * Sets the amount of milliseconds without activity after which idle
+     * connections are kept alive
+     *
+     * @param keepAliveInterval The keep-alive interval in milliseconds
+     */
+    public void setKeepAliveInterval(long keepAliveInterval) {
+        this.keepAliveInterval = keepAliveInterval;
+    }
+
+    /**
+     * Waits for the given future and unwraps its failure
+     * <p>
+     * There is no limit for the total time to wait, as long outputs may
+     * take a while. The connection fails the command once the server stays
+     * silent for longer than the socket timeout.
+     *
+     * @param future The future to wait for
+     * @return The result of the future
+     * @throws SteamCondenserException if the future failed
+     * @throws TimeoutException if the future timed out
+     */
+    public static <V> V await(Future<V> future)
+            throws SteamCondenserException, TimeoutException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SteamCondenserException) {
+                throw (SteamCondenserException) cause;
+            }
+            if (cause instanceof TimeoutException) {
+                throw (TimeoutException) cause;
+            }
+            throw new SteamCondenserException(cause.getMessage(), cause);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new SteamCondenserException("Interrupted while waiting for the RCON reply.", e);
+        }
+    }
+
+    /**
+     * Throws an exception if this pool has already been closed
+     *
+     * @throws SteamCondenserException if this pool has been closed
+     */
+    private void checkClosed() throws SteamCondenserException {
+        if (this.closed) {
+            throw new SteamCondenserException("RCON connection pool has been closed.");
+        }
+    }
+
+    /**
+     * Sends keep-alive packets on idle connections
+     * <p>
+     * This is rescheduled on the event loop while this pool is open.
+     */
+    private void keepAlive() {
+        synchronized (this) {
+            this.removeClosedConnections();
+            if (this.closed || this.connections.isEmpty()) {
+                this.keepAliveScheduled = false;
+                return;
+            }
+
+            for (RCONConnection connection : this.connections) {
+                connection.keepAlive(this.keepAliveInterval);
+            }
+        }
+
+        this.scheduleKeepAliveTask();
+    }
+
+    /**
+     * Returns the connection to use for the next command
+     * <p>
+     * This is the connection with the fewest pending commands. A new
+     * connection is opened if there is none or all connections are busy and
+     * the maximum number of connections has not been reached yet.
+     *
+     * @return The connection to use
+     * @throws SteamCondenserException if a new connection cannot be
+     *         established
+     */
+    private RCONConnection getConnection() throws SteamCondenserException {
+        RCONConnection connection = null;
+        synchronized (this) {
+            this.checkClosed();
+            this.removeClosedConnections();
+
+            for (RCONConnection candidate : this.connections) {
+                if (connection == null ||
+                    candidate.getPendingCount() < connection.getPendingCount()) {
+                    connection = candidate;
+                }
+            }
+
+            if (connection != null &&
+                (connection.getPendingCount() == 0 || this.connections.size() >= this.maxConnections)) {
+                return connection;
+            }
+
+            connection = new RCONConnection(this.address, this.password);
+            this.connections.add(connection);
+        }
+
+        try {
+            connection.open();
+        } catch (SteamCondenserException e) {
+            this.removeConnection(connection);
+            throw e;
+        }
+        this.scheduleKeepAlive();
+
+        return connection;
+    }
+
+    /**
+     * Removes all connections from this pool that have been closed
+     */
+    private void removeClosedConnections() {
+        Iterator<RCONConnection> connections = this.connections.iterator();
+        while (connections.hasNext()) {
+            if (connections.next().isClosed()) {
+                connections.remove();
+            }
+        }
+    }
+
+    /**
+     * Closes the given connection and removes it from this pool
+     *
+     * @param connection The connection to remove
+     */
+    private synchronized void removeConnection(RCONConnection connection) {
+        connection.close();
+        this.connections.remove(connection);
+    }
+
+    /**
+     * Starts sending keep-alive packets if this has not been done yet
+     */
+    private void scheduleKeepAlive() {
+        synchronized (this) {
+            if (this.keepAliveScheduled) {
+                return;
+            }
+            this.keepAliveScheduled = true;
+        }
+
+        this.scheduleKeepAliveTask();
+    }
+
+    /**
+     * Schedules the next run of {@link #keepAlive}
+     */
+    private void scheduleKeepAliveTask() {
+        this.eventLoop.schedule(new Runnable() {
+            public void run() {
+                keepAlive();
+            }
+        }, Math.max(1, this.keepAliveInterval / 2));
+    }
+}
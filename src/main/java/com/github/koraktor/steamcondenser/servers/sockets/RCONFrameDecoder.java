@@ -0,0 +1,228 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONPacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONPacketFactory;
+
+/**
+ * This class splits the stream of data received from a Source RCON
+ * connection into packets
+ * <p>
+ * Data is read into a single buffer that is reused for all reads. It only
+ * grows if a frame does not fit into it and shrinks again once the large
+ * frame has been decoded. A single read may contain any number of complete
+ * frames and a partial frame at its end. The packets are decoded directly
+ * from the buffer and remaining data is only moved once all complete frames
+ * have been decoded.
+ * <p>
+ * Instances of this class are not thread-safe.
+ *
+ * @author Sebastian Staudt
+ */
+public class RCONFrameDecoder {
+
+    /**
+     * The default initial size of the receive buffer
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    /**
+     * The default maximum size of a single frame
+     */
+    public static final int DEFAULT_MAX_FRAME_SIZE = 4 * 1024 * 1024;
+
+    private static final int MIN_FRAME_SIZE = 10;
+
+    private ByteBuffer buffer;
+
+    private int initialSize;
+
+    private int maxFrameSize;
+
+    private int readIndex;
+
+    /**
+     * Creates a new frame decoder using the default buffer and frame sizes
+     */
+    public RCONFrameDecoder() {
+        this(DEFAULT_BUFFER_SIZE, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * Creates a new frame decoder
+     *
+     * @param initialSize The initial size of the receive buffer
+     * @param maxFrameSize The maximum size of a frame, larger frames are
+     *        rejected
+     */
+    public RCONFrameDecoder(int initialSize, int maxFrameSize) {
+        this.buffer = this.allocate(initialSize);
+        this.initialSize = initialSize;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    /**
+     * Returns the number of bytes received, but not decoded yet
+     *
+     * @return The number of buffered bytes
+     */
+    public int getBufferedBytes() {
+        return this.buffer.position() - this.readIndex;
+    }
+
+    /**
+     * Returns the current size of the receive buffer
+     *
+     * @return The capacity of the receive buffer
+     */
+    public int getCapacity() {
+        return this.buffer.capacity();
+    }
+
+    /**
+     * Decodes the next complete packet from the received data
+     * <p>
+     * This should be called repeatedly after data has been received until it
+     * returns <code>null</code>.
+     *
+     * @return The next packet or <code>null</code> if there is no complete
+     *         frame left
+     * @throws PacketFormatException if the frame has an invalid size or
+     *         header
+     */
+    public RCONPacket decode() throws PacketFormatException {
+        int writeIndex = this.buffer.position();
+        int available = writeIndex - this.readIndex;
+        if (available < 4) {
+            this.compact();
+            return null;
+        }
+
+        int frameSize = this.buffer.getInt(this.readIndex);
+        if (frameSize < MIN_FRAME_SIZE || frameSize > this.maxFrameSize) {
+            throw new PacketFormatException("Invalid RCON packet size " + frameSize + ".");
+        }
+        if (available < frameSize + 4) {
+            this.compact();
+            if (this.buffer.capacity() < frameSize + 4) {
+                this.grow(frameSize + 4);
+            }
+            return null;
+        }
+
+        int frameEnd = this.readIndex + frameSize + 4;
+        this.buffer.limit(frameEnd);
+        this.buffer.position(this.readIndex + 4);
+        try {
+            return RCONPacketFactory.getPacketFromData(this.buffer);
+        } finally {
+            this.buffer.limit(this.buffer.capacity());
+            this.buffer.position(writeIndex);
+            this.readIndex = frameEnd;
+        }
+    }
+
+    /**
+     * Adds the given data to the received data
+     *
+     * @param data The data to add
+     */
+    public void feed(ByteBuffer data) {
+        this.compact();
+        if (this.buffer.remaining() < data.remaining()) {
+            this.grow(this.buffer.position() + data.remaining());
+        }
+        this.buffer.put(data);
+    }
+
+    /**
+     * Reads the data currently available on the given channel into the
+     * receive buffer
+     * <p>
+     * The buffer grows if it is full. Callers should decode all complete
+     * packets after each read.
+     *
+     * @param channel The channel to read from
+     * @return The number of bytes read or <code>-1</code> if the channel has
+     *         reached the end of its stream
+     * @throws IOException if reading from the channel fails
+     */
+    public int read(ReadableByteChannel channel) throws IOException {
+        this.compact();
+        if (!this.buffer.hasRemaining()) {
+            this.grow(this.buffer.capacity() * 2);
+        }
+
+        return channel.read(this.buffer);
+    }
+
+    /**
+     * Discards all received data
+     */
+    public void reset() {
+        this.buffer = this.allocate(this.initialSize);
+        this.readIndex = 0;
+    }
+
+    /**
+     * Creates a new little-endian receive buffer
+     *
+     * @param size The size of the buffer
+     * @return The new buffer
+     */
+    private ByteBuffer allocate(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Moves the data that has not been decoded yet to the start of the
+     * receive buffer
+     * <p>
+     * A buffer that has grown for a large frame is replaced by a buffer of
+     * the initial size once it is empty.
+     */
+    private void compact() {
+        if (this.readIndex == 0) {
+            return;
+        }
+
+        if (this.readIndex == this.buffer.position()) {
+            if (this.buffer.capacity() > this.initialSize) {
+                this.buffer = this.allocate(this.initialSize);
+            } else {
+                this.buffer.clear();
+            }
+        } else {
+            this.buffer.flip();
+            this.buffer.position(this.readIndex);
+            this.buffer.compact();
+        }
+        this.readIndex = 0;
+    }
+
+    /**
+     * Replaces the receive buffer with a larger one keeping the received
+     * data
+     *
+     * @param minSize The minimum size of the new buffer
+     */
+    private void grow(int minSize) {
+        ByteBuffer buffer = this.allocate(Math.max(minSize, this.buffer.capacity() * 2));
+        this.buffer.flip();
+        buffer.put(this.buffer);
+        this.buffer = buffer;
+    }
+
+}
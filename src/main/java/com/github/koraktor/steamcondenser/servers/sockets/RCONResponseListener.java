@@ -0,0 +1,35 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+/**
+ * This interface is implemented by classes receiving the output of an RCON
+ * command while it is still being received
+ * <p>
+ * This allows to process the output of commands like <code>cvarlist</code>
+ * without buffering it completely. The methods are called from the thread of
+ * the shared event loop, so implementations should return quickly and hand
+ * off expensive work to other threads.
+ *
+ * @author Sebastian Staudt
+ * @see RCONConnection#execute(String, RCONResponseListener)
+ */
+public interface RCONResponseListener {
+
+    /**
+     * Called for every non-empty RCON packet received in reply to the
+     * command
+     * <p>
+     * Packets are split by the server at arbitrary positions, so a chunk may
+     * end in the middle of a line.
+     *
+     * @param response The output contained in the packet
+     */
+    public void responseReceived(String response);
+
+}
@@ -9,6 +9,8 @@ package com.github.koraktor.steamcondenser.servers.sockets;
 
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.util.concurrent.TimeoutException;
@@ -58,6 +60,38 @@ public class RCONSocket extends SteamSocket {
         }
     }
 
+    /**
+     * Reads data from the TCP connection into the buffer, blocking until data
+     * is available or the timeout is reached
+     *
+     * @param timeout The maximum amount of milliseconds to wait
+     * @return The number of bytes that have been read, <code>0</code> if the
+     *         timeout has been reached or <code>-1</code> if the connection
+     *         has been closed
+     * @throws SteamCondenserException if an error occurs while reading from
+     *         the socket
+     */
+    @Override
+    protected int readBlocking(int timeout) throws SteamCondenserException {
+        try {
+            Socket socket = ((SocketChannel) this.channel).socket();
+            socket.setSoTimeout(Math.max(timeout, 1));
+            int bytesRead = socket.getInputStream().read(this.buffer.array(),
+                this.buffer.arrayOffset() + this.buffer.position(),
+                this.buffer.remaining());
+            if(bytesRead > 0) {
+                this.buffer.rewind();
+                this.buffer.limit(bytesRead);
+            }
+
+            return bytesRead;
+        } catch(SocketTimeoutException e) {
+            return 0;
+        } catch(IOException e) {
+            throw new SteamCondenserException(e.getMessage(), e);
+        }
+    }
+
     /**
      * Sends the given RCON packet to the server
      *
@@ -72,7 +106,7 @@ public class RCONSocket extends SteamSocket {
                !((SocketChannel)this.channel).isConnected()) {
                 this.channel = SocketChannel.open();
                 ((SocketChannel) this.channel).socket().connect(this.remoteSocket, SteamSocket.timeout);
-                this.channel.configureBlocking(false);
+                this.channel.configureBlocking(this.blocking);
             }
 
             this.buffer = ByteBuffer.wrap(dataPacket.getBytes());
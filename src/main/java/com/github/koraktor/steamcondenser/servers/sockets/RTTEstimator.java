@@ -0,0 +1,196 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.util.Arrays;
+
+/**
+ * This class estimates the round-trip time to a single server and derives
+ * the timeouts used when waiting for its replies
+ * <p>
+ * The estimation follows the retransmission timer of TCP (RFC 6298): A
+ * smoothed round-trip time and its variation are updated with every measured
+ * sample and the timeout is the smoothed round-trip time plus four times the
+ * variation. Every timeout doubles the current value until the next sample
+ * is measured.
+ * <p>
+ * There are two separate timeouts: The timeout for the first packet of a
+ * reply and the timeout for further parts of a split reply. As servers send
+ * the parts of a split reply at once, the latter only has to cover the
+ * jitter of the connection and is usually much shorter.
+ * <p>
+ * Until the first sample has been measured, both timeouts are equal to
+ * {@link SteamSocket#getTimeout}.
+ *
+ * @author Sebastian Staudt
+ */
+public class RTTEstimator {
+
+    /**
+     * The default maximum timeout in milliseconds
+     */
+    public static final int DEFAULT_MAX_TIMEOUT = 10000;
+
+    /**
+     * The default minimum timeout in milliseconds
+     */
+    public static final int DEFAULT_MIN_TIMEOUT = 100;
+
+    private static final int RECENT_SAMPLES = 64;
+
+    private int maxTimeout;
+
+    private int minTimeout;
+
+    private int[] recentSamples;
+
+    private double rttVariation;
+
+    private int sampleCount;
+
+    private double smoothedRtt;
+
+    private int timeout;
+
+    /**
+     * Creates a new estimator using the default timeout limits
+     */
+    public RTTEstimator() {
+        this(DEFAULT_MIN_TIMEOUT, DEFAULT_MAX_TIMEOUT);
+    }
+
+    /**
+     * Creates a new estimator with the given timeout limits
+     *
+     * @param minTimeout The minimum timeout in milliseconds
+     * @param maxTimeout The maximum timeout in milliseconds
+     */
+    public RTTEstimator(int minTimeout, int maxTimeout) {
+        if (minTimeout < 1 || maxTimeout < minTimeout) {
+            throw new IllegalArgumentException("Invalid timeout limits " + minTimeout + " and " + maxTimeout + ".");
+        }
+
+        this.maxTimeout = maxTimeout;
+        this.minTimeout = minTimeout;
+        this.recentSamples = new int[RECENT_SAMPLES];
+    }
+
+    /**
+     * Doubles the current timeout after a request has timed out
+     * <p>
+     * The timeout is reset by the next sample.
+     */
+    public synchronized void backoff() {
+        this.timeout = Math.min(this.maxTimeout, this.getTimeout() * 2);
+    }
+
+    /**
+     * Returns the timeout for further parts of a split reply
+     *
+     * @return The amount of milliseconds to wait for the next part of a split
+     *         reply
+     */
+    public synchronized int getFragmentTimeout() {
+        if (this.sampleCount == 0) {
+            return this.getTimeout();
+        }
+
+        int timeout = (int) Math.round(this.smoothedRtt / 2 + 4 * this.rttVariation);
+
+        return Math.min(this.getTimeout(), Math.max(this.minTimeout, timeout));
+    }
+
+    /**
+     * Returns the given percentile of the recently measured round-trip times
+     * <p>
+     * Only the last 64 samples are taken into account.
+     *
+     * @param percentile The percentile to calculate, e.g. <code>95</code>
+     * @return The round-trip time in milliseconds below which the given
+     *         percentage of recent samples lie or <code>0</code> if no sample
+     *         has been measured yet
+     */
+    public synchronized int getPercentile(int percentile) {
+        int count = Math.min(this.sampleCount, RECENT_SAMPLES);
+        if (count == 0) {
+            return 0;
+        }
+
+        int[] samples = Arrays.copyOf(this.recentSamples, count);
+        Arrays.sort(samples);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+
+        return samples[Math.max(0, Math.min(count - 1, index))];
+    }
+
+    /**
+     * Returns the number of round-trip times measured so far
+     *
+     * @return The number of samples
+     */
+    public synchronized int getSampleCount() {
+        return this.sampleCount;
+    }
+
+    /**
+     * Returns the smoothed round-trip time
+     *
+     * @return The smoothed round-trip time in milliseconds or <code>0</code>
+     *         if no sample has been measured yet
+     */
+    public synchronized int getSmoothedRtt() {
+        return (int) Math.round(this.smoothedRtt);
+    }
+
+    /**
+     * Returns the timeout for the first packet of a reply
+     *
+     * @return The amount of milliseconds to wait for a reply
+     */
+    public synchronized int getTimeout() {
+        if (this.timeout == 0) {
+            return SteamSocket.getTimeout();
+        }
+
+        return this.timeout;
+    }
+
+    /**
+     * Discards all samples measured so far
+     */
+    public synchronized void reset() {
+        this.rttVariation = 0;
+        this.sampleCount = 0;
+        this.smoothedRtt = 0;
+        this.timeout = 0;
+    }
+
+    /**
+     * Updates the estimation with a measured round-trip time
+     *
+     * @param rtt The time in milliseconds between sending a request and
+     *        receiving the first packet of its reply
+     */
+    public synchronized void update(long rtt) {
+        double sample = Math.max(0, Math.min(rtt, this.maxTimeout));
+
+        if (this.sampleCount == 0) {
+            this.smoothedRtt = sample;
+            this.rttVariation = sample / 2;
+        } else {
+            this.rttVariation += (Math.abs(this.smoothedRtt - sample) - this.rttVariation) / 4;
+            this.smoothedRtt += (sample - this.smoothedRtt) / 8;
+        }
+        this.recentSamples[this.sampleCount % RECENT_SAMPLES] = (int) sample;
+        this.sampleCount ++;
+
+        int timeout = (int) Math.ceil(this.smoothedRtt + Math.max(1, 4 * this.rttVariation));
+        this.timeout = Math.max(this.minTimeout, Math.min(this.maxTimeout, timeout));
+    }
+
+}
@@ -0,0 +1,226 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This class represents the result of an asynchronous request that will be
+ * available once the reply has been received from the server
+ * <p>
+ * Futures of this type are completed by the socket layer, usually from the
+ * thread of the shared {@link SocketEventLoop}. Listeners may be added to
+ * get notified once the future is done instead of waiting for it.
+ *
+ * @author Sebastian Staudt
+ * @param <V> The type of the result
+ */
+public class ReplyFuture<V> implements Future<V> {
+
+    private boolean cancelled;
+
+    private boolean done;
+
+    private Throwable error;
+
+    private List<Runnable> listeners;
+
+    private V value;
+
+    /**
+     * Adds a listener that is run once this future is done
+     * <p>
+     * Listeners are run by the thread completing the future, so they should
+     * return quickly. If the future is already done, the listener is run
+     * immediately by the current thread.
+     *
+     * @param listener The listener to run
+     */
+    public void addListener(Runnable listener) {
+        synchronized (this) {
+            if (!this.done) {
+                if (this.listeners == null) {
+                    this.listeners = new ArrayList<Runnable>();
+                }
+                this.listeners.add(listener);
+                return;
+            }
+        }
+
+        listener.run();
+    }
+
+    /**
+     * Cancels this future if it is not already done
+     *
+     * @param mayInterruptIfRunning Ignored, as the request is already on the
+     *        wire
+     * @return <code>true</code> if the future has been cancelled
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (this.done) {
+                return false;
+            }
+
+            this.cancelled = true;
+            this.done = true;
+            this.notifyAll();
+        }
+        this.runListeners();
+
+        return true;
+    }
+
+    /**
+     * Completes this future with the given value
+     *
+     * @param value The result of the request
+     * @return <code>true</code> if this future has not been done before
+     */
+    public boolean complete(V value) {
+        synchronized (this) {
+            if (this.done) {
+                return false;
+            }
+
+            this.value = value;
+            this.done = true;
+            this.notifyAll();
+        }
+        this.runListeners();
+
+        return true;
+    }
+
+    /**
+     * Completes this future with the given error
+     *
+     * @param error The error that caused the request to fail
+     * @return <code>true</code> if this future has not been done before
+     */
+    public boolean fail(Throwable error) {
+        synchronized (this) {
+            if (this.done) {
+                return false;
+            }
+
+            this.error = error;
+            this.done = true;
+            this.notifyAll();
+        }
+        this.runListeners();
+
+        return true;
+    }
+
+    /**
+     * Waits for the result of the request
+     *
+     * @return The result of the request
+     * @throws CancellationException if the request has been cancelled
+     * @throws ExecutionException if the request failed
+     * @throws InterruptedException if the current thread has been interrupted
+     *         while waiting
+     */
+    public synchronized V get()
+            throws InterruptedException, ExecutionException {
+        while (!this.done) {
+            this.wait();
+        }
+
+        return this.getResult();
+    }
+
+    /**
+     * Waits for the result of the request for the given amount of time
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout argument
+     * @return The result of the request
+     * @throws CancellationException if the request has been cancelled
+     * @throws ExecutionException if the request failed
+     * @throws InterruptedException if the current thread has been interrupted
+     *         while waiting
+     * @throws TimeoutException if the result is not available in time
+     */
+    public synchronized V get(long timeout, TimeUnit unit)
+            throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+        long remaining = unit.toMillis(timeout);
+        while (!this.done) {
+            if (remaining <= 0) {
+                throw new TimeoutException();
+            }
+            this.wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+
+        return this.getResult();
+    }
+
+    /**
+     * Returns whether this future has been cancelled
+     *
+     * @return <code>true</code> if this future has been cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return this.cancelled;
+    }
+
+    /**
+     * Returns whether this future is done, i.e. completed, failed or
+     * cancelled
+     *
+     * @return <code>true</code> if this future is done
+     */
+    public synchronized boolean isDone() {
+        return this.done;
+    }
+
+    /**
+     * Returns the result of this future or throws the error it failed with
+     *
+     * @return The result of the request
+     * @throws CancellationException if the request has been cancelled
+     * @throws ExecutionException if the request failed
+     */
+    private V getResult() throws ExecutionException {
+        if (this.cancelled) {
+            throw new CancellationException();
+        }
+        if (this.error != null) {
+            throw new ExecutionException(this.error);
+        }
+
+        return this.value;
+    }
+
+    /**
+     * Runs the listeners of this future after it has been done
+     */
+    private void runListeners() {
+        List<Runnable> listeners;
+        synchronized (this) {
+            listeners = this.listeners;
+            this.listeners = null;
+        }
+
+        if (listeners != null) {
+            for (Runnable listener : listeners) {
+                listener.run();
+            }
+        }
+    }
+}
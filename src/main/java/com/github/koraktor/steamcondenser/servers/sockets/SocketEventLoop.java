@@ -0,0 +1,273 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+
+/**
+ * This class implements an event loop owning a single, long-lived selector
+ * that is shared by all sockets
+ * <p>
+ * Instead of opening a new selector for every packet read, sockets register
+ * their channels once with the event loop. The loop's thread waits for
+ * readiness of all registered channels and wakes up the threads waiting for
+ * data on them or dispatches the readiness to a handler.
+ *
+ * @author Sebastian Staudt
+ * @see ChannelRegistration
+ */
+public class SocketEventLoop implements Runnable {
+
+    protected static final Logger LOG = LoggerFactory.getLogger(SocketEventLoop.class);
+
+    private static SocketEventLoop instance;
+
+    private Queue<Runnable> pendingTasks;
+
+    private PriorityQueue<ScheduledTask> scheduledTasks;
+
+    private Selector selector;
+
+    private Thread thread;
+
+    /**
+     * Returns the event loop shared by all sockets
+     * <p>
+     * The event loop and its thread are created when this method is called
+     * for the first time.
+     *
+     * @return The shared event loop
+     * @throws SteamCondenserException if the selector cannot be opened
+     */
+    public static synchronized SocketEventLoop getInstance()
+            throws SteamCondenserException {
+        if (instance == null || !instance.isRunning()) {
+            try {
+                instance = new SocketEventLoop();
+            } catch (IOException e) {
+                throw new SteamCondenserException(e.getMessage(), e);
+            }
+        }
+
+        return instance;
+    }
+
+    /**
+     * Creates a new event loop and starts its thread
+     *
+     * @throws IOException if the selector cannot be opened
+     */
+    protected SocketEventLoop() throws IOException {
+        this.pendingTasks = new ConcurrentLinkedQueue<Runnable>();
+        this.scheduledTasks = new PriorityQueue<ScheduledTask>();
+        this.selector = Selector.open();
+
+        this.thread = new Thread(this, "steam-condenser-event-loop");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Runs the given task on the thread of this event loop
+     * <p>
+     * Changes to the selector and its keys are always done from the loop's
+     * thread to avoid blocking on a running select operation.
+     *
+     * @param task The task to run
+     */
+    public void execute(Runnable task) {
+        if (Thread.currentThread() == this.thread) {
+            task.run();
+        } else {
+            this.pendingTasks.add(task);
+            this.selector.wakeup();
+        }
+    }
+
+    /**
+     * Runs the given task on the thread of this event loop after the given
+     * delay
+     * <p>
+     * This is used to implement timeouts of asynchronous requests without
+     * additional timer threads.
+     *
+     * @param task The task to run
+     * @param delay The amount of milliseconds to wait before running the task
+     */
+    public void schedule(Runnable task, long delay) {
+        final ScheduledTask scheduledTask = new ScheduledTask(task, System.currentTimeMillis() + delay);
+
+        this.execute(new Runnable() {
+            public void run() {
+                scheduledTasks.add(scheduledTask);
+            }
+        });
+    }
+
+    /**
+     * Returns whether the thread of this event loop is still alive
+     *
+     * @return <code>true</code> if this event loop is running
+     */
+    public boolean isRunning() {
+        return this.thread.isAlive() && this.selector.isOpen();
+    }
+
+    /**
+     * Returns whether the current thread is the thread of this event loop
+     *
+     * @return <code>true</code> if called from this event loop
+     */
+    public boolean inEventLoop() {
+        return Thread.currentThread() == this.thread;
+    }
+
+    /**
+     * Registers the given channel with this event loop
+     * <p>
+     * The channel has to be in non-blocking mode.
+     *
+     * @param channel The channel to register
+     * @return The registration used to wait for readiness of the channel
+     */
+    public ChannelRegistration register(SelectableChannel channel) {
+        final ChannelRegistration registration = new ChannelRegistration(this, channel);
+
+        this.execute(new Runnable() {
+            public void run() {
+                try {
+                    registration.setKey(registration.getChannel().register(selector, 0, registration));
+                } catch (ClosedChannelException e) {
+                    registration.channelReady();
+                }
+            }
+        });
+
+        return registration;
+    }
+
+    /**
+     * Changes the operations the given registration is interested in
+     *
+     * @param registration The registration to update
+     * @param interestOps The operations to wait for, <code>0</code> to stop
+     *        waiting
+     */
+    void setInterest(final ChannelRegistration registration, final int interestOps) {
+        this.execute(new Runnable() {
+            public void run() {
+                SelectionKey key = registration.getKey();
+                if (key == null || !key.isValid()) {
+                    if (interestOps != 0) {
+                        registration.channelReady();
+                    }
+                    return;
+                }
+
+                key.interestOps(interestOps);
+            }
+        });
+    }
+
+    /**
+     * Waits for channel readiness and dispatches it to the registrations of
+     * the ready channels
+     * <p>
+     * Scheduled tasks are run in between.
+     */
+    public void run() {
+        while (this.selector.isOpen()) {
+            try {
+                long timeout = this.runScheduledTasks();
+                if (timeout == 0) {
+                    this.selector.select();
+                } else {
+                    this.selector.select(timeout);
+                }
+
+                Runnable task;
+                while ((task = this.pendingTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    ChannelRegistration registration = (ChannelRegistration) key.attachment();
+                    try {
+                        if (key.isValid()) {
+                            key.interestOps(0);
+                        }
+                    } catch (CancelledKeyException e) {}
+                    registration.channelReady();
+                }
+            } catch (IOException e) {
+                LOG.warn("Selecting ready channels failed: " + e.getMessage());
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error in event loop", e);
+            }
+        }
+    }
+
+    /**
+     * Runs all scheduled tasks that are due
+     *
+     * @return The amount of milliseconds until the next scheduled task is
+     *         due or <code>0</code> if there is no scheduled task
+     */
+    private long runScheduledTasks() {
+        while (!this.scheduledTasks.isEmpty()) {
+            long delay = this.scheduledTasks.peek().time - System.currentTimeMillis();
+            if (delay > 0) {
+                return delay;
+            }
+
+            try {
+                this.scheduledTasks.poll().task.run();
+            } catch (RuntimeException e) {
+                LOG.error("Unexpected error in scheduled task", e);
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * A task that should be run at a specific point in time
+     */
+    private static class ScheduledTask implements Comparable<ScheduledTask> {
+
+        final Runnable task;
+
+        final long time;
+
+        ScheduledTask(Runnable task, long time) {
+            this.task = task;
+            this.time = time;
+        }
+
+        public int compareTo(ScheduledTask other) {
+            return (this.time < other.time) ? -1 : ((this.time == other.time) ? 0 : 1);
+        }
+    }
+}
@@ -8,14 +8,12 @@
 package com.github.koraktor.steamcondenser.servers.sockets;
 
 import java.net.InetAddress;
-import java.util.ArrayList;
 import java.util.concurrent.TimeoutException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
-import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
 
 /**
  * This class represents a socket used to communicate with game servers based
@@ -38,6 +36,8 @@ public class SourceSocket extends QuerySocket {
     public SourceSocket(InetAddress ipAddress, int portNumber)
             throws SteamCondenserException {
         super(ipAddress, portNumber);
+        this.splitPacketAssembler = new SplitPacketAssembler();
+        this.splitPacketAssembler.setReplyCache(this.replyCache);
     }
 
     /**
@@ -57,65 +57,46 @@ public class SourceSocket extends QuerySocket {
     public SteamPacket getReply()
             throws SteamCondenserException, TimeoutException {
         int bytesRead;
-        boolean isCompressed = false;
         SteamPacket packet;
 
-        bytesRead = this.receivePacket(1400);
+        this.receivePacket(1400);
+        packet = this.readPacket();
 
-        if(this.packetIsSplit()) {
-            byte[] splitData;
-            int packetCount, packetNumber, requestId, splitSize;
-            int packetChecksum = 0;
-            ArrayList<byte[]> splitPackets = new ArrayList<byte[]>();
-
-            do {
-                requestId = Integer.reverseBytes(this.buffer.getInt());
-                isCompressed = ((requestId & 0x80000000) != 0);
-                packetCount = this.buffer.get();
-                packetNumber = this.buffer.get() + 1;
-
-                if(isCompressed) {
-                    splitSize = Integer.reverseBytes(this.buffer.getInt());
-                    packetChecksum = Integer.reverseBytes(this.buffer.getInt());
-                } else {
-                    splitSize = Short.reverseBytes(this.buffer.getShort());
-                }
-
-                splitData = new byte[Math.min(splitSize, this.buffer.remaining())];
-                this.buffer.get(splitData);
-                splitPackets.ensureCapacity(packetCount);
-                splitPackets.add(packetNumber - 1, splitData);
-
-                if(splitPackets.size() < packetCount) {
-                    try {
-                        bytesRead = this.receivePacket();
-                    } catch(TimeoutException e) {
-                        bytesRead = 0;
-                    }
-                } else {
-                    bytesRead = 0;
-                }
-
-                LOG.info("Received packet #" + packetNumber + " of " + packetCount + " for request ID " + requestId + ".");
-            } while(bytesRead > 0 && this.packetIsSplit());
+        while(packet == null) {
+            try {
+                bytesRead = this.receivePacket();
+            } catch(TimeoutException e) {
+                bytesRead = 0;
+            }
 
-            if(isCompressed) {
-                packet = SteamPacketFactory.reassemblePacket(splitPackets, true, splitSize, packetChecksum);
+            if(bytesRead > 0 && this.packetIsSplit()) {
+                packet = this.readSplitPacket();
             } else {
-                packet = SteamPacketFactory.reassemblePacket(splitPackets);
+                packet = this.reassembleSplitPacket();
             }
-        } else {
-            packet = this.getPacketFromData();
         }
 
         this.buffer.flip();
 
-        if(isCompressed) {
-            LOG.info("Received compressed reply of type \"" + packet.getClass().getSimpleName() + "\"");
-        } else {
-            LOG.info("Received reply of type \"" + packet.getClass().getSimpleName() + "\"");
-        }
+        LOG.info("Received reply of type \"" + packet.getClass().getSimpleName() + "\"");
 
         return packet;
     }
+
+    /**
+     * Reads a part of a split packet from the buffer
+     * <p>
+     * Once all parts of the packet have been received, they are reassembled
+     * into a single packet object. Compressed packets will be decompressed.
+     * Parts may be received in any order.
+     *
+     * @return The reassembled packet or <code>null</code> if more parts are
+     *         needed
+     * @throws SteamCondenserException if the packet cannot be reassembled
+     * @see SplitPacketAssembler#addSourcePacket
+     */
+    @Override
+    protected SteamPacket readSplitPacket() throws SteamCondenserException {
+        return this.splitPacketAssembler.addSourcePacket(this.remoteSocket, this.buffer);
+    }
 }
@@ -0,0 +1,499 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.TimeoutException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.ReplyCache;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
+
+/**
+ * This class collects the parts of split packets until they can be
+ * reassembled
+ * <p>
+ * Parts are grouped by the address of the server that sent them and the
+ * request ID of the split packet, so parts of several packets – even from
+ * several servers – may arrive interleaved and in any order. Incomplete
+ * packets are discarded once they are older than the timeout, and the
+ * oldest incomplete packets are discarded if the number of pending packets
+ * or the size of their parts exceeds the configured limits.
+ * <p>
+ * An assembler is not thread-safe. It is meant to be used by a single
+ * socket or by a scanner running on the event loop thread.
+ *
+ * @author Sebastian Staudt
+ */
+public class SplitPacketAssembler {
+
+    public static final int DEFAULT_MAX_BYTES = 4 * 1024 * 1024;
+
+    public static final int DEFAULT_MAX_PACKETS = 1024;
+
+    protected static final Logger LOG = LoggerFactory.getLogger(SplitPacketAssembler.class);
+
+    private long evictions;
+
+    private long expirations;
+
+    private int maxBytes;
+
+    private int maxPackets;
+
+    private LinkedHashMap<Key, Entry> pendingPackets;
+
+    private int pendingBytes;
+
+    private ReplyCache replyCache;
+
+    private int timeout;
+
+    /**
+     * Creates a new assembler using the default socket timeout and the
+     * default limits
+     *
+     * @see SteamSocket#getTimeout
+     */
+    public SplitPacketAssembler() {
+        this(SteamSocket.getTimeout(), DEFAULT_MAX_PACKETS, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Creates a new assembler with the given timeout and limits
+     *
+     * @param timeout The time in milliseconds after which incomplete packets
+     *        are discarded
+     * @param maxPackets The maximum number of incomplete packets
+     * @param maxBytes The maximum size of all parts of incomplete packets
+     */
+    public SplitPacketAssembler(int timeout, int maxPackets, int maxBytes) {
+        if (maxPackets < 1 || maxBytes < 1) {
+            throw new IllegalArgumentException("The limits of the assembler have to be positive.");
+        }
+
+        this.maxBytes = maxBytes;
+        this.maxPackets = maxPackets;
+        this.pendingPackets = new LinkedHashMap<Key, Entry>();
+        this.timeout = timeout;
+    }
+
+    /**
+     * Reads a part of a split packet using the format of GoldSrc servers
+     *
+     * @param address The address of the server that sent the part
+     * @param buffer The buffer containing the part, positioned after the
+     *        packet header
+     * @return The reassembled packet or <code>null</code> if more parts are
+     *         needed
+     * @throws SteamCondenserException if the part is invalid or the packet
+     *         cannot be reassembled
+     */
+    public SteamPacket addGoldSrcPacket(SocketAddress address, ByteBuffer buffer)
+            throws SteamCondenserException {
+        if (buffer.remaining() < 5) {
+            throw new PacketFormatException("Split packet header is too short.");
+        }
+
+        int requestId = Integer.reverseBytes(buffer.getInt());
+        byte packetNumberAndCount = buffer.get();
+        int packetCount = packetNumberAndCount & 0xF;
+        int packetNumber = (packetNumberAndCount >> 4) & 0xF;
+
+        Entry entry = this.getEntry(address, requestId, packetCount, packetNumber);
+
+        return this.addPart(entry, packetNumber, buffer);
+    }
+
+    /**
+     * Reads a part of a split packet using the format of Source servers
+     * <p>
+     * The size and checksum of compressed packets are read from the first
+     * part only.
+     *
+     * @param address The address of the server that sent the part
+     * @param buffer The buffer containing the part, positioned after the
+     *        packet header
+     * @return The reassembled packet or <code>null</code> if more parts are
+     *         needed
+     * @throws SteamCondenserException if the part is invalid or the packet
+     *         cannot be reassembled
+     */
+    public SteamPacket addSourcePacket(SocketAddress address, ByteBuffer buffer)
+            throws SteamCondenserException {
+        if (buffer.remaining() < 8) {
+            throw new PacketFormatException("Split packet header is too short.");
+        }
+
+        int requestId = Integer.reverseBytes(buffer.getInt());
+        int packetCount = buffer.get() & 0xFF;
+        int packetNumber = buffer.get() & 0xFF;
+
+        Entry entry = this.getEntry(address, requestId, packetCount, packetNumber);
+
+        if ((requestId & 0x80000000) != 0) {
+            entry.compressed = true;
+            if (packetNumber == 0) {
+                if (buffer.remaining() < 8) {
+                    throw new PacketFormatException("Split packet header is too short.");
+                }
+                entry.size = Integer.reverseBytes(buffer.getInt());
+                entry.checksum = Integer.reverseBytes(buffer.getInt());
+            }
+        } else {
+            buffer.getShort();
+        }
+
+        return this.addPart(entry, packetNumber, buffer);
+    }
+
+    /**
+     * Discards all incomplete packets
+     */
+    public void clear() {
+        this.pendingPackets.clear();
+        this.pendingBytes = 0;
+    }
+
+    /**
+     * Discards all incomplete packets that are older than the timeout
+     *
+     * @return The number of packets discarded
+     */
+    public int expire() {
+        long now = System.currentTimeMillis();
+        int expired = 0;
+
+        Iterator<Entry> entries = this.pendingPackets.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.deadline > now) {
+                break;
+            }
+
+            entries.remove();
+            this.pendingBytes -= entry.bytes;
+            expired ++;
+        }
+
+        if (expired > 0) {
+            this.expirations += expired;
+            LOG.debug("Discarded " + expired + " incomplete split packets after timeout.");
+        }
+
+        return expired;
+    }
+
+    /**
+     * Discards the latest incomplete packet sent by the given server
+     * <p>
+     * This is used once the server did not send any more parts in time.
+     * A packet with missing parts cannot be reassembled, so it is discarded
+     * and the request is treated as timed out. This allows the request to be
+     * retried instead of parsing truncated data.
+     *
+     * @param address The address of the server
+     * @return The reassembled packet or <code>null</code> if there is no
+     *         incomplete packet from this server
+     * @throws SteamCondenserException if the packet cannot be reassembled
+     * @throws TimeoutException if parts of the packet are missing
+     */
+    public SteamPacket flush(SocketAddress address)
+            throws SteamCondenserException, TimeoutException {
+        Key key = null;
+        for (Key pendingKey : this.pendingPackets.keySet()) {
+            if (pendingKey.address.equals(address)) {
+                key = pendingKey;
+            }
+        }
+
+        if (key == null) {
+            return null;
+        }
+
+        Entry entry = this.pendingPackets.remove(key);
+        this.pendingBytes -= entry.bytes;
+
+        if (entry.received.cardinality() < entry.parts.length) {
+            LOG.info("Discarding " + entry.received.cardinality() + " of " + entry.parts.length + " parts for request ID " + key.requestId + ".");
+            throw new TimeoutException();
+        }
+
+        return this.reassemble(entry);
+    }
+
+    /**
+     * Returns the number of incomplete packets discarded because the limits
+     * of this assembler were exceeded
+     *
+     * @return The number of evicted packets
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+    /**
+     * Returns the number of incomplete packets discarded because they were
+     * older than the timeout
+     *
+     * @return The number of expired packets
+     */
+    public long getExpirations() {
+        return this.expirations;
+    }
+
+    /**
+     * Returns the size of all parts of incomplete packets
+     *
+     * @return The number of bytes held by this assembler
+     */
+    public int getPendingBytes() {
+        return this.pendingBytes;
+    }
+
+    /**
+     * Returns the number of incomplete packets
+     *
+     * @return The number of packets waiting for more parts
+     */
+    public int getPendingPackets() {
+        return this.pendingPackets.size();
+    }
+
+    /**
+     * Discards all incomplete packets sent by the given server
+     *
+     * @param address The address of the server
+     * @return The number of packets discarded
+     */
+    public int remove(SocketAddress address) {
+        int removed = 0;
+
+        Iterator<Entry> entries = this.pendingPackets.values().iterator();
+        while (entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry.key.address.equals(address)) {
+                entries.remove();
+                this.pendingBytes -= entry.bytes;
+                removed ++;
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * Sets the cache used to reuse unchanged replies
+     * <p>
+     * As the cache holds the replies of a single server, it may only be set
+     * for assemblers used by a single socket.
+     *
+     * @param replyCache The cache of the server's previous replies or
+     *        <code>null</code> to parse all reassembled packets
+     * @see SteamSocket#setReplyCaching
+     */
+    public void setReplyCache(ReplyCache replyCache) {
+        this.replyCache = replyCache;
+    }
+
+    /**
+     * Stores the data of a part and reassembles the packet if all parts have
+     * been received
+     *
+     * @param entry The incomplete packet the part belongs to
+     * @param packetNumber The number of the part
+     * @param buffer The buffer containing the data of the part
+     * @return The reassembled packet or <code>null</code> if more parts are
+     *         needed
+     * @throws SteamCondenserException if the packet cannot be reassembled
+     */
+    private SteamPacket addPart(Entry entry, int packetNumber, ByteBuffer buffer)
+            throws SteamCondenserException {
+        LOG.info("Received packet #" + (packetNumber + 1) + " of " + entry.parts.length + " for request ID " + entry.key.requestId + ".");
+
+        if (entry.received.get(packetNumber)) {
+            LOG.debug("Ignoring duplicate packet #" + (packetNumber + 1) + " for request ID " + entry.key.requestId + ".");
+            return null;
+        }
+
+        byte[] splitData = new byte[buffer.remaining()];
+        buffer.get(splitData);
+        entry.parts[packetNumber] = splitData;
+        entry.received.set(packetNumber);
+        entry.bytes += splitData.length;
+
+        if (entry.received.cardinality() < entry.parts.length) {
+            this.pendingBytes += splitData.length;
+            this.evict(entry);
+            return null;
+        }
+
+        this.pendingPackets.remove(entry.key);
+        this.pendingBytes -= entry.bytes - splitData.length;
+
+        return this.reassemble(entry);
+    }
+
+    /**
+     * Discards the oldest incomplete packets until the limits of this
+     * assembler are met again
+     *
+     * @param current The packet that has just been updated, it is discarded
+     *        only if it exceeds the limits on its own
+     */
+    private void evict(Entry current) {
+        Iterator<Entry> entries = this.pendingPackets.values().iterator();
+        while ((this.pendingPackets.size() > this.maxPackets || this.pendingBytes > this.maxBytes) &&
+               entries.hasNext()) {
+            Entry entry = entries.next();
+            if (entry == current && this.pendingPackets.size() > 1) {
+                continue;
+            }
+
+            entries.remove();
+            this.pendingBytes -= entry.bytes;
+            this.evictions ++;
+            LOG.warn("Discarding incomplete split packet for request ID " + entry.key.requestId + " due to memory limits.");
+        }
+    }
+
+    /**
+     * Returns the incomplete packet the given part belongs to, creating it if
+     * required
+     *
+     * @param address The address of the server that sent the part
+     * @param requestId The request ID of the split packet
+     * @param packetCount The number of parts of the split packet
+     * @param packetNumber The number of the part
+     * @return The incomplete packet
+     * @throws PacketFormatException if the number of the part is invalid
+     */
+    private Entry getEntry(SocketAddress address, int requestId, int packetCount, int packetNumber)
+            throws PacketFormatException {
+        if (packetNumber >= packetCount) {
+            throw new PacketFormatException("Invalid split packet number " + (packetNumber + 1) + " of " + packetCount + ".");
+        }
+
+        this.expire();
+
+        Key key = new Key(address, requestId);
+        Entry entry = this.pendingPackets.get(key);
+        if (entry != null && entry.parts.length != packetCount) {
+            LOG.warn("Discarding split packet for request ID " + requestId + " with inconsistent packet count.");
+            this.pendingPackets.remove(key);
+            this.pendingBytes -= entry.bytes;
+            entry = null;
+        }
+
+        if (entry == null) {
+            entry = new Entry(key, packetCount, System.currentTimeMillis() + this.timeout);
+            this.pendingPackets.put(key, entry);
+        }
+
+        return entry;
+    }
+
+    /**
+     * Reassembles the received parts of the given packet
+     *
+     * @param entry The packet to reassemble
+     * @return The reassembled packet
+     * @throws SteamCondenserException if the packet cannot be reassembled
+     */
+    private SteamPacket reassemble(Entry entry)
+            throws SteamCondenserException {
+        ArrayList<byte[]> splitPackets = new ArrayList<byte[]>(entry.parts.length);
+        for (byte[] part : entry.parts) {
+            if (part != null) {
+                splitPackets.add(part);
+            }
+        }
+
+        if (entry.compressed) {
+            LOG.info("Received compressed reply");
+            if (this.replyCache == null) {
+                return SteamPacketFactory.reassemblePacket(splitPackets, true, entry.size, entry.checksum);
+            }
+            return SteamPacketFactory.reassemblePacket(splitPackets, true, entry.size, entry.checksum, this.replyCache);
+        }
+
+        if (this.replyCache == null) {
+            return SteamPacketFactory.reassemblePacket(splitPackets);
+        }
+        return SteamPacketFactory.reassemblePacket(splitPackets, false, 0, 0, this.replyCache);
+    }
+
+    /**
+     * The parts of an incomplete split packet
+     */
+    private static class Entry {
+
+        int bytes;
+
+        int checksum;
+
+        boolean compressed;
+
+        final long deadline;
+
+        final Key key;
+
+        final byte[][] parts;
+
+        final BitSet received;
+
+        int size;
+
+        Entry(Key key, int packetCount, long deadline) {
+            this.deadline = deadline;
+            this.key = key;
+            this.parts = new byte[packetCount][];
+            this.received = new BitSet(packetCount);
+        }
+    }
+
+    /**
+     * Identifies a split packet by the address of its sender and its request
+     * ID
+     */
+    private static class Key {
+
+        final SocketAddress address;
+
+        final int requestId;
+
+        Key(SocketAddress address, int requestId) {
+            this.address = address;
+            this.requestId = requestId;
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (!(object instanceof Key)) {
+                return false;
+            }
+
+            Key other = (Key) object;
+            return this.requestId == other.requestId && this.address.equals(other.address);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * this.address.hashCode() + this.requestId;
+        }
+    }
+}
@@ -14,13 +14,12 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SelectableChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.util.concurrent.TimeoutException;
 
 import com.github.koraktor.steamcondenser.exceptions.ConnectionResetException;
 import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
 import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
+import com.github.koraktor.steamcondenser.servers.packets.ReplyCache;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
 
@@ -32,18 +31,106 @@ import com.github.koraktor.steamcondenser.servers.packets.SteamPacketFactory;
  */
 abstract public class SteamSocket {
 
+    protected static boolean blockingIO = false;
+
+    protected static boolean replyCaching = false;
+
     protected static int timeout = 1000;
 
+    protected boolean blocking;
     protected ByteBuffer buffer;
     protected SelectableChannel channel;
+    protected ChannelRegistration registration;
     protected InetSocketAddress remoteSocket;
+    protected ReplyCache replyCache;
+    protected volatile long requestTime;
+    protected RTTEstimator rttEstimator;
+
+    /**
+     * Returns the timeout for socket operations
+     *
+     * @return The amount of milliseconds before a request times out
+     */
+    public static int getTimeout() {
+        return SteamSocket.timeout;
+    }
+
+    /**
+     * Returns whether new sockets use blocking I/O
+     *
+     * @return <code>true</code> if new sockets use blocking I/O
+     * @see #setBlockingIO
+     */
+    public static boolean isBlockingIO() {
+        return SteamSocket.blockingIO;
+    }
+
+    /**
+     * Returns whether new sockets reuse unchanged replies
+     *
+     * @return <code>true</code> if new sockets reuse unchanged replies
+     * @see #setReplyCaching
+     */
+    public static boolean isReplyCaching() {
+        return SteamSocket.replyCaching;
+    }
+
+    /**
+     * Sets whether new sockets use blocking I/O
+     * <p>
+     * By default, sockets use non-blocking channels and wait for replies
+     * using the shared {@link SocketEventLoop}. In blocking mode, the
+     * channels of query and RCON sockets are blocking and replies are read
+     * using socket-level read timeouts instead. This does not involve any
+     * other thread and is well suited for running each query in its own
+     * (virtual) thread.
+     * <p>
+     * Asynchronous queries, and therefore cache policies, are not available
+     * for sockets in blocking mode.
+     * <p>
+     * This setting only affects sockets created afterwards.
+     *
+     * @param blockingIO <code>true</code> if new sockets should use blocking
+     *        I/O
+     */
+    public static void setBlockingIO(boolean blockingIO) {
+        SteamSocket.blockingIO = blockingIO;
+    }
+
+    /**
+     * Sets whether new sockets reuse unchanged replies
+     * <p>
+     * Servers usually reply with identical rules, and often with identical
+     * information and players, to repeated queries. With reply caching,
+     * each socket remembers the latest information, player and rules
+     * replies of its server. A reply that is byte for byte identical to the
+     * previous reply of the same type is not parsed again, instead the
+     * packet object of the previous reply is returned.
+     * <p>
+     * The data of cached replies – like the maps returned by {@link
+     * com.github.koraktor.steamcondenser.servers.GameServer#getRules} – is
+     * shared between several updates, so it must not be modified.
+     * <p>
+     * This setting only affects sockets created afterwards.
+     *
+     * @param replyCaching <code>true</code> if new sockets should reuse
+     *        unchanged replies
+     * @see ReplyCache
+     */
+    public static void setReplyCaching(boolean replyCaching) {
+        SteamSocket.replyCaching = replyCaching;
+    }
 
     /**
      * Sets the timeout for socket operations
      * <p>
      * Any request that takes longer than this time will cause a {@link
      * TimeoutException}.
+     * <p>
+     * Once round-trip times to a server have been measured, its sockets use
+     * timeouts derived from these instead.
      *
+     * @see RTTEstimator
      * @param timeout The amount of milliseconds before a request times out
      */
     public static void setTimeout(int timeout) {
@@ -58,10 +145,48 @@ abstract public class SteamSocket {
      * @param portNumber The port the server is listening on
      */
     protected SteamSocket(InetAddress ipAddress, int portNumber) {
+        this.blocking = SteamSocket.blockingIO;
         this.buffer = ByteBuffer.allocate(1400);
         this.buffer.order(ByteOrder.LITTLE_ENDIAN);
 
         this.remoteSocket = new InetSocketAddress(ipAddress, portNumber);
+        if(SteamSocket.replyCaching) {
+            this.replyCache = new ReplyCache();
+        }
+        this.rttEstimator = new RTTEstimator();
+    }
+
+    /**
+     * Returns the cache of the latest replies of the server
+     *
+     * @return The reply cache of this socket or <code>null</code> if reply
+     *         caching has been disabled when this socket was created
+     * @see #setReplyCaching
+     */
+    public ReplyCache getReplyCache() {
+        return this.replyCache;
+    }
+
+    /**
+     * Returns the estimator for the round-trip time to the server
+     * <p>
+     * The timeouts used when waiting for replies of the server are derived
+     * from the measured round-trip times.
+     *
+     * @return The round-trip time estimator of this socket
+     */
+    public RTTEstimator getRTTEstimator() {
+        return this.rttEstimator;
+    }
+
+    /**
+     * Returns whether this socket uses blocking I/O
+     *
+     * @return <code>true</code> if this socket uses blocking I/O
+     * @see #setBlockingIO
+     */
+    public boolean isBlocking() {
+        return this.blocking;
     }
 
     /**
@@ -75,6 +200,10 @@ abstract public class SteamSocket {
         byte[] packetData = new byte[this.buffer.remaining()];
         this.buffer.get(packetData);
 
+        if(this.replyCache != null) {
+            return this.replyCache.getPacketFromData(packetData);
+        }
+
         return SteamPacketFactory.getPacketFromData(packetData);
     }
 
@@ -93,6 +222,14 @@ abstract public class SteamSocket {
     /**
      * Reads the given amount of data from the socket and wraps it into the
      * buffer
+     * <p>
+     * The time to wait for data is taken from the socket's {@link
+     * RTTEstimator}. When reading into the current buffer, i.e. when reading
+     * further parts of a split reply, the shorter fragment timeout is used.
+     * <p>
+     * Depending on the I/O mode of this socket, the current thread either
+     * waits using the shared {@link SocketEventLoop} or blocks in a read of
+     * the channel.
      *
      * @param bufferLength The data length to read from the socket
      * @throws SteamCondenserException if an error occurs while reading from
@@ -103,22 +240,105 @@ abstract public class SteamSocket {
      */
     protected int receivePacket(int bufferLength)
             throws SteamCondenserException, TimeoutException {
-        Selector selector = null;
-        try {
-            selector = Selector.open();
-            this.channel.register(selector, SelectionKey.OP_READ);
+        this.prepareBuffer(bufferLength);
+
+        int timeout;
+        if (bufferLength == 0) {
+            timeout = this.rttEstimator.getFragmentTimeout();
+        } else {
+            timeout = this.rttEstimator.getTimeout();
+        }
 
-            if(selector.select(SteamSocket.timeout) == 0) {
+        int bytesRead = this.blocking ? this.readBlocking(timeout) : this.readIntoBuffer();
+        if(bytesRead == 0) {
+            if(this.blocking || !this.waitForData(timeout)) {
+                if (bufferLength != 0 && this.requestTime != 0) {
+                    this.requestTime = 0;
+                    this.rttEstimator.backoff();
+                }
                 throw new TimeoutException();
             }
+            bytesRead = this.readIntoBuffer();
+        }
 
-            int bytesRead;
+        if (bytesRead > 0) {
+            this.replyReceived();
+        }
+
+        return bytesRead;
+    }
 
-            if (bufferLength == 0) {
-                this.buffer.clear();
-            } else {
-                this.buffer = ByteBuffer.allocate(bufferLength);
+    /**
+     * Measures the round-trip time of the last request once the first packet
+     * of its reply has been received
+     * <p>
+     * Only requests that have been sent by {@link #requestSent} are measured.
+     */
+    protected void replyReceived() {
+        long requestTime = this.requestTime;
+        if (requestTime != 0) {
+            this.requestTime = 0;
+            if (requestTime > 0) {
+                this.rttEstimator.update(System.currentTimeMillis() - requestTime);
             }
+        }
+    }
+
+    /**
+     * Remembers the time a request has been sent to measure the round-trip
+     * time when its reply is received
+     * <p>
+     * If another request is still waiting for its reply, e.g. because the
+     * request has been repeated, the round-trip time cannot be measured
+     * reliably and the next reply is not used as a sample.
+     */
+    protected void requestSent() {
+        this.requestTime = (this.requestTime == 0) ? System.currentTimeMillis() : -1;
+    }
+
+    /**
+     * Prepares the buffer for reading the given amount of data
+     *
+     * @param bufferLength The data length to read from the socket or
+     *        <code>0</code> to reuse the current buffer
+     */
+    protected void prepareBuffer(int bufferLength) {
+        if (bufferLength == 0) {
+            this.buffer.clear();
+        } else {
+            this.buffer = ByteBuffer.allocate(bufferLength);
+        }
+    }
+
+    /**
+     * Reads data from the socket into the buffer, blocking until data is
+     * available or the timeout is reached
+     * <p>
+     * This is used instead of {@link #readIntoBuffer} for sockets in blocking
+     * mode. Subclasses supporting blocking I/O have to implement this method
+     * for their individual channel type.
+     *
+     * @param timeout The maximum amount of milliseconds to wait
+     * @return The number of bytes that have been read from the socket or
+     *         <code>0</code> if the timeout has been reached
+     * @throws SteamCondenserException if an error occurs while reading from
+     *         the socket
+     */
+    protected int readBlocking(int timeout) throws SteamCondenserException {
+        throw new SteamCondenserException("Blocking I/O is not supported by this socket.");
+    }
+
+    /**
+     * Reads the data currently available on the socket into the buffer
+     * without waiting
+     *
+     * @throws SteamCondenserException if an error occurs while reading from
+     *         the socket
+     * @return The number of bytes that have been read from the socket
+     */
+    protected int readIntoBuffer() throws SteamCondenserException {
+        try {
+            int bytesRead;
 
             try {
                 bytesRead = ((ReadableByteChannel) this.channel).read(this.buffer);
@@ -138,17 +358,51 @@ abstract public class SteamSocket {
             return bytesRead;
         } catch(IOException e) {
             throw new SteamCondenserException(e.getMessage(), e);
-        } finally {
-            if(selector != null) {
-                try {
-                    selector.close();
-                } catch(IOException e) {
-                    throw new SteamCondenserException(e.getMessage(), e);
-                }
-            }
         }
     }
 
+    /**
+     * Waits until data is available on the socket's channel
+     * <p>
+     * The channel is registered with the shared {@link SocketEventLoop}, so
+     * no selector has to be opened per read.
+     *
+     * @param timeout The maximum amount of milliseconds to wait
+     * @return <code>true</code> if data is available, <code>false</code> if
+     *         the timeout has been reached
+     * @throws SteamCondenserException if the channel cannot be registered or
+     *         the current thread is interrupted
+     */
+    protected boolean waitForData(int timeout)
+            throws SteamCondenserException {
+        try {
+            return this.getRegistration().awaitReadable(timeout);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SteamCondenserException("Interrupted while waiting for data.", e);
+        }
+    }
+
+    /**
+     * Returns the registration of this socket's channel with the shared
+     * {@link SocketEventLoop}
+     * <p>
+     * The channel is registered when this is called for the first time or
+     * after the channel has been replaced.
+     *
+     * @return The registration of the channel
+     * @throws SteamCondenserException if the event loop cannot be started
+     */
+    protected ChannelRegistration getRegistration()
+            throws SteamCondenserException {
+        if (this.registration == null ||
+            this.registration.getChannel() != this.channel) {
+            this.registration = SocketEventLoop.getInstance().register(this.channel);
+        }
+
+        return this.registration;
+    }
+
     /**
      * Closes this socket
      *
@@ -0,0 +1,79 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class PacketBufferTest {
+
+    @Test
+    public void testGetString() throws Exception {
+        PacketBuffer buffer = new PacketBuffer("test\0\0café\0".getBytes("UTF-8"));
+
+        assertEquals("test", buffer.getString());
+        assertEquals("", buffer.getString());
+        assertEquals("café", buffer.getString());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void testGetStringWithoutTerminator() {
+        PacketBuffer buffer = new PacketBuffer("test".getBytes());
+
+        assertNull(buffer.getString());
+        assertEquals(4, buffer.remaining());
+    }
+
+    @Test
+    public void testGetStringBytes() throws Exception {
+        PacketBuffer buffer = new PacketBuffer("café\0test".getBytes("UTF-8"));
+
+        byte[] bytes = buffer.getStringBytes();
+        assertEquals(5, bytes.length);
+        assertEquals("café", PacketBuffer.decodeString(bytes));
+        assertNull(buffer.getStringBytes());
+        assertEquals(4, buffer.remaining());
+        assertNull(PacketBuffer.decodeString(null));
+    }
+
+    @Test
+    public void testGetCachedString() {
+        PacketBuffer buffer1 = new PacketBuffer("sv_gravity\0high\0".getBytes());
+        PacketBuffer buffer2 = new PacketBuffer("sv_gravity\0low\0".getBytes());
+
+        String rule = buffer1.getCachedString();
+        assertEquals("sv_gravity", rule);
+        assertSame(rule, buffer2.getCachedString());
+        assertEquals("high", buffer1.getCachedString());
+        assertEquals("low", buffer2.getCachedString());
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        ByteBuffer data = ByteBuffer.allocateDirect(16);
+        data.put((byte) 0xFF).put("de_dust\0".getBytes()).putShort((short) 0x1234);
+        data.flip();
+        data.get();
+
+        PacketBuffer buffer = new PacketBuffer(data);
+
+        assertEquals("de_dust", buffer.getCachedString());
+        assertEquals(0x1234, buffer.getShort());
+        assertEquals(10, buffer.array().length);
+    }
+
+}
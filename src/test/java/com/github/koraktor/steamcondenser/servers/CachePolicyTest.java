@@ -0,0 +1,73 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class CachePolicyTest {
+
+    private CachePolicy cachePolicy;
+
+    @Before
+    public void setup() {
+        this.cachePolicy = new CachePolicy(1000, 5000);
+    }
+
+    @Test
+    public void testFresh() {
+        long now = System.currentTimeMillis();
+
+        assertEquals(CachePolicy.FRESH, this.cachePolicy.check(ServerScanner.QUERY_INFO, now - 500));
+        assertEquals(1, this.cachePolicy.getHits());
+    }
+
+    @Test
+    public void testStale() {
+        long now = System.currentTimeMillis();
+
+        assertEquals(CachePolicy.STALE, this.cachePolicy.check(ServerScanner.QUERY_INFO, now - 2000));
+        assertEquals(1, this.cachePolicy.getStaleHits());
+    }
+
+    @Test
+    public void testExpired() {
+        long now = System.currentTimeMillis();
+
+        assertEquals(CachePolicy.EXPIRED, this.cachePolicy.check(ServerScanner.QUERY_INFO, now - 7000));
+        assertEquals(CachePolicy.EXPIRED, this.cachePolicy.check(ServerScanner.QUERY_INFO, 0));
+        assertEquals(2, this.cachePolicy.getMisses());
+    }
+
+    @Test
+    public void testMaxAgePerQueryType() {
+        long now = System.currentTimeMillis();
+        this.cachePolicy.setMaxAge(ServerScanner.QUERY_RULES, 60000);
+
+        assertEquals(60000, this.cachePolicy.getMaxAge(ServerScanner.QUERY_RULES));
+        assertEquals(CachePolicy.FRESH, this.cachePolicy.check(ServerScanner.QUERY_RULES, now - 30000));
+        assertEquals(CachePolicy.EXPIRED, this.cachePolicy.check(ServerScanner.QUERY_PLAYERS, now - 30000));
+    }
+
+    @Test
+    public void testInvalidQueryType() {
+        try {
+            this.cachePolicy.setMaxAge(0, 1000);
+            fail("IllegalArgumentException expected.");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid query type 0.", e.getMessage());
+        }
+    }
+
+}
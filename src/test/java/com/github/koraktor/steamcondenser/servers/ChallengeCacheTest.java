@@ -0,0 +1,74 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class ChallengeCacheTest {
+
+    private InetSocketAddress address;
+
+    private ChallengeCache challengeCache;
+
+    @Before
+    public void setup() {
+        this.address = new InetSocketAddress("127.0.0.1", 27015);
+        this.challengeCache = new ChallengeCache(1000, 2);
+    }
+
+    @Test
+    public void testGet() {
+        this.challengeCache.put(this.address, 1234);
+
+        assertEquals(1234, this.challengeCache.get(this.address));
+        assertEquals(1, this.challengeCache.getHits());
+    }
+
+    @Test
+    public void testUnknownServer() {
+        assertEquals(ChallengeCache.NO_CHALLENGE, this.challengeCache.get(this.address));
+        assertEquals(1, this.challengeCache.getMisses());
+    }
+
+    @Test
+    public void testExpiry() {
+        this.challengeCache.setMaxAge(-1);
+        this.challengeCache.put(this.address, 1234);
+
+        assertEquals(ChallengeCache.NO_CHALLENGE, this.challengeCache.get(this.address));
+        assertEquals(0, this.challengeCache.size());
+    }
+
+    @Test
+    public void testReplace() {
+        this.challengeCache.put(this.address, 1234);
+        this.challengeCache.put(this.address, 5678);
+
+        assertEquals(5678, this.challengeCache.get(this.address));
+        assertEquals(1, this.challengeCache.size());
+    }
+
+    @Test
+    public void testMaxSize() {
+        this.challengeCache.put(new InetSocketAddress("127.0.0.1", 27016), 1);
+        this.challengeCache.put(new InetSocketAddress("127.0.0.1", 27017), 2);
+        this.challengeCache.put(this.address, 1234);
+
+        assertEquals(2, this.challengeCache.size());
+        assertEquals(ChallengeCache.NO_CHALLENGE, this.challengeCache.get(this.address));
+    }
+
+}
@@ -11,14 +11,18 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import org.mockito.ArgumentCaptor;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.powermock.core.classloader.annotations.PrepareForTest;
@@ -33,16 +37,20 @@ import com.github.koraktor.steamcondenser.servers.packets.S2A_PLAYER_Packet;
 import com.github.koraktor.steamcondenser.servers.packets.S2A_RULES_Packet;
 import com.github.koraktor.steamcondenser.servers.packets.S2C_CHALLENGE_Packet;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+import com.github.koraktor.steamcondenser.servers.sockets.PacketHandler;
 import com.github.koraktor.steamcondenser.servers.sockets.QuerySocket;
 
 import static org.hamcrest.core.Is.is;
 import static org.hamcrest.number.OrderingComparison.greaterThanOrEqualTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.mockStatic;
@@ -63,6 +71,7 @@ public class GameServerTest {
     @Before
     public void setup() throws Exception {
         this.server = spy(new GenericGameServer());
+        this.server.challengeCache = new ChallengeCache();
         this.socket = mock(QuerySocket.class);
         this.server.socket = this.socket;
     }
@@ -148,6 +157,18 @@ public class GameServerTest {
         verify(this.server).updateChallengeNumber();
     }
 
+    @Test
+    public void testInitializeWithCachedChallenge() throws Exception {
+        doNothing().when(this.server).updatePing();
+        doNothing().when(this.server).updateServerInfo();
+        this.server.challengeCache.put(new InetSocketAddress("127.0.0.1", 27015), 1234);
+
+        this.server.initialize();
+
+        assertEquals(1234, this.server.challengeNumber);
+        verify(this.server, never()).updateChallengeNumber();
+    }
+
     @Test
     public void testIsRconAuthenticated() {
         assertEquals(this.server.rconAuthenticated, this.server.isRconAuthenticated());
@@ -360,6 +381,7 @@ public class GameServerTest {
         this.server.handleResponseForRequest(GameServer.REQUEST_CHALLENGE);
 
         assertEquals(1234, this.server.challengeNumber);
+        assertEquals(1234, this.server.challengeCache.get(new InetSocketAddress("127.0.0.1", 27015)));
         verify(this.server).sendRequest(any(A2S_PLAYER_Packet.class));
     }
 
@@ -397,12 +419,15 @@ public class GameServerTest {
         S2A_PLAYER_Packet packet = mock(S2A_PLAYER_Packet.class);
         HashMap<String, SteamPlayer> playerMap = new HashMap<String, SteamPlayer>();
         playerMap.put("test", player);
-        when(packet.getPlayerHash()).thenReturn(playerMap);
+        PlayerList playerList = mock(PlayerList.class);
+        when(playerList.toMap()).thenReturn(playerMap);
+        when(packet.getPlayerList()).thenReturn(playerList);
         when(server.getReply()).thenReturn(packet);
 
         this.server.handleResponseForRequest(GameServer.REQUEST_PLAYER);
 
-        assertEquals(player, this.server.playerHash.get("test"));
+        assertSame(playerList, this.server.playerList);
+        assertEquals(player, this.server.getPlayers().get("test"));
         verify(this.server).sendRequest(any(A2S_PLAYER_Packet.class));
     }
 
@@ -416,16 +441,124 @@ public class GameServerTest {
         S2A_PLAYER_Packet packet2 = mock(S2A_PLAYER_Packet.class);
         HashMap<String, SteamPlayer> playerMap = new HashMap<String, SteamPlayer>();
         playerMap.put("test", player);
-        when(packet2.getPlayerHash()).thenReturn(playerMap);
+        PlayerList playerList = mock(PlayerList.class);
+        when(playerList.toMap()).thenReturn(playerMap);
+        when(packet2.getPlayerList()).thenReturn(playerList);
         when(server.getReply()).thenReturn(packet1).thenReturn(packet2);
 
         this.server.handleResponseForRequest(GameServer.REQUEST_PLAYER);
 
         assertEquals("test", this.server.serverInfo.get("test"));
-        assertEquals(player, this.server.playerHash.get("test"));
+        assertEquals(player, this.server.getPlayers().get("test"));
         verify(this.server, times(2)).sendRequest(any(A2S_PLAYER_Packet.class));
     }
 
+    @Test
+    public void testHandleResponseWithRetry() throws Exception {
+        RetryPolicy retryPolicy = new RetryPolicy(3, 0, 1.0, 0);
+        this.server.setRetryPolicy(retryPolicy);
+
+        S2A_INFO2_Packet packet = mock(S2A_INFO2_Packet.class);
+        when(packet.getInfo()).thenReturn(new HashMap<String, Object>());
+        when(server.getReply()).thenThrow(new TimeoutException()).thenReturn(packet);
+
+        this.server.handleResponseForRequest(GameServer.REQUEST_INFO);
+
+        verify(this.server, times(2)).sendRequest(any(A2S_INFO_Packet.class));
+        assertEquals(1, retryPolicy.getQueries());
+        assertEquals(1, retryPolicy.getRetries());
+        assertEquals(0, retryPolicy.getTimeouts());
+    }
+
+    @Test
+    public void testHandleResponseRetriesExhausted() throws Exception {
+        RetryPolicy retryPolicy = new RetryPolicy(2, 0, 1.0, 0);
+        this.server.setRetryPolicy(retryPolicy);
+
+        when(server.getReply()).thenThrow(new TimeoutException());
+
+        try {
+            this.server.handleResponseForRequest(GameServer.REQUEST_INFO);
+            fail("TimeoutException expected.");
+        } catch(TimeoutException e) {
+            verify(this.server, times(2)).sendRequest(any(A2S_INFO_Packet.class));
+            assertEquals(1, retryPolicy.getTimeouts());
+        }
+    }
+
+    @Test
+    public void testGetServerInfoCached() throws Exception {
+        CachePolicy cachePolicy = new CachePolicy(1000, 1000);
+        this.server.setCachePolicy(cachePolicy);
+        HashMap<String, Object> infoMap = new HashMap<String, Object>();
+        this.server.serverInfo = infoMap;
+        this.server.updateTimes[GameServer.REQUEST_INFO] = System.currentTimeMillis();
+
+        assertSame(infoMap, this.server.getServerInfo());
+
+        verify(this.socket, never()).send(any(SteamPacket.class));
+        assertEquals(1, cachePolicy.getHits());
+    }
+
+    @Test
+    public void testGetServerInfoStale() throws Exception {
+        CachePolicy cachePolicy = new CachePolicy(1000, 1000);
+        this.server.setCachePolicy(cachePolicy);
+        HashMap<String, Object> infoMap = new HashMap<String, Object>();
+        this.server.serverInfo = infoMap;
+        this.server.updateTimes[GameServer.REQUEST_INFO] = System.currentTimeMillis() - 1500;
+
+        assertSame(infoMap, this.server.getServerInfo());
+        assertSame(infoMap, this.server.getServerInfo());
+
+        verify(this.socket, times(1)).send(any(A2S_INFO_Packet.class));
+        assertEquals(2, cachePolicy.getStaleHits());
+    }
+
+    @Test
+    public void testQueryInfoAsync() throws Exception {
+        S2A_INFO2_Packet packet = mock(S2A_INFO2_Packet.class);
+        HashMap<String, Object> infoMap = new HashMap<String, Object>();
+        infoMap.put("test", "test");
+        when(packet.getInfo()).thenReturn(infoMap);
+
+        Future<HashMap<String, Object>> future = this.server.queryInfoAsync();
+
+        assertSame(future, this.server.queryInfoAsync());
+        verify(this.socket, times(1)).send(any(A2S_INFO_Packet.class));
+
+        ArgumentCaptor<PacketHandler> handler = ArgumentCaptor.forClass(PacketHandler.class);
+        verify(this.socket).setPacketHandler(handler.capture());
+        handler.getValue().packetReceived(packet);
+
+        assertEquals(infoMap, future.get());
+        assertEquals(infoMap, this.server.serverInfo);
+        verify(this.socket).setPacketHandler(null);
+    }
+
+    @Test
+    public void testQueryRulesAsyncWithChallenge() throws Exception {
+        S2C_CHALLENGE_Packet challengePacket = mock(S2C_CHALLENGE_Packet.class);
+        when(challengePacket.getChallengeNumber()).thenReturn(1234);
+        S2A_RULES_Packet rulesPacket = mock(S2A_RULES_Packet.class);
+        HashMap<String, String> rulesMap = new HashMap<String, String>();
+        rulesMap.put("test", "test");
+        when(rulesPacket.getRulesHash()).thenReturn(rulesMap);
+
+        Future<HashMap<String, String>> future = this.server.queryRulesAsync();
+
+        ArgumentCaptor<PacketHandler> handler = ArgumentCaptor.forClass(PacketHandler.class);
+        verify(this.socket).setPacketHandler(handler.capture());
+        handler.getValue().packetReceived(challengePacket);
+
+        assertEquals(1234, this.server.challengeNumber);
+        verify(this.socket, times(2)).send(any(A2S_RULES_Packet.class));
+
+        handler.getValue().packetReceived(rulesPacket);
+
+        assertEquals(rulesMap, future.get());
+    }
+
     private String readFixture(String fixture) throws IOException {
         BufferedReader reader = new BufferedReader(new InputStreamReader(this.getClass().getResourceAsStream(fixture)));
         String result = "";
@@ -9,7 +9,10 @@ package com.github.koraktor.steamcondenser.servers;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.Vector;
 import java.util.concurrent.TimeoutException;
@@ -28,6 +31,7 @@ import static org.hamcrest.core.Is.is;
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -53,17 +57,8 @@ public class MasterServerTest {
 
     @Test
     public void testGetServers() throws Exception {
-        M2A_SERVER_BATCH_Paket packet1 = mock(M2A_SERVER_BATCH_Paket.class);
-        Vector<String> servers1 = new Vector<String>();
-        servers1.add("127.0.0.1:27015");
-        servers1.add("127.0.0.2:27015");
-        servers1.add("127.0.0.3:27015");
-        when(packet1.getServers()).thenReturn(servers1);
-        M2A_SERVER_BATCH_Paket packet2 = mock(M2A_SERVER_BATCH_Paket.class);
-        Vector<String> servers2 = new Vector<String>();
-        servers2.add("127.0.0.4:27015");
-        servers2.add("0.0.0.0:0");
-        when(packet2.getServers()).thenReturn(servers2);
+        M2A_SERVER_BATCH_Paket packet1 = this.serverBatch("127.0.0.1:27015", "127.0.0.2:27015", "127.0.0.3:27015");
+        M2A_SERVER_BATCH_Paket packet2 = this.serverBatch("127.0.0.4:27015", "0.0.0.0:0");
         when(this.server.socket.getReply()).thenReturn(packet1).thenReturn(packet2);
 
         Vector<InetSocketAddress> servers = new Vector<InetSocketAddress>();
@@ -102,12 +97,7 @@ public class MasterServerTest {
     public void testGetServersForced() throws Exception {
         MasterServer.setRetries(1);
 
-        M2A_SERVER_BATCH_Paket packet1 = mock(M2A_SERVER_BATCH_Paket.class);
-        Vector<String> servers1 = new Vector<String>();
-        servers1.add("127.0.0.1:27015");
-        servers1.add("127.0.0.2:27015");
-        servers1.add("127.0.0.3:27015");
-        when(packet1.getServers()).thenReturn(servers1);
+        M2A_SERVER_BATCH_Paket packet1 = this.serverBatch("127.0.0.1:27015", "127.0.0.2:27015", "127.0.0.3:27015");
         when(this.server.socket.getReply()).thenReturn(packet1).thenThrow(new TimeoutException());
 
         Vector<InetSocketAddress> servers = new Vector<InetSocketAddress>();
@@ -143,17 +133,8 @@ public class MasterServerTest {
 
     @Test
     public void testGetServersSwapIp() throws Exception {
-        M2A_SERVER_BATCH_Paket packet1 = mock(M2A_SERVER_BATCH_Paket.class);
-        Vector<String> servers1 = new Vector<String>();
-        servers1.add("127.0.0.1:27015");
-        servers1.add("127.0.0.2:27015");
-        servers1.add("127.0.0.3:27015");
-        when(packet1.getServers()).thenReturn(servers1);
-        M2A_SERVER_BATCH_Paket packet2 = mock(M2A_SERVER_BATCH_Paket.class);
-        Vector<String> servers2 = new Vector<String>();
-        servers2.add("127.0.0.4:27015");
-        servers2.add("0.0.0.0:0");
-        when(packet2.getServers()).thenReturn(servers2);
+        M2A_SERVER_BATCH_Paket packet1 = this.serverBatch("127.0.0.1:27015", "127.0.0.2:27015", "127.0.0.3:27015");
+        M2A_SERVER_BATCH_Paket packet2 = this.serverBatch("127.0.0.4:27015", "0.0.0.0:0");
         when(this.server.socket.getReply())
             .thenReturn(packet1)
             .thenThrow(new TimeoutException())
@@ -221,4 +202,50 @@ public class MasterServerTest {
         }));
     }
 
+    @Test
+    public void testGetServersIgnoresDuplicateBatch() throws Exception {
+        M2A_SERVER_BATCH_Paket packet1 = this.serverBatch("127.0.0.1:27015", "127.0.0.2:27015");
+        M2A_SERVER_BATCH_Paket packet2 = this.serverBatch("127.0.0.3:27015", "0.0.0.0:0");
+        when(this.server.socket.getReply()).thenReturn(packet1).thenReturn(packet1).thenReturn(packet2);
+
+        Vector<InetSocketAddress> servers = new Vector<InetSocketAddress>();
+        servers.add(new InetSocketAddress("127.0.0.1", 27015));
+        servers.add(new InetSocketAddress("127.0.0.2", 27015));
+        servers.add(new InetSocketAddress("127.0.0.3", 27015));
+
+        assertThat(this.server.getServers(MasterServer.REGION_ALL, ""), is(equalTo(servers)));
+
+        verify(this.server.socket, times(2)).send(any(A2M_GET_SERVERS_BATCH2_Paket.class));
+    }
+
+    @Test
+    public void testGetServersWithListener() throws Exception {
+        M2A_SERVER_BATCH_Paket packet1 = this.serverBatch("127.0.0.1:27015", "127.0.0.2:27015");
+        M2A_SERVER_BATCH_Paket packet2 = this.serverBatch("127.0.0.3:27015", "0.0.0.0:0");
+        when(this.server.socket.getReply()).thenReturn(packet1).thenReturn(packet2);
+
+        final List<List<InetSocketAddress>> batches = new ArrayList<List<InetSocketAddress>>();
+        this.server.getServers(MasterServer.REGION_ALL, "", false, new ServerBatchListener() {
+            public void serversReceived(List<InetSocketAddress> servers) {
+                batches.add(servers);
+            }
+        });
+
+        assertThat(batches.size(), is(equalTo(2)));
+        assertThat(batches.get(0), is(equalTo(Arrays.asList(new InetSocketAddress("127.0.0.1", 27015), new InetSocketAddress("127.0.0.2", 27015)))));
+        assertThat(batches.get(1), is(equalTo(Arrays.asList(new InetSocketAddress("127.0.0.3", 27015)))));
+    }
+
+    private M2A_SERVER_BATCH_Paket serverBatch(String... servers) throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(1 + servers.length * 6);
+        data.put((byte) 0x0A);
+        for(String server : servers) {
+            String[] address = server.split(":");
+            data.put(InetAddress.getByName(address[0]).getAddress());
+            data.putShort((short) Integer.parseInt(address[1]));
+        }
+
+        return new M2A_SERVER_BATCH_Paket(data.array());
+    }
+
 }
@@ -0,0 +1,124 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.PacketBuffer;
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class PlayerListTest {
+
+    private ByteArrayOutputStream data;
+
+    @Before
+    public void setup() {
+        this.data = new ByteArrayOutputStream();
+    }
+
+    @Test
+    public void testPlayers() throws Exception {
+        this.data.write(3);
+        this.writePlayer(1, "test", 10, 60.5f);
+        this.writePlayer(2, "café", -2, 1.0f);
+        this.writePlayer(3, "test", 5, 2.0f);
+
+        PlayerList players = PlayerList.fromPlayers(new PacketBuffer(this.data.toByteArray()));
+
+        assertEquals(3, players.size());
+        assertEquals(1, players.getId(0));
+        assertEquals("test", players.getName(0));
+        assertEquals(10, players.getScore(0));
+        assertEquals(60.5f, players.getConnectTime(0), 0);
+        assertEquals("café", players.getName(1));
+        assertEquals(-2, players.getScore(1));
+        assertEquals(1, players.indexOf("café"));
+        assertEquals(0, players.indexOf("test"));
+        assertEquals(-1, players.indexOf("tes"));
+
+        Iterator<SteamPlayer> iterator = players.iterator();
+        assertEquals("test", iterator.next().getName());
+        assertEquals(2, iterator.next().getId());
+        assertEquals(5, iterator.next().getScore());
+        assertFalse(iterator.hasNext());
+
+        HashMap<String, SteamPlayer> map = players.toMap();
+        assertEquals(2, map.size());
+        assertEquals(3, map.get("test").getId());
+        assertEquals(-2, map.get("café").getScore());
+    }
+
+    @Test
+    public void testMorePlayersThanAnnounced() throws Exception {
+        this.data.write(1);
+        for (int i = 0; i < 40; i ++) {
+            this.writePlayer(i, "player" + i, i, i);
+        }
+
+        PlayerList players = PlayerList.fromPlayers(new PacketBuffer(this.data.toByteArray()));
+
+        assertEquals(40, players.size());
+        assertEquals("player39", players.getName(39));
+        assertEquals(39, players.getScore(39));
+    }
+
+    @Test
+    public void testEmpty() throws Exception {
+        PlayerList players = PlayerList.fromPlayers(new PacketBuffer(new byte[] { 0 }));
+
+        assertEquals(0, players.size());
+        assertFalse(players.iterator().hasNext());
+        assertTrue(players.toMap().isEmpty());
+    }
+
+    @Test
+    public void testTruncated() throws Exception {
+        this.data.write(1);
+        this.writePlayer(1, "test", 10, 60.5f);
+        byte[] bytes = this.data.toByteArray();
+        byte[] truncated = new byte[bytes.length - 2];
+        System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+
+        try {
+            PlayerList.fromPlayers(new PacketBuffer(truncated));
+            fail("PacketFormatException expected.");
+        } catch (PacketFormatException e) {
+            assertEquals("Wrong formatted S2A_PLAYER response packet.", e.getMessage());
+        }
+    }
+
+    private void writePlayer(int id, String name, int score, float connectTime)
+            throws Exception {
+        this.data.write(id);
+        this.data.write(name.getBytes("UTF-8"));
+        this.data.write(0);
+        this.writeInt(score);
+        this.writeInt(Float.floatToIntBits(connectTime));
+    }
+
+    private void writeInt(int value) {
+        this.data.write(value);
+        this.data.write(value >> 8);
+        this.data.write(value >> 16);
+        this.data.write(value >> 24);
+    }
+
+}
@@ -0,0 +1,77 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.servers.sockets.RTTEstimator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class RetryPolicyTest {
+
+    @Test
+    public void testDefaults() {
+        RetryPolicy retryPolicy = new RetryPolicy();
+
+        assertEquals(1, retryPolicy.getMaxAttempts());
+        assertEquals(0, retryPolicy.getHedgePercentile());
+    }
+
+    @Test
+    public void testBackoffDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy(4, 100, 2.0, 0);
+
+        assertEquals(100, retryPolicy.getBackoffDelay(1));
+        assertEquals(200, retryPolicy.getBackoffDelay(2));
+        assertEquals(400, retryPolicy.getBackoffDelay(3));
+    }
+
+    @Test
+    public void testBackoffJitter() {
+        RetryPolicy retryPolicy = new RetryPolicy(2, 100, 2.0, 0.5);
+
+        for (int i = 0; i < 100; i ++) {
+            long delay = retryPolicy.getBackoffDelay(1);
+            assertTrue(delay >= 50 && delay <= 150);
+        }
+    }
+
+    @Test
+    public void testHedgeDelay() {
+        RetryPolicy retryPolicy = new RetryPolicy();
+        RTTEstimator rttEstimator = new RTTEstimator();
+        retryPolicy.setHedgePercentile(90);
+
+        assertEquals(0, retryPolicy.getHedgeDelay(rttEstimator));
+
+        for (int i = 1; i <= 100; i ++) {
+            rttEstimator.update(i);
+        }
+        assertEquals(94, retryPolicy.getHedgeDelay(rttEstimator));
+
+        retryPolicy.setHedgePercentile(0);
+        assertEquals(0, retryPolicy.getHedgeDelay(rttEstimator));
+    }
+
+    @Test
+    public void testInvalidAttempts() {
+        try {
+            new RetryPolicy(0);
+            fail("IllegalArgumentException expected.");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Queries have to be sent at least once.", e.getMessage());
+        }
+    }
+
+}
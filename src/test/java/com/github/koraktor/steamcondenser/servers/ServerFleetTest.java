@@ -0,0 +1,173 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.servers.stub.NetworkConditions;
+import com.github.koraktor.steamcondenser.servers.stub.StubGameServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class ServerFleetTest {
+
+    private ServerFleet fleet;
+
+    private List<StubGameServer> stubServers;
+
+    @Before
+    public void setup() throws Exception {
+        this.fleet = new ServerFleet();
+        this.fleet.setRefreshInterval(ServerFleet.QUERY_INFO, 100);
+        this.fleet.setRefreshInterval(ServerFleet.QUERY_PLAYERS, 100);
+        this.fleet.setRefreshInterval(ServerFleet.QUERY_RULES, 100);
+        this.stubServers = new ArrayList<StubGameServer>();
+    }
+
+    @After
+    public void teardown() {
+        this.fleet.close();
+        for (StubGameServer stubServer : this.stubServers) {
+            stubServer.close();
+        }
+    }
+
+    @Test
+    public void testSnapshots() throws Exception {
+        for (int i = 0; i < 3; i ++) {
+            StubGameServer stubServer = this.stubServer();
+            stubServer.setServerName("Server " + i);
+            stubServer.addPlayer("Player " + i, i, 1.0f);
+            stubServer.setRule("rule", Integer.toString(i));
+            this.fleet.add(stubServer.getAddress());
+        }
+        RecordingListener listener = new RecordingListener();
+        this.fleet.addListener(listener);
+        this.fleet.start();
+
+        for (int i = 0; i < 3; i ++) {
+            ServerSnapshot snapshot = this.awaitSnapshot(this.stubServers.get(i).getAddress());
+            assertEquals("Server " + i, snapshot.getServerInfo().getServerName());
+            assertEquals(1, snapshot.getPlayers().size());
+            assertEquals("Player " + i, snapshot.getPlayers().getName(0));
+            assertEquals(Integer.toString(i), snapshot.getRules().get("rule"));
+            assertTrue(snapshot.getServerInfoTime() > 0);
+        }
+        assertEquals(3, this.fleet.size());
+        assertEquals(3, this.fleet.getSnapshots().size());
+        assertTrue(listener.updates.size() >= 9);
+        assertTrue(listener.failures.isEmpty());
+    }
+
+    @Test
+    public void testMaxInFlight() throws Exception {
+        StubGameServer stubServer = this.stubServer();
+        stubServer.setNetworkConditions(new NetworkConditions(50, 0, 0, 0));
+        InetSocketAddress address = stubServer.getAddress();
+        for (int i = 0; i < 20; i ++) {
+            this.fleet.add(new SourceServer(address.getAddress(), address.getPort()));
+        }
+        this.fleet.setMaxInFlight(3);
+        this.fleet.start();
+
+        int maxInFlight = 0;
+        long endTime = System.currentTimeMillis() + 500;
+        while (System.currentTimeMillis() < endTime) {
+            maxInFlight = Math.max(maxInFlight, this.fleet.getInFlight());
+            Thread.sleep(5);
+        }
+
+        assertTrue(maxInFlight > 0);
+        assertTrue(maxInFlight <= 3);
+    }
+
+    @Test
+    public void testRemove() throws Exception {
+        StubGameServer stubServer = this.stubServer();
+        this.fleet.add(stubServer.getAddress());
+        this.fleet.start();
+        this.awaitSnapshot(stubServer.getAddress());
+
+        this.fleet.remove(stubServer.getAddress());
+
+        assertEquals(0, this.fleet.size());
+        assertNull(this.fleet.getSnapshot(stubServer.getAddress()));
+    }
+
+    @Test
+    public void testRefreshFailed() throws Exception {
+        StubGameServer stubServer = this.stubServer();
+        InetSocketAddress address = stubServer.getAddress();
+        stubServer.close();
+        this.fleet.setRefreshInterval(ServerFleet.QUERY_PLAYERS, 0);
+        this.fleet.setRefreshInterval(ServerFleet.QUERY_RULES, 0);
+        RecordingListener listener = new RecordingListener();
+        this.fleet.addListener(listener);
+        this.fleet.add(address);
+        this.fleet.start();
+
+        long endTime = System.currentTimeMillis() + 5000;
+        while (listener.failures.isEmpty() && System.currentTimeMillis() < endTime) {
+            Thread.sleep(10);
+        }
+
+        assertFalse(listener.failures.isEmpty());
+        assertTrue(listener.updates.isEmpty());
+        assertNull(this.fleet.getSnapshot(address).getServerInfo());
+    }
+
+    private ServerSnapshot awaitSnapshot(InetSocketAddress address)
+            throws InterruptedException {
+        long endTime = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < endTime) {
+            ServerSnapshot snapshot = this.fleet.getSnapshot(address);
+            if (snapshot != null && snapshot.getServerInfo() != null &&
+                snapshot.getPlayers() != null && snapshot.getRules() != null) {
+                return snapshot;
+            }
+            Thread.sleep(10);
+        }
+
+        throw new AssertionError("No complete snapshot of " + address);
+    }
+
+    private StubGameServer stubServer() throws Exception {
+        StubGameServer stubServer = new StubGameServer();
+        this.stubServers.add(stubServer);
+
+        return stubServer;
+    }
+
+    private static class RecordingListener implements FleetListener {
+
+        final List<Exception> failures = new ArrayList<Exception>();
+
+        final List<ServerSnapshot> updates = new ArrayList<ServerSnapshot>();
+
+        public synchronized void refreshFailed(InetSocketAddress address, int queryType, Exception error) {
+            this.failures.add(error);
+        }
+
+        public synchronized void snapshotUpdated(ServerSnapshot snapshot, int queryType) {
+            this.updates.add(snapshot);
+        }
+    }
+
+}
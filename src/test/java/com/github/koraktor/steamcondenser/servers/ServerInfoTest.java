@@ -0,0 +1,101 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.io.ByteArrayOutputStream;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.PacketBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class ServerInfoTest {
+
+    @Test
+    public void testInfo2() throws Exception {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(17);
+        data.write("Test Server\0de_dust2\0cstrike\0Counter-Strike: Source\0".getBytes("UTF-8"));
+        data.write(new byte[] { (byte) 0xF0, 0x00 });
+        data.write(new byte[] { 18, (byte) 200, 2, 'd', 'l', 0, 1 });
+        data.write("1.0.0.70\0".getBytes("UTF-8"));
+        data.write(0xC0);
+        data.write(new byte[] { (byte) 0x87, 0x69 });
+        data.write(new byte[] { (byte) 0x88, 0x69 });
+        data.write("Test TV\0".getBytes("UTF-8"));
+
+        ServerInfo info = ServerInfo.fromInfo2(new PacketBuffer(data.toByteArray()));
+
+        assertEquals(17, info.getNetworkVersion());
+        assertEquals("Test Server", info.getServerName());
+        assertEquals("de_dust2", info.getMapName());
+        assertEquals("cstrike", info.getGameDir());
+        assertEquals("Counter-Strike: Source", info.getGameDescription());
+        assertEquals(240, info.getAppId());
+        assertEquals(18, info.getNumberOfPlayers());
+        assertEquals(200, info.getMaxPlayers());
+        assertEquals(2, info.getNumberOfBots());
+        assertEquals('d', info.getDedicated());
+        assertEquals('l', info.getOperatingSystem());
+        assertFalse(info.isPasswordProtected());
+        assertTrue(info.isSecure());
+        assertEquals("1.0.0.70", info.getGameVersion());
+        assertEquals(27015, info.getServerPort());
+        assertEquals(27016, info.getTvPort());
+        assertEquals("Test TV", info.getTvName());
+        assertNull(info.getServerTags());
+        assertFalse(info.isMod());
+
+        HashMap<String, Object> map = info.toMap();
+        assertEquals(17, map.size());
+        assertEquals("Test Server", map.get("serverName"));
+        assertEquals((short) 240, map.get("appId"));
+        assertEquals((byte) 200, map.get("maxPlayers"));
+        assertEquals((byte) 'd', map.get("dedicated"));
+        assertEquals(true, map.get("secure"));
+        assertEquals((short) 27015, map.get("serverPort"));
+        assertEquals("Test TV", map.get("tvName"));
+        assertFalse(map.containsKey("serverTags"));
+    }
+
+    @Test
+    public void testInfoDetailed() throws Exception {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write("127.0.0.1:27015\0Test Server\0de_dust\0cstrike\0Counter-Strike\0".getBytes("UTF-8"));
+        data.write(new byte[] { 5, 16, 47, 'd', 'w', 1, 0, 0, 3 });
+
+        ServerInfo info = ServerInfo.fromInfoDetailed(new PacketBuffer(data.toByteArray()));
+
+        assertEquals("127.0.0.1:27015", info.getServerIp());
+        assertEquals("Test Server", info.getServerName());
+        assertEquals(5, info.getNumberOfPlayers());
+        assertEquals(16, info.getMaxPlayers());
+        assertEquals(47, info.getNetworkVersion());
+        assertEquals('w', info.getOperatingSystem());
+        assertTrue(info.isPasswordProtected());
+        assertFalse(info.isMod());
+        assertNull(info.getModInfo());
+        assertFalse(info.isSecure());
+        assertEquals(3, info.getNumberOfBots());
+
+        HashMap<String, Object> map = info.toMap();
+        assertEquals(14, map.size());
+        assertEquals(false, map.get("isMod"));
+        assertEquals((byte) 3, map.get("numberOfBots"));
+        assertFalse(map.containsKey("appId"));
+    }
+
+}
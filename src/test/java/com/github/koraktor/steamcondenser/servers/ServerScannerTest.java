@@ -0,0 +1,139 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.servers.packets.S2A_RULES_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class ServerScannerTest {
+
+    private DatagramChannel server;
+
+    private Thread serverThread;
+
+    private ServerScanner scanner;
+
+    @Before
+    public void setup() throws Exception {
+        this.server = DatagramChannel.open();
+        this.server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+
+        this.scanner = new ServerScanner();
+        this.scanner.setTimeout(200);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        this.scanner.close();
+        this.server.close();
+        if (this.serverThread != null) {
+            this.serverThread.join(1000);
+        }
+    }
+
+    @Test
+    public void testScanRulesWithChallengeAndSplitReply() throws Exception {
+        this.serverThread = new Thread() {
+            public void run() {
+                respondToRulesQueries();
+            }
+        };
+        this.serverThread.start();
+
+        RecordingListener listener = new RecordingListener();
+        InetSocketAddress address = (InetSocketAddress) this.server.socket().getLocalSocketAddress();
+        this.scanner.scan(Arrays.asList(address), ServerScanner.QUERY_RULES, listener).get(1, TimeUnit.SECONDS);
+
+        HashMap<String, String> rules = ((S2A_RULES_Packet) listener.replies.get(address)).getRulesHash();
+        assertEquals(2, rules.size());
+        assertEquals("1", rules.get("a"));
+        assertEquals("2", rules.get("b"));
+        assertEquals(2, this.scanner.getRequestsSent());
+        assertEquals(1, this.scanner.getRepliesReceived());
+        assertEquals(0, this.scanner.getTimeouts());
+    }
+
+    @Test
+    public void testScanTimeout() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        InetSocketAddress address = (InetSocketAddress) this.server.socket().getLocalSocketAddress();
+        this.scanner.scan(Arrays.asList(address), ServerScanner.QUERY_INFO, listener).get(1, TimeUnit.SECONDS);
+
+        assertTrue(listener.errors.get(address) instanceof TimeoutException);
+        assertEquals(1, this.scanner.getTimeouts());
+        assertEquals(0, this.scanner.getRepliesReceived());
+    }
+
+    private void respondToRulesQueries() {
+        try {
+            ByteBuffer request = ByteBuffer.allocate(1400);
+            for (int i = 0; i < 2; i ++) {
+                request.clear();
+                InetSocketAddress client = (InetSocketAddress) this.server.receive(request);
+                request.flip();
+                request.position(5);
+                int challenge = Integer.reverseBytes(request.getInt());
+
+                if (challenge == -1) {
+                    ByteBuffer reply = ByteBuffer.allocate(9);
+                    reply.putInt(-1).put(SteamPacket.S2C_CHALLENGE_HEADER).putInt(Integer.reverseBytes(1234));
+                    reply.flip();
+                    this.server.send(reply, client);
+                } else {
+                    assertEquals(1234, challenge);
+                    byte[] data = new byte[] { -1, -1, -1, -1, 0x45, 2, 0, 'a', 0, '1', 0, 'b', 0, '2', 0 };
+                    this.server.send(this.splitPacket(data, 1, 2, 8, 7), client);
+                    this.server.send(this.splitPacket(data, 0, 2, 0, 8), client);
+                }
+            }
+        } catch (Exception e) {}
+    }
+
+    private ByteBuffer splitPacket(byte[] data, int number, int count, int offset, int length) {
+        ByteBuffer packet = ByteBuffer.allocate(12 + length);
+        packet.putInt(Integer.reverseBytes(-2)).putInt(Integer.reverseBytes(1)).put((byte) count).put((byte) number);
+        packet.putShort(Short.reverseBytes((short) 1248)).put(data, offset, length);
+        packet.flip();
+        return packet;
+    }
+
+    private static class RecordingListener implements ScanListener {
+
+        HashMap<InetSocketAddress, Exception> errors = new HashMap<InetSocketAddress, Exception>();
+
+        HashMap<InetSocketAddress, SteamPacket> replies = new HashMap<InetSocketAddress, SteamPacket>();
+
+        public void serverReplied(InetSocketAddress address, SteamPacket reply) {
+            this.replies.put(address, reply);
+        }
+
+        public void serverFailed(InetSocketAddress address, Exception error) {
+            this.errors.put(address, error);
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.PacketBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class SnapshotDifferTest {
+
+    @Test
+    public void testDiffPlayers() throws Exception {
+        PlayerList previous = this.players("alice", 10, "bob", 5, "bob", 7, "carol", 1);
+        PlayerList current = this.players("bob", 5, "alice", 12, "dave", 0, "carol", 1);
+
+        List<ServerDelta> deltas = SnapshotDiffer.diffPlayers(previous, current);
+
+        assertEquals(Arrays.asList(
+            new ServerDelta(ServerDelta.Type.PLAYER_SCORE_CHANGED, "alice", "10", "12"),
+            new ServerDelta(ServerDelta.Type.PLAYER_JOINED, "dave", null, "0"),
+            new ServerDelta(ServerDelta.Type.PLAYER_LEFT, "bob", "7", null)
+        ), deltas);
+    }
+
+    @Test
+    public void testDiffRules() {
+        HashMap<String, String> previous = new HashMap<String, String>();
+        previous.put("mp_timelimit", "30");
+        previous.put("sv_cheats", "0");
+        previous.put("sv_gravity", "800");
+        HashMap<String, String> current = new HashMap<String, String>(previous);
+        current.put("mp_timelimit", "45");
+        current.remove("sv_cheats");
+        current.put("sv_password", "1");
+
+        List<ServerDelta> deltas = SnapshotDiffer.diffRules(previous, current);
+
+        assertEquals(3, deltas.size());
+        assertTrue(deltas.contains(new ServerDelta(ServerDelta.Type.RULE_CHANGED, "mp_timelimit", "30", "45")));
+        assertTrue(deltas.contains(new ServerDelta(ServerDelta.Type.RULE_CHANGED, "sv_cheats", "0", null)));
+        assertTrue(deltas.contains(new ServerDelta(ServerDelta.Type.RULE_CHANGED, "sv_password", null, "1")));
+    }
+
+    @Test
+    public void testDiffServerInfo() throws Exception {
+        assertTrue(SnapshotDiffer.diffServerInfo(this.serverInfo("de_dust2"), this.serverInfo("de_dust2")).isEmpty());
+        assertEquals(Arrays.asList(new ServerDelta(ServerDelta.Type.MAP_CHANGED, null, "de_dust2", "de_inferno")),
+            SnapshotDiffer.diffServerInfo(this.serverInfo("de_dust2"), this.serverInfo("de_inferno")));
+    }
+
+    @Test
+    public void testSnapshotUpdated() throws Exception {
+        final List<List<ServerDelta>> changes = new ArrayList<List<ServerDelta>>();
+        SnapshotDiffer differ = new SnapshotDiffer(new DeltaListener() {
+            public void serverChanged(ServerSnapshot snapshot, List<ServerDelta> deltas) {
+                changes.add(deltas);
+            }
+        });
+
+        ServerSnapshot snapshot = new ServerSnapshot(new InetSocketAddress("127.0.0.1", 27015));
+        snapshot = snapshot.withServerInfo(this.serverInfo("de_dust2"), 1);
+        differ.snapshotUpdated(snapshot, ServerFleet.QUERY_INFO);
+        snapshot = snapshot.withPlayers(this.players("alice", 0), 2);
+        differ.snapshotUpdated(snapshot, ServerFleet.QUERY_PLAYERS);
+        snapshot = snapshot.withServerInfo(this.serverInfo("de_dust2"), 3);
+        differ.snapshotUpdated(snapshot, ServerFleet.QUERY_INFO);
+        assertTrue(changes.isEmpty());
+
+        snapshot = snapshot.withPlayers(this.players("alice", 0, "bob", 0), 4);
+        differ.snapshotUpdated(snapshot, ServerFleet.QUERY_PLAYERS);
+
+        assertEquals(1, changes.size());
+        assertEquals(Arrays.asList(new ServerDelta(ServerDelta.Type.PLAYER_JOINED, "bob", null, "0")), changes.get(0));
+
+        differ.remove(snapshot.getAddress());
+        snapshot = snapshot.withServerInfo(this.serverInfo("de_inferno"), 5);
+        differ.snapshotUpdated(snapshot, ServerFleet.QUERY_INFO);
+        assertEquals(1, changes.size());
+    }
+
+    private PlayerList players(Object... players) throws Exception {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(players.length / 2);
+        for (int i = 0; i < players.length; i += 2) {
+            data.write(i / 2);
+            data.write(((String) players[i]).getBytes("UTF-8"));
+            data.write(0);
+            int score = (Integer) players[i + 1];
+            data.write(new byte[] { (byte) score, (byte) (score >> 8), (byte) (score >> 16), (byte) (score >> 24) });
+            data.write(new byte[4]);
+        }
+
+        return PlayerList.fromPlayers(new PacketBuffer(data.toByteArray()));
+    }
+
+    private ServerInfo serverInfo(String map) throws Exception {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        data.write(17);
+        data.write(("Test Server\0" + map + "\0cstrike\0Counter-Strike: Source\0").getBytes("UTF-8"));
+        data.write(new byte[] { (byte) 0xF0, 0x00 });
+        data.write(new byte[] { 18, (byte) 200, 2, 'd', 'l', 0, 1 });
+        data.write("1.0.0.70\0".getBytes("UTF-8"));
+        data.write(0);
+
+        return ServerInfo.fromInfo2(new PacketBuffer(data.toByteArray()));
+    }
+
+}
@@ -0,0 +1,234 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.packets;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class BZip2DecoderTest {
+
+    private BZip2Decoder decoder;
+
+    @Before
+    public void setup() {
+        this.decoder = BZip2Decoder.acquire();
+    }
+
+    @After
+    public void teardown() {
+        this.decoder.release();
+    }
+
+    @Test
+    public void testDecompress() throws Exception {
+        byte[] data = this.data(30000);
+        List<byte[]> parts = this.split(this.compress(data, 9), 1248);
+
+        byte[] header = new byte[5];
+        byte[] packetData = new byte[data.length - 5];
+        int checksum = this.decoder.decompress(parts, header, packetData);
+
+        this.assertDecompressed(data, header, packetData, checksum);
+    }
+
+    @Test
+    public void testDecompressMultipleBlocks() throws Exception {
+        byte[] data = this.data(250000);
+        List<byte[]> parts = this.split(this.compress(data, 1), 1000);
+
+        byte[] header = new byte[5];
+        byte[] packetData = new byte[data.length - 5];
+        int checksum = this.decoder.decompress(parts, header, packetData);
+
+        this.assertDecompressed(data, header, packetData, checksum);
+    }
+
+    @Test
+    public void testDecompressMultipleBlocksLikeCommonsCompress() throws Exception {
+        byte[] data = this.data(450000);
+
+        for (int blockSize = 1; blockSize <= 9; blockSize += 4) {
+            byte[] compressed = this.compress(data, blockSize);
+            byte[] expected = this.decompress(compressed);
+
+            byte[] header = new byte[5];
+            byte[] packetData = new byte[data.length - 5];
+            int checksum = this.decoder.decompress(this.split(compressed, 1248), header, packetData);
+
+            this.assertDecompressed(expected, header, packetData, checksum);
+        }
+    }
+
+    @Test
+    public void testDecompressCorruptedBlockChecksum() throws Exception {
+        byte[] data = this.data(1000);
+        byte[] compressed = this.compress(data, 9);
+        compressed[12] ^= 0x01;
+
+        try {
+            this.decoder.decompress(this.split(compressed, 100), new byte[5], new byte[data.length - 5]);
+            fail("PacketFormatException expected.");
+        } catch (PacketFormatException e) {
+            assertEquals("bzip2 block checksum mismatch.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecompressCorruptedStreamChecksum() throws Exception {
+        byte[] data = this.data(1000);
+        byte[] compressed = this.compress(data, 9);
+        compressed[compressed.length - 2] ^= 0x01;
+
+        try {
+            this.decoder.decompress(this.split(compressed, 100), new byte[5], new byte[data.length - 5]);
+            fail("PacketFormatException expected.");
+        } catch (PacketFormatException e) {
+            assertEquals("bzip2 stream checksum mismatch.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecompressCorruptedData() throws Exception {
+        byte[] data = this.data(30000);
+        byte[] compressed = this.compress(data, 9);
+        Random random = new Random(1337);
+
+        for (int i = 0; i < 500; i ++) {
+            byte[] corrupted = compressed.clone();
+            int offset = 4 + random.nextInt(corrupted.length - 4);
+            corrupted[offset] ^= 1 << random.nextInt(8);
+
+            byte[] expected = null;
+            try {
+                expected = this.decompress(corrupted);
+            } catch (IOException e) {
+            } catch (RuntimeException e) {
+            }
+
+            byte[] header = new byte[5];
+            byte[] packetData = new byte[data.length - 5];
+            int checksum;
+            try {
+                checksum = this.decoder.decompress(this.split(corrupted, 1248), header, packetData);
+            } catch (PacketFormatException e) {
+                continue;
+            }
+
+            assertArrayEquals(data, expected);
+            this.assertDecompressed(data, header, packetData, checksum);
+        }
+    }
+
+    @Test
+    public void testDecompressTruncated() throws Exception {
+        byte[] data = this.data(1000);
+        List<byte[]> parts = this.split(this.compress(data, 9), 100);
+        parts.remove(parts.size() - 1);
+
+        try {
+            this.decoder.decompress(parts, new byte[5], new byte[data.length - 5]);
+            fail("PacketFormatException expected.");
+        } catch (PacketFormatException e) {
+            assertEquals("Compressed packet data is shorter than expected.", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testDecompressTooLong() throws Exception {
+        byte[] data = this.data(1000);
+        List<byte[]> parts = this.split(this.compress(data, 9), 100);
+
+        try {
+            this.decoder.decompress(parts, new byte[5], new byte[data.length - 6]);
+            fail("PacketFormatException expected.");
+        } catch (PacketFormatException e) {
+            assertEquals("Compressed packet data is longer than expected.", e.getMessage());
+        }
+    }
+
+    private void assertDecompressed(byte[] data, byte[] header, byte[] packetData, int checksum) {
+        byte[] decompressed = new byte[header.length + packetData.length];
+        System.arraycopy(header, 0, decompressed, 0, header.length);
+        System.arraycopy(packetData, 0, decompressed, header.length, packetData.length);
+        assertArrayEquals(data, decompressed);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        assertEquals((int) crc32.getValue(), checksum);
+    }
+
+    private byte[] compress(byte[] data, int blockSize) throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(compressed, blockSize);
+        bzip2.write(data);
+        bzip2.close();
+
+        return compressed.toByteArray();
+    }
+
+    private byte[] data(int length) {
+        Random random = new Random(42);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i ++) {
+            if (i % 20 < 12) {
+                data[i] = (byte) ('a' + i % 20);
+            } else if (i % 50 < 40) {
+                data[i] = 0;
+            } else {
+                data[i] = (byte) random.nextInt(256);
+            }
+        }
+
+        return data;
+    }
+
+    private byte[] decompress(byte[] compressed) throws IOException {
+        BZip2CompressorInputStream bzip2 = new BZip2CompressorInputStream(new ByteArrayInputStream(compressed));
+        ByteArrayOutputStream decompressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int count;
+        while ((count = bzip2.read(buffer)) != -1) {
+            decompressed.write(buffer, 0, count);
+        }
+        bzip2.close();
+
+        return decompressed.toByteArray();
+    }
+
+    private List<byte[]> split(byte[] data, int partSize) {
+        List<byte[]> parts = new ArrayList<byte[]>();
+        for (int offset = 0; offset < data.length; offset += partSize) {
+            byte[] part = new byte[Math.min(partSize, data.length - offset)];
+            System.arraycopy(data, offset, part, 0, part.length);
+            parts.add(part);
+        }
+
+        return parts;
+    }
+
+}
@@ -0,0 +1,137 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.packets;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.servers.SourceServer;
+import com.github.koraktor.steamcondenser.servers.SteamPlayer;
+import com.github.koraktor.steamcondenser.servers.sockets.SteamSocket;
+import com.github.koraktor.steamcondenser.servers.stub.StubGameServer;
+import com.github.koraktor.steamcondenser.servers.stub.StubRconServer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class ReplyCacheTest {
+
+    @Test
+    public void testIdenticalReplies() throws Exception {
+        ReplyCache cache = new ReplyCache();
+
+        SteamPacket packet = cache.getPacketFromData(new byte[] { 0x45, 1, 0, 'a', 0, '1', 0 });
+        assertSame(packet, cache.getPacketFromData(new byte[] { 0x45, 1, 0, 'a', 0, '1', 0 }));
+        assertSame(packet, cache.getPacketFromData((byte) 0x45, new byte[] { 1, 0, 'a', 0, '1', 0 }));
+        assertEquals("1", ((S2A_RULES_Packet) packet).getRulesHash().get("a"));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testChangedReplies() throws Exception {
+        ReplyCache cache = new ReplyCache();
+
+        SteamPacket packet = cache.getPacketFromData(new byte[] { 0x45, 1, 0, 'a', 0, '1', 0 });
+        SteamPacket changedPacket = cache.getPacketFromData(new byte[] { 0x45, 1, 0, 'a', 0, '2', 0 });
+        assertNotSame(packet, changedPacket);
+        assertEquals("2", ((S2A_RULES_Packet) changedPacket).getRulesHash().get("a"));
+        assertSame(changedPacket, cache.getPacketFromData(new byte[] { 0x45, 1, 0, 'a', 0, '2', 0 }));
+
+        cache.clear();
+        assertNotSame(changedPacket, cache.getPacketFromData(new byte[] { 0x45, 1, 0, 'a', 0, '2', 0 }));
+
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testUncachedReplies() throws Exception {
+        ReplyCache cache = new ReplyCache();
+
+        SteamPacket packet = cache.getPacketFromData(new byte[] { 0x41, 1, 2, 3, 4 });
+        assertNotSame(packet, cache.getPacketFromData(new byte[] { 0x41, 1, 2, 3, 4 }));
+
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+    }
+
+    @Test
+    public void testReassembledReplies() throws Exception {
+        ReplyCache cache = new ReplyCache();
+        ArrayList<byte[]> splitPackets = new ArrayList<byte[]>();
+        splitPackets.add(new byte[] { -1, -1, -1, -1, 0x45, 2, 0, 'a', 0 });
+        splitPackets.add(new byte[] { '1', 0, 'b', 0, '2', 0 });
+
+        SteamPacket packet = SteamPacketFactory.reassemblePacket(splitPackets, false, 0, 0, cache);
+        assertSame(packet, SteamPacketFactory.reassemblePacket(splitPackets, false, 0, 0, cache));
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    public void testSourceServer() throws Exception {
+        StubGameServer stubServer = new StubGameServer();
+        for (int i = 0; i < 2000; i ++) {
+            stubServer.setRule("rule_" + i, "value_" + i);
+        }
+
+        SteamSocket.setReplyCaching(true);
+        InetSocketAddress address = stubServer.getAddress();
+        SourceServer server = new SourceServer(address.getAddress(), address.getPort());
+        try {
+            server.updateRules();
+            HashMap<String, String> rules = server.getRules();
+            server.updateRules();
+            assertSame(rules, server.getRules());
+
+            stubServer.setRule("rule_0", "changed");
+            server.updateRules();
+            assertEquals("changed", server.getRules().get("rule_0"));
+            assertEquals(2000, server.getRules().size());
+        } finally {
+            SteamSocket.setReplyCaching(false);
+            server.disconnect();
+            stubServer.close();
+        }
+    }
+
+    @Test
+    public void testSourceServerRconPlayers() throws Exception {
+        StubGameServer stubServer = new StubGameServer();
+        stubServer.addPlayer("someone", 10, 232.0f);
+        StubRconServer rconServer = new StubRconServer("secret", stubServer.getAddress().getPort());
+        rconServer.setCommand("status", "# userid name uniqueid score connected ping loss state\n" +
+            "#      1 \"someone\" STEAM_0:0:123456 10 3:52 12 0 active\n");
+
+        SteamSocket.setReplyCaching(true);
+        InetSocketAddress address = stubServer.getAddress();
+        SourceServer server = new SourceServer(address.getAddress(), address.getPort());
+        try {
+            server.updatePlayers("secret");
+            assertEquals("STEAM_0:0:123456", server.getPlayers().get("someone").getSteamId());
+
+            HashMap<String, SteamPlayer> players = server.queryPlayersAsync().get();
+            assertNull(players.get("someone").getSteamId());
+        } finally {
+            SteamSocket.setReplyCaching(false);
+            server.disconnect();
+            rconServer.close();
+            stubServer.close();
+        }
+    }
+
+}
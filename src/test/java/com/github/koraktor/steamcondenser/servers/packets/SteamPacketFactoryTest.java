@@ -0,0 +1,85 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.packets;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class SteamPacketFactoryTest {
+
+    private static final byte[] RULES_PACKET = new byte[] { -1, -1, -1, -1, 0x45, 2, 0, 'a', 0, '1', 0, 'b', 0, '2', 0 };
+
+    @Test
+    public void testReassemblePacket() throws Exception {
+        ArrayList<byte[]> splitPackets = new ArrayList<byte[]>();
+        splitPackets.add(new byte[] { -1, -1, -1 });
+        splitPackets.add(new byte[] { -1, 0x45, 2, 0, 'a', 0 });
+        splitPackets.add(new byte[] { '1', 0, 'b', 0, '2', 0 });
+
+        ReassemblyStatistics statistics = SteamPacketFactory.getReassemblyStatistics();
+        long packets = statistics.getPackets();
+        long fragments = statistics.getFragments();
+        long bytesCopied = statistics.getBytesCopied();
+
+        S2A_RULES_Packet packet = (S2A_RULES_Packet) SteamPacketFactory.reassemblePacket(splitPackets);
+
+        HashMap<String, String> rules = packet.getRulesHash();
+        assertEquals(2, rules.size());
+        assertEquals("1", rules.get("a"));
+        assertEquals("2", rules.get("b"));
+
+        assertEquals(packets + 1, statistics.getPackets());
+        assertEquals(fragments + 3, statistics.getFragments());
+        assertEquals(bytesCopied + 10, statistics.getBytesCopied());
+    }
+
+    @Test
+    public void testReassembleCompressedPacket() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(compressed);
+        bzip2.write(RULES_PACKET);
+        bzip2.close();
+        byte[] compressedData = compressed.toByteArray();
+
+        ArrayList<byte[]> splitPackets = new ArrayList<byte[]>();
+        byte[] part1 = new byte[compressedData.length / 2];
+        byte[] part2 = new byte[compressedData.length - part1.length];
+        System.arraycopy(compressedData, 0, part1, 0, part1.length);
+        System.arraycopy(compressedData, part1.length, part2, 0, part2.length);
+        splitPackets.add(part1);
+        splitPackets.add(part2);
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(RULES_PACKET);
+
+        S2A_RULES_Packet packet = (S2A_RULES_Packet) SteamPacketFactory.reassemblePacket(splitPackets, true, RULES_PACKET.length, (int) crc32.getValue());
+
+        assertEquals("2", packet.getRulesHash().get("b"));
+
+        try {
+            SteamPacketFactory.reassemblePacket(splitPackets, true, RULES_PACKET.length, 1234);
+            fail();
+        } catch(PacketFormatException e) {
+            assertEquals("CRC32 checksum mismatch of uncompressed packet data.", e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,164 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.exceptions.RCONNoAuthException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class GoldSrcRCONClientTest {
+
+    private volatile int challenge = 1234;
+
+    private GoldSrcRCONClient client;
+
+    private DatagramSocket serverSocket;
+
+    @Before
+    public void setup() throws Exception {
+        this.serverSocket = new DatagramSocket(0, InetAddress.getByName("127.0.0.1"));
+        Thread serverThread = new Thread() {
+            public void run() {
+                serve();
+            }
+        };
+        serverThread.setDaemon(true);
+        serverThread.start();
+    }
+
+    @After
+    public void teardown() {
+        if (this.client != null) {
+            this.client.close();
+        }
+        this.serverSocket.close();
+    }
+
+    @Test
+    public void testExecute() throws Exception {
+        this.client = this.newClient("secret");
+
+        assertEquals("echo test\n", this.client.execute("echo test").get(1, TimeUnit.SECONDS));
+        assertEquals("\n", this.client.execute("silent").get(1, TimeUnit.SECONDS));
+        assertEquals(1, this.client.getChallengeRequests());
+    }
+
+    @Test
+    public void testExecuteBatch() throws Exception {
+        this.client = this.newClient("secret");
+
+        List<Future<String>> futures = this.client.executeBatch(Arrays.asList("echo 1", "silent", "multi 3", "echo 2"));
+
+        assertEquals("echo 1\n", futures.get(0).get(1, TimeUnit.SECONDS));
+        assertEquals("\n", futures.get(1).get(1, TimeUnit.SECONDS));
+        assertEquals("part\npart\npart\n", futures.get(2).get(1, TimeUnit.SECONDS));
+        assertEquals("echo 2\n", futures.get(3).get(1, TimeUnit.SECONDS));
+        assertEquals(1, this.client.getChallengeRequests());
+    }
+
+    @Test
+    public void testBadPassword() throws Exception {
+        this.client = this.newClient("wrong");
+
+        Future<String> future1 = this.client.execute("echo 1");
+        Future<String> future2 = this.client.execute("echo 2");
+        for (Future<String> future : Arrays.asList(future1, future2)) {
+            try {
+                future.get(1, TimeUnit.SECONDS);
+                fail("ExecutionException expected.");
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof RCONNoAuthException);
+            }
+        }
+    }
+
+    @Test
+    public void testBadChallenge() throws Exception {
+        this.client = this.newClient("secret");
+
+        assertEquals("echo 1\n", this.client.execute("echo 1").get(1, TimeUnit.SECONDS));
+        this.challenge = 5678;
+        assertEquals("echo 2\n", this.client.execute("echo 2").get(1, TimeUnit.SECONDS));
+        assertEquals(2, this.client.getChallengeRequests());
+    }
+
+    @Test
+    public void testChallengeExpiry() throws Exception {
+        this.client = new GoldSrcRCONClient(InetAddress.getByName("127.0.0.1"), this.serverSocket.getLocalPort(), "secret", 0);
+
+        this.client.execute("echo 1").get(1, TimeUnit.SECONDS);
+        this.client.execute("echo 2").get(1, TimeUnit.SECONDS);
+        assertEquals(2, this.client.getChallengeRequests());
+    }
+
+    private GoldSrcRCONClient newClient(String password) throws Exception {
+        return new GoldSrcRCONClient(InetAddress.getByName("127.0.0.1"), this.serverSocket.getLocalPort(), password);
+    }
+
+    private void reply(DatagramPacket request, char header, String response)
+            throws IOException {
+        byte[] body = (header + response + "\0").getBytes();
+        byte[] data = new byte[body.length + 4];
+        Arrays.fill(data, 0, 4, (byte) 0xFF);
+        System.arraycopy(body, 0, data, 4, body.length);
+        this.serverSocket.send(new DatagramPacket(data, data.length, request.getSocketAddress()));
+    }
+
+    private void serve() {
+        byte[] buffer = new byte[1400];
+        try {
+            while (true) {
+                DatagramPacket request = new DatagramPacket(buffer, buffer.length);
+                this.serverSocket.receive(request);
+                String data = new String(request.getData(), 4, request.getLength() - 4);
+
+                if (data.equals("challenge rcon")) {
+                    this.reply(request, 'c', "hallenge rcon " + this.challenge + "\n");
+                    continue;
+                }
+
+                String[] parts = data.split(" ", 4);
+                if (Integer.parseInt(parts[1]) != this.challenge) {
+                    this.reply(request, 'l', "Bad challenge.\n");
+                } else if (!parts[2].equals("secret")) {
+                    this.reply(request, 'l', "Bad rcon_password.\n");
+                } else if (parts.length == 3) {
+                    this.reply(request, 'l', "");
+                } else if (parts[3].equals("silent")) {
+                    this.reply(request, 'l', "\n");
+                } else if (parts[3].startsWith("multi ")) {
+                    for (int i = 0; i < Integer.parseInt(parts[3].substring(6)); i ++) {
+                        this.reply(request, 'l', "part\n");
+                    }
+                } else {
+                    this.reply(request, 'l', parts[3] + "\n");
+                }
+            }
+        } catch (IOException ignored) {}
+    }
+
+}
@@ -9,10 +9,12 @@ package com.github.koraktor.steamcondenser.servers.sockets;
 
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
 import java.util.Arrays;
+import java.util.concurrent.TimeoutException;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -25,6 +27,9 @@ import com.github.koraktor.steamcondenser.exceptions.SteamCondenserException;
 import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Matchers.argThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
@@ -101,10 +106,89 @@ public class QuerySocketTest {
         verify(this.channel).send(argThat(bufferMatcher), argThat(socketMatcher));
     }
 
+    @Test
+    public void testBlockingReceive() throws Exception {
+        DatagramChannel server = DatagramChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        QuerySocket socket = this.openBlockingSocket(server.socket().getLocalPort());
+
+        try {
+            assertTrue(socket.isBlocking());
+            assertTrue(((DatagramChannel) socket.channel).isBlocking());
+
+            server.send(ByteBuffer.wrap("test".getBytes()), this.getLocalAddress(socket));
+            assertEquals(4, socket.receivePacket(1400));
+            assertEquals(0, socket.buffer.position());
+            assertEquals(4, socket.buffer.limit());
+
+            server.send(ByteBuffer.wrap("pending".getBytes()), this.getLocalAddress(socket));
+            assertTrue(socket.awaitReply(1000));
+            assertEquals(7, socket.receivePacket(1400));
+
+            server.send(ByteBuffer.wrap("duplicate".getBytes()), this.getLocalAddress(socket));
+            assertTrue(socket.awaitReply(1000));
+            assertEquals(1, socket.discardPackets());
+            assertTrue(((DatagramChannel) socket.channel).isBlocking());
+        } finally {
+            socket.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testBlockingTimeout() throws Exception {
+        DatagramChannel server = DatagramChannel.open();
+        server.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        QuerySocket socket = this.openBlockingSocket(server.socket().getLocalPort());
+        SteamSocket.setTimeout(50);
+
+        try {
+            assertFalse(socket.awaitReply(10));
+            socket.receivePacket(1400);
+            fail("TimeoutException expected.");
+        } catch (TimeoutException e) {
+        } finally {
+            SteamSocket.setTimeout(1000);
+            socket.close();
+            server.close();
+        }
+    }
+
+    @Test
+    public void testBlockingPacketHandler() throws Exception {
+        QuerySocket socket = this.openBlockingSocket(27015);
+
+        try {
+            socket.setPacketHandler(mock(PacketHandler.class));
+            fail("SteamCondenserException expected.");
+        } catch (SteamCondenserException e) {
+            assertEquals("Packet handlers cannot be used in blocking I/O mode.", e.getMessage());
+        } finally {
+            socket.close();
+        }
+    }
+
+    private SocketAddress getLocalAddress(QuerySocket socket) {
+        return ((DatagramChannel) socket.channel).socket().getLocalSocketAddress();
+    }
+
+    private QuerySocket openBlockingSocket(int port) throws Exception {
+        SteamSocket.setBlockingIO(true);
+        try {
+            return new GenericQuerySocket(port);
+        } finally {
+            SteamSocket.setBlockingIO(false);
+        }
+    }
+
     class GenericQuerySocket extends QuerySocket {
 
         public GenericQuerySocket() throws SteamCondenserException, UnknownHostException {
-            super(InetAddress.getByName("127.0.0.1"), 27015);
+            this(27015);
+        }
+
+        public GenericQuerySocket(int port) throws SteamCondenserException, UnknownHostException {
+            super(InetAddress.getByName("127.0.0.1"), port);
         }
 
         public SteamPacket getReply() {
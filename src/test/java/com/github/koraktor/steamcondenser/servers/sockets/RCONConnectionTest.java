@@ -0,0 +1,331 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.exceptions.RCONNoAuthException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class RCONConnectionTest {
+
+    private RCONConnection connection;
+
+    private volatile boolean dropAuth;
+
+    private volatile int frameDelay;
+
+    private ServerSocket serverSocket;
+
+    private volatile boolean silent;
+
+    @Before
+    public void setup() throws Exception {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        Thread acceptThread = new Thread() {
+            public void run() {
+                try {
+                    while (true) {
+                        final Socket socket = serverSocket.accept();
+                        new Thread() {
+                            public void run() {
+                                serve(socket);
+                            }
+                        }.start();
+                    }
+                } catch (IOException ignored) {}
+            }
+        };
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (this.connection != null) {
+            this.connection.close();
+        }
+        this.serverSocket.close();
+    }
+
+    @Test
+    public void testAuthentication() throws Exception {
+        assertTrue(this.open("secret"));
+        assertFalse(this.connection.isClosed());
+    }
+
+    @Test
+    public void testAuthenticationFailed() throws Exception {
+        assertFalse(this.open("wrong"));
+
+        try {
+            this.connection.execute("status").get(1, TimeUnit.SECONDS);
+            fail("ExecutionException expected.");
+        } catch (ExecutionException e) {
+            assertEquals("RCON connection has been closed.", e.getCause().getMessage());
+        }
+        assertTrue(this.connection.isClosed());
+    }
+
+    @Test
+    public void testMultiplexedCommands() throws Exception {
+        this.open("secret");
+
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 50; i ++) {
+            futures.add(this.connection.execute("echo " + i));
+        }
+
+        for (int i = 0; i < 50; i ++) {
+            assertEquals("echo " + i, futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+        assertEquals(0, this.connection.getPendingCount());
+    }
+
+    @Test
+    public void testConcurrentCommands() throws Exception {
+        this.open("secret");
+
+        final List<Future<String>> futures = new Vector<Future<String>>();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i ++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 100; j ++) {
+                        futures.add(connection.execute("echo " + j));
+                    }
+                    futures.addAll(connection.executeBatch(Arrays.asList("echo a", "echo b")));
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (Future<String> future : futures) {
+            future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(816, futures.size());
+        assertEquals(0, this.connection.getPendingCount());
+    }
+
+    @Test
+    public void testMultiPacketResponse() throws Exception {
+        this.open("secret");
+
+        StringBuilder command = new StringBuilder("echo ");
+        for (int i = 0; i < 10000; i ++) {
+            command.append((char) ('a' + i % 26));
+        }
+
+        assertEquals(command.toString(), this.connection.execute(command.toString()).get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBatch() throws Exception {
+        this.open("secret");
+
+        List<Future<String>> futures = this.connection.executeBatch(Arrays.asList("echo 1", "echo 2", "echo 3"));
+
+        assertEquals(3, futures.size());
+        for (int i = 0; i < 3; i ++) {
+            assertEquals("echo " + (i + 1), futures.get(i).get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testStreamedResponse() throws Exception {
+        this.open("secret");
+
+        StringBuilder command = new StringBuilder("echo ");
+        for (int i = 0; i < 10000; i ++) {
+            command.append((char) ('a' + i % 26));
+        }
+
+        final List<String> chunks = new ArrayList<String>();
+        Future<String> future = this.connection.execute(command.toString(), new RCONResponseListener() {
+            public void responseReceived(String response) {
+                chunks.add(response);
+            }
+        });
+
+        future.get(1, TimeUnit.SECONDS);
+        assertEquals(3, chunks.size());
+        StringBuilder response = new StringBuilder();
+        for (String chunk : chunks) {
+            response.append(chunk);
+        }
+        assertEquals(command.toString(), response.toString());
+    }
+
+    @Test
+    public void testSlowStreamedResponse() throws Exception {
+        int timeout = SteamSocket.getTimeout();
+        SteamSocket.setTimeout(200);
+        try {
+            this.open("secret");
+        } finally {
+            SteamSocket.setTimeout(timeout);
+        }
+        this.frameDelay = 100;
+
+        StringBuilder command = new StringBuilder("echo ");
+        for (int i = 0; i < 20000; i ++) {
+            command.append((char) ('a' + i % 26));
+        }
+
+        final List<String> chunks = new Vector<String>();
+        Future<String> future = this.connection.execute(command.toString(), new RCONResponseListener() {
+            public void responseReceived(String response) {
+                chunks.add(response);
+            }
+        });
+        Future<String> nextFuture = this.connection.execute("echo 1");
+
+        future.get(2, TimeUnit.SECONDS);
+        assertEquals(5, chunks.size());
+        assertEquals("echo 1", nextFuture.get(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testReauthentication() throws Exception {
+        this.open("secret");
+        this.dropAuth = true;
+
+        try {
+            this.connection.execute("echo 1").get(1, TimeUnit.SECONDS);
+            fail("ExecutionException expected.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof RCONNoAuthException);
+        }
+
+        assertEquals("echo 2", this.connection.execute("echo 2").get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testTimeoutOfKeepAliveAndCommand() throws Exception {
+        int timeout = SteamSocket.getTimeout();
+        SteamSocket.setTimeout(200);
+        try {
+            this.open("secret");
+        } finally {
+            SteamSocket.setTimeout(timeout);
+        }
+        this.silent = true;
+
+        this.connection.keepAlive(0);
+        Future<String> future = this.connection.execute("echo 1");
+
+        try {
+            future.get(2, TimeUnit.SECONDS);
+            fail("ExecutionException expected.");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TimeoutException);
+        }
+
+        long endTime = System.currentTimeMillis() + 1000;
+        while (!this.connection.isClosed() && System.currentTimeMillis() < endTime) {
+            Thread.sleep(10);
+        }
+        assertTrue(this.connection.isClosed());
+        assertEquals(0, this.connection.getPendingCount());
+    }
+
+    private boolean open(String password) throws Exception {
+        this.connection = new RCONConnection(new InetSocketAddress("127.0.0.1", this.serverSocket.getLocalPort()), password);
+
+        return this.connection.open().get(1, TimeUnit.SECONDS);
+    }
+
+    private void serve(Socket socket) {
+        try {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+
+            while (true) {
+                int size = Integer.reverseBytes(input.readInt());
+                int requestId = Integer.reverseBytes(input.readInt());
+                int type = Integer.reverseBytes(input.readInt());
+                byte[] body = new byte[size - 10];
+                input.readFully(body);
+                input.readFully(new byte[2]);
+
+                if (this.silent) {
+                    continue;
+                }
+                if (type == 3) {
+                    this.write(output, requestId, 0, "");
+                    this.write(output, new String(body).equals("secret") ? requestId : -1, 2, "");
+                } else if (type == 2 && this.dropAuth) {
+                    this.dropAuth = false;
+                    this.write(output, -1, 2, "");
+                } else if (type == 2) {
+                    String response = new String(body);
+                    for (int offset = 0; offset < response.length(); offset += 4096) {
+                        this.write(output, requestId, 0, response.substring(offset, Math.min(response.length(), offset + 4096)));
+                        if (this.frameDelay > 0) {
+                            output.flush();
+                            Thread.sleep(this.frameDelay);
+                        }
+                    }
+                } else {
+                    this.write(output, requestId, 0, "");
+                    this.write(output, requestId, 0, "\0\1\0\0");
+                }
+                output.flush();
+            }
+        } catch (IOException ignored) {
+        } catch (InterruptedException ignored) {
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignored) {}
+        }
+    }
+
+    private void write(OutputStream output, int requestId, int type, String body)
+            throws IOException {
+        byte[] bytes = body.getBytes();
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 14).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(bytes.length + 10);
+        buffer.putInt(requestId);
+        buffer.putInt(type);
+        buffer.put(bytes);
+        buffer.putShort((short) 0);
+        output.write(buffer.array());
+    }
+
+}
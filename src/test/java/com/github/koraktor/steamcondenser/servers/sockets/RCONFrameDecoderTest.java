@@ -0,0 +1,117 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONAuthResponse;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONExecResponsePacket;
+import com.github.koraktor.steamcondenser.servers.packets.rcon.RCONPacket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class RCONFrameDecoderTest {
+
+    private RCONFrameDecoder decoder;
+
+    @Before
+    public void setup() {
+        this.decoder = new RCONFrameDecoder(64, 1024);
+    }
+
+    @Test
+    public void testMultipleFrames() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN);
+        this.putFrame(data, 1, 0, "test");
+        this.putFrame(data, 2, 2, "");
+        this.putFrame(data, 3, 0, "more");
+        data.flip();
+        this.decoder.feed(data);
+
+        RCONPacket packet = this.decoder.decode();
+        assertEquals(1, packet.getRequestId());
+        assertEquals("test", ((RCONExecResponsePacket) packet).getResponse());
+        assertTrue(this.decoder.decode() instanceof RCONAuthResponse);
+        assertEquals("more", ((RCONExecResponsePacket) this.decoder.decode()).getResponse());
+        assertNull(this.decoder.decode());
+        assertEquals(0, this.decoder.getBufferedBytes());
+    }
+
+    @Test
+    public void testPartialFrame() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(50).order(ByteOrder.LITTLE_ENDIAN);
+        this.putFrame(data, 1, 0, "test");
+        this.putFrame(data, 2, 0, "split");
+        data.flip();
+        int length = data.limit();
+
+        data.limit(20);
+        this.decoder.feed(data);
+        assertEquals("test", ((RCONExecResponsePacket) this.decoder.decode()).getResponse());
+        assertNull(this.decoder.decode());
+        assertEquals(2, this.decoder.getBufferedBytes());
+
+        data.limit(length);
+        this.decoder.feed(data);
+        assertEquals("split", ((RCONExecResponsePacket) this.decoder.decode()).getResponse());
+        assertNull(this.decoder.decode());
+    }
+
+    @Test
+    public void testLargeFrame() throws Exception {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 500; i ++) {
+            body.append((char) ('a' + i % 26));
+        }
+
+        ByteBuffer data = ByteBuffer.allocate(600).order(ByteOrder.LITTLE_ENDIAN);
+        this.putFrame(data, 1, 0, body.toString());
+        data.flip();
+        this.decoder.feed(data);
+        assertTrue(this.decoder.getCapacity() >= 514);
+
+        assertEquals(body.toString(), ((RCONExecResponsePacket) this.decoder.decode()).getResponse());
+        assertNull(this.decoder.decode());
+        assertEquals(64, this.decoder.getCapacity());
+    }
+
+    @Test
+    public void testInvalidFrameSize() throws Exception {
+        ByteBuffer data = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+        data.putInt(2048);
+        data.flip();
+        this.decoder.feed(data);
+
+        try {
+            this.decoder.decode();
+            fail("PacketFormatException expected.");
+        } catch (PacketFormatException e) {
+            assertEquals("Invalid RCON packet size 2048.", e.getMessage());
+        }
+    }
+
+    private void putFrame(ByteBuffer buffer, int requestId, int type, String body) {
+        buffer.putInt(body.length() + 10);
+        buffer.putInt(requestId);
+        buffer.putInt(type);
+        buffer.put(body.getBytes());
+        buffer.putShort((short) 0);
+    }
+
+}
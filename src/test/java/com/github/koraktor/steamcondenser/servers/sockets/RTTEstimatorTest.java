@@ -0,0 +1,86 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class RTTEstimatorTest {
+
+    private RTTEstimator estimator;
+
+    @Before
+    public void setup() {
+        this.estimator = new RTTEstimator(50, 5000);
+    }
+
+    @Test
+    public void testInitialTimeout() {
+        assertEquals(SteamSocket.getTimeout(), this.estimator.getTimeout());
+        assertEquals(SteamSocket.getTimeout(), this.estimator.getFragmentTimeout());
+    }
+
+    @Test
+    public void testFirstSample() {
+        this.estimator.update(200);
+
+        assertEquals(200, this.estimator.getSmoothedRtt());
+        assertEquals(600, this.estimator.getTimeout());
+        assertEquals(500, this.estimator.getFragmentTimeout());
+    }
+
+    @Test
+    public void testStableSamples() {
+        for (int i = 0; i < 50; i ++) {
+            this.estimator.update(100);
+        }
+
+        assertEquals(100, this.estimator.getSmoothedRtt());
+        assertEquals(101, this.estimator.getTimeout());
+        assertEquals(50, this.estimator.getFragmentTimeout());
+    }
+
+    @Test
+    public void testVariance() {
+        for (int i = 0; i < 50; i ++) {
+            this.estimator.update(i % 2 == 0 ? 100 : 300);
+        }
+
+        int timeout = this.estimator.getTimeout();
+        assertTrue(timeout > 300);
+        assertTrue(this.estimator.getFragmentTimeout() < timeout);
+    }
+
+    @Test
+    public void testBackoff() {
+        this.estimator.update(1000);
+        assertEquals(3000, this.estimator.getTimeout());
+
+        this.estimator.backoff();
+        assertEquals(5000, this.estimator.getTimeout());
+
+        this.estimator.update(1000);
+        assertTrue(this.estimator.getTimeout() < 5000);
+    }
+
+    @Test
+    public void testReset() {
+        this.estimator.update(200);
+        this.estimator.reset();
+
+        assertEquals(0, this.estimator.getSampleCount());
+        assertEquals(SteamSocket.getTimeout(), this.estimator.getTimeout());
+    }
+
+}
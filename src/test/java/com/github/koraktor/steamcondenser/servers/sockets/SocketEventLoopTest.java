@@ -0,0 +1,93 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class SocketEventLoopTest {
+
+    private DatagramChannel receiver;
+
+    private DatagramChannel sender;
+
+    @Before
+    public void setup() throws Exception {
+        this.receiver = DatagramChannel.open();
+        this.receiver.configureBlocking(false);
+        this.receiver.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+
+        this.sender = DatagramChannel.open();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        this.receiver.close();
+        this.sender.close();
+    }
+
+    @Test
+    public void testSharedInstance() throws Exception {
+        assertSame(SocketEventLoop.getInstance(), SocketEventLoop.getInstance());
+        assertTrue(SocketEventLoop.getInstance().isRunning());
+    }
+
+    @Test
+    public void testAwaitReadable() throws Exception {
+        ChannelRegistration registration = SocketEventLoop.getInstance().register(this.receiver);
+
+        this.sender.send(ByteBuffer.wrap("test".getBytes()), this.receiver.socket().getLocalSocketAddress());
+
+        assertTrue(registration.awaitReadable(1000));
+    }
+
+    @Test
+    public void testAwaitReadableRepeatedly() throws Exception {
+        ChannelRegistration registration = SocketEventLoop.getInstance().register(this.receiver);
+        ByteBuffer buffer = ByteBuffer.allocate(10);
+
+        for (int i = 0; i < 3; i ++) {
+            this.sender.send(ByteBuffer.wrap("test".getBytes()), this.receiver.socket().getLocalSocketAddress());
+
+            assertTrue(registration.awaitReadable(1000));
+            buffer.clear();
+            this.receiver.receive(buffer);
+        }
+    }
+
+    @Test
+    public void testAwaitReadableTimeout() throws Exception {
+        ChannelRegistration registration = SocketEventLoop.getInstance().register(this.receiver);
+
+        long startTime = System.currentTimeMillis();
+        assertFalse(registration.awaitReadable(50));
+        assertTrue(System.currentTimeMillis() - startTime >= 50);
+    }
+
+    @Test
+    public void testAwaitReadableClosedChannel() throws Exception {
+        ChannelRegistration registration = SocketEventLoop.getInstance().register(this.receiver);
+        this.receiver.close();
+
+        assertTrue(registration.awaitReadable(1000));
+    }
+
+}
@@ -0,0 +1,217 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.sockets;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.exceptions.PacketFormatException;
+import com.github.koraktor.steamcondenser.servers.packets.S2A_RULES_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.S2C_CHALLENGE_Packet;
+import com.github.koraktor.steamcondenser.servers.packets.SteamPacket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class SplitPacketAssemblerTest {
+
+    private static final byte[] CHALLENGE_1 = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x41, (byte) 0xD2, 0x04, 0x00, 0x00 };
+
+    private static final byte[] CHALLENGE_2 = { (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x41, 0x39, 0x05, 0x00, 0x00 };
+
+    private InetSocketAddress address1;
+
+    private InetSocketAddress address2;
+
+    private SplitPacketAssembler assembler;
+
+    @Before
+    public void setup() {
+        this.address1 = new InetSocketAddress("127.0.0.1", 27015);
+        this.address2 = new InetSocketAddress("127.0.0.1", 27016);
+        this.assembler = new SplitPacketAssembler(1000, 16, 1024);
+    }
+
+    @Test
+    public void testInterleavedParts() throws Exception {
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 3, 2, CHALLENGE_1)));
+        assertNull(this.assembler.addSourcePacket(this.address2, this.sourcePart(1, 3, 1, CHALLENGE_2)));
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(2, 3, 0, CHALLENGE_2)));
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 3, 0, CHALLENGE_1)));
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 3, 0, CHALLENGE_1)));
+        assertEquals(3, this.assembler.getPendingPackets());
+
+        SteamPacket packet = this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 3, 1, CHALLENGE_1));
+        assertEquals(1234, ((S2C_CHALLENGE_Packet) packet).getChallengeNumber());
+        assertEquals(2, this.assembler.getPendingPackets());
+
+        assertNull(this.assembler.addSourcePacket(this.address2, this.sourcePart(1, 3, 0, CHALLENGE_2)));
+        packet = this.assembler.addSourcePacket(this.address2, this.sourcePart(1, 3, 2, CHALLENGE_2));
+        assertEquals(1337, ((S2C_CHALLENGE_Packet) packet).getChallengeNumber());
+        assertEquals(1, this.assembler.getPendingPackets());
+    }
+
+    @Test
+    public void testGoldSrcParts() throws Exception {
+        assertNull(this.assembler.addGoldSrcPacket(this.address1, this.goldSrcPart(1, 2, 1, CHALLENGE_1)));
+        SteamPacket packet = this.assembler.addGoldSrcPacket(this.address1, this.goldSrcPart(1, 2, 0, CHALLENGE_1));
+
+        assertEquals(1234, ((S2C_CHALLENGE_Packet) packet).getChallengeNumber());
+        assertEquals(0, this.assembler.getPendingBytes());
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 3, 0, CHALLENGE_1)));
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 3, 1, CHALLENGE_1)));
+
+        assertNull(this.assembler.flush(this.address2));
+        try {
+            this.assembler.flush(this.address1);
+            fail("TimeoutException expected.");
+        } catch (TimeoutException e) {
+            assertEquals(0, this.assembler.getPendingPackets());
+            assertEquals(0, this.assembler.getPendingBytes());
+        }
+
+        assertNull(this.assembler.flush(this.address1));
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 3, 2, CHALLENGE_1)));
+        assertEquals(1, this.assembler.getPendingPackets());
+    }
+
+    @Test
+    public void testCompressedSourceParts() throws Exception {
+        ByteArrayOutputStream rules = new ByteArrayOutputStream();
+        rules.write(new byte[] { -1, -1, -1, -1, 0x45, 0x2C, 0x01 });
+        for (int i = 0; i < 300; i ++) {
+            rules.write(("rule_" + i + "\0value_" + i + "\0").getBytes("UTF-8"));
+        }
+        byte[] data = rules.toByteArray();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(compressed);
+        bzip2.write(data);
+        bzip2.close();
+        byte[] compressedData = compressed.toByteArray();
+        assertEquals("BZh", new String(compressedData, 0, 3, "US-ASCII"));
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(data);
+        int checksum = (int) crc32.getValue();
+
+        this.assembler = new SplitPacketAssembler(1000, 16, 65536);
+        int requestId = 1 | 0x80000000;
+        assertNull(this.assembler.addSourcePacket(this.address1, this.compressedSourcePart(requestId, 3, 0, compressedData, data.length, checksum)));
+        assertNull(this.assembler.addSourcePacket(this.address1, this.compressedSourcePart(requestId, 3, 2, compressedData, data.length, checksum)));
+        SteamPacket packet = this.assembler.addSourcePacket(this.address1, this.compressedSourcePart(requestId, 3, 1, compressedData, data.length, checksum));
+
+        Map<String, String> rulesHash = ((S2A_RULES_Packet) packet).getRulesHash();
+        assertEquals(300, rulesHash.size());
+        assertEquals("value_0", rulesHash.get("rule_0"));
+        assertEquals("value_299", rulesHash.get("rule_299"));
+        assertEquals(0, this.assembler.getPendingPackets());
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        this.assembler = new SplitPacketAssembler(1000, 2, 1024);
+
+        this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 2, 0, CHALLENGE_1));
+        this.assembler.addSourcePacket(this.address1, this.sourcePart(2, 2, 0, CHALLENGE_1));
+        this.assembler.addSourcePacket(this.address1, this.sourcePart(3, 2, 0, CHALLENGE_1));
+
+        assertEquals(2, this.assembler.getPendingPackets());
+        assertEquals(1, this.assembler.getEvictions());
+        assertNull(this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 2, 1, CHALLENGE_1)));
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        this.assembler = new SplitPacketAssembler(0, 16, 1024);
+
+        this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 2, 0, CHALLENGE_1));
+        assertEquals(1, this.assembler.expire());
+
+        assertEquals(1, this.assembler.getExpirations());
+        assertEquals(0, this.assembler.getPendingPackets());
+        assertEquals(0, this.assembler.getPendingBytes());
+    }
+
+    @Test
+    public void testInvalidPacketNumber() throws Exception {
+        try {
+            this.assembler.addSourcePacket(this.address1, this.sourcePart(1, 2, 2, CHALLENGE_1));
+            fail("PacketFormatException expected.");
+        } catch (PacketFormatException e) {
+            assertTrue(e.getMessage().startsWith("Invalid split packet number"));
+        }
+    }
+
+    private ByteBuffer compressedSourcePart(int requestId, int count, int number, byte[] data, int size, int checksum) {
+        byte[] part = this.part(data, count, number);
+        ByteBuffer buffer = ByteBuffer.allocate(part.length + 14);
+        buffer.putInt(Integer.reverseBytes(requestId));
+        buffer.put((byte) count);
+        buffer.put((byte) number);
+        if (number == 0) {
+            buffer.putInt(Integer.reverseBytes(size));
+            buffer.putInt(Integer.reverseBytes(checksum));
+        }
+        buffer.put(part);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private ByteBuffer goldSrcPart(int requestId, int count, int number, byte[] data) {
+        byte[] part = this.part(data, count, number);
+        ByteBuffer buffer = ByteBuffer.allocate(part.length + 5);
+        buffer.putInt(Integer.reverseBytes(requestId));
+        buffer.put((byte) ((number << 4) | count));
+        buffer.put(part);
+        buffer.flip();
+
+        return buffer;
+    }
+
+    private byte[] part(byte[] data, int count, int number) {
+        int size = (data.length + count - 1) / count;
+        int offset = Math.min(data.length, number * size);
+        byte[] part = new byte[Math.min(size, data.length - offset)];
+        System.arraycopy(data, offset, part, 0, part.length);
+
+        return part;
+    }
+
+    private ByteBuffer sourcePart(int requestId, int count, int number, byte[] data) {
+        byte[] part = this.part(data, count, number);
+        ByteBuffer buffer = ByteBuffer.allocate(part.length + 8);
+        buffer.putInt(Integer.reverseBytes(requestId));
+        buffer.put((byte) count);
+        buffer.put((byte) number);
+        buffer.putShort(Short.reverseBytes((short) 1248));
+        buffer.put(part);
+        buffer.flip();
+
+        return buffer;
+    }
+
+}
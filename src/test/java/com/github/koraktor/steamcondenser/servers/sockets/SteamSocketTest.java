@@ -11,8 +11,6 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.DatagramChannel;
-import java.nio.channels.SelectionKey;
-import java.nio.channels.Selector;
 import java.util.concurrent.TimeoutException;
 
 import org.junit.Before;
@@ -33,7 +31,6 @@ import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.powermock.api.mockito.PowerMockito.mock;
-import static org.powermock.api.mockito.PowerMockito.mockStatic;
 
 /**
  * @author Sebastian Staudt
@@ -47,6 +44,8 @@ public class SteamSocketTest {
 
     private DatagramChannel channel;
 
+    private ChannelRegistration registration;
+
     private SteamSocket socket;
 
     @Before
@@ -55,6 +54,10 @@ public class SteamSocketTest {
 
         this.channel = mock(DatagramChannel.class);
         this.socket.channel = this.channel;
+
+        this.registration = mock(ChannelRegistration.class);
+        when(this.registration.getChannel()).thenReturn(this.channel);
+        this.socket.registration = this.registration;
     }
 
     @Test
@@ -68,11 +71,7 @@ public class SteamSocketTest {
 
     @Test
     public void testReceiveIntoNewBuffer() throws Exception {
-        Selector selector = mock(Selector.class);
-        when(selector.select(SteamSocket.timeout)).thenReturn(1);
-        mockStatic(Selector.class);
-        when(Selector.open()).thenReturn(selector);
-        when(this.channel.register(selector, SelectionKey.OP_READ)).thenReturn(null);
+        when(this.registration.awaitReadable(SteamSocket.timeout)).thenReturn(true);
 
         final SteamSocket socket = this.socket;
         when(this.channel.read(any(ByteBuffer.class))).thenAnswer(new Answer<Integer>() {
@@ -92,11 +91,7 @@ public class SteamSocketTest {
 
     @Test
     public void testReceiveIntoExistingBuffer() throws Exception {
-        Selector selector = mock(Selector.class);
-        when(selector.select(SteamSocket.timeout)).thenReturn(1);
-        mockStatic(Selector.class);
-        when(Selector.open()).thenReturn(selector);
-        when(this.channel.register(selector, SelectionKey.OP_READ)).thenReturn(null);
+        when(this.registration.awaitReadable(SteamSocket.timeout)).thenReturn(true);
 
         this.socket.buffer = ByteBuffer.allocate(10);
 
@@ -127,11 +122,7 @@ public class SteamSocketTest {
     public void testTimeout() throws Exception {
         this.exception.expect(TimeoutException.class);
 
-        Selector selector = mock(Selector.class);
-        when(selector.select(SteamSocket.timeout)).thenReturn(0);
-        mockStatic(Selector.class);
-        when(Selector.open()).thenReturn(selector);
-        when(this.channel.register(selector, SelectionKey.OP_READ)).thenReturn(null);
+        when(this.registration.awaitReadable(SteamSocket.timeout)).thenReturn(false);
 
         this.socket.receivePacket(4);
     }
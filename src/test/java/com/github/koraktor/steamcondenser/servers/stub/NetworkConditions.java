@@ -0,0 +1,137 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.stub;
+
+import java.util.Random;
+
+/**
+ * This class describes the simulated network between a client and a stub
+ * server
+ * <p>
+ * Every datagram sent by a stub server is delayed by the latency plus a
+ * random jitter. It may be dropped with the given loss rate. With the given
+ * reordering rate, a datagram is delayed a second time, so datagrams sent
+ * later will overtake it.
+ *
+ * @author Sebastian Staudt
+ */
+public class NetworkConditions {
+
+    /**
+     * A perfect network without any latency, loss or reordering
+     */
+    public static final NetworkConditions NONE = new NetworkConditions(0, 0, 0, 0);
+
+    private int jitter;
+
+    private int latency;
+
+    private double loss;
+
+    private Random random;
+
+    private double reordering;
+
+    /**
+     * Creates new network conditions
+     *
+     * @param latency The amount of milliseconds each datagram is delayed
+     * @param jitter The maximum amount of milliseconds added randomly to the
+     *        latency
+     * @param loss The probability that a datagram is dropped
+     * @param reordering The probability that a datagram is overtaken by
+     *        datagrams sent later
+     */
+    public NetworkConditions(int latency, int jitter, double loss, double reordering) {
+        this(latency, jitter, loss, reordering, new Random());
+    }
+
+    /**
+     * Creates new network conditions using the given source of randomness,
+     * e.g. to get reproducible results
+     *
+     * @param latency The amount of milliseconds each datagram is delayed
+     * @param jitter The maximum amount of milliseconds added randomly to the
+     *        latency
+     * @param loss The probability that a datagram is dropped
+     * @param reordering The probability that a datagram is overtaken by
+     *        datagrams sent later
+     * @param random The source of randomness
+     */
+    public NetworkConditions(int latency, int jitter, double loss, double reordering, Random random) {
+        this.jitter = jitter;
+        this.latency = latency;
+        this.loss = loss;
+        this.random = random;
+        this.reordering = reordering;
+    }
+
+    /**
+     * Returns the maximum amount of milliseconds added to the latency
+     *
+     * @return The jitter
+     */
+    public int getJitter() {
+        return this.jitter;
+    }
+
+    /**
+     * Returns the amount of milliseconds each datagram is delayed
+     *
+     * @return The latency
+     */
+    public int getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Returns the probability that a datagram is dropped
+     *
+     * @return The loss rate
+     */
+    public double getLoss() {
+        return this.loss;
+    }
+
+    /**
+     * Returns the probability that a datagram is overtaken by datagrams sent
+     * later
+     *
+     * @return The reordering rate
+     */
+    public double getReordering() {
+        return this.reordering;
+    }
+
+    /**
+     * Returns the amount of milliseconds to delay the next datagram
+     *
+     * @return The delay of the datagram
+     */
+    synchronized long nextDelay() {
+        long delay = this.latency;
+        if (this.jitter > 0) {
+            delay += this.random.nextInt(this.jitter + 1);
+        }
+        if (this.reordering > 0 && this.random.nextDouble() < this.reordering) {
+            delay += Math.max(this.latency + this.jitter, 5);
+        }
+
+        return delay;
+    }
+
+    /**
+     * Returns whether the next datagram should be dropped
+     *
+     * @return <code>true</code> if the datagram is lost
+     */
+    synchronized boolean nextLost() {
+        return this.loss > 0 && this.random.nextDouble() < this.loss;
+    }
+
+}
@@ -0,0 +1,446 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.stub;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+
+/**
+ * This class implements a game server replying to A2S_INFO, A2S_PLAYER and
+ * A2S_RULES queries
+ * <p>
+ * Replies larger than the split size are split using the format of either
+ * Source or GoldSrc servers. Source replies may additionally be compressed
+ * using bzip2. Replies are only built again after the data of the server has
+ * changed, so the server itself adds as little latency as possible to the
+ * measurements of a benchmark. GoldSrc servers also accept RCON commands over
+ * UDP.
+ *
+ * @author Sebastian Staudt
+ */
+public class StubGameServer extends StubUdpServer {
+
+    private static final byte[] EMPTY_RCON_RESPONSE = { -1, -1, -1, -1, 'l', 0 };
+
+    private int challenge;
+
+    private boolean compressed;
+
+    private byte[] compressedData;
+
+    private byte[] compressedPayload;
+
+    private boolean goldSrc;
+
+    private volatile byte[] infoReply;
+
+    private String mapName;
+
+    private int maxPlayers;
+
+    private volatile byte[] playerReply;
+
+    private List<Object[]> players;
+
+    private Map<String, String> rconCommands;
+
+    private String rconPassword;
+
+    private AtomicInteger requestId;
+
+    private Map<String, String> rules;
+
+    private volatile byte[] rulesReply;
+
+    private String serverName;
+
+    private int splitSize;
+
+    /**
+     * Starts a new stub of a Source server
+     *
+     * @throws IOException if the server socket cannot be opened
+     */
+    public StubGameServer() throws IOException {
+        this(false);
+    }
+
+    /**
+     * Starts a new stub of a Source or GoldSrc server
+     *
+     * @param goldSrc Whether to reply like a GoldSrc server
+     * @throws IOException if the server socket cannot be opened
+     */
+    public StubGameServer(boolean goldSrc) throws IOException {
+        super(goldSrc ? "stub-goldsrc-server" : "stub-source-server");
+
+        this.challenge = new Random().nextInt(0x7FFFFFFF);
+        this.goldSrc = goldSrc;
+        this.mapName = "de_dust2";
+        this.maxPlayers = 24;
+        this.players = Collections.synchronizedList(new ArrayList<Object[]>());
+        this.rconCommands = Collections.synchronizedMap(new HashMap<String, String>());
+        this.requestId = new AtomicInteger();
+        this.rules = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+        this.serverName = "Steam Condenser Stub Server";
+        this.splitSize = goldSrc ? 1391 : 1248;
+    }
+
+    /**
+     * Adds a player to this server
+     *
+     * @param name The name of the player
+     * @param score The score of the player
+     * @param connectTime The time the player is connected
+     */
+    public void addPlayer(String name, int score, float connectTime) {
+        this.players.add(new Object[] { name, score, connectTime });
+        this.infoReply = null;
+        this.playerReply = null;
+    }
+
+    /**
+     * Returns the challenge number of this server
+     *
+     * @return The challenge number
+     */
+    public int getChallenge() {
+        return this.challenge;
+    }
+
+    /**
+     * Sets whether split replies are compressed
+     * <p>
+     * Only Source servers compress replies.
+     *
+     * @param compressed <code>true</code> if split replies should be
+     *        compressed using bzip2
+     */
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    /**
+     * Sets the name of the current map
+     *
+     * @param mapName The map name
+     */
+    public void setMapName(String mapName) {
+        this.mapName = mapName;
+        this.infoReply = null;
+    }
+
+    /**
+     * Sets the output of the given RCON command
+     *
+     * @param command The command
+     * @param output The output of the command
+     */
+    public void setRconCommand(String command, String output) {
+        this.rconCommands.put(command, output);
+    }
+
+    /**
+     * Sets the RCON password of this server
+     *
+     * @param rconPassword The RCON password
+     */
+    public void setRconPassword(String rconPassword) {
+        this.rconPassword = rconPassword;
+    }
+
+    /**
+     * Sets a rule (CVAR) of this server
+     *
+     * @param name The name of the rule
+     * @param value The value of the rule
+     */
+    public void setRule(String name, String value) {
+        this.rules.put(name, value);
+        this.rulesReply = null;
+    }
+
+    /**
+     * Sets the name of this server
+     *
+     * @param serverName The server name
+     */
+    public void setServerName(String serverName) {
+        this.serverName = serverName;
+        this.infoReply = null;
+    }
+
+    /**
+     * Sets the maximum size of the payload of a single datagram
+     * <p>
+     * Larger replies are split.
+     *
+     * @param splitSize The maximum payload size
+     */
+    public void setSplitSize(int splitSize) {
+        this.splitSize = splitSize;
+    }
+
+    @Override
+    protected List<byte[]> reply(byte[] request) {
+        if (request.length < 5) {
+            return Collections.emptyList();
+        }
+
+        switch (request[4]) {
+            case 0x54:
+                if (this.infoReply == null) {
+                    this.infoReply = this.createInfoReply();
+                }
+                return this.split(this.infoReply);
+            case 0x55:
+                if (this.readChallenge(request) != this.challenge) {
+                    return Collections.singletonList(this.createChallengeReply());
+                }
+                if (this.playerReply == null) {
+                    this.playerReply = this.createPlayerReply();
+                }
+                return this.split(this.playerReply);
+            case 0x56:
+                if (this.readChallenge(request) != this.challenge) {
+                    return Collections.singletonList(this.createChallengeReply());
+                }
+                if (this.rulesReply == null) {
+                    this.rulesReply = this.createRulesReply();
+                }
+                return this.split(this.rulesReply);
+            case 0x57:
+                return Collections.singletonList(this.createChallengeReply());
+            case 'c':
+            case 'r':
+                if (this.goldSrc) {
+                    return this.rconReply(new String(request, 4, request.length - 4));
+                }
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private byte[] createChallengeReply() {
+        ByteBuffer buffer = this.packet(0x41, 4);
+        buffer.putInt(this.challenge);
+
+        return toArray(buffer);
+    }
+
+    private byte[] createInfoReply() {
+        ByteBuffer buffer = this.packet(0x49, 256);
+        buffer.put((byte) 17);
+        putString(buffer, this.serverName);
+        putString(buffer, this.mapName);
+        putString(buffer, "cstrike");
+        putString(buffer, this.goldSrc ? "Counter-Strike" : "Counter-Strike: Source");
+        buffer.putShort((short) (this.goldSrc ? 10 : 240));
+        buffer.put((byte) this.players.size()).put((byte) this.maxPlayers).put((byte) 0);
+        buffer.put((byte) 'd').put((byte) 'l').put((byte) 0).put((byte) 1);
+        putString(buffer, "1.0.0.70");
+        buffer.put((byte) 0x80);
+        buffer.putShort((short) this.getAddress().getPort());
+
+        return toArray(buffer);
+    }
+
+    private byte[] createPlayerReply() {
+        List<Object[]> players;
+        synchronized (this.players) {
+            players = new ArrayList<Object[]>(this.players);
+        }
+
+        ByteBuffer buffer = this.packet(0x44, 1 + players.size() * 128);
+        buffer.put((byte) players.size());
+        for (int i = 0; i < players.size(); i ++) {
+            Object[] player = players.get(i);
+            buffer.put((byte) i);
+            putString(buffer, (String) player[0]);
+            buffer.putInt((Integer) player[1]);
+            buffer.putFloat((Float) player[2]);
+        }
+
+        return toArray(buffer);
+    }
+
+    private byte[] createRulesReply() {
+        Map<String, String> rules;
+        synchronized (this.rules) {
+            rules = new LinkedHashMap<String, String>(this.rules);
+        }
+
+        int size = 2;
+        for (Map.Entry<String, String> rule : rules.entrySet()) {
+            size += toBytes(rule.getKey()).length + toBytes(rule.getValue()).length + 2;
+        }
+
+        ByteBuffer buffer = this.packet(0x45, size);
+        buffer.putShort((short) rules.size());
+        for (Map.Entry<String, String> rule : rules.entrySet()) {
+            putString(buffer, rule.getKey());
+            putString(buffer, rule.getValue());
+        }
+
+        return toArray(buffer);
+    }
+
+    private int readChallenge(byte[] request) {
+        if (request.length < 9) {
+            return -1;
+        }
+
+        return ByteBuffer.wrap(request, 5, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+    }
+
+    private List<byte[]> rconReply(String request) {
+        String[] parts = request.trim().split(" ", 4);
+        if (parts.length == 2 && parts[0].equals("challenge") && parts[1].equals("rcon")) {
+            return Collections.singletonList(this.rconResponse("challenge rcon " + this.challenge + "\n", false));
+        }
+        if (parts.length < 3 || !parts[0].equals("rcon")) {
+            return Collections.emptyList();
+        }
+        if (!parts[1].equals(Integer.toString(this.challenge))) {
+            return Collections.singletonList(this.rconResponse("Bad challenge.\n", true));
+        }
+        if (!parts[2].equals(this.rconPassword)) {
+            return Collections.singletonList(this.rconResponse("Bad rcon_password.\n", true));
+        }
+        if (parts.length == 3) {
+            return Collections.singletonList(EMPTY_RCON_RESPONSE);
+        }
+
+        String output = this.rconCommands.get(parts[3]);
+        if (output == null) {
+            output = "Unknown command \"" + parts[3] + "\"\n";
+        }
+        List<byte[]> replies = new ArrayList<byte[]>();
+        int chunkSize = this.splitSize - 2;
+        for (int offset = 0; offset < output.length(); offset += chunkSize) {
+            replies.add(this.rconResponse(output.substring(offset, Math.min(output.length(), offset + chunkSize)), true));
+        }
+
+        return replies;
+    }
+
+    private byte[] rconResponse(String response, boolean header) {
+        byte[] bytes = toBytes(response);
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 6);
+        buffer.putInt(-1);
+        if (header) {
+            buffer.put((byte) 'l');
+        }
+        buffer.put(bytes).put((byte) 0);
+
+        return toArray(buffer);
+    }
+
+    private List<byte[]> split(byte[] payload) {
+        if (payload.length <= this.splitSize) {
+            return Collections.singletonList(payload);
+        }
+
+        int requestId = this.requestId.incrementAndGet() & 0x7FFFFFFF;
+        boolean compressed = this.compressed && !this.goldSrc;
+        byte[] data = payload;
+        if (compressed) {
+            if (payload != this.compressedPayload) {
+                this.compressedData = compress(payload);
+                this.compressedPayload = payload;
+            }
+            data = this.compressedData;
+        }
+
+        int packetCount = (data.length + this.splitSize - 1) / this.splitSize;
+        List<byte[]> packets = new ArrayList<byte[]>(packetCount);
+        for (int i = 0; i < packetCount; i ++) {
+            int offset = i * this.splitSize;
+            int length = Math.min(this.splitSize, data.length - offset);
+            ByteBuffer buffer = ByteBuffer.allocate(length + 20).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(-2);
+            if (this.goldSrc) {
+                buffer.putInt(requestId);
+                buffer.put((byte) ((i << 4) | packetCount));
+            } else {
+                buffer.putInt(compressed ? (requestId | 0x80000000) : requestId);
+                buffer.put((byte) packetCount);
+                buffer.put((byte) i);
+                if (compressed) {
+                    if (i == 0) {
+                        CRC32 crc32 = new CRC32();
+                        crc32.update(payload);
+                        buffer.putInt(payload.length);
+                        buffer.putInt((int) crc32.getValue());
+                    }
+                } else {
+                    buffer.putShort((short) this.splitSize);
+                }
+            }
+            buffer.put(data, offset, length);
+            packets.add(toArray(buffer));
+        }
+
+        return packets;
+    }
+
+    private ByteBuffer packet(int header, int size) {
+        ByteBuffer buffer = ByteBuffer.allocate(size + 5).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(-1);
+        buffer.put((byte) header);
+
+        return buffer;
+    }
+
+    private static byte[] compress(byte[] data) {
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            BZip2CompressorOutputStream bzip2 = new BZip2CompressorOutputStream(output);
+            bzip2.write(data);
+            bzip2.close();
+
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void putString(ByteBuffer buffer, String string) {
+        buffer.put(toBytes(string));
+        buffer.put((byte) 0);
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, data, 0, data.length);
+
+        return data;
+    }
+
+    private static byte[] toBytes(String string) {
+        try {
+            return string.getBytes("UTF-8");
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+}
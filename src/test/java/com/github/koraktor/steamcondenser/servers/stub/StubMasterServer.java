@@ -0,0 +1,117 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.stub;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class implements a master server replying with batches of server
+ * addresses
+ * <p>
+ * Each request is answered with the addresses following the seed address of
+ * the request. The last batch is terminated with <code>0.0.0.0:0</code>.
+ * Region codes and filters are ignored.
+ *
+ * @author Sebastian Staudt
+ */
+public class StubMasterServer extends StubUdpServer {
+
+    /**
+     * The default number of addresses per batch, the maximum fitting into a
+     * single datagram of a real master server
+     */
+    public static final int DEFAULT_BATCH_SIZE = 231;
+
+    private List<InetSocketAddress> addresses;
+
+    private int batchSize;
+
+    private Map<String, Integer> indices;
+
+    /**
+     * Starts a new master server replying with the given addresses
+     *
+     * @param addresses The addresses of the servers to reply with
+     * @throws IOException if the server socket cannot be opened
+     */
+    public StubMasterServer(List<InetSocketAddress> addresses) throws IOException {
+        this(addresses, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Starts a new master server replying with the given addresses
+     *
+     * @param addresses The addresses of the servers to reply with
+     * @param batchSize The maximum number of addresses per batch
+     * @throws IOException if the server socket cannot be opened
+     */
+    public StubMasterServer(List<InetSocketAddress> addresses, int batchSize)
+            throws IOException {
+        super("stub-master-server");
+
+        this.addresses = new ArrayList<InetSocketAddress>(addresses);
+        this.batchSize = batchSize;
+        this.indices = new HashMap<String, Integer>();
+        for (int i = 0; i < this.addresses.size(); i ++) {
+            this.indices.put(seed(this.addresses.get(i)), i);
+        }
+    }
+
+    @Override
+    protected List<byte[]> reply(byte[] request) {
+        if (request.length < 3 || request[0] != 0x31) {
+            return Collections.emptyList();
+        }
+
+        int end = 2;
+        while (end < request.length && request[end] != 0) {
+            end ++;
+        }
+        String seed = new String(request, 2, end - 2);
+
+        int start = 0;
+        if (!seed.equals("0.0.0.0:0")) {
+            Integer index = this.indices.get(seed);
+            if (index == null) {
+                return Collections.emptyList();
+            }
+            start = index + 1;
+        }
+
+        int count = Math.min(this.batchSize, this.addresses.size() - start);
+        boolean lastBatch = start + count == this.addresses.size();
+        ByteBuffer buffer = ByteBuffer.allocate(6 + (count + 1) * 6);
+        buffer.putInt(-1);
+        buffer.put((byte) 0x66).put((byte) 0x0A);
+        for (int i = start; i < start + count; i ++) {
+            InetSocketAddress address = this.addresses.get(i);
+            buffer.put(address.getAddress().getAddress());
+            buffer.putShort((short) address.getPort());
+        }
+        if (lastBatch) {
+            buffer.putInt(0).putShort((short) 0);
+        }
+
+        byte[] reply = new byte[buffer.position()];
+        System.arraycopy(buffer.array(), 0, reply, 0, reply.length);
+
+        return Collections.singletonList(reply);
+    }
+
+    private static String seed(InetSocketAddress address) {
+        return address.getAddress().getHostAddress() + ":" + address.getPort();
+    }
+
+}
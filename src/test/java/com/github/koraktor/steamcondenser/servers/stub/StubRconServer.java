@@ -0,0 +1,295 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.stub;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a Source RCON server on the loopback interface
+ * <p>
+ * Like SRCDS, the server splits command output into packets of at most 4096
+ * bytes and mirrors empty packets sent by the client, followed by a packet
+ * with the body <code>00 01 00 00</code>. Replies are delayed according to
+ * the {@link NetworkConditions} of the server, but never change their order
+ * on a connection. Lost or reordered segments of a TCP connection only
+ * result in a longer delay of all following replies.
+ *
+ * @author Sebastian Staudt
+ */
+public class StubRconServer {
+
+    private static final int MAX_BODY_SIZE = 4096;
+
+    private Map<String, String> commands;
+
+    private volatile NetworkConditions networkConditions;
+
+    private volatile int packetInterval;
+
+    private String password;
+
+    private AtomicLong requests;
+
+    private ServerSocket serverSocket;
+
+    /**
+     * Starts a new RCON server listening on a random port of the loopback
+     * interface
+     *
+     * @param password The RCON password of the server
+     * @throws IOException if the server socket cannot be opened
+     */
+    public StubRconServer(String password) throws IOException {
+        this(password, 0);
+    }
+
+    /**
+     * Starts a new RCON server listening on the given port of the loopback
+     * interface
+     * <p>
+     * Game servers accept RCON connections on the TCP port with the same
+     * number as their query port, so this can be used to pair this server
+     * with a {@link StubGameServer}.
+     *
+     * @param password The RCON password of the server
+     * @param port The port to listen on
+     * @throws IOException if the server socket cannot be opened
+     */
+    public StubRconServer(String password, int port) throws IOException {
+        this.commands = Collections.synchronizedMap(new HashMap<String, String>());
+        this.networkConditions = NetworkConditions.NONE;
+        this.password = password;
+        this.requests = new AtomicLong();
+        this.serverSocket = new ServerSocket(port, 50, InetAddress.getByName("127.0.0.1"));
+
+        Thread thread = new Thread("stub-rcon-server") {
+            public void run() {
+                accept();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops this server
+     */
+    public void close() {
+        try {
+            this.serverSocket.close();
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Returns the address this server is listening on
+     *
+     * @return The address of this server
+     */
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) this.serverSocket.getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the number of packets received by this server
+     *
+     * @return The number of received packets
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Sets the output of the given command
+     * <p>
+     * Commands without a defined output are echoed back to the client.
+     *
+     * @param command The command
+     * @param output The output of the command
+     */
+    public void setCommand(String command, String output) {
+        this.commands.put(command, output);
+    }
+
+    /**
+     * Sets the conditions of the simulated network between the clients and
+     * this server
+     *
+     * @param networkConditions The network conditions
+     */
+    public void setNetworkConditions(NetworkConditions networkConditions) {
+        this.networkConditions = networkConditions;
+    }
+
+    /**
+     * Sets the time between the packets of multi-packet command output
+     * <p>
+     * This simulates a server sending long output while it is still
+     * generating it.
+     *
+     * @param packetInterval The time between two packets in milliseconds
+     */
+    public void setPacketInterval(int packetInterval) {
+        this.packetInterval = packetInterval;
+    }
+
+    /**
+     * Accepts connections until the server is closed
+     */
+    private void accept() {
+        try {
+            while (!this.serverSocket.isClosed()) {
+                final Socket socket = this.serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Thread thread = new Thread("stub-rcon-connection") {
+                    public void run() {
+                        serve(socket);
+                    }
+                };
+                thread.setDaemon(true);
+                thread.start();
+            }
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Appends a RCON packet to the given buffer
+     *
+     * @param buffer The buffer to write to
+     * @param requestId The request ID of the packet
+     * @param type The type of the packet
+     * @param body The body of the packet
+     * @param offset The offset of the body
+     * @param length The length of the body
+     */
+    private void putPacket(ByteBuffer buffer, int requestId, int type,
+                           byte[] body, int offset, int length) {
+        buffer.putInt(length + 10);
+        buffer.putInt(requestId);
+        buffer.putInt(type);
+        buffer.put(body, offset, length);
+        buffer.putShort((short) 0);
+    }
+
+    /**
+     * Writes the given packets to a connection after the given delay
+     *
+     * @param scheduler The scheduler of the connection
+     * @param output The stream of the connection
+     * @param packets The packets to write
+     * @param delay The delay in milliseconds
+     */
+    private void schedule(ScheduledExecutorService scheduler,
+                          final OutputStream output,
+                          final List<ByteBuffer> packets, long delay) {
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                try {
+                    for (ByteBuffer packet : packets) {
+                        output.write(packet.array(), 0, packet.position());
+                    }
+                } catch (IOException e) {}
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Replies to the packets received on the given connection
+     *
+     * @param socket The connection to a client
+     */
+    private void serve(Socket socket) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        try {
+            DataInputStream input = new DataInputStream(socket.getInputStream());
+            final OutputStream output = socket.getOutputStream();
+            long lastDeadline = 0;
+
+            while (true) {
+                int size = Integer.reverseBytes(input.readInt());
+                int requestId = Integer.reverseBytes(input.readInt());
+                int type = Integer.reverseBytes(input.readInt());
+                byte[] body = new byte[size - 10];
+                input.readFully(body);
+                input.readFully(new byte[2]);
+                this.requests.incrementAndGet();
+
+                byte[] empty = new byte[0];
+                int interval = 0;
+                ByteBuffer reply;
+                List<ByteBuffer> replies = new ArrayList<ByteBuffer>();
+                if (type == 3) {
+                    reply = ByteBuffer.allocate(28).order(ByteOrder.LITTLE_ENDIAN);
+                    int authId = new String(body).equals(this.password) ? requestId : -1;
+                    this.putPacket(reply, requestId, 0, empty, 0, 0);
+                    this.putPacket(reply, authId, 2, empty, 0, 0);
+                    replies.add(reply);
+                } else if (type == 2) {
+                    String command = new String(body, "UTF-8");
+                    String result = this.commands.get(command);
+                    if (result == null) {
+                        result = command;
+                    }
+                    byte[] resultBytes = result.getBytes("UTF-8");
+                    int packets = Math.max(1, (resultBytes.length + MAX_BODY_SIZE - 1) / MAX_BODY_SIZE);
+                    for (int i = 0; i < packets; i ++) {
+                        int offset = i * MAX_BODY_SIZE;
+                        int length = Math.min(MAX_BODY_SIZE, resultBytes.length - offset);
+                        reply = ByteBuffer.allocate(length + 14).order(ByteOrder.LITTLE_ENDIAN);
+                        this.putPacket(reply, requestId, 0, resultBytes, offset, length);
+                        replies.add(reply);
+                    }
+                    interval = this.packetInterval;
+                } else {
+                    byte[] terminator = new byte[] { 0, 1, 0, 0 };
+                    reply = ByteBuffer.allocate(32).order(ByteOrder.LITTLE_ENDIAN);
+                    this.putPacket(reply, requestId, 0, empty, 0, 0);
+                    this.putPacket(reply, requestId, 0, terminator, 0, terminator.length);
+                    replies.add(reply);
+                }
+
+                long now = System.currentTimeMillis();
+                long deadline = Math.max(now + this.networkConditions.nextDelay(), lastDeadline);
+                if (interval == 0) {
+                    this.schedule(scheduler, output, replies, deadline - now);
+                } else {
+                    for (int i = 0; i < replies.size(); i ++) {
+                        if (i > 0) {
+                            deadline += interval;
+                        }
+                        this.schedule(scheduler, output, replies.subList(i, i + 1), deadline - now);
+                    }
+                }
+                lastDeadline = deadline;
+            }
+        } catch (IOException e) {
+        } finally {
+            scheduler.shutdown();
+            try {
+                socket.close();
+            } catch (IOException e) {}
+        }
+    }
+
+}
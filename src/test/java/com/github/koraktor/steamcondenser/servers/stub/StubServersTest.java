@@ -0,0 +1,252 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.stub;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.koraktor.steamcondenser.servers.CachePolicy;
+import com.github.koraktor.steamcondenser.servers.GoldSrcServer;
+import com.github.koraktor.steamcondenser.servers.MasterServer;
+import com.github.koraktor.steamcondenser.servers.RetryPolicy;
+import com.github.koraktor.steamcondenser.servers.SourceServer;
+import com.github.koraktor.steamcondenser.servers.SteamPlayer;
+import com.github.koraktor.steamcondenser.servers.sockets.SteamSocket;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @author Sebastian Staudt
+ */
+public class StubServersTest {
+
+    private StubGameServer gameServer;
+
+    private StubMasterServer masterServer;
+
+    private StubRconServer rconServer;
+
+    @After
+    public void tearDown() {
+        if (this.gameServer != null) {
+            this.gameServer.close();
+        }
+        if (this.masterServer != null) {
+            this.masterServer.close();
+        }
+        if (this.rconServer != null) {
+            this.rconServer.close();
+        }
+    }
+
+    @Test
+    public void testSourceServer() throws Exception {
+        this.gameServer = new StubGameServer();
+        this.gameServer.setServerName("Stub Server");
+        this.gameServer.setMapName("cp_badlands");
+        this.gameServer.addPlayer("Player 1", 10, 12.5f);
+        this.gameServer.addPlayer("Player 2", 20, 100.0f);
+        this.gameServer.setRule("mp_timelimit", "30");
+
+        SourceServer server = this.sourceServer();
+        try {
+            HashMap<String, Object> info = server.getServerInfo();
+            assertEquals("Stub Server", info.get("serverName"));
+            assertEquals("cp_badlands", info.get("mapName"));
+            assertEquals(2, (int) (Byte) info.get("numberOfPlayers"));
+
+            HashMap<String, SteamPlayer> players = server.getPlayers();
+            assertEquals(2, players.size());
+            assertEquals(20, players.get("Player 2").getScore());
+
+            assertEquals("30", server.getRules().get("mp_timelimit"));
+        } finally {
+            server.disconnect();
+        }
+    }
+
+    @Test
+    public void testSourceServerSplitReplies() throws Exception {
+        this.gameServer = new StubGameServer();
+        this.fillRules(2000);
+
+        SourceServer server = this.sourceServer();
+        try {
+            HashMap<String, String> rules = server.getRules();
+            assertEquals(2000, rules.size());
+            assertEquals("value_1999", rules.get("rule_1999"));
+        } finally {
+            server.disconnect();
+        }
+    }
+
+    @Test
+    public void testSourceServerCompressedReplies() throws Exception {
+        this.gameServer = new StubGameServer();
+        this.gameServer.setCompressed(true);
+        this.fillRules(2000);
+
+        SourceServer server = this.sourceServer();
+        server.setRetryPolicy(new RetryPolicy(3));
+        try {
+            HashMap<String, String> rules = server.getRules();
+            assertEquals(2000, rules.size());
+            assertEquals("value_1999", rules.get("rule_1999"));
+        } finally {
+            server.disconnect();
+        }
+    }
+
+    @Test
+    public void testSourceServerWithPacketLoss() throws Exception {
+        this.gameServer = new StubGameServer();
+        this.gameServer.addPlayer("Player", 1, 1.0f);
+        this.gameServer.setNetworkConditions(new NetworkConditions(5, 5, 0.3, 0.2, new Random(1)));
+
+        SourceServer server = this.sourceServer();
+        server.setRetryPolicy(new RetryPolicy(10));
+        try {
+            for (int i = 0; i < 10; i ++) {
+                server.updateServerInfo();
+                server.updatePlayers();
+                assertEquals(1, server.getPlayers().size());
+            }
+        } finally {
+            server.disconnect();
+        }
+
+        assertTrue(this.gameServer.getLostDatagrams() > 0);
+    }
+
+    @Test
+    public void testSourceServerCancelledQuery() throws Exception {
+        this.gameServer = new StubGameServer();
+        this.gameServer.setServerName("Stub Server");
+        this.gameServer.setNetworkConditions(new NetworkConditions(200, 0, 0, 0));
+
+        SourceServer server = this.sourceServer();
+        server.setCachePolicy(new CachePolicy(10000, 0));
+        try {
+            Future<HashMap<String, Object>> future = server.queryInfoAsync();
+            assertTrue(future.cancel(false));
+
+            assertEquals("Stub Server", server.getServerInfo().get("serverName"));
+        } finally {
+            server.disconnect();
+        }
+    }
+
+    @Test
+    public void testSourceRcon() throws Exception {
+        this.gameServer = new StubGameServer();
+        this.rconServer = new StubRconServer("secret", this.gameServer.getAddress().getPort());
+        StringBuilder status = new StringBuilder();
+        for (int i = 0; i < 1000; i ++) {
+            status.append("line ").append(i).append('\n');
+        }
+        this.rconServer.setCommand("status", status.toString());
+
+        SourceServer server = this.sourceServer();
+        try {
+            assertFalse(server.rconAuth("wrong"));
+            assertTrue(server.rconAuth("secret"));
+            assertEquals("echo test", server.rconExec("echo test"));
+            assertEquals(status.toString().trim(), server.rconExec("status"));
+        } finally {
+            server.disconnect();
+        }
+    }
+
+    @Test
+    public void testSourceRconSlowOutput() throws Exception {
+        this.gameServer = new StubGameServer();
+        this.rconServer = new StubRconServer("secret", this.gameServer.getAddress().getPort());
+        this.rconServer.setPacketInterval(100);
+        StringBuilder cvars = new StringBuilder();
+        for (int i = 0; i < 2000; i ++) {
+            cvars.append("cvar_").append(i).append('\n');
+        }
+        this.rconServer.setCommand("cvarlist", cvars.toString());
+
+        int timeout = SteamSocket.getTimeout();
+        SteamSocket.setTimeout(200);
+        SourceServer server = this.sourceServer();
+        try {
+            assertTrue(server.rconConnect("secret"));
+            long startTime = System.currentTimeMillis();
+            assertEquals(cvars.toString().trim(), server.rconExec("cvarlist"));
+            assertTrue(System.currentTimeMillis() - startTime > 2 * SteamSocket.getTimeout());
+        } finally {
+            SteamSocket.setTimeout(timeout);
+            server.disconnect();
+        }
+    }
+
+    @Test
+    public void testGoldSrcServer() throws Exception {
+        this.gameServer = new StubGameServer(true);
+        this.gameServer.setSplitSize(200);
+        this.fillRules(100);
+        this.gameServer.setRconPassword("secret");
+        this.gameServer.setRconCommand("status", "hostname: Stub Server\n");
+
+        InetSocketAddress address = this.gameServer.getAddress();
+        GoldSrcServer server = new GoldSrcServer(address.getAddress(), address.getPort());
+        try {
+            assertEquals(100, server.getRules().size());
+
+            server.rconAuth("secret");
+            assertEquals("hostname: Stub Server", server.rconExec("status"));
+
+            server.rconConnect("secret");
+            assertEquals("hostname: Stub Server", server.rconExec("status"));
+        } finally {
+            server.disconnect();
+        }
+    }
+
+    @Test
+    public void testMasterServer() throws Exception {
+        List<InetSocketAddress> addresses = new ArrayList<InetSocketAddress>();
+        for (int i = 1; i <= 1000; i ++) {
+            addresses.add(new InetSocketAddress(InetAddress.getByAddress(new byte[] { 10, 0, (byte) (i >> 8), (byte) i }), 27015));
+        }
+        this.masterServer = new StubMasterServer(addresses);
+
+        InetSocketAddress address = this.masterServer.getAddress();
+        MasterServer master = new MasterServer(address.getAddress(), address.getPort());
+        Vector<InetSocketAddress> servers = master.getServers();
+
+        assertEquals(1000, servers.size());
+        assertEquals(addresses.get(999), servers.get(999));
+        assertEquals(5L, this.masterServer.getRequests());
+    }
+
+    private void fillRules(int count) {
+        for (int i = 0; i < count; i ++) {
+            this.gameServer.setRule("rule_" + i, "value_" + i);
+        }
+    }
+
+    private SourceServer sourceServer() throws Exception {
+        InetSocketAddress address = this.gameServer.getAddress();
+        return new SourceServer(address.getAddress(), address.getPort());
+    }
+
+}
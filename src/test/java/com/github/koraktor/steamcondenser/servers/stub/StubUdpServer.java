@@ -0,0 +1,202 @@
+/**
+ * This code is free software; you can redistribute it and/or modify it under
+ * the terms of the new BSD License.
+ *
+ * Copyright (c) 2013, Sebastian Staudt
+ */
+
+package com.github.koraktor.steamcondenser.servers.stub;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class implements a UDP server on the loopback interface replying to
+ * the requests of the clients under test
+ * <p>
+ * Requests are received on a thread of the server. Replies are sent from a
+ * scheduler applying the {@link NetworkConditions} of the server.
+ *
+ * @author Sebastian Staudt
+ */
+public abstract class StubUdpServer {
+
+    private DatagramChannel channel;
+
+    private AtomicLong lostDatagrams;
+
+    private volatile NetworkConditions networkConditions;
+
+    private AtomicLong requests;
+
+    private ScheduledExecutorService scheduler;
+
+    private AtomicLong sentDatagrams;
+
+    /**
+     * Starts a new server listening on a random port of the loopback
+     * interface
+     *
+     * @param name The name used for the threads of the server
+     * @throws IOException if the server socket cannot be opened
+     */
+    protected StubUdpServer(final String name) throws IOException {
+        this.channel = DatagramChannel.open();
+        this.channel.socket().setReceiveBufferSize(1024 * 1024);
+        this.channel.socket().bind(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0));
+        this.lostDatagrams = new AtomicLong();
+        this.networkConditions = NetworkConditions.NONE;
+        this.requests = new AtomicLong();
+        this.sentDatagrams = new AtomicLong();
+
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-replies");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        Thread thread = new Thread(name) {
+            public void run() {
+                receive();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops this server
+     */
+    public void close() {
+        this.scheduler.shutdownNow();
+        try {
+            this.channel.close();
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Returns the address this server is listening on
+     *
+     * @return The address of this server
+     */
+    public InetSocketAddress getAddress() {
+        return (InetSocketAddress) this.channel.socket().getLocalSocketAddress();
+    }
+
+    /**
+     * Returns the number of datagrams dropped by the simulated network
+     *
+     * @return The number of lost datagrams
+     */
+    public long getLostDatagrams() {
+        return this.lostDatagrams.get();
+    }
+
+    /**
+     * Returns the number of requests received by this server
+     *
+     * @return The number of requests
+     */
+    public long getRequests() {
+        return this.requests.get();
+    }
+
+    /**
+     * Returns the number of datagrams sent by this server
+     *
+     * @return The number of sent datagrams
+     */
+    public long getSentDatagrams() {
+        return this.sentDatagrams.get();
+    }
+
+    /**
+     * Sets the conditions of the simulated network between the clients and
+     * this server
+     *
+     * @param networkConditions The network conditions
+     */
+    public void setNetworkConditions(NetworkConditions networkConditions) {
+        this.networkConditions = networkConditions;
+    }
+
+    /**
+     * Returns the datagrams to send in reply to the given request
+     *
+     * @param request The received request
+     * @return The datagrams to send back, may be empty
+     */
+    protected abstract List<byte[]> reply(byte[] request);
+
+    /**
+     * Receives requests until the server is closed
+     */
+    private void receive() {
+        ByteBuffer buffer = ByteBuffer.allocate(1500);
+        try {
+            while (this.channel.isOpen()) {
+                buffer.clear();
+                SocketAddress client = this.channel.receive(buffer);
+                buffer.flip();
+                byte[] request = new byte[buffer.remaining()];
+                buffer.get(request);
+                this.requests.incrementAndGet();
+
+                List<byte[]> replies;
+                try {
+                    replies = this.reply(request);
+                } catch (RuntimeException e) {
+                    continue;
+                }
+                for (byte[] reply : replies) {
+                    this.send(reply, client);
+                }
+            }
+        } catch (IOException e) {}
+    }
+
+    /**
+     * Sends a datagram to the given client applying the network conditions
+     *
+     * @param datagram The datagram to send
+     * @param client The address of the client
+     */
+    private void send(final byte[] datagram, final SocketAddress client) {
+        NetworkConditions networkConditions = this.networkConditions;
+        if (networkConditions.nextLost()) {
+            this.lostDatagrams.incrementAndGet();
+            return;
+        }
+
+        Runnable task = new Runnable() {
+            public void run() {
+                try {
+                    channel.send(ByteBuffer.wrap(datagram), client);
+                    sentDatagrams.incrementAndGet();
+                } catch (IOException e) {}
+            }
+        };
+
+        long delay = networkConditions.nextDelay();
+        try {
+            if (delay == 0) {
+                this.scheduler.execute(task);
+            } else {
+                this.scheduler.schedule(task, delay, TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {}
+    }
+
+}